@@ -1 +1,2 @@
-# No consumer ProGuard rules are required at this time.
+# rpc-client emits JFR events only where jdk.jfr exists, which is never the case on Android
+-dontwarn jdk.jfr.**
@@ -1,9 +1,14 @@
 package it.carpanese.rpc.android
 
+import it.carpanese.rpc.core.RpcIdGenerator
 import it.carpanese.rpc.core.RpcRequest
 import it.carpanese.rpc.core.RpcResponse
+import it.carpanese.rpc.core.RpcTypeAdapterFactory
+import com.google.gson.GsonBuilder
 import com.google.gson.JsonElement
 import retrofit2.Call
+import retrofit2.Converter
+import retrofit2.converter.gson.GsonConverterFactory
 import retrofit2.http.Body
 import retrofit2.http.POST
 import retrofit2.http.Url
@@ -18,7 +23,7 @@ import retrofit2.http.Url
  * ```kotlin
  * val retrofit = Retrofit.Builder()
  *     .baseUrl("http://api.example.com/")
- *     .addConverterFactory(GsonConverterFactory.create())
+ *     .addConverterFactory(RpcConverterFactory.create())
  *     .build()
  *
  * val rpcService = retrofit.create(RpcService::class.java)
@@ -52,6 +57,29 @@ interface RpcService {
     ): RpcResponse
 }
 
+/**
+ * Retrofit converter for JSON-RPC envelopes
+ *
+ * Gson converter with the streaming [RpcTypeAdapterFactory] registered, so requests and
+ * responses are written and read without reflection.
+ */
+object RpcConverterFactory {
+
+    /**
+     * Create a converter factory
+     *
+     * @param safeMode Apply Safe Mode markers to params, results and error payloads
+     */
+    @JvmStatic
+    @JvmOverloads
+    fun create(safeMode: Boolean = false): Converter.Factory {
+        val gson = GsonBuilder()
+            .registerTypeAdapterFactory(RpcTypeAdapterFactory(safeMode))
+            .create()
+        return GsonConverterFactory.create(gson)
+    }
+}
+
 /**
  * Retrofit-based RPC client
  *
@@ -59,13 +87,14 @@ interface RpcService {
  */
 class RetrofitRpcClient(
     private val service: RpcService,
-    private val endpoint: String = "rpc"
+    private val endpoint: String = "rpc",
+    private val idGenerator: RpcIdGenerator = RpcIdGenerator.defaultGenerator()
 ) {
 
     /**
      * Call a remote method
      */
-    suspend fun call(method: String, params: JsonElement? = null, id: Any = System.currentTimeMillis()): JsonElement {
+    suspend fun call(method: String, params: JsonElement? = null, id: Any = idGenerator.nextValue()): JsonElement {
         val request = RpcRequest(method, params, id)
         val response = service.callSuspend(endpoint, request)
 
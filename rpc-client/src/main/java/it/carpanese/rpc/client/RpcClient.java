@@ -1,15 +1,18 @@
 package it.carpanese.rpc.client;
 
 import it.carpanese.rpc.core.*;
-import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
+import com.google.gson.JsonSyntaxException;
 import okhttp3.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -28,12 +31,21 @@ import java.util.Map;
 public class RpcClient implements AutoCloseable {
 
     private static final Logger log = LoggerFactory.getLogger(RpcClient.class);
-    private static final MediaType JSON = MediaType.get("application/json; charset=utf-8");
+    private static final String BATCH_SIZE_KEY = "batch";
+    /**
+     * Whether JFR exists in this runtime; Android has no {@code jdk.jfr}
+     */
+    private static final boolean FLIGHT_RECORDER = isFlightRecorderAvailable();
 
     private final String url;
     private final OkHttpClient httpClient;
     private final RpcSerializer serializer;
+    private final MediaType mediaType;
+    private final Map<RpcCodec, RpcSerializer> responseSerializers = new LinkedHashMap<>();
     private final Map<String, String> defaultHeaders;
+    private final RpcIdGenerator idGenerator;
+    private final EncoderBufferPool bufferPool;
+    private final AdaptiveCapacity requestSizes = new AdaptiveCapacity();
     private final boolean safeMode;
 
     /**
@@ -45,8 +57,17 @@ public class RpcClient implements AutoCloseable {
     public RpcClient(String url, RpcClientConfig config) {
         this.url = url;
         this.safeMode = config.isSafeMode();
-        this.serializer = new RpcSerializer(safeMode);
+        this.serializer = new RpcSerializer(safeMode, config.getCodec());
+        this.mediaType = MediaType.get(config.getCodec().getContentType());
+
+        // Decode responses by their Content-Type, whatever the server chose to answer with
+        responseSerializers.put(config.getCodec(), serializer);
+        for (RpcCodec codec : List.of(JsonRpcCodec.INSTANCE, CborRpcCodec.INSTANCE)) {
+            responseSerializers.computeIfAbsent(codec, c -> new RpcSerializer(safeMode, c));
+        }
         this.defaultHeaders = new HashMap<>(config.getHeaders());
+        this.idGenerator = config.getIdGenerator();
+        this.bufferPool = config.getEncoderBufferPool();
 
         // Add safe mode header if enabled
         if (safeMode) {
@@ -60,7 +81,7 @@ public class RpcClient implements AutoCloseable {
                 .writeTimeout(config.getWriteTimeout())
                 .build();
 
-        log.info("RPC Client initialized: url={}, safeMode={}", url, safeMode);
+        log.info("RPC Client initialized: url={}, safeMode={}, codec={}", url, safeMode, config.getCodec());
     }
 
     /**
@@ -80,7 +101,7 @@ public class RpcClient implements AutoCloseable {
      * @throws IOException If a network error occurs
      */
     public JsonElement call(String method, JsonElement params) throws RpcException, IOException {
-        return call(method, params, System.currentTimeMillis());
+        return call(method, params, idGenerator.nextValue());
     }
 
     /**
@@ -115,17 +136,22 @@ public class RpcClient implements AutoCloseable {
      */
     public void notify(String method, JsonElement params) throws IOException {
         RpcRequest request = RpcRequest.notification(method, params);
+        RpcHttpEvent event = beginEvent(method, null, 1);
 
-        String requestJson = serializer.toJson(request);
-        log.debug("Sending notification: {}", requestJson);
-
-        RequestBody body = RequestBody.create(requestJson, JSON);
-        Request httpRequest = buildHttpRequest(body, new HashMap<>());
+        EncoderBufferPool.PooledBytes buffer = encode(request, method, "notification");
+        Request httpRequest = buildHttpRequest(createBody(buffer), new HashMap<>());
 
         try (Response httpResponse = httpClient.newCall(httpRequest).execute()) {
+            observe(event, buffer, httpResponse);
             if (!httpResponse.isSuccessful()) {
                 log.warn("Notification failed: {} {}", httpResponse.code(), httpResponse.message());
             }
+            commitEvent(event, null, httpResponse.isSuccessful() ? 0 : RpcError.INTERNAL_ERROR);
+        } catch (IOException | RuntimeException e) {
+            commitEvent(event, e, 0);
+            throw e;
+        } finally {
+            bufferPool.release(buffer);
         }
     }
 
@@ -143,12 +169,15 @@ public class RpcClient implements AutoCloseable {
             throw new IllegalArgumentException("Batch requests cannot be null or empty");
         }
 
-        JsonArray batch = new JsonArray();
-        for (RpcRequest request : requests) {
-            batch.add(serializer.parse(serializer.toJson(request)));
+        RpcHttpEvent event = beginEvent(null, null, requests.size());
+        try {
+            List<RpcResponse> responses = executeBatch(requests, event);
+            commitEvent(event, null, 0);
+            return responses;
+        } catch (RpcException | IOException | RuntimeException e) {
+            commitEvent(event, e, 0);
+            throw e;
         }
-
-        return executeBatch(batch.toString());
     }
 
     /**
@@ -160,13 +189,23 @@ public class RpcClient implements AutoCloseable {
      * @throws IOException If a network error occurs
      */
     private RpcResponse execute(RpcRequest request) throws RpcException, IOException {
-        String requestJson = serializer.toJson(request);
-        log.debug("Sending request: {}", requestJson);
+        RpcHttpEvent event = beginEvent(request.getMethod(), request.getId(), 1);
+        try {
+            RpcResponse response = execute(request, event);
+            commitEvent(event, null, response.isError() ? response.getError().getCode() : 0);
+            return response;
+        } catch (RpcException | IOException | RuntimeException e) {
+            commitEvent(event, e, 0);
+            throw e;
+        }
+    }
 
-        RequestBody body = RequestBody.create(requestJson, JSON);
-        Request httpRequest = buildHttpRequest(body, new HashMap<>());
+    private RpcResponse execute(RpcRequest request, RpcHttpEvent event) throws RpcException, IOException {
+        EncoderBufferPool.PooledBytes buffer = encode(request, request.getMethod(), "request");
+        Request httpRequest = buildHttpRequest(createBody(buffer), new HashMap<>());
 
         try (Response httpResponse = httpClient.newCall(httpRequest).execute()) {
+            observe(event, buffer, httpResponse);
             if (!httpResponse.isSuccessful()) {
                 throw new RpcException(
                     RpcError.INTERNAL_ERROR,
@@ -179,9 +218,6 @@ public class RpcClient implements AutoCloseable {
                 throw new RpcException(RpcError.INTERNAL_ERROR, "Empty response body");
             }
 
-            String responseJson = responseBody.string();
-            log.debug("Received response: {}", responseJson);
-
             // Check server safe mode compatibility
             if (safeMode) {
                 String serverSafeHeader = httpResponse.header("X-RPC-Safe-Enabled");
@@ -193,21 +229,37 @@ public class RpcClient implements AutoCloseable {
                 }
             }
 
-            RpcResponse response = serializer.fromJson(responseJson, RpcResponse.class);
+            RpcSerializer decoder = responseSerializer(httpResponse);
+            RpcResponse response;
+            if (log.isDebugEnabled() && !decoder.getCodec().isBinary()) {
+                String responseJson = responseBody.string();
+                log.debug("Received response: {}", responseJson);
+                response = decoder.fromJson(responseJson, RpcResponse.class);
+            } else {
+                // Decode straight off the connection
+                response = decoder.readFrom(responseBody.byteStream(), RpcResponse.class);
+            }
+
+            if (response == null) {
+                throw new RpcException(RpcError.INTERNAL_ERROR, "Empty response body");
+            }
             return response;
+        } finally {
+            // OkHttp is done with the body once the call has returned
+            bufferPool.release(buffer);
         }
     }
 
     /**
-     * Execute a serialized JSON-RPC batch request and return all response entries.
+     * Execute a JSON-RPC batch request and return all response entries.
      */
-    private List<RpcResponse> executeBatch(String requestJson) throws RpcException, IOException {
-        log.debug("Sending batch request: {}", requestJson);
-
-        RequestBody body = RequestBody.create(requestJson, JSON);
-        Request httpRequest = buildHttpRequest(body, new HashMap<>());
+    private List<RpcResponse> executeBatch(List<RpcRequest> requests, RpcHttpEvent event)
+            throws RpcException, IOException {
+        EncoderBufferPool.PooledBytes buffer = encode(requests, BATCH_SIZE_KEY, "batch request");
+        Request httpRequest = buildHttpRequest(createBody(buffer), new HashMap<>());
 
         try (Response httpResponse = httpClient.newCall(httpRequest).execute()) {
+            observe(event, buffer, httpResponse);
             if (!httpResponse.isSuccessful()) {
                 throw new RpcException(
                     RpcError.INTERNAL_ERROR,
@@ -216,18 +268,10 @@ public class RpcClient implements AutoCloseable {
             }
 
             ResponseBody responseBody = httpResponse.body();
-            if (responseBody == null) {
+            if (responseBody == null || responseBody.source().exhausted()) {
                 return new ArrayList<>();
             }
 
-            String responseJson = responseBody.string();
-            log.debug("Received batch response: {}", responseJson);
-
-            List<RpcResponse> responses = new ArrayList<>();
-            if (responseJson == null || responseJson.trim().isEmpty()) {
-                return responses;
-            }
-
             if (safeMode) {
                 String serverSafeHeader = httpResponse.header("X-RPC-Safe-Enabled");
                 if (serverSafeHeader == null || !serverSafeHeader.equals("true")) {
@@ -238,17 +282,122 @@ public class RpcClient implements AutoCloseable {
                 }
             }
 
-            JsonElement parsed = serializer.parse(responseJson);
-            if (!parsed.isJsonArray()) {
-                throw new RpcException(RpcError.INVALID_REQUEST, "Batch response must be a JSON array");
+            RpcSerializer decoder = responseSerializer(httpResponse);
+            try {
+                if (log.isDebugEnabled() && !decoder.getCodec().isBinary()) {
+                    String responseJson = responseBody.string();
+                    log.debug("Received batch response: {}", responseJson);
+                    return decoder.fromJsonBatch(responseJson);
+                }
+                return decoder.readBatchFrom(responseBody.byteStream());
+            } catch (JsonSyntaxException e) {
+                throw new RpcException(RpcError.INVALID_REQUEST, e.getMessage(), e);
             }
+        } finally {
+            // OkHttp is done with the body once the call has returned
+            bufferPool.release(buffer);
+        }
+    }
 
-            for (JsonElement item : parsed.getAsJsonArray()) {
-                responses.add(serializer.fromJson(item.toString(), RpcResponse.class));
+    /**
+     * Encode a request payload with the configured codec into a pooled buffer
+     *
+     * The buffer starts at the size recent payloads for the same method needed; the caller
+     * releases it once the HTTP call is over.
+     */
+    private EncoderBufferPool.PooledBytes encode(Object payload, String sizeKey, String description)
+            throws IOException {
+        EncoderBufferPool.PooledBytes buffer = bufferPool.acquireBytes(requestSizes.estimate(sizeKey));
+        try {
+            serializer.writeTo(payload, buffer);
+        } catch (IOException | RuntimeException e) {
+            bufferPool.release(buffer);
+            throw e;
+        }
+        requestSizes.record(sizeKey, buffer.size());
+
+        if (log.isDebugEnabled()) {
+            if (serializer.getCodec().isBinary()) {
+                log.debug("Sending {}: {} bytes of {}", description, buffer.size(), mediaType);
+            } else {
+                log.debug("Sending {}: {}", description, StandardCharsets.UTF_8.decode(buffer.toByteBuffer()));
             }
+        }
+        return buffer;
+    }
 
-            return responses;
+    /**
+     * Start timing a round trip, if a recording enabled {@link RpcHttpEvent}
+     *
+     * @return Event, or null if it is not recorded
+     */
+    private RpcHttpEvent beginEvent(String method, Object id, int requests) {
+        if (!FLIGHT_RECORDER) {
+            return null;
         }
+        RpcHttpEvent event = new RpcHttpEvent();
+        if (!event.isEnabled()) {
+            return null;
+        }
+        event.url = url;
+        event.method = method;
+        event.id = id != null ? id.toString() : null;
+        event.requests = requests;
+        event.begin();
+        return event;
+    }
+
+    private static void observe(RpcHttpEvent event, EncoderBufferPool.PooledBytes buffer, Response httpResponse) {
+        if (event != null) {
+            ResponseBody body = httpResponse.body();
+            event.requestSize = buffer.size();
+            event.responseSize = body != null ? body.contentLength() : -1;
+            event.status = httpResponse.code();
+        }
+    }
+
+    /**
+     * Finish timing a round trip
+     *
+     * @param error Exception the call failed with, null if it completed
+     * @param errorCode Code of the error response received, 0 for none
+     */
+    private static void commitEvent(RpcHttpEvent event, Exception error, int errorCode) {
+        if (event == null || !event.shouldCommit()) {
+            return;
+        }
+        if (error instanceof RpcException e) {
+            event.outcome = "error";
+            event.errorCode = e.getError().getCode();
+        } else if (error != null) {
+            event.outcome = "io error";
+        } else {
+            event.outcome = errorCode != 0 ? "error" : "success";
+            event.errorCode = errorCode;
+        }
+        event.commit();
+    }
+
+    private static boolean isFlightRecorderAvailable() {
+        try {
+            Class.forName("jdk.jfr.Event", false, RpcClient.class.getClassLoader());
+            return true;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+
+    private RequestBody createBody(EncoderBufferPool.PooledBytes buffer) {
+        ByteBuffer bytes = buffer.toByteBuffer();
+        return RequestBody.create(bytes.array(), mediaType, bytes.arrayOffset() + bytes.position(), bytes.remaining());
+    }
+
+    /**
+     * Pick the decoder matching the response Content-Type, defaulting to the configured codec
+     */
+    private RpcSerializer responseSerializer(Response httpResponse) {
+        RpcCodec codec = RpcCodec.negotiate(httpResponse.header("Content-Type"), responseSerializers.keySet());
+        return codec != null ? responseSerializers.get(codec) : serializer;
     }
 
     /**
@@ -1,5 +1,10 @@
 package it.carpanese.rpc.client;
 
+import it.carpanese.rpc.core.JsonRpcCodec;
+import it.carpanese.rpc.core.RpcCodec;
+import it.carpanese.rpc.core.EncoderBufferPool;
+import it.carpanese.rpc.core.RpcIdGenerator;
+
 import java.time.Duration;
 import java.util.HashMap;
 import java.util.Map;
@@ -14,6 +19,9 @@ public class RpcClientConfig {
     private Duration readTimeout = Duration.ofSeconds(30);
     private Duration writeTimeout = Duration.ofSeconds(30);
     private Map<String, String> headers = new HashMap<>();
+    private RpcCodec codec = JsonRpcCodec.INSTANCE;
+    private RpcIdGenerator idGenerator = RpcIdGenerator.defaultGenerator();
+    private EncoderBufferPool encoderBufferPool = EncoderBufferPool.shared();
 
     public RpcClientConfig() {
         // Default headers
@@ -70,4 +78,45 @@ public class RpcClientConfig {
         this.headers = new HashMap<>(headers);
         return this;
     }
+
+    public RpcCodec getCodec() {
+        return codec;
+    }
+
+    /**
+     * Set the wire encoding, updating the Content-Type and Accept headers to match
+     *
+     * The server may still answer in another supported encoding; responses are decoded
+     * according to their Content-Type.
+     */
+    public RpcClientConfig setCodec(RpcCodec codec) {
+        this.codec = codec;
+        headers.put("Content-Type", codec.getMediaType());
+        headers.put("Accept", codec.getMediaType());
+        return this;
+    }
+
+    public RpcIdGenerator getIdGenerator() {
+        return idGenerator;
+    }
+
+    /**
+     * Set the source of IDs for calls made without an explicit ID
+     */
+    public RpcClientConfig setIdGenerator(RpcIdGenerator idGenerator) {
+        this.idGenerator = idGenerator;
+        return this;
+    }
+
+    public EncoderBufferPool getEncoderBufferPool() {
+        return encoderBufferPool;
+    }
+
+    /**
+     * Set the pool request bodies are encoded into
+     */
+    public RpcClientConfig setEncoderBufferPool(EncoderBufferPool encoderBufferPool) {
+        this.encoderBufferPool = encoderBufferPool;
+        return this;
+    }
 }
@@ -0,0 +1,54 @@
+package it.carpanese.rpc.client;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR event timing the HTTP round trip of a call, from encoding the request to decoding the
+ * response
+ */
+@Name("it.carpanese.rpc.HttpCall")
+@Label("RPC HTTP Call")
+@Category({"RPC", "Client"})
+@Description("HTTP round trip of a JSON-RPC request, notification or batch")
+@Enabled(false)
+@StackTrace(false)
+final class RpcHttpEvent extends Event {
+
+    @Label("URL")
+    String url;
+
+    @Label("Method")
+    @Description("Method called, empty for batches")
+    String method;
+
+    @Label("Request ID")
+    String id;
+
+    @Label("Requests")
+    int requests;
+
+    @Label("Request Size")
+    @DataAmount
+    long requestSize;
+
+    @Label("Response Size")
+    @Description("Content-Length of the response, -1 if the server did not send it")
+    @DataAmount
+    long responseSize;
+
+    @Label("HTTP Status")
+    int status;
+
+    @Label("Outcome")
+    String outcome;
+
+    @Label("Error Code")
+    int errorCode;
+}
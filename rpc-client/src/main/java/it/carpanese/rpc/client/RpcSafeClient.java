@@ -66,6 +66,9 @@ public class RpcSafeClient extends RpcClient {
                 .setConnectTimeout(userConfig.getConnectTimeout())
                 .setReadTimeout(userConfig.getReadTimeout())
                 .setWriteTimeout(userConfig.getWriteTimeout())
+                .setCodec(userConfig.getCodec())
+                .setIdGenerator(userConfig.getIdGenerator())
+                .setEncoderBufferPool(userConfig.getEncoderBufferPool())
                 .setHeaders(userConfig.getHeaders());
 
         return safeConfig;
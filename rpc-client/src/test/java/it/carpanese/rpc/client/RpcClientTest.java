@@ -8,11 +8,16 @@ import com.google.gson.JsonPrimitive;
 import okhttp3.mockwebserver.MockResponse;
 import okhttp3.mockwebserver.MockWebServer;
 import okhttp3.mockwebserver.RecordedRequest;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.List;
 import java.util.Objects;
 
@@ -193,4 +198,36 @@ class RpcClientTest {
             client.call("test", null, 1);
         });
     }
+
+    @Test
+    void testHttpRoundTripRecordedWithJfr() throws Exception {
+        String responseJson = "{\"jsonrpc\":\"2.0\",\"error\":{\"code\":-32602,\"message\":\"Invalid params\"},\"id\":9}";
+        server.enqueue(new MockResponse()
+                .setBody(responseJson)
+                .setHeader("Content-Type", "application/json"));
+
+        Path file = Files.createTempFile("rpc-client", ".jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable("it.carpanese.rpc.HttpCall");
+            recording.start();
+            assertThrows(RpcException.class, () -> client.call("ping", null, 9));
+            recording.stop();
+            recording.dump(file);
+
+            List<RecordedEvent> events = RecordingFile.readAllEvents(file).stream()
+                    .filter(e -> e.getEventType().getName().equals("it.carpanese.rpc.HttpCall"))
+                    .toList();
+            assertEquals(1, events.size());
+            RecordedEvent event = events.get(0);
+            assertEquals("ping", event.getString("method"));
+            assertEquals("9", event.getString("id"));
+            assertEquals(200, event.getInt("status"));
+            assertEquals(responseJson.length(), event.getLong("responseSize"));
+            assertEquals(server.takeRequest().getBodySize(), event.getLong("requestSize"));
+            assertEquals("error", event.getString("outcome"));
+            assertEquals(-32602, event.getInt("errorCode"));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
 }
@@ -0,0 +1,75 @@
+package it.carpanese.rpc.core;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the streaming envelope parser with the tree + reflection path
+ * previously used by {@code RpcEndpoint.handleRequest}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RpcEnvelopeParserBenchmark {
+
+    @Param({"1", "20"})
+    public int batchSize;
+
+    private final Gson gson = new Gson();
+    private final RpcEnvelopeParser parser = new RpcEnvelopeParser();
+    private String payload;
+
+    @Setup
+    public void setUp() {
+        String call = "{\"jsonrpc\":\"2.0\",\"method\":\"catalog.get\","
+            + "\"params\":{\"sku\":\"A-1042\",\"locale\":\"it-IT\",\"fields\":[\"price\",\"stock\"]},\"id\":%d}";
+
+        if (batchSize == 1) {
+            payload = String.format(call, 1);
+            return;
+        }
+
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < batchSize; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append(String.format(call, i));
+        }
+        payload = sb.append(']').toString();
+    }
+
+    @Benchmark
+    public void treeAndReflection(Blackhole bh) {
+        JsonElement element = JsonParser.parseString(payload);
+        if (element.isJsonArray()) {
+            for (JsonElement item : element.getAsJsonArray()) {
+                bh.consume(gson.fromJson(item, RpcRequest.class));
+            }
+        } else {
+            bh.consume(gson.fromJson(element, RpcRequest.class));
+        }
+    }
+
+    @Benchmark
+    public void streaming(Blackhole bh) {
+        for (RpcEnvelope.Entry entry : parser.parse(payload).getEntries()) {
+            bh.consume(entry.getRequest());
+        }
+    }
+
+    @Benchmark
+    public void streamingWithParams(Blackhole bh) {
+        for (RpcEnvelope.Entry entry : parser.parse(payload).getEntries()) {
+            bh.consume(entry.getRequest().getParams());
+        }
+    }
+}
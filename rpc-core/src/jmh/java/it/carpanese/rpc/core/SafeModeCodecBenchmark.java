@@ -0,0 +1,53 @@
+package it.carpanese.rpc.core;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonWriter;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares tree-rebuilding Safe Mode encoding with the streaming codec.
+ * Run with {@code -prof gc} to see the allocation difference.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SafeModeCodecBenchmark {
+
+    private final Gson gson = new Gson();
+    private final RpcSerializer serializer = new RpcSerializer(true);
+    private JsonElement result;
+
+    @Setup
+    public void setUp() {
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < 50; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append("{\"sku\":\"A-").append(i).append("\",\"name\":\"Item ").append(i)
+                .append("\",\"price\":").append(i * 1.25).append(",\"available\":true}");
+        }
+        result = JsonParser.parseString(sb.append(']').toString());
+    }
+
+    @Benchmark
+    public String encodeTree() {
+        return gson.toJson(serializer.encodeSafe(result));
+    }
+
+    @Benchmark
+    public String encodeStreaming() throws IOException {
+        StringWriter buffer = new StringWriter();
+        SafeModeCodec.write(result, new JsonWriter(buffer));
+        return buffer.toString();
+    }
+}
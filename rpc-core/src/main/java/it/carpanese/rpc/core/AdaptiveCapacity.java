@@ -0,0 +1,129 @@
+package it.carpanese.rpc.core;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Per-key estimate of encoded message sizes, used to size encoder buffers up front
+ *
+ * Keeps an exponentially weighted moving average of recent sizes for each key (typically
+ * the method name) and suggests a capacity with some headroom, so large responses are
+ * encoded without repeated array copies. Updates are lock-free; a lost update under
+ * contention only makes the estimate slightly less fresh.
+ */
+public final class AdaptiveCapacity {
+
+    // Estimates are kept as size * 8 so the 1/8 smoothing stays in integer arithmetic
+    private static final int SCALE_SHIFT = 3;
+
+    private final ConcurrentHashMap<String, Estimate> estimates = new ConcurrentHashMap<>();
+    private final int defaultCapacity;
+    private final int maxCapacity;
+    private final int maxKeys;
+
+    /**
+     * Creates an estimator with a 256 default, a 1 MiB cap and up to 1024 keys
+     */
+    public AdaptiveCapacity() {
+        this(256, 1 << 20, 1024);
+    }
+
+    /**
+     * Creates an estimator
+     *
+     * @param defaultCapacity Capacity suggested for keys without history
+     * @param maxCapacity Largest capacity ever suggested
+     * @param maxKeys Keys tracked at most; sizes for further keys are not recorded
+     */
+    public AdaptiveCapacity(int defaultCapacity, int maxCapacity, int maxKeys) {
+        this.defaultCapacity = defaultCapacity;
+        this.maxCapacity = maxCapacity;
+        this.maxKeys = maxKeys;
+    }
+
+    /**
+     * Suggest an initial buffer capacity for a key
+     *
+     * @param key Size class, e.g. the method name (null uses the default)
+     */
+    public int estimate(String key) {
+        Estimate estimate = key != null ? estimates.get(key) : null;
+        return estimate != null ? estimate.capacity() : defaultCapacity;
+    }
+
+    /**
+     * Largest capacity ever suggested
+     */
+    public int getMaxCapacity() {
+        return maxCapacity;
+    }
+
+    /**
+     * Record the size a key actually produced
+     */
+    public void record(String key, int size) {
+        if (key == null) {
+            return;
+        }
+        Estimate estimate = estimates.get(key);
+        if (estimate == null) {
+            if (estimates.size() >= maxKeys) {
+                return;
+            }
+            estimate = estimates.computeIfAbsent(key, k -> newEstimate());
+        }
+        estimate.record(size);
+    }
+
+    /**
+     * Create an estimate with the bounds of this estimator that is not tracked under a key
+     *
+     * Lets callers keep the estimate next to what it measures, e.g. on a registered method,
+     * instead of looking it up by a name that may come from the network.
+     */
+    public Estimate newEstimate() {
+        return new Estimate(this);
+    }
+
+    /**
+     * Moving average of the sizes of a single size class
+     */
+    public static final class Estimate {
+
+        private final AdaptiveCapacity bounds;
+        // Negative until the first size is recorded
+        private final AtomicInteger average = new AtomicInteger(-1);
+
+        private Estimate(AdaptiveCapacity bounds) {
+            this.bounds = bounds;
+        }
+
+        /**
+         * Suggest an initial buffer capacity
+         */
+        public int capacity() {
+            int current = average.get();
+            if (current < 0) {
+                return bounds.defaultCapacity;
+            }
+            int size = current >>> SCALE_SHIFT;
+            // 25% headroom above the recent average
+            return (int) Math.min(bounds.maxCapacity, Math.max(bounds.defaultCapacity, size + (size >>> 2)));
+        }
+
+        /**
+         * Record the size actually produced
+         */
+        public void record(int size) {
+            int scaled = (int) Math.min(Integer.MAX_VALUE >>> 1,
+                (long) Math.min(size, bounds.maxCapacity) << SCALE_SHIFT);
+            int current = average.get();
+            if (current < 0) {
+                average.compareAndSet(current, scaled);
+                return;
+            }
+            // avg += (size - avg) / 8
+            average.compareAndSet(current, current + ((scaled - current) >> SCALE_SHIFT));
+        }
+    }
+}
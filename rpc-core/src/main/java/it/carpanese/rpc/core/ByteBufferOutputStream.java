@@ -0,0 +1,53 @@
+package it.carpanese.rpc.core;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Byte array stream whose contents can be exposed as a ByteBuffer without copying
+ */
+class ByteBufferOutputStream extends ByteArrayOutputStream {
+
+    ByteBufferOutputStream() {
+        super(256);
+    }
+
+    /**
+     * Wrap the written bytes, sharing the internal array
+     */
+    synchronized ByteBuffer toByteBuffer() {
+        return ByteBuffer.wrap(buf, 0, count);
+    }
+
+    /**
+     * Read the remaining bytes of a buffer without moving its position
+     */
+    static InputStream asInputStream(ByteBuffer buffer) {
+        ByteBuffer view = buffer.duplicate();
+        return new InputStream() {
+            @Override
+            public int read() {
+                return view.hasRemaining() ? view.get() & 0xFF : -1;
+            }
+
+            @Override
+            public int read(byte[] bytes, int off, int len) {
+                if (len == 0) {
+                    return 0;
+                }
+                if (!view.hasRemaining()) {
+                    return -1;
+                }
+                int n = Math.min(len, view.remaining());
+                view.get(bytes, off, n);
+                return n;
+            }
+
+            @Override
+            public int available() {
+                return view.remaining();
+            }
+        };
+    }
+}
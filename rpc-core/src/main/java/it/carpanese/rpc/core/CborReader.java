@@ -0,0 +1,484 @@
+package it.carpanese.rpc.core;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.MalformedJsonException;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Base64;
+
+/**
+ * Pull parser exposing a CBOR data item through the {@link JsonReader} API
+ */
+final class CborReader extends JsonReader {
+
+    private static final Reader UNREADABLE_READER = new Reader() {
+        @Override
+        public int read(char[] buffer, int offset, int count) {
+            throw new AssertionError();
+        }
+
+        @Override
+        public void close() {
+            throw new AssertionError();
+        }
+    };
+
+    private static final int BREAK = 0xff;
+    private static final BigInteger UNSIGNED_LONG_OFFSET = BigInteger.ONE.shiftLeft(64);
+
+    private final InputStream in;
+    private final int maxStringLength;
+    private final byte[] buffer = new byte[8192];
+    private int position;
+    private int limit;
+
+    // Open containers: remaining items (-1 when indefinite) and item count, keys and values both count
+    private long[] remaining = new long[16];
+    private long[] counts = new long[16];
+    private boolean[] maps = new boolean[16];
+    private int depth;
+    private boolean topLevelStarted;
+
+    private JsonToken peeked;
+    private Object peekedValue;
+    private long peekedLength;
+
+    CborReader(InputStream in, int maxStringLength) {
+        super(UNREADABLE_READER);
+        this.in = in;
+        this.maxStringLength = maxStringLength;
+    }
+
+    @Override
+    public JsonToken peek() throws IOException {
+        if (peeked != null) {
+            return peeked;
+        }
+
+        if (depth == 0) {
+            if (topLevelStarted) {
+                if (fill() && limit > position) {
+                    throw new MalformedJsonException("Trailing data after CBOR item");
+                }
+                return peeked = JsonToken.END_DOCUMENT;
+            }
+        } else if (remaining[depth - 1] == 0) {
+            return peeked = maps[depth - 1] ? JsonToken.END_OBJECT : JsonToken.END_ARRAY;
+        }
+
+        int initial = readByte();
+        if (initial == BREAK) {
+            if (depth == 0 || remaining[depth - 1] != -1) {
+                throw new MalformedJsonException("Unexpected CBOR break");
+            }
+            if (maps[depth - 1] && counts[depth - 1] % 2 != 0) {
+                throw new MalformedJsonException("CBOR map ended without a value");
+            }
+            return peeked = maps[depth - 1] ? JsonToken.END_OBJECT : JsonToken.END_ARRAY;
+        }
+
+        decodeItem(initial);
+
+        if (depth > 0 && maps[depth - 1] && counts[depth - 1] % 2 == 0) {
+            if (peeked != JsonToken.STRING && peeked != JsonToken.NUMBER) {
+                throw new MalformedJsonException("CBOR map keys must be strings");
+            }
+            peekedValue = peekedValue.toString();
+            peeked = JsonToken.NAME;
+        }
+        return peeked;
+    }
+
+    private void decodeItem(int initial) throws IOException {
+        int major = initial >>> 5;
+        int info = initial & 0x1f;
+
+        switch (major) {
+            case 0 -> number(readUnsigned(info));
+            case 1 -> {
+                Object value = readUnsigned(info);
+                number(value instanceof Long n ? (Object) (-1 - n) : BigInteger.ONE.negate().subtract((BigInteger) value));
+            }
+            case 2 -> {
+                peeked = JsonToken.STRING;
+                peekedValue = Base64.getEncoder().encodeToString(readBytes(major, info));
+            }
+            case 3 -> {
+                peeked = JsonToken.STRING;
+                peekedValue = new String(readBytes(major, info), StandardCharsets.UTF_8);
+            }
+            case 4, 5 -> {
+                peeked = major == 4 ? JsonToken.BEGIN_ARRAY : JsonToken.BEGIN_OBJECT;
+                peekedLength = info == 31 ? -1 : length(info);
+                if (major == 5 && peekedLength > 0) {
+                    peekedLength *= 2;
+                }
+            }
+            case 6 -> decodeTag(lengthOrValue(info));
+            default -> decodeSimple(info);
+        }
+    }
+
+    private void decodeTag(long tag) throws IOException {
+        int initial = readByte();
+        if (tag == 2 || tag == 3) {
+            if (initial >>> 5 != 2) {
+                throw new MalformedJsonException("CBOR bignum must wrap a byte string");
+            }
+            BigInteger magnitude = new BigInteger(1, readBytes(2, initial & 0x1f));
+            number(tag == 2 ? magnitude : BigInteger.ONE.negate().subtract(magnitude));
+            return;
+        }
+
+        decodeItem(initial);
+        if (tag == 1 && peeked == JsonToken.NUMBER) {
+            double seconds = ((Number) peekedValue).doubleValue();
+            long whole = (long) Math.floor(seconds);
+            Instant instant = Instant.ofEpochSecond(whole, (long) ((seconds - whole) * 1_000_000_000L));
+            peeked = JsonToken.STRING;
+            peekedValue = instant.toString();
+        }
+        // Tag 0 already carries an ISO 8601 string; other tags are transparent
+    }
+
+    private void decodeSimple(int info) throws IOException {
+        switch (info) {
+            case 20, 21 -> {
+                peeked = JsonToken.BOOLEAN;
+                peekedValue = info == 21;
+            }
+            case 22, 23 -> peeked = JsonToken.NULL;
+            case 25 -> number((double) halfToFloat((int) readFixed(2)));
+            case 26 -> number((double) Float.intBitsToFloat((int) readFixed(4)));
+            case 27 -> number(Double.longBitsToDouble(readFixed(8)));
+            default -> throw new MalformedJsonException("Unsupported CBOR simple value " + info);
+        }
+    }
+
+    private void number(Object value) {
+        peeked = JsonToken.NUMBER;
+        peekedValue = value;
+    }
+
+    @Override
+    public void beginArray() throws IOException {
+        push(JsonToken.BEGIN_ARRAY, false);
+    }
+
+    @Override
+    public void endArray() throws IOException {
+        pop(JsonToken.END_ARRAY);
+    }
+
+    @Override
+    public void beginObject() throws IOException {
+        push(JsonToken.BEGIN_OBJECT, true);
+    }
+
+    @Override
+    public void endObject() throws IOException {
+        pop(JsonToken.END_OBJECT);
+    }
+
+    @Override
+    public boolean hasNext() throws IOException {
+        JsonToken token = peek();
+        return token != JsonToken.END_ARRAY && token != JsonToken.END_OBJECT && token != JsonToken.END_DOCUMENT;
+    }
+
+    @Override
+    public String nextName() throws IOException {
+        expect(JsonToken.NAME);
+        return (String) consume();
+    }
+
+    @Override
+    public String nextString() throws IOException {
+        JsonToken token = peek();
+        if (token != JsonToken.STRING && token != JsonToken.NUMBER) {
+            throw unexpected(JsonToken.STRING);
+        }
+        return consume().toString();
+    }
+
+    @Override
+    public boolean nextBoolean() throws IOException {
+        expect(JsonToken.BOOLEAN);
+        return (Boolean) consume();
+    }
+
+    @Override
+    public void nextNull() throws IOException {
+        expect(JsonToken.NULL);
+        consume();
+    }
+
+    @Override
+    public double nextDouble() throws IOException {
+        Object value = nextNumber();
+        return value instanceof Number n ? n.doubleValue() : Double.parseDouble(value.toString());
+    }
+
+    @Override
+    public long nextLong() throws IOException {
+        Object value = nextNumber();
+        if (value instanceof Long n) {
+            return n;
+        }
+        if (value instanceof BigInteger n) {
+            return n.longValueExact();
+        }
+        double d = value instanceof Double n ? n : Double.parseDouble(value.toString());
+        long result = (long) d;
+        if (result != d) {
+            throw new NumberFormatException("Expected a long but was " + value);
+        }
+        return result;
+    }
+
+    @Override
+    public int nextInt() throws IOException {
+        long value = nextLong();
+        if (value != (int) value) {
+            throw new NumberFormatException("Expected an int but was " + value);
+        }
+        return (int) value;
+    }
+
+    @Override
+    public void skipValue() throws IOException {
+        int level = 0;
+        do {
+            switch (peek()) {
+                case BEGIN_ARRAY -> {
+                    beginArray();
+                    level++;
+                }
+                case BEGIN_OBJECT -> {
+                    beginObject();
+                    level++;
+                }
+                case END_ARRAY -> {
+                    endArray();
+                    level--;
+                }
+                case END_OBJECT -> {
+                    endObject();
+                    level--;
+                }
+                case END_DOCUMENT -> {
+                    return;
+                }
+                default -> consume();
+            }
+        } while (level > 0);
+    }
+
+    @Override
+    public void close() throws IOException {
+        peeked = null;
+        depth = 0;
+        in.close();
+    }
+
+    @Override
+    public String getPath() {
+        return "$";
+    }
+
+    @Override
+    public String toString() {
+        return "CborReader";
+    }
+
+    // Container bookkeeping
+
+    private void push(JsonToken token, boolean map) throws IOException {
+        expect(token);
+        long length = peekedLength;
+        consume();
+        if (depth == remaining.length) {
+            remaining = Arrays.copyOf(remaining, depth * 2);
+            counts = Arrays.copyOf(counts, depth * 2);
+            maps = Arrays.copyOf(maps, depth * 2);
+        }
+        remaining[depth] = length;
+        counts[depth] = 0;
+        maps[depth] = map;
+        depth++;
+    }
+
+    private void pop(JsonToken token) throws IOException {
+        expect(token);
+        peeked = null;
+        depth--;
+    }
+
+    private Object consume() {
+        Object value = peekedValue;
+        peeked = null;
+        peekedValue = null;
+        if (depth == 0) {
+            topLevelStarted = true;
+        } else {
+            counts[depth - 1]++;
+            if (remaining[depth - 1] > 0) {
+                remaining[depth - 1]--;
+            }
+        }
+        return value;
+    }
+
+    private Object nextNumber() throws IOException {
+        JsonToken token = peek();
+        if (token != JsonToken.NUMBER && token != JsonToken.STRING) {
+            throw unexpected(JsonToken.NUMBER);
+        }
+        return consume();
+    }
+
+    private void expect(JsonToken token) throws IOException {
+        if (peek() != token) {
+            throw unexpected(token);
+        }
+    }
+
+    private IllegalStateException unexpected(JsonToken expected) throws IOException {
+        return new IllegalStateException("Expected " + expected + " but was " + peek());
+    }
+
+    // Primitive decoding
+
+    private Object readUnsigned(int info) throws IOException {
+        if (info == 27) {
+            long value = readFixed(8);
+            return value >= 0 ? (Object) value : BigInteger.valueOf(value).add(UNSIGNED_LONG_OFFSET);
+        }
+        return lengthOrValue(info);
+    }
+
+    private long lengthOrValue(int info) throws IOException {
+        if (info < 24) {
+            return info;
+        }
+        return switch (info) {
+            case 24 -> readFixed(1);
+            case 25 -> readFixed(2);
+            case 26 -> readFixed(4);
+            case 27 -> readFixed(8);
+            default -> throw new MalformedJsonException("Invalid CBOR additional info " + info);
+        };
+    }
+
+    private long length(int info) throws IOException {
+        long length = lengthOrValue(info);
+        if (length < 0 || length > Integer.MAX_VALUE) {
+            throw new MalformedJsonException("CBOR length out of range");
+        }
+        return length;
+    }
+
+    private byte[] readBytes(int major, int info) throws IOException {
+        if (info != 31) {
+            int length = stringLength(info, 0);
+            return readInto(new byte[Math.min(length, buffer.length)], 0, length);
+        }
+
+        // Indefinite length: concatenate definite chunks of the same major type until break
+        byte[] result = new byte[0];
+        int size = 0;
+        int chunk;
+        while ((chunk = readByte()) != BREAK) {
+            if (chunk >>> 5 != major || (chunk & 0x1f) == 31) {
+                throw new MalformedJsonException("Invalid CBOR string chunk");
+            }
+            int length = stringLength(chunk & 0x1f, size);
+            result = readInto(result, size, length);
+            size += length;
+        }
+        return result.length == size ? result : Arrays.copyOf(result, size);
+    }
+
+    /**
+     * Read a string length, checking it against the limit
+     *
+     * @param before Bytes of the same string already read, for indefinite-length chunks
+     */
+    private int stringLength(int info, int before) throws IOException {
+        long length = lengthOrValue(info);
+        if (length < 0 || length > maxStringLength - before) {
+            throw new MalformedJsonException("CBOR string longer than " + maxStringLength + " bytes");
+        }
+        return (int) length;
+    }
+
+    /**
+     * Read bytes into a target from an offset, growing it as they arrive so that a declared
+     * length the input does not back costs no more than the bytes actually sent
+     *
+     * @return The target, or a copy grown to exactly {@code offset + count} bytes
+     */
+    private byte[] readInto(byte[] target, int offset, int count) throws IOException {
+        int end = offset + count;
+        while (offset < end) {
+            if (position == limit && !fill()) {
+                throw new EOFException("End of CBOR input");
+            }
+            if (offset == target.length) {
+                target = Arrays.copyOf(target, (int) Math.min(end, Math.max(64L, 2L * target.length)));
+            }
+            int n = Math.min(Math.min(end - offset, limit - position), target.length - offset);
+            System.arraycopy(buffer, position, target, offset, n);
+            position += n;
+            offset += n;
+        }
+        return target;
+    }
+
+    private long readFixed(int size) throws IOException {
+        long value = 0;
+        for (int i = 0; i < size; i++) {
+            value = (value << 8) | readByte();
+        }
+        return value;
+    }
+
+    private int readByte() throws IOException {
+        if (position == limit && !fill()) {
+            throw new EOFException("End of CBOR input");
+        }
+        return buffer[position++] & 0xff;
+    }
+
+    private boolean fill() throws IOException {
+        if (position < limit) {
+            return true;
+        }
+        int n = in.read(buffer, 0, buffer.length);
+        position = 0;
+        limit = Math.max(n, 0);
+        return n > 0;
+    }
+
+    private static float halfToFloat(int half) {
+        int exponent = (half >>> 10) & 0x1f;
+        int mantissa = half & 0x3ff;
+        float value;
+        if (exponent == 0) {
+            value = mantissa * 0x1p-24f;
+        } else if (exponent == 31) {
+            value = mantissa == 0 ? Float.POSITIVE_INFINITY : Float.NaN;
+        } else {
+            value = (mantissa + 1024) * (float) Math.pow(2, exponent - 25);
+        }
+        return (half & 0x8000) != 0 ? -value : value;
+    }
+}
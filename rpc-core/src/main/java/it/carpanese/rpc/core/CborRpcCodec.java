@@ -0,0 +1,82 @@
+package it.carpanese.rpc.core;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Binary CBOR codec (application/cbor, RFC 8949)
+ *
+ * JSON-RPC envelopes keep their JSON shape: objects become maps with text keys, arrays
+ * become arrays. Types that JSON Safe Mode has to mark are native here:
+ * - Strings are text strings, no "S:" marker
+ * - Integers are CBOR integers, with bignum tags (2/3) beyond 64 bits instead of the "n" suffix
+ * - Date/time tags (0/1) decode to ISO 8601 strings, the same value "D:" strings decode to
+ * - Byte strings decode to base64 text
+ *
+ * Containers are written with indefinite length so envelopes stream without buffering.
+ *
+ * Byte and text strings longer than {@link #getMaxStringLength()} are rejected, and string
+ * buffers grow as bytes arrive rather than being sized from the declared length.
+ */
+public final class CborRpcCodec implements RpcCodec {
+
+    public static final String MEDIA_TYPE = "application/cbor";
+
+    /**
+     * Longest byte or text string accepted by default, 16 MiB
+     */
+    public static final int DEFAULT_MAX_STRING_LENGTH = 16 * 1024 * 1024;
+
+    public static final CborRpcCodec INSTANCE = new CborRpcCodec(DEFAULT_MAX_STRING_LENGTH);
+
+    private final int maxStringLength;
+
+    private CborRpcCodec(int maxStringLength) {
+        this.maxStringLength = maxStringLength;
+    }
+
+    /**
+     * Get a codec accepting strings up to a different length
+     *
+     * @param maxStringLength Longest byte or text string in bytes, chunks of indefinite-length
+     *                        strings included
+     */
+    public static CborRpcCodec withMaxStringLength(int maxStringLength) {
+        if (maxStringLength < 0) {
+            throw new IllegalArgumentException("maxStringLength cannot be negative");
+        }
+        return new CborRpcCodec(maxStringLength);
+    }
+
+    public int getMaxStringLength() {
+        return maxStringLength;
+    }
+
+    @Override
+    public String getMediaType() {
+        return MEDIA_TYPE;
+    }
+
+    @Override
+    public boolean isBinary() {
+        return true;
+    }
+
+    @Override
+    public JsonReader newReader(InputStream in) {
+        return new CborReader(in, maxStringLength);
+    }
+
+    @Override
+    public JsonWriter newWriter(OutputStream out) {
+        return new CborWriter(out);
+    }
+
+    @Override
+    public String toString() {
+        return "CborRpcCodec";
+    }
+}
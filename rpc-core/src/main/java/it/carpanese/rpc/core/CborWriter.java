@@ -0,0 +1,381 @@
+package it.carpanese.rpc.core;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import com.google.gson.stream.MalformedJsonException;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.io.Writer;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Streaming CBOR encoder exposed through the {@link JsonWriter} API
+ *
+ * Arrays and objects are written as indefinite-length containers, so nothing has to be
+ * buffered to learn their size up front.
+ */
+final class CborWriter extends JsonWriter {
+
+    private static final Writer UNWRITABLE_WRITER = new Writer() {
+        @Override
+        public void write(char[] buffer, int offset, int counter) {
+            throw new AssertionError();
+        }
+
+        @Override
+        public void flush() {
+            throw new AssertionError();
+        }
+
+        @Override
+        public void close() {
+            throw new AssertionError();
+        }
+    };
+
+    private static final int MAJOR_UNSIGNED = 0;
+    private static final int MAJOR_NEGATIVE = 1;
+    private static final int MAJOR_BYTES = 2;
+    private static final int MAJOR_TEXT = 3;
+    private static final int INDEFINITE_ARRAY = 0x9f;
+    private static final int INDEFINITE_MAP = 0xbf;
+    private static final int BREAK = 0xff;
+    private static final int FALSE = 0xf4;
+    private static final int TRUE = 0xf5;
+    private static final int NULL = 0xf6;
+    private static final int FLOAT64 = 0xfb;
+    private static final int TAG_POSITIVE_BIGNUM = 0xc2;
+    private static final int TAG_NEGATIVE_BIGNUM = 0xc3;
+
+    private final OutputStream out;
+    private final byte[] buffer = new byte[8192];
+    private int count;
+    private String deferredName;
+    private int depth;
+
+    CborWriter(OutputStream out) {
+        super(UNWRITABLE_WRITER);
+        this.out = out;
+    }
+
+    @Override
+    public JsonWriter beginArray() throws IOException {
+        writeDeferredName();
+        writeByte(INDEFINITE_ARRAY);
+        depth++;
+        return this;
+    }
+
+    @Override
+    public JsonWriter endArray() throws IOException {
+        return close(false);
+    }
+
+    @Override
+    public JsonWriter beginObject() throws IOException {
+        writeDeferredName();
+        writeByte(INDEFINITE_MAP);
+        depth++;
+        return this;
+    }
+
+    @Override
+    public JsonWriter endObject() throws IOException {
+        return close(true);
+    }
+
+    private JsonWriter close(boolean object) throws IOException {
+        if (depth == 0 || deferredName != null) {
+            throw new IllegalStateException(object ? "Nesting problem in endObject" : "Nesting problem in endArray");
+        }
+        writeByte(BREAK);
+        depth--;
+        return this;
+    }
+
+    @Override
+    public JsonWriter name(String name) throws IOException {
+        if (name == null) {
+            throw new NullPointerException("name == null");
+        }
+        if (deferredName != null || depth == 0) {
+            throw new IllegalStateException();
+        }
+        deferredName = name;
+        return this;
+    }
+
+    @Override
+    public JsonWriter value(String value) throws IOException {
+        if (value == null) {
+            return nullValue();
+        }
+        writeDeferredName();
+        writeText(value);
+        return this;
+    }
+
+    @Override
+    public JsonWriter jsonValue(String value) throws IOException {
+        if (value == null) {
+            return nullValue();
+        }
+        writeDeferredName();
+        transcode(new JsonReader(new StringReader(value)));
+        return this;
+    }
+
+    @Override
+    public JsonWriter nullValue() throws IOException {
+        if (deferredName != null) {
+            if (!getSerializeNulls()) {
+                // Drop the name together with the null, as JsonWriter does
+                deferredName = null;
+                return this;
+            }
+            writeDeferredName();
+        }
+        writeByte(NULL);
+        return this;
+    }
+
+    @Override
+    public JsonWriter value(boolean value) throws IOException {
+        writeDeferredName();
+        writeByte(value ? TRUE : FALSE);
+        return this;
+    }
+
+    @Override
+    public JsonWriter value(Boolean value) throws IOException {
+        return value == null ? nullValue() : value(value.booleanValue());
+    }
+
+    @Override
+    public JsonWriter value(float value) throws IOException {
+        return value((double) value);
+    }
+
+    @Override
+    public JsonWriter value(double value) throws IOException {
+        writeDeferredName();
+        writeDouble(value);
+        return this;
+    }
+
+    @Override
+    public JsonWriter value(long value) throws IOException {
+        writeDeferredName();
+        writeLong(value);
+        return this;
+    }
+
+    @Override
+    public JsonWriter value(Number value) throws IOException {
+        if (value == null) {
+            return nullValue();
+        }
+        writeDeferredName();
+        writeNumber(value);
+        return this;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        flushBuffer();
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+        out.close();
+        if (depth > 0) {
+            throw new IOException("Incomplete document");
+        }
+    }
+
+    // Encoding
+
+    private void writeDeferredName() throws IOException {
+        if (deferredName != null) {
+            writeText(deferredName);
+            deferredName = null;
+        }
+    }
+
+    /**
+     * Re-encode one JSON value token by token, e.g. a pre-encoded fragment, without building a tree
+     */
+    private void transcode(JsonReader in) throws IOException {
+        int open = 0;
+        do {
+            switch (in.peek()) {
+                case BEGIN_ARRAY -> {
+                    in.beginArray();
+                    writeByte(INDEFINITE_ARRAY);
+                    open++;
+                }
+                case END_ARRAY -> {
+                    in.endArray();
+                    writeByte(BREAK);
+                    open--;
+                }
+                case BEGIN_OBJECT -> {
+                    in.beginObject();
+                    writeByte(INDEFINITE_MAP);
+                    open++;
+                }
+                case END_OBJECT -> {
+                    in.endObject();
+                    writeByte(BREAK);
+                    open--;
+                }
+                case NAME -> writeText(in.nextName());
+                case STRING -> writeText(in.nextString());
+                case NUMBER -> writeNumberLiteral(in.nextString());
+                case BOOLEAN -> writeByte(in.nextBoolean() ? TRUE : FALSE);
+                case NULL -> {
+                    in.nextNull();
+                    writeByte(NULL);
+                }
+                default -> throw new MalformedJsonException("Incomplete JSON value");
+            }
+        } while (open > 0);
+        if (in.peek() != JsonToken.END_DOCUMENT) {
+            throw new MalformedJsonException("Trailing data after JSON value");
+        }
+    }
+
+    private void writeNumber(Number value) throws IOException {
+        if (value instanceof Integer || value instanceof Long || value instanceof Short
+                || value instanceof Byte || value instanceof AtomicInteger || value instanceof AtomicLong) {
+            writeLong(value.longValue());
+        } else if (value instanceof Double || value instanceof Float) {
+            writeDouble(value.doubleValue());
+        } else if (value instanceof BigInteger big) {
+            writeBigInteger(big);
+        } else {
+            // Gson's lazily parsed numbers and BigDecimal: keep integral values exact
+            writeNumberLiteral(value.toString());
+        }
+    }
+
+    /**
+     * Write a number from its JSON text, as an integer when it has no fraction or exponent
+     */
+    private void writeNumberLiteral(String text) throws IOException {
+        if (text.indexOf('.') < 0 && text.indexOf('e') < 0 && text.indexOf('E') < 0) {
+            try {
+                if (text.length() < 19) {
+                    writeLong(Long.parseLong(text));
+                } else {
+                    writeBigInteger(new BigInteger(text));
+                }
+                return;
+            } catch (NumberFormatException e) {
+                // Not an integer literal, e.g. NaN from a lenient source
+            }
+        }
+        writeDouble(Double.parseDouble(text));
+    }
+
+    private void writeLong(long value) throws IOException {
+        if (value >= 0) {
+            writeHeader(MAJOR_UNSIGNED, value);
+        } else {
+            writeHeader(MAJOR_NEGATIVE, -1 - value);
+        }
+    }
+
+    private void writeBigInteger(BigInteger value) throws IOException {
+        if (value.bitLength() < 64) {
+            writeLong(value.longValue());
+            return;
+        }
+        boolean negative = value.signum() < 0;
+        BigInteger magnitude = negative ? BigInteger.ONE.negate().subtract(value) : value;
+        if (magnitude.bitLength() <= 64) {
+            // Fits the 8-byte argument of a plain integer
+            writeByte((negative ? MAJOR_NEGATIVE : MAJOR_UNSIGNED) << 5 | 27);
+            writeFixed(magnitude.longValue(), 8);
+            return;
+        }
+        byte[] bytes = magnitude.toByteArray();
+        int offset = bytes[0] == 0 ? 1 : 0;
+        writeByte(negative ? TAG_NEGATIVE_BIGNUM : TAG_POSITIVE_BIGNUM);
+        writeHeader(MAJOR_BYTES, bytes.length - offset);
+        writeBytes(bytes, offset, bytes.length - offset);
+    }
+
+    private void writeDouble(double value) throws IOException {
+        if (!isLenient() && (Double.isNaN(value) || Double.isInfinite(value))) {
+            throw new IllegalArgumentException("Numeric values must be finite, but was " + value);
+        }
+        writeByte(FLOAT64);
+        writeFixed(Double.doubleToRawLongBits(value), 8);
+    }
+
+    private void writeText(String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeHeader(MAJOR_TEXT, bytes.length);
+        writeBytes(bytes, 0, bytes.length);
+    }
+
+    private void writeHeader(int major, long argument) throws IOException {
+        int type = major << 5;
+        if (argument < 24) {
+            writeByte(type | (int) argument);
+        } else if (argument <= 0xffL) {
+            writeByte(type | 24);
+            writeFixed(argument, 1);
+        } else if (argument <= 0xffffL) {
+            writeByte(type | 25);
+            writeFixed(argument, 2);
+        } else if (argument <= 0xffffffffL) {
+            writeByte(type | 26);
+            writeFixed(argument, 4);
+        } else {
+            writeByte(type | 27);
+            writeFixed(argument, 8);
+        }
+    }
+
+    private void writeFixed(long value, int size) throws IOException {
+        for (int shift = (size - 1) * 8; shift >= 0; shift -= 8) {
+            writeByte((int) (value >>> shift));
+        }
+    }
+
+    private void writeByte(int value) throws IOException {
+        if (count == buffer.length) {
+            flushBuffer();
+        }
+        buffer[count++] = (byte) value;
+    }
+
+    private void writeBytes(byte[] bytes, int offset, int length) throws IOException {
+        if (length > buffer.length - count) {
+            flushBuffer();
+            if (length > buffer.length) {
+                out.write(bytes, offset, length);
+                return;
+            }
+        }
+        System.arraycopy(bytes, offset, buffer, count, length);
+        count += length;
+    }
+
+    private void flushBuffer() throws IOException {
+        if (count > 0) {
+            out.write(buffer, 0, count);
+            count = 0;
+        }
+    }
+}
@@ -0,0 +1,374 @@
+package it.carpanese.rpc.core;
+
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Pool of reusable encoder buffers
+ *
+ * Buffers are borrowed and returned explicitly instead of being pinned to a ThreadLocal, so
+ * the pool stays bounded with any number of (virtual) threads: at most one buffer of each kind
+ * per slot is retained, and buffers that grew beyond the retention limit are dropped on release.
+ * Slots are claimed with atomic swaps, never locks, so borrowing does not pin a virtual thread.
+ *
+ * Callers must not use a buffer after releasing it, nor keep references to its array.
+ */
+public final class EncoderBufferPool {
+
+    private static final EncoderBufferPool SHARED = new EncoderBufferPool();
+
+    private static final int DEFAULT_MAX_RETAINED = 1 << 20;
+    private static final int MIN_CAPACITY = 256;
+    private static final int PROBES = 4;
+
+    private final int mask;
+    private final int maxRetained;
+    private final AtomicReferenceArray<PooledChars> chars;
+    private final AtomicReferenceArray<PooledBytes> bytes;
+
+    private final LongAdder acquired = new LongAdder();
+    private final LongAdder reused = new LongAdder();
+    private final LongAdder allocatedBytes = new LongAdder();
+    private final LongAdder grown = new LongAdder();
+    private final LongAdder copiedBytes = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+
+    /**
+     * Creates a pool sized for the available processors, retaining buffers up to 1 MiB
+     */
+    public EncoderBufferPool() {
+        this(Runtime.getRuntime().availableProcessors() * 2, DEFAULT_MAX_RETAINED);
+    }
+
+    /**
+     * Creates a pool
+     *
+     * @param slots Number of buffers of each kind to retain (rounded up to a power of two)
+     * @param maxRetained Largest buffer, in chars or bytes, returned to the pool
+     */
+    public EncoderBufferPool(int slots, int maxRetained) {
+        int size = Integer.highestOneBit(Math.max(1, Math.min(slots, 1 << 16)) * 2 - 1);
+        this.mask = size - 1;
+        this.maxRetained = maxRetained;
+        this.chars = new AtomicReferenceArray<>(size);
+        this.bytes = new AtomicReferenceArray<>(size);
+    }
+
+    /**
+     * Get the pool shared by endpoints and clients that are not given their own
+     */
+    public static EncoderBufferPool shared() {
+        return SHARED;
+    }
+
+    /**
+     * Borrow a character buffer
+     *
+     * @param expectedSize Expected output size in chars, e.g. from {@link AdaptiveCapacity}
+     */
+    public PooledChars acquireChars(int expectedSize) {
+        acquired.increment();
+        PooledChars buffer = take(chars);
+        if (buffer == null) {
+            buffer = new PooledChars(this, capacity(expectedSize));
+        } else {
+            reused.increment();
+            buffer.ensureCapacity(expectedSize);
+        }
+        return buffer;
+    }
+
+    /**
+     * Borrow a byte buffer
+     *
+     * @param expectedSize Expected output size in bytes, e.g. from {@link AdaptiveCapacity}
+     */
+    public PooledBytes acquireBytes(int expectedSize) {
+        acquired.increment();
+        PooledBytes buffer = take(bytes);
+        if (buffer == null) {
+            buffer = new PooledBytes(this, capacity(expectedSize));
+        } else {
+            reused.increment();
+            buffer.ensureCapacity(expectedSize);
+        }
+        return buffer;
+    }
+
+    /**
+     * Return a character buffer to the pool
+     */
+    public void release(PooledChars buffer) {
+        buffer.count = 0;
+        if (buffer.buf.length > maxRetained || !put(chars, buffer)) {
+            dropped.increment();
+        }
+    }
+
+    /**
+     * Return a byte buffer to the pool
+     */
+    public void release(PooledBytes buffer) {
+        buffer.count = 0;
+        if (buffer.buf.length > maxRetained || !put(bytes, buffer)) {
+            dropped.increment();
+        }
+    }
+
+    /**
+     * Get a snapshot of the allocation counters
+     */
+    public Metrics getMetrics() {
+        return new Metrics(acquired.sum(), reused.sum(), allocatedBytes.sum(), grown.sum(),
+            copiedBytes.sum(), dropped.sum());
+    }
+
+    private <T> T take(AtomicReferenceArray<T> slots) {
+        int home = home();
+        for (int i = 0; i < PROBES; i++) {
+            int index = (home + i) & mask;
+            if (slots.get(index) != null) {
+                T buffer = slots.getAndSet(index, null);
+                if (buffer != null) {
+                    return buffer;
+                }
+            }
+        }
+        return null;
+    }
+
+    private <T> boolean put(AtomicReferenceArray<T> slots, T buffer) {
+        int home = home();
+        for (int i = 0; i < PROBES; i++) {
+            int index = (home + i) & mask;
+            if (slots.get(index) == null && slots.compareAndSet(index, null, buffer)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @SuppressWarnings("deprecation") // Thread.threadId() is not available on Android
+    private int home() {
+        long id = Thread.currentThread().getId();
+        return (int) (id ^ (id >>> 16));
+    }
+
+    private static int capacity(int expectedSize) {
+        return Math.max(MIN_CAPACITY, expectedSize);
+    }
+
+    /**
+     * Growth policy shared by both buffer kinds: double, or jump past what is needed with headroom
+     */
+    private static int grow(int current, int needed) {
+        long capacity = Math.max((long) current << 1, needed + ((long) needed >>> 2));
+        return (int) Math.min(capacity, Integer.MAX_VALUE - 8);
+    }
+
+    /**
+     * Reusable character buffer written through the {@link Writer} API
+     */
+    public static final class PooledChars extends Writer {
+
+        private final EncoderBufferPool pool;
+        private char[] buf;
+        private int count;
+
+        private PooledChars(EncoderBufferPool pool, int capacity) {
+            this.pool = pool;
+            this.buf = new char[capacity];
+            pool.allocatedBytes.add(2L * capacity);
+        }
+
+        @Override
+        public void write(int c) {
+            ensureCapacity(count + 1);
+            buf[count++] = (char) c;
+        }
+
+        @Override
+        public void write(char[] cbuf, int off, int len) {
+            ensureCapacity(count + len);
+            System.arraycopy(cbuf, off, buf, count, len);
+            count += len;
+        }
+
+        @Override
+        public void write(String str, int off, int len) {
+            ensureCapacity(count + len);
+            str.getChars(off, off + len, buf, count);
+            count += len;
+        }
+
+        @Override
+        public Writer append(CharSequence csq) {
+            String str = String.valueOf(csq);
+            write(str, 0, str.length());
+            return this;
+        }
+
+        /**
+         * Number of chars written
+         */
+        public int size() {
+            return count;
+        }
+
+        @Override
+        public String toString() {
+            return new String(buf, 0, count);
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+
+        private void ensureCapacity(int needed) {
+            if (needed > buf.length) {
+                int capacity = grow(buf.length, needed);
+                buf = Arrays.copyOf(buf, capacity);
+                pool.grown.increment();
+                pool.copiedBytes.add(2L * count);
+                pool.allocatedBytes.add(2L * capacity);
+            }
+        }
+    }
+
+    /**
+     * Reusable byte buffer written through the {@link OutputStream} API
+     */
+    public static final class PooledBytes extends OutputStream {
+
+        private final EncoderBufferPool pool;
+        private byte[] buf;
+        private int count;
+
+        private PooledBytes(EncoderBufferPool pool, int capacity) {
+            this.pool = pool;
+            this.buf = new byte[capacity];
+            pool.allocatedBytes.add(capacity);
+        }
+
+        @Override
+        public void write(int b) {
+            ensureCapacity(count + 1);
+            buf[count++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            ensureCapacity(count + len);
+            System.arraycopy(b, off, buf, count, len);
+            count += len;
+        }
+
+        /**
+         * Number of bytes written
+         */
+        public int size() {
+            return count;
+        }
+
+        /**
+         * Wrap the written bytes without copying; only valid until the buffer is released
+         */
+        public ByteBuffer toByteBuffer() {
+            return ByteBuffer.wrap(buf, 0, count);
+        }
+
+        /**
+         * Copy the written bytes
+         */
+        public byte[] toByteArray() {
+            return Arrays.copyOf(buf, count);
+        }
+
+        private void ensureCapacity(int needed) {
+            if (needed > buf.length) {
+                int capacity = grow(buf.length, needed);
+                buf = Arrays.copyOf(buf, capacity);
+                pool.grown.increment();
+                pool.copiedBytes.add(count);
+                pool.allocatedBytes.add(capacity);
+            }
+        }
+    }
+
+    /**
+     * Allocation counters of a pool
+     */
+    public static final class Metrics {
+        private final long acquired;
+        private final long reused;
+        private final long allocatedBytes;
+        private final long grown;
+        private final long copiedBytes;
+        private final long dropped;
+
+        Metrics(long acquired, long reused, long allocatedBytes, long grown, long copiedBytes, long dropped) {
+            this.acquired = acquired;
+            this.reused = reused;
+            this.allocatedBytes = allocatedBytes;
+            this.grown = grown;
+            this.copiedBytes = copiedBytes;
+            this.dropped = dropped;
+        }
+
+        /**
+         * Buffers borrowed
+         */
+        public long getAcquired() {
+            return acquired;
+        }
+
+        /**
+         * Borrows served from the pool instead of a new allocation
+         */
+        public long getReused() {
+            return reused;
+        }
+
+        /**
+         * Bytes of buffer arrays allocated, including regrowth
+         */
+        public long getAllocatedBytes() {
+            return allocatedBytes;
+        }
+
+        /**
+         * Times a buffer had to grow while encoding
+         */
+        public long getGrown() {
+            return grown;
+        }
+
+        /**
+         * Bytes copied by those growths
+         */
+        public long getCopiedBytes() {
+            return copiedBytes;
+        }
+
+        /**
+         * Buffers not retained on release (pool full or buffer too large)
+         */
+        public long getDropped() {
+            return dropped;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("EncoderBufferPool.Metrics{acquired=%d, reused=%d, allocatedBytes=%d, grown=%d, "
+                + "copiedBytes=%d, dropped=%d}", acquired, reused, allocatedBytes, grown, copiedBytes, dropped);
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package it.carpanese.rpc.core;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.BufferedWriter;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * UTF-8 JSON text codec (application/json)
+ */
+public final class JsonRpcCodec implements RpcCodec {
+
+    public static final String MEDIA_TYPE = "application/json";
+
+    public static final JsonRpcCodec INSTANCE = new JsonRpcCodec();
+
+    private JsonRpcCodec() {
+    }
+
+    @Override
+    public String getMediaType() {
+        return MEDIA_TYPE;
+    }
+
+    @Override
+    public String getContentType() {
+        return MEDIA_TYPE + "; charset=utf-8";
+    }
+
+    @Override
+    public boolean isBinary() {
+        return false;
+    }
+
+    @Override
+    public JsonReader newReader(InputStream in) {
+        JsonReader reader = new JsonReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        reader.setLenient(true);
+        return reader;
+    }
+
+    @Override
+    public JsonWriter newWriter(OutputStream out) {
+        return new JsonWriter(new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8)));
+    }
+
+    @Override
+    public String toString() {
+        return "JsonRpcCodec";
+    }
+}
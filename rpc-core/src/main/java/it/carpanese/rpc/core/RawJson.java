@@ -0,0 +1,109 @@
+package it.carpanese.rpc.core;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.stream.JsonReader;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+/**
+ * Pre-encoded JSON value that is written verbatim instead of being re-serialized
+ *
+ * Data that is already JSON (cached blobs, upstream payloads) can be wrapped instead of
+ * parsed into a tree, e.g. as the result of an {@link RpcResponse#RpcResponse(RawJson, Object)}.
+ *
+ * {@link RpcTypeAdapterFactory} splices the text verbatim, both in the envelopes and for
+ * fields of type {@code RawJson}, and reads a value back as the text of its subtree. With
+ * Safe Mode on, plain JSON is given its markers in a single streaming pass; text that is
+ * already Safe Mode encoded can be marked with {@link #ofSafe(String)} to skip that pass.
+ *
+ * The text is not validated: it must hold exactly one well-formed JSON value. It is not a
+ * {@code JsonElement}: use {@link #parse()} to put it inside a tree.
+ */
+public final class RawJson {
+
+    private final String json;
+    private final boolean safeEncoded;
+
+    private RawJson(String json, boolean safeEncoded) {
+        if (json == null) {
+            throw new IllegalArgumentException("Raw JSON cannot be null");
+        }
+        this.json = json;
+        this.safeEncoded = safeEncoded;
+    }
+
+    /**
+     * Wrap plain JSON text
+     */
+    public static RawJson of(String json) {
+        return new RawJson(json, false);
+    }
+
+    /**
+     * Wrap JSON text that already carries Safe Mode markers
+     *
+     * Safe endpoints splice it verbatim; other endpoints strip the markers while writing.
+     */
+    public static RawJson ofSafe(String json) {
+        return new RawJson(json, true);
+    }
+
+    /**
+     * Get the JSON text
+     */
+    public String getJson() {
+        return json;
+    }
+
+    /**
+     * Check if the text is Safe Mode encoded
+     */
+    public boolean isSafeEncoded() {
+        return safeEncoded;
+    }
+
+    /**
+     * Parse the text into a tree, for callers that need to inspect the value
+     *
+     * Safe Mode encoded text is decoded, so the tree holds the values without their markers.
+     *
+     * @throws JsonSyntaxException If the text is not well-formed JSON
+     */
+    public JsonElement parse() {
+        if (!safeEncoded) {
+            return JsonParser.parseString(json);
+        }
+        try {
+            JsonReader reader = new JsonReader(new StringReader(json));
+            reader.setLenient(true);
+            return SafeModeCodec.read(reader);
+        } catch (IOException e) {
+            throw new JsonSyntaxException(e);
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof RawJson)) {
+            return false;
+        }
+        RawJson other = (RawJson) o;
+        return safeEncoded == other.safeEncoded && json.equals(other.json);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * json.hashCode() + (safeEncoded ? 1 : 0);
+    }
+
+    @Override
+    public String toString() {
+        return json;
+    }
+}
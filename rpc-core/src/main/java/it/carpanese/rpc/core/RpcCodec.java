@@ -0,0 +1,82 @@
+package it.carpanese.rpc.core;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collection;
+import java.util.Locale;
+
+/**
+ * Wire encoding for JSON-RPC messages
+ *
+ * A codec exposes its format through Gson's streaming {@link JsonReader} and {@link JsonWriter}
+ * so the envelope adapters, the request parser and Safe Mode handling work unchanged on top of
+ * any encoding. Codecs are selected by their Content-Type.
+ */
+public interface RpcCodec {
+
+    /**
+     * Media type this codec reads and writes, without parameters (e.g. "application/json")
+     */
+    String getMediaType();
+
+    /**
+     * Content-Type header value for encoded messages
+     */
+    default String getContentType() {
+        return getMediaType();
+    }
+
+    /**
+     * Check if the encoding is binary
+     *
+     * Binary encodings carry strings, big integers and dates as native types, so the
+     * Safe Mode string markers are not applied on top of them.
+     */
+    boolean isBinary();
+
+    /**
+     * Create a reader over an encoded message
+     */
+    JsonReader newReader(InputStream in);
+
+    /**
+     * Create a writer producing an encoded message; callers must flush it
+     */
+    JsonWriter newWriter(OutputStream out);
+
+    /**
+     * Check if this codec handles a Content-Type or Accept header value
+     */
+    default boolean supports(String contentType) {
+        if (contentType == null) {
+            return false;
+        }
+        int separator = contentType.indexOf(';');
+        String mediaType = (separator >= 0 ? contentType.substring(0, separator) : contentType).trim();
+        return mediaType.toLowerCase(Locale.ROOT).equals(getMediaType());
+    }
+
+    /**
+     * Pick the codec for a Content-Type or Accept header value
+     *
+     * Accept values may list several media types; the first supported one wins.
+     *
+     * @return Matching codec, or null if none matches
+     */
+    static RpcCodec negotiate(String header, Collection<? extends RpcCodec> codecs) {
+        if (header == null) {
+            return null;
+        }
+        for (String candidate : header.split(",")) {
+            for (RpcCodec codec : codecs) {
+                if (codec.supports(candidate)) {
+                    return codec;
+                }
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,91 @@
+package it.carpanese.rpc.core;
+
+import javax.annotation.Nullable;
+import java.util.List;
+
+/**
+ * Parsed JSON-RPC 2.0 payload
+ *
+ * Result of {@link RpcEnvelopeParser}: either a single call or a batch, where every
+ * entry is a well-formed request or the error that made it invalid.
+ */
+public class RpcEnvelope {
+
+    private final boolean batch;
+    private final List<Entry> entries;
+
+    RpcEnvelope(boolean batch, List<Entry> entries) {
+        this.batch = batch;
+        this.entries = entries;
+    }
+
+    /**
+     * Check if the payload was a JSON array
+     */
+    public boolean isBatch() {
+        return batch;
+    }
+
+    /**
+     * Get the parsed entries in payload order (exactly one for single requests)
+     */
+    public List<Entry> getEntries() {
+        return entries;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * A single call inside the payload
+     */
+    public static class Entry {
+
+        private final RpcRequest request;
+        private final RpcError error;
+        private final Object id;
+
+        private Entry(RpcRequest request, RpcError error, Object id) {
+            this.request = request;
+            this.error = error;
+            this.id = id;
+        }
+
+        static Entry valid(RpcRequest request) {
+            return new Entry(request, null, request.getId());
+        }
+
+        static Entry invalid(RpcError error, @Nullable Object id) {
+            return new Entry(null, error, id);
+        }
+
+        /**
+         * Check if the entry is a well-formed request
+         */
+        public boolean isValid() {
+            return request != null;
+        }
+
+        @Nullable
+        public RpcRequest getRequest() {
+            return request;
+        }
+
+        /**
+         * Get the error describing why the entry is invalid
+         */
+        @Nullable
+        public RpcError getError() {
+            return error;
+        }
+
+        /**
+         * Get the request ID, if one could be read before the entry was rejected
+         */
+        @Nullable
+        public Object getId() {
+            return id;
+        }
+    }
+}
@@ -0,0 +1,219 @@
+package it.carpanese.rpc.core;
+
+import com.google.gson.JsonNull;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Streaming JSON-RPC 2.0 request parser
+ *
+ * Reads {@code jsonrpc}, {@code method} and {@code id} straight off a {@link JsonReader}
+ * instead of building a tree for the whole payload and mapping it through reflection.
+ * {@code params} is kept as raw text and only decoded when a handler asks for it (see
+ * {@link RpcRequest#getRawParams()}). Handles both single and batch payloads.
+ *
+ * Malformed JSON fails the whole payload with a {@link JsonSyntaxException}; structurally
+ * invalid calls are reported per entry so batches can answer them individually.
+ */
+public class RpcEnvelopeParser {
+
+    private static final String JSONRPC_VERSION = "2.0";
+
+    private final boolean safeMode;
+
+    /**
+     * Creates a new parser
+     *
+     * @param safeMode Params carry Safe Mode markers, stripped when they are decoded
+     */
+    public RpcEnvelopeParser(boolean safeMode) {
+        this.safeMode = safeMode;
+    }
+
+    /**
+     * Creates a parser matching the serializer's safe mode
+     */
+    public RpcEnvelopeParser(RpcSerializer serializer) {
+        this(serializer.isSafeMode());
+    }
+
+    /**
+     * Creates a parser with safe mode disabled
+     */
+    public RpcEnvelopeParser() {
+        this(false);
+    }
+
+    /**
+     * Parse a JSON-RPC payload
+     *
+     * @param json Request body
+     * @return Parsed envelope
+     * @throws JsonSyntaxException If the payload is not valid JSON
+     */
+    public RpcEnvelope parse(String json) throws JsonSyntaxException {
+        return parse(new StringReader(json));
+    }
+
+    /**
+     * Parse a JSON-RPC payload from a character stream
+     *
+     * @param in Request body
+     * @return Parsed envelope
+     * @throws JsonSyntaxException If the payload is not valid JSON
+     */
+    public RpcEnvelope parse(Reader in) throws JsonSyntaxException {
+        JsonReader reader = new JsonReader(in);
+        reader.setLenient(true);
+        return parse(reader);
+    }
+
+    /**
+     * Parse a JSON-RPC payload from a reader, e.g. one created by an {@link RpcCodec}
+     *
+     * @param reader Reader positioned at the start of the payload
+     * @return Parsed envelope
+     * @throws JsonSyntaxException If the payload is malformed
+     */
+    public RpcEnvelope parse(JsonReader reader) throws JsonSyntaxException {
+        try {
+            RpcEnvelope envelope;
+            if (reader.peek() == JsonToken.BEGIN_ARRAY) {
+                List<RpcEnvelope.Entry> entries = new ArrayList<>();
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    entries.add(readEntry(reader));
+                }
+                reader.endArray();
+                envelope = new RpcEnvelope(true, entries);
+            } else {
+                envelope = new RpcEnvelope(false, Collections.singletonList(readEntry(reader)));
+            }
+
+            if (reader.peek() != JsonToken.END_DOCUMENT) {
+                throw new JsonSyntaxException("Did not consume the entire document.");
+            }
+            return envelope;
+        } catch (IOException | IllegalStateException | NumberFormatException | ArithmeticException e) {
+            throw new JsonSyntaxException(e);
+        }
+    }
+
+    RpcEnvelope.Entry readEntry(JsonReader reader) throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+            reader.skipValue();
+            return RpcEnvelope.Entry.invalid(RpcError.invalidRequest(), null);
+        }
+
+        String version = null;
+        String method = null;
+        RawJson params = null;
+        boolean nullParams = false;
+        Object id = null;
+        boolean validTypes = true;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "jsonrpc" -> {
+                    if (reader.peek() == JsonToken.STRING) {
+                        version = reader.nextString();
+                    } else {
+                        reader.skipValue();
+                        validTypes = false;
+                    }
+                }
+                case "method" -> {
+                    if (reader.peek() == JsonToken.STRING) {
+                        method = reader.nextString();
+                    } else {
+                        reader.skipValue();
+                        validTypes = false;
+                    }
+                }
+                case "params" -> {
+                    if (reader.peek() == JsonToken.NULL) {
+                        reader.nextNull();
+                        nullParams = true;
+                    } else {
+                        params = readRaw(reader);
+                    }
+                }
+                case "id" -> {
+                    JsonToken token = reader.peek();
+                    if (token == JsonToken.STRING || token == JsonToken.NUMBER || token == JsonToken.NULL) {
+                        id = readId(reader);
+                    } else {
+                        reader.skipValue();
+                        validTypes = false;
+                    }
+                }
+                default -> reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        if (!validTypes) {
+            return RpcEnvelope.Entry.invalid(RpcError.invalidRequest(), id);
+        }
+        if (version != null && !JSONRPC_VERSION.equals(version)) {
+            return RpcEnvelope.Entry.invalid(
+                new RpcError(RpcError.INVALID_REQUEST, "Invalid JSON-RPC version. Must be '2.0'"), id);
+        }
+        if (method == null || method.trim().isEmpty()) {
+            return RpcEnvelope.Entry.invalid(
+                new RpcError(RpcError.INVALID_REQUEST, "Method name is required"), id);
+        }
+
+        if (params == null || nullParams) {
+            return RpcEnvelope.Entry.valid(new RpcRequest(method, JsonNull.INSTANCE, id));
+        }
+        return RpcEnvelope.Entry.valid(RpcRequest.withRawParams(method, params, id));
+    }
+
+    /**
+     * Copy the params tokens as text, leaving the tree to be built on first access
+     */
+    private RawJson readRaw(JsonReader reader) throws IOException {
+        StringWriter buffer = new StringWriter();
+        JsonWriter writer = new JsonWriter(buffer);
+        writer.setLenient(true);
+        SafeModeCodec.copy(reader, writer);
+        writer.flush();
+        return safeMode ? RawJson.ofSafe(buffer.toString()) : RawJson.of(buffer.toString());
+    }
+
+    /**
+     * Read a request ID, keeping integral IDs integral so they are echoed back exactly as received
+     */
+    static Object readId(JsonReader reader) throws IOException {
+        switch (reader.peek()) {
+            case NULL -> {
+                reader.nextNull();
+                return null;
+            }
+            case NUMBER -> {
+                String literal = reader.nextString();
+                try {
+                    return Long.parseLong(literal);
+                } catch (NumberFormatException e) {
+                    return new BigDecimal(literal);
+                }
+            }
+            default -> {
+                return reader.nextString();
+            }
+        }
+    }
+}
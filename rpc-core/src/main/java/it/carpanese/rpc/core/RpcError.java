@@ -15,6 +15,8 @@ import javax.annotation.Nullable;
  * -32602: Invalid params
  * -32603: Internal error
  * -32000 to -32099: Server error (reserved for implementation-defined server-errors)
+ *   -32001: Request timed out
+ *   -32002: Server overloaded
  */
 public class RpcError {
 
@@ -25,6 +27,17 @@ public class RpcError {
     public static final int INVALID_PARAMS = -32602;
     public static final int INTERNAL_ERROR = -32603;
     public static final int SERVER_ERROR = -32000;
+    public static final int TIMEOUT = -32001;
+    public static final int OVERLOADED = -32002;
+
+    // Shared instances for the standard errors, which carry no data
+    private static final RpcError PARSE_ERROR_INSTANCE = new RpcError(PARSE_ERROR, "Parse error");
+    private static final RpcError INVALID_REQUEST_INSTANCE = new RpcError(INVALID_REQUEST, "Invalid Request");
+    private static final RpcError METHOD_NOT_FOUND_INSTANCE = new RpcError(METHOD_NOT_FOUND, "Method not found");
+    private static final RpcError INVALID_PARAMS_INSTANCE = new RpcError(INVALID_PARAMS, "Invalid params");
+    private static final RpcError INTERNAL_ERROR_INSTANCE = new RpcError(INTERNAL_ERROR, "Internal error");
+    private static final RpcError TIMEOUT_INSTANCE = new RpcError(TIMEOUT, "Request timed out");
+    private static final RpcError OVERLOADED_INSTANCE = new RpcError(OVERLOADED, "Server overloaded");
 
     private final int code;
     private final String message;
@@ -51,27 +64,54 @@ public class RpcError {
     }
 
     // Standard error factory methods
+    // The no-argument variants return shared instances with the specification's message
 
     public static RpcError parseError() {
-        return new RpcError(PARSE_ERROR, "Parse error");
+        return PARSE_ERROR_INSTANCE;
     }
 
     public static RpcError invalidRequest() {
-        return new RpcError(INVALID_REQUEST, "Invalid Request");
+        return INVALID_REQUEST_INSTANCE;
+    }
+
+    public static RpcError methodNotFound() {
+        return METHOD_NOT_FOUND_INSTANCE;
     }
 
     public static RpcError methodNotFound(String method) {
         return new RpcError(METHOD_NOT_FOUND, "Method not found: " + method);
     }
 
+    public static RpcError invalidParams() {
+        return INVALID_PARAMS_INSTANCE;
+    }
+
     public static RpcError invalidParams(String message) {
         return new RpcError(INVALID_PARAMS, "Invalid params: " + message);
     }
 
+    public static RpcError internalError() {
+        return INTERNAL_ERROR_INSTANCE;
+    }
+
     public static RpcError internalError(String message) {
         return new RpcError(INTERNAL_ERROR, "Internal error: " + message);
     }
 
+    /**
+     * Error for calls that did not complete before their deadline (implementation-defined server error)
+     */
+    public static RpcError timeout() {
+        return TIMEOUT_INSTANCE;
+    }
+
+    /**
+     * Error for calls rejected because the method or server is at its concurrency limit
+     */
+    public static RpcError overloaded() {
+        return OVERLOADED_INSTANCE;
+    }
+
     public static RpcError serverError(String message) {
         return new RpcError(SERVER_ERROR, "Server error: " + message);
     }
@@ -30,6 +30,35 @@ public class RpcException extends Exception {
         this.error = new RpcError(code, message);
     }
 
+    /**
+     * Creates a new RPC exception, optionally without a stack trace
+     *
+     * @param error Error object
+     * @param cause Cause (can be null)
+     * @param writableStackTrace false to skip capturing the stack trace and suppressed exceptions
+     */
+    protected RpcException(RpcError error, Throwable cause, boolean writableStackTrace) {
+        super(error.getMessage(), cause, writableStackTrace, writableStackTrace);
+        this.error = error;
+    }
+
+    /**
+     * Create an exception that does not capture a stack trace
+     *
+     * Meant for expected business errors thrown from handlers, where the trace is never
+     * looked at and filling it in dominates the cost of the throw.
+     */
+    public static RpcException stackless(RpcError error) {
+        return new RpcException(error, null, false);
+    }
+
+    /**
+     * Create an exception with error code and message that does not capture a stack trace
+     */
+    public static RpcException stackless(int code, String message) {
+        return stackless(new RpcError(code, message));
+    }
+
     public RpcError getError() {
         return error;
     }
@@ -0,0 +1,275 @@
+package it.carpanese.rpc.core;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.annotations.JsonAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+/**
+ * JSON-RPC request ID
+ *
+ * Value type with a numeric variant holding a primitive {@code long} and a String variant.
+ * Both are written straight to a {@link JsonWriter}; IDs of any other type go through Gson.
+ * Requests and responses store IDs as plain {@code Long}/{@code String} values, converting an
+ * RpcId passed to them, and {@link #matches(Object)} compares an RpcId with either form.
+ */
+@JsonAdapter(RpcId.GsonAdapter.class)
+public abstract class RpcId {
+
+    private RpcId() {
+    }
+
+    /**
+     * Numeric ID
+     */
+    public static RpcId of(long id) {
+        return new LongId(id);
+    }
+
+    /**
+     * String ID
+     */
+    public static RpcId of(String id) {
+        if (id == null) {
+            throw new IllegalArgumentException("ID cannot be null");
+        }
+        return new StringId(id);
+    }
+
+    /**
+     * Convert a raw request ID (Long, Integer, String or RpcId)
+     *
+     * @return ID, or null for notifications (null input)
+     * @throws IllegalArgumentException If the value is not a valid JSON-RPC ID
+     */
+    @Nullable
+    public static RpcId from(@Nullable Object id) {
+        if (id == null || id instanceof RpcId) {
+            return (RpcId) id;
+        }
+        if (id instanceof String s) {
+            return new StringId(s);
+        }
+        Long integral = integralValue(id);
+        if (integral != null) {
+            return new LongId(integral);
+        }
+        throw new IllegalArgumentException("Unsupported request ID: " + id);
+    }
+
+    /**
+     * Convert a raw request ID, returning null instead of failing for values without an RpcId form
+     *
+     * Parsed messages keep numeric IDs as they were received, so a fractional ID such as
+     * {@code 1.5} is valid on the wire but cannot be represented here.
+     */
+    @Nullable
+    static RpcId tryFrom(@Nullable Object id) {
+        if (id == null || id instanceof RpcId || id instanceof String) {
+            return from(id);
+        }
+        Long integral = integralValue(id);
+        return integral != null ? new LongId(integral) : null;
+    }
+
+    /**
+     * Compare two raw IDs by value: equal strings, or numbers with the same integral value
+     */
+    public static boolean sameValue(@Nullable Object a, @Nullable Object b) {
+        if (a == null || b == null) {
+            return a == b;
+        }
+        if (a instanceof String || b instanceof String || a instanceof RpcId || b instanceof RpcId) {
+            return toPlain(a).equals(toPlain(b));
+        }
+        Long left = integralValue(a);
+        return left != null ? left.equals(integralValue(b)) : a.equals(b);
+    }
+
+    /**
+     * Unwrap an RpcId into its plain value, leaving other IDs as they are
+     */
+    static Object toPlain(@Nullable Object id) {
+        return id instanceof RpcId rpcId ? rpcId.toObject() : id;
+    }
+
+    /**
+     * Check if this is the numeric variant
+     */
+    public abstract boolean isNumber();
+
+    /**
+     * Get the numeric value
+     *
+     * @throws IllegalStateException For String IDs
+     */
+    public abstract long longValue();
+
+    /**
+     * Get the ID as a plain Long or String
+     */
+    public abstract Object toObject();
+
+    /**
+     * Check if a raw ID, e.g. one read back from a response, denotes this ID
+     */
+    public abstract boolean matches(@Nullable Object id);
+
+    /**
+     * Write the ID as a JSON value
+     */
+    public abstract void writeTo(JsonWriter out) throws IOException;
+
+    @Nullable
+    private static Long integralValue(Object id) {
+        if (id instanceof Long || id instanceof Integer || id instanceof Short || id instanceof Byte) {
+            return ((Number) id).longValue();
+        }
+        if (id instanceof BigInteger big && big.bitLength() < 64) {
+            return big.longValue();
+        }
+        if (id instanceof BigDecimal decimal) {
+            try {
+                return decimal.longValueExact();
+            } catch (ArithmeticException e) {
+                return null;
+            }
+        }
+        if (id instanceof Number number) {
+            double value = number.doubleValue();
+            return value == Math.rint(value) && !Double.isInfinite(value) ? (long) value : null;
+        }
+        return null;
+    }
+
+    @JsonAdapter(GsonAdapter.class)
+    private static final class LongId extends RpcId {
+        private final long value;
+
+        LongId(long value) {
+            this.value = value;
+        }
+
+        @Override
+        public boolean isNumber() {
+            return true;
+        }
+
+        @Override
+        public long longValue() {
+            return value;
+        }
+
+        @Override
+        public Object toObject() {
+            return value;
+        }
+
+        @Override
+        public boolean matches(@Nullable Object id) {
+            if (id instanceof RpcId other) {
+                return equals(other);
+            }
+            Long integral = id instanceof String || id == null ? null : integralValue(id);
+            return integral != null && integral == value;
+        }
+
+        @Override
+        public void writeTo(JsonWriter out) throws IOException {
+            out.value(value);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof LongId other && other.value == value;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(value);
+        }
+
+        @Override
+        public String toString() {
+            return Long.toString(value);
+        }
+    }
+
+    @JsonAdapter(GsonAdapter.class)
+    private static final class StringId extends RpcId {
+        private final String value;
+
+        StringId(String value) {
+            this.value = value;
+        }
+
+        @Override
+        public boolean isNumber() {
+            return false;
+        }
+
+        @Override
+        public long longValue() {
+            throw new IllegalStateException("Not a numeric ID: " + value);
+        }
+
+        @Override
+        public Object toObject() {
+            return value;
+        }
+
+        @Override
+        public boolean matches(@Nullable Object id) {
+            return id instanceof RpcId other ? equals(other) : value.equals(id);
+        }
+
+        @Override
+        public void writeTo(JsonWriter out) throws IOException {
+            out.value(value);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof StringId other && other.value.equals(value);
+        }
+
+        @Override
+        public int hashCode() {
+            return value.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return value;
+        }
+    }
+
+    /**
+     * Keeps IDs plain JSON values on Gson instances without {@link RpcTypeAdapterFactory}
+     */
+    static final class GsonAdapter extends TypeAdapter<RpcId> {
+        @Override
+        public void write(JsonWriter out, RpcId id) throws IOException {
+            if (id == null) {
+                out.nullValue();
+            } else {
+                id.writeTo(out);
+            }
+        }
+
+        @Override
+        public RpcId read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            return from(RpcEnvelopeParser.readId(in));
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package it.carpanese.rpc.core;
+
+/**
+ * Source of request IDs for calls that do not set one explicitly
+ *
+ * Implementations must be thread-safe and must not hand out the same ID twice while
+ * earlier calls may still be in flight, or batch responses can no longer be correlated.
+ */
+@FunctionalInterface
+public interface RpcIdGenerator {
+
+    /**
+     * Get the next request ID
+     */
+    RpcId nextId();
+
+    /**
+     * Get the next request ID as a plain {@code Long} or {@code String}, the form
+     * {@link RpcRequest#getId()} returns
+     */
+    default Object nextValue() {
+        return nextId().toObject();
+    }
+
+    /**
+     * Shared lock-free generator used by {@link RpcRequest#RpcRequest(String, com.google.gson.JsonElement)}
+     * and the clients
+     */
+    static RpcIdGenerator defaultGenerator() {
+        return StripedRpcIdGenerator.SHARED;
+    }
+
+    /**
+     * Create a new lock-free generator with its own sequence
+     */
+    static RpcIdGenerator striped() {
+        return new StripedRpcIdGenerator();
+    }
+}
@@ -16,15 +16,16 @@ public class RpcRequest {
 
     private final String jsonrpc = "2.0";
     private final String method;
-    private final JsonElement params;
     private final Object id;
+    private final transient RawJson rawParams;
+    private volatile JsonElement params;
 
     /**
      * Creates a new RPC request
      *
      * @param method The method name to call
      * @param params The method parameters (can be null)
-     * @param id The request ID (null for notifications)
+     * @param id The request ID (null for notifications); an {@link RpcId} is stored as its plain value
      */
     public RpcRequest(String method, @Nullable JsonElement params, @Nullable Object id) {
         if (method == null || method.isEmpty()) {
@@ -32,14 +33,15 @@ public class RpcRequest {
         }
         this.method = method;
         this.params = params != null ? params : JsonNull.INSTANCE;
-        this.id = id;
+        this.rawParams = null;
+        this.id = RpcId.toPlain(id);
     }
 
     /**
-     * Creates a new RPC request with auto-generated ID
+     * Creates a new RPC request with an ID from {@link RpcIdGenerator#defaultGenerator()}
      */
     public RpcRequest(String method, @Nullable JsonElement params) {
-        this(method, params, System.currentTimeMillis());
+        this(method, params, RpcIdGenerator.defaultGenerator().nextValue());
     }
 
     /**
@@ -49,6 +51,22 @@ public class RpcRequest {
         return new RpcRequest(method, params, null);
     }
 
+    /**
+     * Creates a request whose params are decoded on first access
+     */
+    private RpcRequest(String method, RawJson rawParams, @Nullable Object id) {
+        this.method = method;
+        this.rawParams = rawParams;
+        this.id = id;
+    }
+
+    /**
+     * Creates a request keeping the params as received, see {@link #getRawParams()}
+     */
+    static RpcRequest withRawParams(String method, RawJson rawParams, @Nullable Object id) {
+        return new RpcRequest(method, rawParams, id);
+    }
+
     public String getJsonrpc() {
         return jsonrpc;
     }
@@ -57,8 +75,45 @@ public class RpcRequest {
         return method;
     }
 
+    /**
+     * Get the params, decoding them on the first call if the request was parsed lazily
+     */
     public JsonElement getParams() {
-        return params;
+        JsonElement value = params;
+        if (value == null) {
+            synchronized (this) {
+                value = params;
+                if (value == null) {
+                    params = value = rawParams.parse();
+                }
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Get the params in their encoded form, e.g. to forward them without building a tree
+     *
+     * Parsed requests return the text as received (Safe Mode encoded on safe endpoints);
+     * requests built from a JsonElement return it re-encoded.
+     *
+     * @return Raw params, or null if the request has none
+     */
+    @Nullable
+    public RawJson getRawParams() {
+        if (rawParams != null) {
+            return rawParams;
+        }
+        JsonElement value = params;
+        return value.isJsonNull() ? null : RawJson.of(value.toString());
+    }
+
+    /**
+     * Raw params that have not been decoded yet, which are still exactly what was received
+     */
+    @Nullable
+    RawJson getUndecodedParams() {
+        return params == null ? rawParams : null;
     }
 
     @Nullable
@@ -66,6 +121,17 @@ public class RpcRequest {
         return id;
     }
 
+    /**
+     * Get the ID as a value type
+     *
+     * @return ID; null for notifications and for non-integral numbers such as {@code 1.5},
+     *         which {@link #getId()} returns as received
+     */
+    @Nullable
+    public RpcId getRpcId() {
+        return RpcId.tryFrom(id);
+    }
+
     /**
      * Check if this is a notification (no response expected)
      */
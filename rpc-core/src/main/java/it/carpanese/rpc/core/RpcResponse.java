@@ -12,7 +12,8 @@ import javax.annotation.Nullable;
 public class RpcResponse {
 
     private final String jsonrpc = "2.0";
-    private final JsonElement result;
+    private volatile JsonElement result;
+    private final transient RawJson rawResult;
     private final RpcError error;
     private final Object id;
 
@@ -21,8 +22,24 @@ public class RpcResponse {
      */
     public RpcResponse(JsonElement result, Object id) {
         this.result = result;
+        this.rawResult = null;
         this.error = null;
-        this.id = id;
+        this.id = RpcId.toPlain(id);
+    }
+
+    /**
+     * Creates a successful response whose result is already encoded
+     *
+     * The text is written verbatim by {@link RpcTypeAdapterFactory} and only parsed if
+     * {@link #getResult()} is called.
+     */
+    public RpcResponse(RawJson result, Object id) {
+        if (result == null) {
+            throw new IllegalArgumentException("Raw result cannot be null");
+        }
+        this.rawResult = result;
+        this.error = null;
+        this.id = RpcId.toPlain(id);
     }
 
     /**
@@ -30,17 +47,40 @@ public class RpcResponse {
      */
     public RpcResponse(RpcError error, Object id) {
         this.result = null;
+        this.rawResult = null;
         this.error = error;
-        this.id = id;
+        this.id = RpcId.toPlain(id);
     }
 
     public String getJsonrpc() {
         return jsonrpc;
     }
 
+    /**
+     * Get the result, parsing it on the first call if the response was created from raw JSON
+     */
     @Nullable
     public JsonElement getResult() {
-        return result;
+        JsonElement value = result;
+        if (value == null && rawResult != null) {
+            synchronized (this) {
+                value = result;
+                if (value == null) {
+                    result = value = rawResult.parse();
+                }
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Get the pre-encoded result the response was created with
+     *
+     * @return Raw result, or null if the response was created from a tree or is an error
+     */
+    @Nullable
+    public RawJson getRawResult() {
+        return rawResult;
     }
 
     @Nullable
@@ -53,6 +93,27 @@ public class RpcResponse {
         return id;
     }
 
+    /**
+     * Get the ID as a value type
+     *
+     * @return ID; null if the server could not determine it and for non-integral numbers such
+     *         as {@code 1.5}, which {@link #getId()} returns as received
+     */
+    @Nullable
+    public RpcId getRpcId() {
+        return RpcId.tryFrom(id);
+    }
+
+    /**
+     * Check if this response answers a request, comparing IDs by value
+     *
+     * A request sent with the ID {@code 1} (Long or Integer) is answered by a response whose
+     * ID was read back as any integral number 1, but not as the string {@code "1"}.
+     */
+    public boolean answers(RpcRequest request) {
+        return id != null && RpcId.sameValue(id, request.getId());
+    }
+
     /**
      * Check if this response is an error
      */
@@ -72,7 +133,7 @@ public class RpcResponse {
         if (isError()) {
             return String.format("RpcResponse{error=%s, id=%s}", error, id);
         } else {
-            return String.format("RpcResponse{result=%s, id=%s}", result, id);
+            return String.format("RpcResponse{result=%s, id=%s}", rawResult != null ? rawResult : result, id);
         }
     }
 }
@@ -1,11 +1,24 @@
 package it.carpanese.rpc.core;
 
 import com.google.gson.*;
-
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.StringReader;
 import java.lang.reflect.Type;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
 import java.time.Instant;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * JSON-RPC 2.0 Serializer with Safe Mode support
@@ -14,11 +27,18 @@ import java.time.format.DateTimeFormatter;
  * - Strings: "hello" -> "S:hello"
  * - Dates: ISO 8601 -> "D:2025-11-26T10:30:00Z"
  * - BigInteger: 123456789 -> "123456789n"
+ *
+ * The String APIs always produce JSON text; the byte APIs use the configured {@link RpcCodec}.
+ * Binary codecs carry these types natively, so Safe Mode markers only apply to JSON.
  */
 public class RpcSerializer {
 
+    private static final Type REQUEST_LIST_TYPE = new TypeToken<List<RpcRequest>>() { }.getType();
+    private static final Type RESPONSE_LIST_TYPE = new TypeToken<List<RpcResponse>>() { }.getType();
+
     private final Gson gson;
     private final boolean safeMode;
+    private final RpcCodec codec;
 
     /**
      * Creates a new serializer
@@ -26,11 +46,23 @@ public class RpcSerializer {
      * @param safeMode Enable type-safe serialization with prefixes
      */
     public RpcSerializer(boolean safeMode) {
-        this.safeMode = safeMode;
+        this(safeMode, JsonRpcCodec.INSTANCE);
+    }
 
-        GsonBuilder builder = new GsonBuilder();
+    /**
+     * Creates a new serializer for a wire encoding
+     *
+     * @param safeMode Enable type-safe serialization with prefixes (ignored for binary codecs)
+     * @param codec Encoding used by the byte APIs
+     */
+    public RpcSerializer(boolean safeMode, RpcCodec codec) {
+        this.codec = codec;
+        this.safeMode = safeMode && !codec.isBinary();
 
-        if (safeMode) {
+        GsonBuilder builder = new GsonBuilder()
+                .registerTypeAdapterFactory(new RpcTypeAdapterFactory(this.safeMode));
+
+        if (this.safeMode) {
             // Register custom serializers for Safe Mode
             builder.registerTypeAdapter(String.class, new SafeStringSerializer());
             builder.registerTypeAdapter(Instant.class, new SafeDateSerializer());
@@ -53,44 +85,21 @@ public class RpcSerializer {
      * Serialize object to JSON string
      */
     public String toJson(Object obj) {
-        if (obj instanceof RpcRequest request) {
-            return gson.toJson(toSafeRequestJson(request));
-        }
-
-        if (safeMode) {
-            if (obj instanceof RpcResponse response) {
-                return gson.toJson(toSafeResponseJson(response));
-            }
-            if (obj instanceof RpcError error) {
-                return gson.toJson(toSafeErrorJson(error));
-            }
-        }
-
         return gson.toJson(obj);
     }
 
+    /**
+     * Serialize a batch of requests to a JSON array string
+     */
+    public String toJsonBatch(List<RpcRequest> requests) {
+        return gson.toJson(requests, REQUEST_LIST_TYPE);
+    }
+
     /**
      * Deserialize JSON string to object
      */
     public <T> T fromJson(String json, Class<T> classOfT) throws JsonSyntaxException {
-        if (safeMode) {
-            JsonElement element = JsonParser.parseString(json);
-
-            if (classOfT == RpcRequest.class) {
-                return classOfT.cast(gson.fromJson(fromSafeRequestJson(element), classOfT));
-            }
-            if (classOfT == RpcResponse.class) {
-                return classOfT.cast(gson.fromJson(fromSafeResponseJson(element), classOfT));
-            }
-            if (classOfT == RpcError.class) {
-                return classOfT.cast(gson.fromJson(fromSafeErrorJson(element), classOfT));
-            }
-            if (classOfT == JsonElement.class) {
-                return classOfT.cast(decodeSafe(element));
-            }
-        }
-
-        return gson.fromJson(json, classOfT);
+        return classOfT.cast(read(new StringReader(json), classOfT));
     }
 
     /**
@@ -100,6 +109,100 @@ public class RpcSerializer {
         return gson.fromJson(json, typeOfT);
     }
 
+    /**
+     * Deserialize a JSON array of responses, as returned for batch requests
+     *
+     * @return Responses in payload order, empty if the payload is empty
+     */
+    public List<RpcResponse> fromJsonBatch(String json) throws JsonSyntaxException {
+        return readBatch(new StringReader(json));
+    }
+
+    /**
+     * Serialize object with the codec directly to a stream, without an intermediate String
+     *
+     * @param obj Object to serialize
+     * @param out Target stream (flushed, not closed)
+     */
+    public void writeTo(Object obj, OutputStream out) throws IOException {
+        if (obj == null) {
+            write(JsonNull.INSTANCE, JsonElement.class, out);
+        } else {
+            write(obj, obj.getClass(), out);
+        }
+    }
+
+    /**
+     * Serialize a batch of requests as an array with the codec directly to a stream
+     */
+    public void writeBatchTo(List<RpcRequest> requests, OutputStream out) throws IOException {
+        write(requests, REQUEST_LIST_TYPE, out);
+    }
+
+    /**
+     * Serialize object with the codec into a heap buffer
+     *
+     * @return Buffer positioned at the start of the encoded bytes
+     */
+    public ByteBuffer toByteBuffer(Object obj) {
+        ByteBufferOutputStream out = new ByteBufferOutputStream();
+        try {
+            writeTo(obj, out);
+        } catch (IOException e) {
+            throw new JsonIOException(e);
+        }
+        return out.toByteBuffer();
+    }
+
+    /**
+     * Deserialize with the codec directly from a stream
+     *
+     * @param in Source stream (not closed)
+     * @param classOfT Target class
+     */
+    public <T> T readFrom(InputStream in, Class<T> classOfT) throws JsonSyntaxException {
+        return classOfT.cast(read(codec.newReader(in), classOfT));
+    }
+
+    /**
+     * Deserialize with the codec directly from a stream with type
+     */
+    public <T> T readFrom(InputStream in, Type typeOfT) throws JsonSyntaxException {
+        return read(codec.newReader(in), typeOfT);
+    }
+
+    /**
+     * Deserialize with the codec from the remaining bytes of a buffer
+     *
+     * The buffer position is not modified.
+     */
+    public <T> T readFrom(ByteBuffer buffer, Class<T> classOfT) throws JsonSyntaxException {
+        return readFrom(ByteBufferOutputStream.asInputStream(buffer), classOfT);
+    }
+
+    /**
+     * Deserialize an array of responses with the codec directly from a stream
+     *
+     * @return Responses in payload order, empty if the payload is empty
+     */
+    public List<RpcResponse> readBatchFrom(InputStream in) throws JsonSyntaxException {
+        return readBatch(codec.newReader(in));
+    }
+
+    /**
+     * Get the codec used by the byte APIs
+     */
+    public RpcCodec getCodec() {
+        return codec;
+    }
+
+    /**
+     * Get the underlying Gson instance, with the envelope adapters registered
+     */
+    public Gson getGson() {
+        return gson;
+    }
+
     /**
      * Parse JSON string to JsonElement
      */
@@ -109,10 +212,12 @@ public class RpcSerializer {
 
     /**
      * Encode a JsonElement recursively using Safe Mode markers.
+     *
+     * Returns the value itself when safe mode is disabled.
      */
     public JsonElement encodeSafe(JsonElement value) {
         if (!safeMode || value == null || value.isJsonNull()) {
-            return value == null ? JsonNull.INSTANCE : value.deepCopy();
+            return value == null ? JsonNull.INSTANCE : value;
         }
 
         if (value.isJsonArray()) {
@@ -133,24 +238,21 @@ public class RpcSerializer {
 
         JsonPrimitive primitive = value.getAsJsonPrimitive();
         if (primitive.isString()) {
-            return new JsonPrimitive("S:" + primitive.getAsString());
-        }
-        if (primitive.isBoolean()) {
-            return new JsonPrimitive(primitive.getAsBoolean());
-        }
-        if (primitive.isNumber()) {
-            return new JsonPrimitive(primitive.getAsNumber());
+            return new JsonPrimitive(SafeModeCodec.encodeString(primitive.getAsString()));
         }
 
-        return value.deepCopy();
+        // Primitives are immutable, no need to copy them
+        return primitive;
     }
 
     /**
      * Decode a JsonElement recursively from Safe Mode markers.
+     *
+     * Returns the value itself when safe mode is disabled.
      */
     public JsonElement decodeSafe(JsonElement value) {
         if (!safeMode || value == null || value.isJsonNull()) {
-            return value == null ? JsonNull.INSTANCE : value.deepCopy();
+            return value == null ? JsonNull.INSTANCE : value;
         }
 
         if (value.isJsonArray()) {
@@ -171,90 +273,98 @@ public class RpcSerializer {
 
         JsonPrimitive primitive = value.getAsJsonPrimitive();
         if (!primitive.isString()) {
-            return value.deepCopy();
-        }
-
-        String stringValue = primitive.getAsString();
-        if (stringValue.startsWith("S:")) {
-            return new JsonPrimitive(stringValue.substring(2));
-        }
-        if (stringValue.startsWith("D:")) {
-            return new JsonPrimitive(stringValue.substring(2));
+            return primitive;
         }
 
-        return new JsonPrimitive(stringValue);
+        return new JsonPrimitive(SafeModeCodec.decodeString(primitive.getAsString()));
     }
 
     /**
      * Check if safe mode is enabled
+     *
+     * Always false for binary codecs, which need no markers.
      */
     public boolean isSafeMode() {
         return safeMode;
     }
 
-    private JsonObject toSafeRequestJson(RpcRequest request) {
-        JsonObject result = new JsonObject();
-        result.addProperty("jsonrpc", request.getJsonrpc());
-        result.addProperty("method", request.getMethod());
-        if (request.getParams() != null && !request.getParams().isJsonNull()) {
-            result.add("params", encodeSafe(request.getParams()));
-        }
-        if (request.getId() != null) {
-            result.add("id", gson.toJsonTree(request.getId()));
+    private void write(Object obj, Type typeOfObj, OutputStream out) throws IOException {
+        JsonWriter writer = codec.newWriter(out);
+        try {
+            gson.toJson(obj, typeOfObj, writer);
+        } catch (JsonIOException e) {
+            if (e.getCause() instanceof IOException io) {
+                throw io;
+            }
+            throw e;
         }
-        return result;
+        writer.flush();
     }
 
-    private JsonElement fromSafeRequestJson(JsonElement element) {
-        JsonObject result = element.getAsJsonObject().deepCopy();
-        if (result.has("params")) {
-            result.add("params", decodeSafe(result.get("params")));
-        }
-        return result;
+    private <T> T read(Reader in, Type typeOfT) throws JsonSyntaxException {
+        JsonReader reader = gson.newJsonReader(in);
+        reader.setLenient(true);
+        return read(reader, typeOfT);
     }
 
-    private JsonObject toSafeResponseJson(RpcResponse response) {
-        JsonObject result = new JsonObject();
-        result.addProperty("jsonrpc", response.getJsonrpc());
-        if (response.isError()) {
-            result.add("error", toSafeErrorJson(response.getError()));
-        } else {
-            result.add("result", encodeSafe(response.getResult()));
+    @SuppressWarnings("unchecked")
+    private <T> T read(JsonReader reader, Type typeOfT) throws JsonSyntaxException {
+        try {
+            T value;
+            if (safeMode && typeOfT == JsonElement.class) {
+                value = (T) SafeModeCodec.read(reader);
+            } else if (codec.isBinary() && !hasStreamingAdapter(typeOfT)) {
+                // Gson's map adapters promote names to values through JsonReader internals that a
+                // binary reader cannot back, so other types are bound from a decoded tree
+                value = gson.fromJson(gson.getAdapter(JsonElement.class).read(reader), typeOfT);
+            } else {
+                value = gson.fromJson(reader, typeOfT);
+            }
+            if (reader.peek() != JsonToken.END_DOCUMENT) {
+                throw new JsonSyntaxException("Did not consume the entire document.");
+            }
+            return value;
+        } catch (IOException | IllegalStateException | NumberFormatException | ArithmeticException e) {
+            throw new JsonSyntaxException(e);
         }
-        result.add("id", response.getId() == null ? JsonNull.INSTANCE : gson.toJsonTree(response.getId()));
-        return result;
     }
 
-    private JsonElement fromSafeResponseJson(JsonElement element) {
-        JsonObject result = element.getAsJsonObject().deepCopy();
-        if (result.has("result")) {
-            result.add("result", decodeSafe(result.get("result")));
-        }
-        if (result.has("error") && result.get("error").isJsonObject()) {
-            result.add("error", fromSafeErrorJson(result.get("error")));
-        }
-        return result;
+    /**
+     * Check if a type is read by the envelope adapters or as a tree, which never promote names
+     */
+    private static boolean hasStreamingAdapter(Type type) {
+        Class<?> rawType = TypeToken.get(type).getRawType();
+        return rawType == RpcRequest.class || rawType == RpcResponse.class || rawType == RpcError.class
+            || rawType == RawJson.class || JsonElement.class.isAssignableFrom(rawType);
     }
 
-    private JsonObject toSafeErrorJson(RpcError error) {
-        JsonObject result = new JsonObject();
-        result.addProperty("code", error.getCode());
-        result.add("message", encodeSafe(new JsonPrimitive(error.getMessage())));
-        if (error.getData() != null && !error.getData().isJsonNull()) {
-            result.add("data", encodeSafe(error.getData()));
-        }
-        return result;
+    private List<RpcResponse> readBatch(Reader in) throws JsonSyntaxException {
+        JsonReader reader = gson.newJsonReader(in);
+        reader.setLenient(true);
+        return readBatch(reader);
     }
 
-    private JsonElement fromSafeErrorJson(JsonElement element) {
-        JsonObject result = element.getAsJsonObject().deepCopy();
-        if (result.has("message")) {
-            result.add("message", decodeSafe(result.get("message")));
-        }
-        if (result.has("data")) {
-            result.add("data", decodeSafe(result.get("data")));
+    private List<RpcResponse> readBatch(JsonReader reader) throws JsonSyntaxException {
+        try {
+            JsonToken token;
+            try {
+                token = reader.peek();
+            } catch (EOFException e) {
+                // Empty payload, e.g. a batch made only of notifications
+                return new ArrayList<>();
+            }
+            if (token != JsonToken.BEGIN_ARRAY) {
+                throw new JsonSyntaxException("Batch response must be a JSON array");
+            }
+
+            List<RpcResponse> responses = gson.fromJson(reader, RESPONSE_LIST_TYPE);
+            if (reader.peek() != JsonToken.END_DOCUMENT) {
+                throw new JsonSyntaxException("Did not consume the entire document.");
+            }
+            return responses;
+        } catch (IOException | IllegalStateException | NumberFormatException | ArithmeticException e) {
+            throw new JsonSyntaxException(e);
         }
-        return result;
     }
 
     // Safe Mode Serializers
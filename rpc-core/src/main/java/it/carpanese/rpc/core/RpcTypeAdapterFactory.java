@@ -0,0 +1,308 @@
+package it.carpanese.rpc.core;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+
+/**
+ * Streaming Gson adapters for the JSON-RPC envelope types
+ *
+ * Writes {@link RpcRequest}, {@link RpcResponse} and {@link RpcError} directly to a
+ * {@link JsonWriter} (and reads them from a {@link JsonReader}) instead of going through
+ * Gson's reflective adapter or an intermediate {@code JsonObject}. In safe mode the
+ * payload values are encoded and decoded inline with {@link SafeModeCodec}.
+ *
+ * Register it on every Gson instance that handles RPC envelopes:
+ * <pre>
+ * Gson gson = new GsonBuilder()
+ *     .registerTypeAdapterFactory(new RpcTypeAdapterFactory(safeMode))
+ *     .create();
+ * </pre>
+ */
+public class RpcTypeAdapterFactory implements TypeAdapterFactory {
+
+    private static final Gson ID_GSON = new Gson();
+
+    private final boolean safeMode;
+
+    /**
+     * Creates a new adapter factory
+     *
+     * @param safeMode Apply Safe Mode markers to params, results and error payloads
+     */
+    public RpcTypeAdapterFactory(boolean safeMode) {
+        this.safeMode = safeMode;
+    }
+
+    /**
+     * Check if safe mode is enabled
+     */
+    public boolean isSafeMode() {
+        return safeMode;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+        Class<? super T> rawType = type.getRawType();
+        if (rawType == RpcRequest.class) {
+            return (TypeAdapter<T>) new RequestAdapter(gson.getAdapter(JsonElement.class)).nullSafe();
+        }
+        if (rawType == RpcResponse.class) {
+            return (TypeAdapter<T>) new ResponseAdapter(gson.getAdapter(JsonElement.class)).nullSafe();
+        }
+        if (rawType == RpcError.class) {
+            return (TypeAdapter<T>) new ErrorAdapter(gson.getAdapter(JsonElement.class)).nullSafe();
+        }
+        if (rawType == RawJson.class) {
+            return (TypeAdapter<T>) new RawJsonAdapter().nullSafe();
+        }
+        return null;
+    }
+
+    /**
+     * Splice a pre-encoded value, converting its Safe Mode markers only when they do not match
+     */
+    private void writeRaw(RawJson raw, JsonWriter out) throws IOException {
+        if (raw.isSafeEncoded() == safeMode) {
+            out.jsonValue(raw.getJson());
+            return;
+        }
+
+        JsonReader in = new JsonReader(new StringReader(raw.getJson()));
+        in.setLenient(true);
+        if (safeMode) {
+            SafeModeCodec.encode(in, out);
+        } else {
+            SafeModeCodec.decode(in, out);
+        }
+    }
+
+    private abstract class EnvelopeAdapter<T> extends TypeAdapter<T> {
+
+        private final TypeAdapter<JsonElement> elementAdapter;
+
+        EnvelopeAdapter(TypeAdapter<JsonElement> elementAdapter) {
+            this.elementAdapter = elementAdapter;
+        }
+
+        void writeValue(JsonElement value, JsonWriter out) throws IOException {
+            if (safeMode) {
+                SafeModeCodec.write(value, out);
+            } else {
+                elementAdapter.write(out, value);
+            }
+        }
+
+        JsonElement readValue(JsonReader in) throws IOException {
+            return safeMode ? SafeModeCodec.read(in) : elementAdapter.read(in);
+        }
+
+        /**
+         * Write a member that JSON-RPC requires even when null, regardless of the
+         * writer's serializeNulls setting
+         */
+        void writeRequiredNull(JsonWriter out, String name) throws IOException {
+            boolean serializeNulls = out.getSerializeNulls();
+            out.setSerializeNulls(true);
+            out.name(name).nullValue();
+            out.setSerializeNulls(serializeNulls);
+        }
+
+        /**
+         * IDs identify the call, they are never Safe Mode encoded
+         */
+        void writeId(Object id, JsonWriter out) throws IOException {
+            if (id == null) {
+                writeRequiredNull(out, "id");
+                return;
+            }
+
+            out.name("id");
+            if (id instanceof String stringId) {
+                out.value(stringId);
+            } else if (id instanceof Long longId) {
+                out.value(longId.longValue());
+            } else if (id instanceof RpcId rpcId) {
+                rpcId.writeTo(out);
+            } else if (id instanceof Number numberId) {
+                out.value(numberId);
+            } else {
+                ID_GSON.toJson(id, id.getClass(), out);
+            }
+        }
+
+        void writeError(RpcError error, JsonWriter out) throws IOException {
+            out.beginObject();
+            out.name("code").value(error.getCode());
+            out.name("message").value(safeMode ? SafeModeCodec.encodeString(error.getMessage()) : error.getMessage());
+            if (error.getData() != null && !error.getData().isJsonNull()) {
+                out.name("data");
+                writeValue(error.getData(), out);
+            }
+            out.endObject();
+        }
+
+        RpcError readError(JsonReader in) throws IOException {
+            int code = 0;
+            String message = null;
+            JsonElement data = null;
+
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "code" -> code = in.nextInt();
+                    case "message" -> {
+                        String value = in.nextString();
+                        message = safeMode ? SafeModeCodec.decodeString(value) : value;
+                    }
+                    case "data" -> data = readValue(in);
+                    default -> in.skipValue();
+                }
+            }
+            in.endObject();
+
+            return new RpcError(code, message, data);
+        }
+    }
+
+    private final class RequestAdapter extends EnvelopeAdapter<RpcRequest> {
+
+        private final RpcEnvelopeParser parser = new RpcEnvelopeParser(safeMode);
+
+        RequestAdapter(TypeAdapter<JsonElement> elementAdapter) {
+            super(elementAdapter);
+        }
+
+        @Override
+        public void write(JsonWriter out, RpcRequest request) throws IOException {
+            out.beginObject();
+            out.name("jsonrpc").value(request.getJsonrpc());
+            out.name("method").value(request.getMethod());
+            RawJson undecoded = request.getUndecodedParams();
+            if (undecoded != null) {
+                // Forwarded untouched, no need to build the tree
+                out.name("params");
+                writeRaw(undecoded, out);
+            } else if (request.getParams() != null && !request.getParams().isJsonNull()) {
+                out.name("params");
+                writeValue(request.getParams(), out);
+            }
+            // Notifications omit the id entirely
+            if (request.getId() != null) {
+                writeId(request.getId(), out);
+            }
+            out.endObject();
+        }
+
+        @Override
+        public RpcRequest read(JsonReader in) throws IOException {
+            RpcEnvelope.Entry entry = parser.readEntry(in);
+            if (!entry.isValid()) {
+                throw new JsonSyntaxException("Invalid JSON-RPC request: " + entry.getError().getMessage());
+            }
+            return entry.getRequest();
+        }
+    }
+
+    private final class ResponseAdapter extends EnvelopeAdapter<RpcResponse> {
+
+        ResponseAdapter(TypeAdapter<JsonElement> elementAdapter) {
+            super(elementAdapter);
+        }
+
+        @Override
+        public void write(JsonWriter out, RpcResponse response) throws IOException {
+            out.beginObject();
+            out.name("jsonrpc").value(response.getJsonrpc());
+            if (response.isError()) {
+                out.name("error");
+                writeError(response.getError(), out);
+            } else if (response.getRawResult() != null) {
+                out.name("result");
+                writeRaw(response.getRawResult(), out);
+            } else if (response.getResult() == null || response.getResult().isJsonNull()) {
+                writeRequiredNull(out, "result");
+            } else {
+                out.name("result");
+                writeValue(response.getResult(), out);
+            }
+            writeId(response.getId(), out);
+            out.endObject();
+        }
+
+        @Override
+        public RpcResponse read(JsonReader in) throws IOException {
+            JsonElement result = null;
+            RpcError error = null;
+            Object id = null;
+
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "result" -> result = readValue(in);
+                    case "error" -> {
+                        if (in.peek() == JsonToken.NULL) {
+                            in.nextNull();
+                        } else {
+                            error = readError(in);
+                        }
+                    }
+                    case "id" -> id = RpcEnvelopeParser.readId(in);
+                    default -> in.skipValue();
+                }
+            }
+            in.endObject();
+
+            return error != null ? new RpcResponse(error, id) : new RpcResponse(result, id);
+        }
+    }
+
+    private final class ErrorAdapter extends EnvelopeAdapter<RpcError> {
+
+        ErrorAdapter(TypeAdapter<JsonElement> elementAdapter) {
+            super(elementAdapter);
+        }
+
+        @Override
+        public void write(JsonWriter out, RpcError error) throws IOException {
+            writeError(error, out);
+        }
+
+        @Override
+        public RpcError read(JsonReader in) throws IOException {
+            return readError(in);
+        }
+    }
+
+    /**
+     * Writes raw values verbatim and reads a value back as the text of its subtree
+     */
+    private final class RawJsonAdapter extends TypeAdapter<RawJson> {
+
+        @Override
+        public void write(JsonWriter out, RawJson value) throws IOException {
+            writeRaw(value, out);
+        }
+
+        @Override
+        public RawJson read(JsonReader in) throws IOException {
+            StringWriter buffer = new StringWriter();
+            JsonWriter writer = new JsonWriter(buffer);
+            SafeModeCodec.copy(in, writer);
+            writer.flush();
+            // Markers are copied as they are, so the text is encoded exactly like the input
+            return safeMode ? RawJson.ofSafe(buffer.toString()) : RawJson.of(buffer.toString());
+        }
+    }
+}
@@ -0,0 +1,281 @@
+package it.carpanese.rpc.core;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.function.UnaryOperator;
+
+/**
+ * Single-pass Safe Mode codec
+ *
+ * Adds and strips the Safe Mode string markers while values stream between a
+ * {@link JsonReader} and a {@link JsonWriter}, so payloads are never copied into an
+ * intermediate tree and never serialized twice.
+ *
+ * Marker rules:
+ * - Encoding prefixes every string with "S:"
+ * - Decoding strips a leading "S:" or "D:" and leaves other strings untouched
+ * - Numbers, booleans and null pass through unchanged
+ */
+public final class SafeModeCodec {
+
+    public static final String STRING_PREFIX = "S:";
+    public static final String DATE_PREFIX = "D:";
+    public static final String BIGINT_SUFFIX = "n";
+
+    private SafeModeCodec() {
+    }
+
+    /**
+     * Add the Safe Mode marker to a string value
+     */
+    public static String encodeString(String value) {
+        return STRING_PREFIX + value;
+    }
+
+    /**
+     * Strip the Safe Mode marker from a string value
+     */
+    public static String decodeString(String value) {
+        if (value.startsWith(STRING_PREFIX) || value.startsWith(DATE_PREFIX)) {
+            return value.substring(2);
+        }
+        return value;
+    }
+
+    /**
+     * Copy the next value from {@code in} to {@code out}, adding Safe Mode markers
+     */
+    public static void encode(JsonReader in, JsonWriter out) throws IOException {
+        transcode(in, out, SafeModeCodec::encodeString);
+    }
+
+    /**
+     * Copy the next value from {@code in} to {@code out}, stripping Safe Mode markers
+     */
+    public static void decode(JsonReader in, JsonWriter out) throws IOException {
+        transcode(in, out, SafeModeCodec::decodeString);
+    }
+
+    /**
+     * Copy the next value from {@code in} to {@code out} unchanged
+     */
+    static void copy(JsonReader in, JsonWriter out) throws IOException {
+        transcode(in, out, UnaryOperator.identity());
+    }
+
+    /**
+     * Write a JsonElement with Safe Mode markers added inline
+     *
+     * Open containers are kept on an explicit stack, so deeply nested trees cannot
+     * exhaust the thread stack.
+     */
+    public static void write(JsonElement value, JsonWriter out) throws IOException {
+        Deque<Container> open = new ArrayDeque<>();
+        Container opened = begin(value, out);
+        if (opened == null) {
+            return;
+        }
+        open.push(opened);
+        while (!open.isEmpty()) {
+            Container current = open.peek();
+            if (!current.items().hasNext()) {
+                open.pop();
+                if (current.object()) {
+                    out.endObject();
+                } else {
+                    out.endArray();
+                }
+                continue;
+            }
+            Object item = current.items().next();
+            JsonElement next;
+            if (item instanceof Map.Entry<?, ?> entry) {
+                out.name((String) entry.getKey());
+                next = (JsonElement) entry.getValue();
+            } else {
+                next = (JsonElement) item;
+            }
+            opened = begin(next, out);
+            if (opened != null) {
+                open.push(opened);
+            }
+        }
+    }
+
+    /**
+     * Read the next value into a JsonElement with Safe Mode markers stripped
+     *
+     * Open containers are kept on an explicit stack, so deeply nested input cannot
+     * exhaust the thread stack.
+     */
+    public static JsonElement read(JsonReader in) throws IOException {
+        JsonElement current = beginRead(in);
+        if (current == null) {
+            return readTerminal(in);
+        }
+        Deque<JsonElement> open = new ArrayDeque<>();
+        while (true) {
+            while (in.hasNext()) {
+                String name = current.isJsonObject() ? in.nextName() : null;
+                JsonElement value = beginRead(in);
+                boolean nested = value != null;
+                if (!nested) {
+                    value = readTerminal(in);
+                }
+                if (name != null) {
+                    current.getAsJsonObject().add(name, value);
+                } else {
+                    current.getAsJsonArray().add(value);
+                }
+                if (nested) {
+                    open.push(current);
+                    current = value;
+                }
+            }
+            if (current.isJsonObject()) {
+                in.endObject();
+            } else {
+                in.endArray();
+            }
+            if (open.isEmpty()) {
+                return current;
+            }
+            current = open.pop();
+        }
+    }
+
+    /**
+     * An array or object being written, with the items still to go
+     */
+    private record Container(boolean object, Iterator<?> items) {
+    }
+
+    /**
+     * Open {@code value} if it is a container, otherwise write it whole and return null
+     */
+    private static Container begin(JsonElement value, JsonWriter out) throws IOException {
+        if (value == null || value.isJsonNull()) {
+            out.nullValue();
+        } else if (value.isJsonArray()) {
+            out.beginArray();
+            return new Container(false, value.getAsJsonArray().iterator());
+        } else if (value.isJsonObject()) {
+            out.beginObject();
+            return new Container(true, value.getAsJsonObject().entrySet().iterator());
+        } else {
+            JsonPrimitive primitive = value.getAsJsonPrimitive();
+            if (primitive.isString()) {
+                out.value(encodeString(primitive.getAsString()));
+            } else if (primitive.isBoolean()) {
+                out.value(primitive.getAsBoolean());
+            } else {
+                out.value(primitive.getAsNumber());
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Consume the opening token of an array or object, or return null for any other value
+     */
+    private static JsonElement beginRead(JsonReader in) throws IOException {
+        switch (in.peek()) {
+            case BEGIN_ARRAY -> {
+                in.beginArray();
+                return new JsonArray();
+            }
+            case BEGIN_OBJECT -> {
+                in.beginObject();
+                return new JsonObject();
+            }
+            default -> {
+                return null;
+            }
+        }
+    }
+
+    private static JsonElement readTerminal(JsonReader in) throws IOException {
+        switch (in.peek()) {
+            case STRING -> {
+                return new JsonPrimitive(decodeString(in.nextString()));
+            }
+            case NULL -> {
+                in.nextNull();
+                return JsonNull.INSTANCE;
+            }
+            default -> {
+                // Numbers and booleans keep Gson's own representation
+                return JsonParser.parseReader(in);
+            }
+        }
+    }
+
+    /**
+     * Loops over tokens instead of recursing, so nesting depth is bounded only by the
+     * reader's own stack and deeply nested input cannot exhaust the thread stack
+     */
+    private static void transcode(JsonReader in, JsonWriter out, UnaryOperator<String> strings) throws IOException {
+        int depth = 0;
+        do {
+            JsonToken token = in.peek();
+            switch (token) {
+                case BEGIN_ARRAY -> {
+                    in.beginArray();
+                    out.beginArray();
+                    depth++;
+                }
+                case BEGIN_OBJECT -> {
+                    in.beginObject();
+                    out.beginObject();
+                    depth++;
+                }
+                case END_ARRAY -> {
+                    checkOpen(depth, token);
+                    in.endArray();
+                    out.endArray();
+                    depth--;
+                }
+                case END_OBJECT -> {
+                    checkOpen(depth, token);
+                    in.endObject();
+                    out.endObject();
+                    depth--;
+                }
+                case NAME -> {
+                    checkOpen(depth, token);
+                    out.name(in.nextName());
+                }
+                case STRING -> {
+                    String value = in.nextString();
+                    out.value(strings.apply(value));
+                }
+                case NUMBER -> out.jsonValue(in.nextString());
+                case BOOLEAN -> out.value(in.nextBoolean());
+                case NULL -> {
+                    in.nextNull();
+                    out.nullValue();
+                }
+                default -> throw new IllegalStateException("Unexpected token: " + token);
+            }
+        } while (depth > 0);
+    }
+
+    private static void checkOpen(int depth, JsonToken token) {
+        if (depth == 0) {
+            throw new IllegalStateException("Unexpected token: " + token);
+        }
+    }
+}
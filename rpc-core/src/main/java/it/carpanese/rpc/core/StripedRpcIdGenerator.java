@@ -0,0 +1,54 @@
+package it.carpanese.rpc.core;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free ID generator spreading contention over per-thread stripes
+ *
+ * Stripe {@code s} of {@code n} hands out {@code s + 1, s + 1 + n, s + 1 + 2n, ...}, so IDs are
+ * unique across stripes without any shared counter. Stripes sit a cache line apart to avoid
+ * false sharing. IDs start at 1 and stay far below 2^53, which JavaScript peers read exactly.
+ */
+final class StripedRpcIdGenerator implements RpcIdGenerator {
+
+    static final StripedRpcIdGenerator SHARED = new StripedRpcIdGenerator();
+
+    // 16 longs = 128 bytes between stripes, covering adjacent-line prefetch
+    private static final int PADDING = 16;
+
+    private final int stripes;
+    private final AtomicLongArray counters;
+
+    StripedRpcIdGenerator() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    StripedRpcIdGenerator(int parallelism) {
+        int n = Integer.highestOneBit(Math.max(1, Math.min(parallelism, 64)) * 2 - 1);
+        this.stripes = n;
+        this.counters = new AtomicLongArray(n * PADDING);
+    }
+
+    @Override
+    public RpcId nextId() {
+        return RpcId.of(next());
+    }
+
+    @Override
+    public Object nextValue() {
+        return next();
+    }
+
+    /**
+     * Next ID as a primitive, for callers that do not need the value object
+     */
+    @SuppressWarnings("deprecation") // Thread.threadId() is not available on Android
+    long next() {
+        int stripe = (int) (Thread.currentThread().getId() & (stripes - 1));
+        return counters.getAndIncrement(stripe * PADDING) * stripes + stripe + 1;
+    }
+
+    int getStripes() {
+        return stripes;
+    }
+}
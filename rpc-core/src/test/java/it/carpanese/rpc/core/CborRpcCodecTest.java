@@ -0,0 +1,230 @@
+package it.carpanese.rpc.core;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CborRpcCodecTest {
+
+    private final RpcSerializer serializer = new RpcSerializer(false, CborRpcCodec.INSTANCE);
+
+    @Test
+    void testWriterEncoding() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        JsonWriter writer = CborRpcCodec.INSTANCE.newWriter(out);
+        writer.beginObject().name("a").value(1000).name("b").beginArray().value(-1).value(true).nullValue()
+            .endArray().endObject().flush();
+
+        byte[] expected = {
+            (byte) 0xbf, 0x61, 'a', 0x19, 0x03, (byte) 0xe8,
+            0x61, 'b', (byte) 0x9f, 0x20, (byte) 0xf5, (byte) 0xf6, (byte) 0xff,
+            (byte) 0xff
+        };
+        assertArrayEquals(expected, out.toByteArray());
+    }
+
+    @Test
+    void testReaderDecodesDefiniteLengthsAndTags() {
+        // {"t": 1(1363896240), "big": 2(h'010000000000000000'), "f": 1.5 (half)}
+        byte[] cbor = {
+            (byte) 0xa3,
+            0x61, 't', (byte) 0xc1, 0x1a, 0x51, 0x4b, 0x67, (byte) 0xb0,
+            0x63, 'b', 'i', 'g', (byte) 0xc2, 0x49, 0x01, 0, 0, 0, 0, 0, 0, 0, 0,
+            0x61, 'f', (byte) 0xf9, 0x3e, 0x00
+        };
+
+        JsonObject value = serializer.readFrom(ByteBuffer.wrap(cbor), JsonElement.class).getAsJsonObject();
+
+        assertEquals("2013-03-21T20:04:00Z", value.get("t").getAsString());
+        assertEquals(new BigInteger("18446744073709551616"), value.get("big").getAsBigInteger());
+        assertEquals(1.5, value.get("f").getAsDouble());
+    }
+
+    @Test
+    void testRequestRoundTrip() {
+        JsonObject params = JsonParser.parseString(
+            "{\"name\":\"S:literal\",\"n\":-42,\"x\":0.25,\"big\":123456789012345678901234567890,\"list\":[1,\"two\",null]}")
+            .getAsJsonObject();
+        RpcRequest request = new RpcRequest("calc", params, 7L);
+
+        RpcRequest decoded = serializer.readFrom(serializer.toByteBuffer(request), RpcRequest.class);
+
+        assertEquals("calc", decoded.getMethod());
+        assertEquals(7L, decoded.getId());
+        assertEquals(params, decoded.getParams());
+    }
+
+    @Test
+    void testBatchRoundTrip() throws IOException {
+        List<RpcResponse> responses = Arrays.asList(
+            new RpcResponse(new JsonPrimitive("ok"), 1L),
+            new RpcResponse(new RpcError(RpcError.METHOD_NOT_FOUND, "Method not found"), "b"));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        serializer.writeTo(responses, out);
+
+        List<RpcResponse> decoded = serializer.readBatchFrom(new ByteArrayInputStream(out.toByteArray()));
+
+        assertEquals(2, decoded.size());
+        assertEquals("ok", decoded.get(0).getResult().getAsString());
+        assertEquals(1L, decoded.get(0).getId());
+        assertEquals(RpcError.METHOD_NOT_FOUND, decoded.get(1).getError().getCode());
+        assertEquals("b", decoded.get(1).getId());
+    }
+
+    @Test
+    void testEmptyBatchPayload() {
+        assertTrue(serializer.readBatchFrom(new ByteArrayInputStream(new byte[0])).isEmpty());
+    }
+
+    @Test
+    void testMapRoundTrip() throws IOException {
+        Map<String, Integer> counts = new LinkedHashMap<>();
+        counts.put("a", 1);
+        counts.put("b", 2);
+        Type mapType = new TypeToken<Map<String, Integer>>() { }.getType();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        serializer.writeTo(counts, out);
+
+        Map<String, Integer> decoded = serializer.readFrom(new ByteArrayInputStream(out.toByteArray()), mapType);
+        Tally tally = serializer.readFrom(serializer.toByteBuffer(new Tally("votes", counts)), Tally.class);
+
+        assertEquals(counts, decoded);
+        assertEquals("votes", tally.name);
+        assertEquals(counts, tally.counts);
+    }
+
+    private static final class Tally {
+        String name;
+        Map<String, Integer> counts;
+
+        Tally(String name, Map<String, Integer> counts) {
+            this.name = name;
+            this.counts = counts;
+        }
+    }
+
+    @Test
+    void testSafeModeMarkersNotAppliedToBinary() {
+        RpcSerializer safe = new RpcSerializer(true, CborRpcCodec.INSTANCE);
+        RpcRequest request = new RpcRequest("echo", new JsonPrimitive("S:raw"), 1L);
+
+        RpcRequest decoded = safe.readFrom(safe.toByteBuffer(request), RpcRequest.class);
+
+        assertFalse(safe.isSafeMode());
+        assertEquals("S:raw", decoded.getParams().getAsString());
+    }
+
+    @Test
+    void testTruncatedInputFails() {
+        byte[] cbor = {(byte) 0xbf, 0x61, 'a'};
+
+        assertThrows(com.google.gson.JsonSyntaxException.class,
+            () -> serializer.readFrom(ByteBuffer.wrap(cbor), JsonElement.class));
+    }
+
+    @Test
+    void testJsonValueTranscodedLikeTheTree() throws IOException {
+        String json = "{\"a\":[1,-2,2.5,\"x\",null,true,false,123456789012345678901234567890],\"b\":{},\"c\":[]}";
+
+        ByteArrayOutputStream streamed = new ByteArrayOutputStream();
+        CborRpcCodec.INSTANCE.newWriter(streamed).jsonValue(json).flush();
+        ByteArrayOutputStream tree = new ByteArrayOutputStream();
+        JsonWriter writer = CborRpcCodec.INSTANCE.newWriter(tree);
+        new com.google.gson.Gson().toJson(JsonParser.parseString(json), writer);
+        writer.flush();
+
+        assertArrayEquals(tree.toByteArray(), streamed.toByteArray());
+        assertEquals(JsonParser.parseString(json),
+            serializer.readFrom(ByteBuffer.wrap(streamed.toByteArray()), JsonElement.class));
+        assertThrows(com.google.gson.stream.MalformedJsonException.class,
+            () -> CborRpcCodec.INSTANCE.newWriter(new ByteArrayOutputStream()).jsonValue("[1] 2"));
+    }
+
+    @Test
+    void testHugeDeclaredStringLengthRejectedWithoutAllocating() {
+        // Byte string declaring 2^31 - 1 bytes, text string declaring 2^32 - 1, both followed by 3 bytes
+        byte[] bytes = {0x5a, 0x7f, (byte) 0xff, (byte) 0xff, (byte) 0xff, 1, 2, 3};
+        byte[] text = {0x7b, 0, 0, 0, 0, (byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff, 'a', 'b', 'c'};
+
+        assertThrows(com.google.gson.JsonSyntaxException.class,
+            () -> serializer.readFrom(ByteBuffer.wrap(bytes), JsonElement.class));
+        assertThrows(com.google.gson.JsonSyntaxException.class,
+            () -> serializer.readFrom(ByteBuffer.wrap(text), JsonElement.class));
+    }
+
+    @Test
+    void testDeclaredLengthBeyondInputFailsAtEndOfInput() throws IOException {
+        // Within the limit, but only 3 of the 2^31 - 1 declared bytes are sent
+        CborRpcCodec lenient = CborRpcCodec.withMaxStringLength(Integer.MAX_VALUE);
+        JsonReader reader = lenient.newReader(new ByteArrayInputStream(
+            new byte[] {0x7a, 0x7f, (byte) 0xff, (byte) 0xff, (byte) 0xff, 'a', 'b', 'c'}));
+
+        assertThrows(java.io.EOFException.class, reader::nextString);
+    }
+
+    @Test
+    void testStringLengthLimit() throws IOException {
+        CborRpcCodec limited = CborRpcCodec.withMaxStringLength(4);
+        assertEquals(4, limited.getMaxStringLength());
+        assertEquals("abcd", limited.newReader(new ByteArrayInputStream(
+            new byte[] {0x64, 'a', 'b', 'c', 'd'})).nextString());
+        assertThrows(com.google.gson.stream.MalformedJsonException.class, () -> limited.newReader(
+            new ByteArrayInputStream(new byte[] {0x65, 'a', 'b', 'c', 'd', 'e'})).nextString());
+        // Indefinite-length chunks count together
+        assertThrows(com.google.gson.stream.MalformedJsonException.class, () -> limited.newReader(
+            new ByteArrayInputStream(new byte[] {0x7f, 0x63, 'a', 'b', 'c', 0x62, 'd', 'e', (byte) 0xff})).nextString());
+        assertEquals("abcd", limited.newReader(new ByteArrayInputStream(
+            new byte[] {0x7f, 0x63, 'a', 'b', 'c', 0x61, 'd', (byte) 0xff})).nextString());
+
+        // Strings longer than the read buffer still arrive whole
+        String large = "x".repeat(100_000);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        CborRpcCodec.INSTANCE.newWriter(out).value(large).flush();
+        assertEquals(large, CborRpcCodec.INSTANCE.newReader(new ByteArrayInputStream(out.toByteArray())).nextString());
+    }
+
+    @Test
+    void testEnvelopeParserReadsCbor() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        serializer.writeBatchTo(Arrays.asList(
+            new RpcRequest("a", null, 1L),
+            RpcRequest.notification("b", null)), out);
+
+        JsonReader reader = CborRpcCodec.INSTANCE.newReader(new ByteArrayInputStream(out.toByteArray()));
+        RpcEnvelope envelope = new RpcEnvelopeParser().parse(reader);
+
+        assertTrue(envelope.isBatch());
+        assertEquals(2, envelope.size());
+        assertEquals("a", envelope.getEntries().get(0).getRequest().getMethod());
+        assertNull(envelope.getEntries().get(1).getId());
+    }
+
+    @Test
+    void testNegotiate() {
+        List<RpcCodec> codecs = Arrays.asList(JsonRpcCodec.INSTANCE, CborRpcCodec.INSTANCE);
+
+        assertSame(CborRpcCodec.INSTANCE, RpcCodec.negotiate("Application/CBOR", codecs));
+        assertSame(JsonRpcCodec.INSTANCE, RpcCodec.negotiate("application/json; charset=utf-8", codecs));
+        assertSame(CborRpcCodec.INSTANCE, RpcCodec.negotiate("text/plain, application/cbor;q=0.9", codecs));
+        assertNull(RpcCodec.negotiate("text/plain", codecs));
+        assertNull(RpcCodec.negotiate(null, codecs));
+    }
+}
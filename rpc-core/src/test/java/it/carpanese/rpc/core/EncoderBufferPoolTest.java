@@ -0,0 +1,97 @@
+package it.carpanese.rpc.core;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EncoderBufferPoolTest {
+
+    @Test
+    void testCharsAreReused() throws IOException {
+        EncoderBufferPool pool = new EncoderBufferPool(1, 1 << 20);
+
+        EncoderBufferPool.PooledChars first = pool.acquireChars(16);
+        first.write("{\"a\":1}");
+        assertEquals("{\"a\":1}", first.toString());
+        pool.release(first);
+
+        EncoderBufferPool.PooledChars second = pool.acquireChars(16);
+        assertSame(first, second);
+        assertEquals(0, second.size());
+
+        EncoderBufferPool.Metrics metrics = pool.getMetrics();
+        assertEquals(2, metrics.getAcquired());
+        assertEquals(1, metrics.getReused());
+    }
+
+    @Test
+    void testBytesGrowAndWrapWithoutCopy() throws IOException {
+        EncoderBufferPool pool = new EncoderBufferPool(1, 1 << 20);
+        byte[] payload = new byte[1000];
+        payload[999] = 7;
+
+        EncoderBufferPool.PooledBytes buffer = pool.acquireBytes(0);
+        buffer.write(payload);
+        ByteBuffer bytes = buffer.toByteBuffer();
+
+        assertEquals(1000, buffer.size());
+        assertEquals(1000, bytes.remaining());
+        assertEquals(7, bytes.get(999));
+        assertEquals(1, pool.getMetrics().getGrown());
+        pool.release(buffer);
+    }
+
+    @Test
+    void testOversizedBuffersAreDropped() throws IOException {
+        EncoderBufferPool pool = new EncoderBufferPool(1, 512);
+
+        EncoderBufferPool.PooledBytes buffer = pool.acquireBytes(4096);
+        buffer.write("x".repeat(4096).getBytes(StandardCharsets.UTF_8));
+        pool.release(buffer);
+
+        assertEquals(1, pool.getMetrics().getDropped());
+        assertNotSame(buffer, pool.acquireBytes(16));
+    }
+
+    @Test
+    void testAdaptiveCapacityFollowsRecentSizes() {
+        AdaptiveCapacity capacity = new AdaptiveCapacity(256, 1 << 16, 2);
+
+        assertEquals(256, capacity.estimate("report"));
+        capacity.record("report", 8000);
+        assertEquals(10000, capacity.estimate("report"));
+
+        for (int i = 0; i < 64; i++) {
+            capacity.record("report", 100);
+        }
+        assertEquals(256, capacity.estimate("report"));
+
+        capacity.record("huge", 1 << 24);
+        assertEquals(1 << 16, capacity.estimate("huge"));
+
+        // Key limit reached
+        capacity.record("other", 8000);
+        assertEquals(256, capacity.estimate("other"));
+        assertEquals(256, capacity.estimate(null));
+    }
+
+    @Test
+    void testUntrackedEstimateUsesTheSameBounds() {
+        AdaptiveCapacity capacity = new AdaptiveCapacity(256, 1 << 16, 0);
+        AdaptiveCapacity.Estimate estimate = capacity.newEstimate();
+
+        assertEquals(256, estimate.capacity());
+        estimate.record(8000);
+        assertEquals(10000, estimate.capacity());
+        for (int i = 0; i < 64; i++) {
+            estimate.record(1 << 24);
+        }
+        assertEquals(1 << 16, estimate.capacity());
+        // Not tracked under a key
+        assertEquals(256, capacity.estimate("report"));
+    }
+}
@@ -0,0 +1,143 @@
+package it.carpanese.rpc.core;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonSyntaxException;
+import org.junit.jupiter.api.Test;
+
+import java.util.Objects;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RpcEnvelopeParserTest {
+
+    private final RpcEnvelopeParser parser = new RpcEnvelopeParser();
+
+    @Test
+    void testParseSingleRequest() {
+        RpcEnvelope envelope = parser.parse(
+            "{\"jsonrpc\":\"2.0\",\"method\":\"add\",\"params\":{\"a\":5,\"b\":3},\"id\":1}");
+
+        assertFalse(envelope.isBatch());
+        assertEquals(1, envelope.size());
+
+        RpcRequest request = Objects.requireNonNull(envelope.getEntries().get(0).getRequest());
+        assertEquals("add", request.getMethod());
+        assertEquals(1L, request.getId());
+        JsonObject params = request.getParams().getAsJsonObject();
+        assertEquals(5, params.get("a").getAsInt());
+        assertEquals(3, params.get("b").getAsInt());
+    }
+
+    @Test
+    void testFieldOrderDoesNotMatter() {
+        RpcEnvelope envelope = parser.parse(
+            "{\"id\":\"abc\",\"params\":[1,2],\"extra\":{\"x\":[1]},\"method\":\"sum\",\"jsonrpc\":\"2.0\"}");
+
+        RpcRequest request = Objects.requireNonNull(envelope.getEntries().get(0).getRequest());
+        assertEquals("sum", request.getMethod());
+        assertEquals("abc", request.getId());
+        assertEquals(2, request.getParams().getAsJsonArray().size());
+    }
+
+    @Test
+    void testMissingParamsAndId() {
+        RpcEnvelope envelope = parser.parse("{\"jsonrpc\":\"2.0\",\"method\":\"notify\"}");
+
+        RpcRequest request = Objects.requireNonNull(envelope.getEntries().get(0).getRequest());
+        assertTrue(request.isNotification());
+        assertTrue(request.getParams().isJsonNull());
+    }
+
+    @Test
+    void testParseBatchWithInvalidEntries() {
+        RpcEnvelope envelope = parser.parse("["
+            + "{\"jsonrpc\":\"2.0\",\"method\":\"ping\",\"id\":1},"
+            + "42,"
+            + "{\"jsonrpc\":\"2.0\",\"method\":\"\",\"id\":3},"
+            + "{\"jsonrpc\":\"1.0\",\"method\":\"ping\",\"id\":4}"
+            + "]");
+
+        assertTrue(envelope.isBatch());
+        assertEquals(4, envelope.size());
+        assertTrue(envelope.getEntries().get(0).isValid());
+
+        RpcEnvelope.Entry notAnObject = envelope.getEntries().get(1);
+        assertFalse(notAnObject.isValid());
+        assertNull(notAnObject.getId());
+        assertEquals(RpcError.INVALID_REQUEST, Objects.requireNonNull(notAnObject.getError()).getCode());
+
+        RpcEnvelope.Entry emptyMethod = envelope.getEntries().get(2);
+        assertFalse(emptyMethod.isValid());
+        assertEquals(3L, emptyMethod.getId());
+
+        RpcEnvelope.Entry wrongVersion = envelope.getEntries().get(3);
+        assertFalse(wrongVersion.isValid());
+        assertEquals(4L, wrongVersion.getId());
+    }
+
+    @Test
+    void testNonIntegralIdIsPreserved() {
+        RpcEnvelope envelope = parser.parse("{\"jsonrpc\":\"2.0\",\"method\":\"ping\",\"id\":1.5}");
+
+        RpcRequest request = Objects.requireNonNull(envelope.getEntries().get(0).getRequest());
+        assertEquals("1.5", request.getId().toString());
+    }
+
+    @Test
+    void testMalformedJsonFails() {
+        assertThrows(JsonSyntaxException.class, () -> parser.parse("{invalid json}"));
+        assertThrows(JsonSyntaxException.class, () -> parser.parse("[{\"method\":\"a\"},"));
+        assertThrows(JsonSyntaxException.class, () -> parser.parse("{\"method\":\"a\"} {}"));
+        assertThrows(JsonSyntaxException.class, () -> parser.parse(""));
+    }
+
+    @Test
+    void testSafeModeDecodesParams() {
+        RpcEnvelopeParser safeParser = new RpcEnvelopeParser(new RpcSerializer(true));
+
+        RpcEnvelope envelope = safeParser.parse(
+            "{\"jsonrpc\":\"2.0\",\"method\":\"echo\",\"params\":{\"plain\":\"S:hello\",\"literal\":\"S:S:x\"},\"id\":1}");
+
+        JsonObject params = Objects.requireNonNull(envelope.getEntries().get(0).getRequest())
+            .getParams().getAsJsonObject();
+        assertEquals("hello", params.get("plain").getAsString());
+        assertEquals("S:x", params.get("literal").getAsString());
+    }
+
+    @Test
+    void testParamsAreDecodedLazily() {
+        RpcRequest request = Objects.requireNonNull(parser.parse(
+            "{\"jsonrpc\":\"2.0\",\"method\":\"fwd\",\"params\": {\"a\": [1, 2.50, \"x\"]},\"id\":1}")
+            .getEntries().get(0).getRequest());
+
+        assertNotNull(request.getUndecodedParams());
+        assertEquals("{\"a\":[1,2.50,\"x\"]}", Objects.requireNonNull(request.getRawParams()).getJson());
+
+        JsonObject params = request.getParams().getAsJsonObject();
+        assertNull(request.getUndecodedParams());
+        assertSame(params, request.getParams());
+        assertEquals("x", params.getAsJsonArray("a").get(2).getAsString());
+    }
+
+    @Test
+    void testSafeRawParamsKeepMarkers() {
+        RpcRequest request = Objects.requireNonNull(new RpcEnvelopeParser(true).parse(
+            "{\"jsonrpc\":\"2.0\",\"method\":\"fwd\",\"params\":[\"S:a\"],\"id\":1}")
+            .getEntries().get(0).getRequest());
+
+        RawJson raw = Objects.requireNonNull(request.getRawParams());
+        assertTrue(raw.isSafeEncoded());
+        assertEquals("[\"S:a\"]", raw.getJson());
+        assertEquals("a", request.getParams().getAsJsonArray().get(0).getAsString());
+    }
+
+    @Test
+    void testAbsentParamsHaveNoRawForm() {
+        RpcRequest request = Objects.requireNonNull(parser.parse(
+            "{\"jsonrpc\":\"2.0\",\"method\":\"ping\",\"params\":null,\"id\":1}")
+            .getEntries().get(0).getRequest());
+
+        assertTrue(request.getParams().isJsonNull());
+        assertNull(request.getRawParams());
+    }
+}
@@ -0,0 +1,31 @@
+package it.carpanese.rpc.core;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RpcExceptionTest {
+
+    @Test
+    void testStacklessExceptionSkipsStackTrace() {
+        RpcException exception = RpcException.stackless(RpcError.INVALID_PARAMS, "Amount must be positive");
+
+        assertEquals(0, exception.getStackTrace().length);
+        assertEquals(RpcError.INVALID_PARAMS, exception.getErrorCode());
+        assertEquals("Amount must be positive", exception.getMessage());
+    }
+
+    @Test
+    void testRegularExceptionKeepsStackTrace() {
+        assertTrue(new RpcException(RpcError.INVALID_PARAMS, "x").getStackTrace().length > 0);
+    }
+
+    @Test
+    void testStandardErrorsAreShared() {
+        assertSame(RpcError.parseError(), RpcError.parseError());
+        assertSame(RpcError.methodNotFound(), RpcError.methodNotFound());
+        assertEquals("Method not found", RpcError.methodNotFound().getMessage());
+        assertEquals(RpcError.INTERNAL_ERROR, RpcError.internalError().getCode());
+        assertEquals("Invalid params: a", RpcError.invalidParams("a").getMessage());
+    }
+}
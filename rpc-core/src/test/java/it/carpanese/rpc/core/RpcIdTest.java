@@ -0,0 +1,129 @@
+package it.carpanese.rpc.core;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonPrimitive;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RpcIdTest {
+
+    @Test
+    void testGeneratedIdsAreUniqueAcrossThreads() throws InterruptedException {
+        RpcIdGenerator generator = RpcIdGenerator.striped();
+        Set<Long> ids = ConcurrentHashMap.newKeySet();
+        List<Thread> threads = new ArrayList<>();
+
+        for (int t = 0; t < 8; t++) {
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    ids.add(generator.nextId().longValue());
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(80_000, ids.size());
+        assertFalse(ids.contains(0L));
+    }
+
+    @Test
+    void testStripesInterleave() {
+        StripedRpcIdGenerator generator = new StripedRpcIdGenerator(3);
+        long first = generator.next();
+
+        assertEquals(4, generator.getStripes());
+        assertEquals(first + 4, generator.next());
+    }
+
+    @Test
+    void testVariants() {
+        RpcId numeric = RpcId.of(42);
+        RpcId text = RpcId.of("42");
+
+        assertTrue(numeric.isNumber());
+        assertFalse(text.isNumber());
+        assertNotEquals(numeric, text);
+        assertEquals(numeric, RpcId.from(42));
+        assertEquals(text, RpcId.from("42"));
+        assertTrue(numeric.matches(42L));
+        assertTrue(numeric.matches(new java.math.BigDecimal("42")));
+        assertFalse(numeric.matches("42"));
+        assertTrue(text.matches("42"));
+        assertNull(RpcId.from(null));
+        assertThrows(IllegalStateException.class, text::longValue);
+    }
+
+    @Test
+    void testIdsAreWrittenAsPlainValues() {
+        RpcSerializer serializer = new RpcSerializer();
+
+        assertEquals("{\"jsonrpc\":\"2.0\",\"method\":\"m\",\"id\":7}",
+            serializer.toJson(new RpcRequest("m", null, RpcId.of(7))));
+        assertEquals("{\"jsonrpc\":\"2.0\",\"result\":true,\"id\":\"a\"}",
+            serializer.toJson(new RpcResponse(new JsonPrimitive(true), RpcId.of("a"))));
+        assertEquals("7", new Gson().toJson(RpcId.of(7)));
+        assertEquals(RpcId.of("x"), new Gson().fromJson("\"x\"", RpcId.class));
+    }
+
+    @Test
+    void testFractionalIdsHaveNoRpcId() {
+        RpcRequest request = new RpcEnvelopeParser(false)
+            .parse("{\"jsonrpc\":\"2.0\",\"method\":\"m\",\"id\":1.5}").getEntries().get(0).getRequest();
+        RpcResponse response = new RpcSerializer().fromJson("{\"jsonrpc\":\"2.0\",\"result\":1,\"id\":1.5}",
+            RpcResponse.class);
+
+        assertNull(request.getRpcId());
+        assertEquals(new BigDecimal("1.5"), request.getId());
+        assertNull(response.getRpcId());
+        assertEquals(RpcId.of(2), new RpcRequest("m", null, new BigDecimal("2.0")).getRpcId());
+        assertThrows(IllegalArgumentException.class, () -> RpcId.from(new BigDecimal("1.5")));
+    }
+
+    @Test
+    void testDefaultRequestIdIsGenerated() {
+        RpcRequest first = new RpcRequest("m", null);
+        RpcRequest second = new RpcRequest("m", null);
+
+        assertNotNull(first.getRpcId());
+        assertNotEquals(first.getId(), second.getId());
+    }
+
+    @Test
+    void testGeneratedIdsArePlainLongs() {
+        RpcRequest request = new RpcRequest("m", null);
+
+        assertInstanceOf(Long.class, request.getId());
+        assertInstanceOf(Long.class, RpcIdGenerator.striped().nextValue());
+        assertEquals(7L, new RpcRequest("m", null, RpcId.of(7)).getId());
+        assertEquals("a", new RpcResponse(new JsonPrimitive(true), RpcId.of("a")).getId());
+    }
+
+    @Test
+    void testRoundTrippedResponseIdMatchesRequest() {
+        RpcSerializer serializer = new RpcSerializer();
+        RpcRequest request = new RpcRequest("m", null);
+
+        RpcResponse response = serializer.fromJson(
+            serializer.toJson(new RpcResponse(new JsonPrimitive(true), request.getId())), RpcResponse.class);
+        assertEquals(request.getId(), response.getId());
+        assertTrue(response.answers(request));
+
+        // Plain Gson reads numbers back as doubles
+        RpcResponse loose = new RpcResponse(new JsonPrimitive(true), ((Number) request.getId()).doubleValue());
+        assertTrue(loose.answers(request));
+        assertFalse(new RpcResponse(new JsonPrimitive(true), request.getId().toString()).answers(request));
+        assertFalse(new RpcResponse(RpcError.internalError(), null).answers(request));
+        assertTrue(new RpcResponse(new JsonPrimitive(true), "x").answers(new RpcRequest("m", null, RpcId.of("x"))));
+    }
+}
@@ -3,9 +3,14 @@ package it.carpanese.rpc.core;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonPrimitive;
+import com.google.gson.JsonSyntaxException;
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.time.Instant;
 import java.util.Objects;
 
@@ -139,7 +144,7 @@ class RpcSerializerTest {
 
         RpcRequest deserialized = serializer.fromJson(json, RpcRequest.class);
         assertEquals("myMethod", deserialized.getMethod());
-        assertEquals(123.0, deserialized.getId()); // Gson deserializes numbers as Double
+        assertEquals(123L, deserialized.getId()); // Integral IDs stay integral
     }
 
     @Test
@@ -171,4 +176,49 @@ class RpcSerializerTest {
         assertFalse(response.isError());
         assertNotNull(response.getResult());
     }
+
+    @Test
+    void testWriteToAndReadFromStreams() throws Exception {
+        RpcSerializer serializer = new RpcSerializer(true);
+
+        JsonObject result = new JsonObject();
+        result.addProperty("city", "Città");
+        RpcResponse response = new RpcResponse(result, 5L);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        serializer.writeTo(response, out);
+        byte[] bytes = out.toByteArray();
+
+        assertArrayEquals(serializer.toJson(response).getBytes(StandardCharsets.UTF_8), bytes);
+
+        RpcResponse decoded = serializer.readFrom(new ByteArrayInputStream(bytes), RpcResponse.class);
+        assertEquals("Città", Objects.requireNonNull(decoded.getResult()).getAsJsonObject().get("city").getAsString());
+        assertEquals(5L, decoded.getId());
+    }
+
+    @Test
+    void testByteBufferRoundTrip() {
+        RpcSerializer serializer = new RpcSerializer();
+
+        ByteBuffer buffer = serializer.toByteBuffer(new RpcRequest("ping", new JsonPrimitive("€"), 9));
+        int position = buffer.position();
+
+        RpcRequest decoded = serializer.readFrom(buffer, RpcRequest.class);
+        assertEquals("ping", decoded.getMethod());
+        assertEquals("€", decoded.getParams().getAsString());
+        assertEquals(position, buffer.position());
+    }
+
+    @Test
+    void testReadBatchFromStream() {
+        RpcSerializer serializer = new RpcSerializer();
+
+        byte[] batch = "[{\"jsonrpc\":\"2.0\",\"result\":1,\"id\":1},{\"jsonrpc\":\"2.0\",\"result\":2,\"id\":2}]"
+            .getBytes(StandardCharsets.UTF_8);
+
+        assertEquals(2, serializer.readBatchFrom(new ByteArrayInputStream(batch)).size());
+        assertTrue(serializer.readBatchFrom(new ByteArrayInputStream(new byte[0])).isEmpty());
+        assertThrows(JsonSyntaxException.class,
+            () -> serializer.readBatchFrom(new ByteArrayInputStream("{}".getBytes(StandardCharsets.UTF_8))));
+    }
 }
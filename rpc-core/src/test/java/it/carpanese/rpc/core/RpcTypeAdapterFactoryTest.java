@@ -0,0 +1,118 @@
+package it.carpanese.rpc.core;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+import com.google.gson.JsonSyntaxException;
+import org.junit.jupiter.api.Test;
+
+import java.util.Objects;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RpcTypeAdapterFactoryTest {
+
+    private static Gson gson(boolean safeMode) {
+        return new GsonBuilder()
+            .registerTypeAdapterFactory(new RpcTypeAdapterFactory(safeMode))
+            .create();
+    }
+
+    @Test
+    void testWritesResponseWithoutReflection() {
+        String json = gson(false).toJson(new RpcResponse(new JsonPrimitive(8), 1L));
+
+        assertEquals("{\"jsonrpc\":\"2.0\",\"result\":8,\"id\":1}", json);
+    }
+
+    @Test
+    void testRequiredNullsAreWrittenWithoutSerializeNulls() {
+        Gson gson = gson(false);
+
+        assertEquals("{\"jsonrpc\":\"2.0\",\"error\":{\"code\":-32700,\"message\":\"Parse error\"},\"id\":null}",
+            gson.toJson(new RpcResponse(RpcError.parseError(), null)));
+        assertEquals("{\"jsonrpc\":\"2.0\",\"result\":null,\"id\":\"a\"}",
+            gson.toJson(new RpcResponse((JsonElement) null, "a")));
+    }
+
+    @Test
+    void testRequestRoundTrip() {
+        Gson gson = gson(false);
+
+        JsonObject params = new JsonObject();
+        params.addProperty("name", "test");
+        String json = gson.toJson(new RpcRequest("myMethod", params, "req-1"));
+        RpcRequest decoded = gson.fromJson(json, RpcRequest.class);
+
+        assertEquals("{\"jsonrpc\":\"2.0\",\"method\":\"myMethod\",\"params\":{\"name\":\"test\"},\"id\":\"req-1\"}", json);
+        assertEquals("myMethod", decoded.getMethod());
+        assertEquals("req-1", decoded.getId());
+        assertEquals("test", decoded.getParams().getAsJsonObject().get("name").getAsString());
+    }
+
+    @Test
+    void testSafeModeAppliedInline() {
+        Gson gson = gson(true);
+
+        JsonObject data = new JsonObject();
+        data.addProperty("field", "name");
+        String json = gson.toJson(new RpcResponse(new RpcError(-32042, "Domain failure", data), 7L));
+
+        assertEquals("{\"jsonrpc\":\"2.0\",\"error\":{\"code\":-32042,\"message\":\"S:Domain failure\","
+            + "\"data\":{\"field\":\"S:name\"}},\"id\":7}", json);
+
+        RpcResponse decoded = gson.fromJson(json, RpcResponse.class);
+        RpcError error = Objects.requireNonNull(decoded.getError());
+        assertEquals("Domain failure", error.getMessage());
+        assertEquals("name", error.getData().getAsJsonObject().get("field").getAsString());
+        assertEquals(7L, decoded.getId());
+    }
+
+    @Test
+    void testInvalidRequestIsRejected() {
+        assertThrows(JsonSyntaxException.class,
+            () -> gson(false).fromJson("{\"jsonrpc\":\"2.0\",\"id\":1}", RpcRequest.class));
+    }
+
+    @Test
+    void testRawJsonResultIsSplicedVerbatim() {
+        String json = gson(false).toJson(new RpcResponse(RawJson.of("{\"cached\": [1, 2.50]}"), 1L));
+
+        assertEquals("{\"jsonrpc\":\"2.0\",\"result\":{\"cached\": [1, 2.50]},\"id\":1}", json);
+    }
+
+    @Test
+    void testRawJsonSafeMarkersFollowTheAdapter() {
+        RpcResponse plain = new RpcResponse(RawJson.of("{\"name\":\"a\"}"), 1L);
+        RpcResponse preEncoded = new RpcResponse(RawJson.ofSafe("{\"name\":\"S:a\"}"), 1L);
+
+        String expectedSafe = "{\"jsonrpc\":\"2.0\",\"result\":{\"name\":\"S:a\"},\"id\":1}";
+        String expectedPlain = "{\"jsonrpc\":\"2.0\",\"result\":{\"name\":\"a\"},\"id\":1}";
+        assertEquals(expectedSafe, gson(true).toJson(plain));
+        assertEquals(expectedSafe, gson(true).toJson(preEncoded));
+        assertEquals(expectedPlain, gson(false).toJson(preEncoded));
+    }
+
+    @Test
+    void testRawJsonReadCapturesTheSubtree() {
+        RawJson plain = gson(false).fromJson("{\"items\": [1, 2.50, \"x\", null, true]}", RawJson.class);
+        RawJson safe = gson(true).fromJson("{\"name\": \"S:a\"}", RawJson.class);
+
+        assertEquals(RawJson.of("{\"items\":[1,2.50,\"x\",null,true]}"), plain);
+        assertEquals(RawJson.ofSafe("{\"name\":\"S:a\"}"), safe);
+        assertEquals("a", safe.parse().getAsJsonObject().get("name").getAsString());
+        assertEquals("{\"items\":[1,2.50,\"x\",null,true]}", gson(false).toJson(plain));
+    }
+
+    @Test
+    void testRawJsonResultIsParsedOnlyWhenRead() {
+        RpcResponse response = new RpcResponse(RawJson.ofSafe("{\"name\":\"S:a\"}"), 1L);
+
+        assertEquals(RawJson.ofSafe("{\"name\":\"S:a\"}"), response.getRawResult());
+        assertEquals("a", Objects.requireNonNull(response.getResult()).getAsJsonObject().get("name").getAsString());
+        assertSame(response.getResult(), response.getResult());
+        assertNull(new RpcResponse(new JsonPrimitive(1), 1L).getRawResult());
+    }
+}
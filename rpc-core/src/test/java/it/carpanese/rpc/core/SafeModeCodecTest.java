@@ -0,0 +1,136 @@
+package it.carpanese.rpc.core;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import com.google.gson.stream.MalformedJsonException;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.List;
+import java.util.Objects;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SafeModeCodecTest {
+
+    private static final String PLAIN = "{\"name\":\"hello\",\"tags\":[\"S:x\",\"D:y\"],\"count\":12,\"big\":1.50,"
+        + "\"flag\":true,\"none\":null}";
+    private static final String ENCODED = "{\"name\":\"S:hello\",\"tags\":[\"S:S:x\",\"S:D:y\"],\"count\":12,\"big\":1.50,"
+        + "\"flag\":true,\"none\":null}";
+
+    @Test
+    void testEncodeStreamsTokens() throws IOException {
+        StringWriter buffer = new StringWriter();
+        SafeModeCodec.encode(new JsonReader(new StringReader(PLAIN)), new JsonWriter(buffer));
+
+        assertEquals(ENCODED, buffer.toString());
+    }
+
+    @Test
+    void testDecodeStreamsTokens() throws IOException {
+        StringWriter buffer = new StringWriter();
+        SafeModeCodec.decode(new JsonReader(new StringReader(ENCODED)), new JsonWriter(buffer));
+
+        assertEquals(PLAIN, buffer.toString());
+    }
+
+    @Test
+    void testWriteElementMatchesEncodeSafe() throws IOException {
+        JsonElement value = JsonParser.parseString(PLAIN);
+
+        StringWriter buffer = new StringWriter();
+        SafeModeCodec.write(value, new JsonWriter(buffer));
+
+        assertEquals(new RpcSerializer(true).encodeSafe(value), JsonParser.parseString(buffer.toString()));
+    }
+
+    @Test
+    void testReadElementMatchesDecodeSafe() throws IOException {
+        JsonElement decoded = SafeModeCodec.read(new JsonReader(new StringReader(ENCODED)));
+
+        assertEquals(new RpcSerializer(true).decodeSafe(JsonParser.parseString(ENCODED)), decoded);
+        assertEquals("S:x", decoded.getAsJsonObject().getAsJsonArray("tags").get(0).getAsString());
+    }
+
+    @Test
+    void testDeeplyNestedValuesDoNotExhaustTheStack() throws IOException {
+        int levels = 50_000;
+        String encoded = "{\"a\":[".repeat(levels) + "\"S:x\"" + "]}".repeat(levels);
+        JsonElement tree = new JsonPrimitive("x");
+        for (int i = 0; i < levels; i++) {
+            JsonArray array = new JsonArray();
+            array.add(tree);
+            JsonObject object = new JsonObject();
+            object.add("a", array);
+            tree = object;
+        }
+
+        StringWriter buffer = new StringWriter();
+        SafeModeCodec.write(tree, new JsonWriter(buffer));
+        assertEquals(encoded, buffer.toString());
+
+        JsonElement decoded;
+        try {
+            decoded = SafeModeCodec.read(new JsonReader(new StringReader(encoded)));
+        } catch (MalformedJsonException e) {
+            // Gson 2.11+ readers reject the input at their own nesting limit first
+            return;
+        }
+        buffer = new StringWriter();
+        SafeModeCodec.write(decoded, new JsonWriter(buffer));
+        assertEquals(encoded, buffer.toString());
+    }
+
+    @Test
+    void testEncodeSafeReturnsSameInstanceWhenDisabled() {
+        JsonObject value = new JsonObject();
+        value.addProperty("name", "hello");
+
+        RpcSerializer serializer = new RpcSerializer(false);
+        assertSame(value, serializer.encodeSafe(value));
+        assertSame(value, serializer.decodeSafe(value));
+    }
+
+    @Test
+    void testBatchRoundTrip() {
+        RpcSerializer serializer = new RpcSerializer(true);
+
+        JsonObject params = new JsonObject();
+        params.addProperty("plain", "hello");
+        String json = serializer.toJsonBatch(List.of(
+            new RpcRequest("ping", params, 1),
+            RpcRequest.notification("notify", null)
+        ));
+
+        assertEquals("[{\"jsonrpc\":\"2.0\",\"method\":\"ping\",\"params\":{\"plain\":\"S:hello\"},\"id\":1},"
+            + "{\"jsonrpc\":\"2.0\",\"method\":\"notify\"}]", json);
+
+        List<RpcResponse> responses = serializer.fromJsonBatch("["
+            + "{\"jsonrpc\":\"2.0\",\"result\":{\"v\":\"S:pong\"},\"id\":1},"
+            + "{\"jsonrpc\":\"2.0\",\"error\":{\"code\":-32601,\"message\":\"S:Method not found\"},\"id\":\"b\"}"
+            + "]");
+
+        assertEquals(2, responses.size());
+        assertEquals("pong", Objects.requireNonNull(responses.get(0).getResult())
+            .getAsJsonObject().get("v").getAsString());
+        assertEquals("Method not found", Objects.requireNonNull(responses.get(1).getError()).getMessage());
+        assertEquals("b", responses.get(1).getId());
+    }
+
+    @Test
+    void testStringIdsAreNotEncoded() {
+        RpcSerializer serializer = new RpcSerializer(true);
+
+        String json = serializer.toJson(new RpcResponse(new JsonPrimitive("ok"), "req-1"));
+
+        assertTrue(json.contains("\"id\":\"req-1\""));
+        assertTrue(json.contains("\"result\":\"S:ok\""));
+    }
+}
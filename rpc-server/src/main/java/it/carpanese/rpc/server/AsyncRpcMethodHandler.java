@@ -0,0 +1,42 @@
+package it.carpanese.rpc.server;
+
+import com.google.gson.JsonElement;
+import it.carpanese.rpc.core.RpcException;
+import it.carpanese.rpc.core.RpcRequest;
+
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Functional interface for RPC method handlers that complete asynchronously
+ *
+ * Register with {@link RpcEndpoint#addAsyncMethod(String, AsyncRpcMethodHandler)}. Handlers
+ * waiting on upstream calls return a stage instead of blocking the calling thread:
+ * <pre>
+ * endpoint.addAsyncMethod("quote", (params, ctx) -&gt;
+ *     httpClient.sendAsync(request, ofString()).thenApply(r -&gt; JsonParser.parseString(r.body())));
+ * </pre>
+ */
+@FunctionalInterface
+public interface AsyncRpcMethodHandler {
+
+    /**
+     * Handle an RPC method call
+     *
+     * @param params Method parameters as JsonElement (can be null)
+     * @param context Server context object (can be null)
+     * @return Stage completing with the result, or exceptionally with an {@link RpcException}
+     *         or any other error (converted to internal error)
+     * @throws Exception Errors thrown before a stage is returned are handled the same way
+     */
+    CompletionStage<JsonElement> handleAsync(JsonElement params, Object context) throws Exception;
+
+    /**
+     * Handle an RPC method call with access to the whole request
+     *
+     * Called by the endpoint; the default decodes the params and delegates to
+     * {@link #handleAsync(JsonElement, Object)}.
+     */
+    default CompletionStage<JsonElement> handleRequestAsync(RpcRequest request, Object context) throws Exception {
+        return handleAsync(request.getParams(), context);
+    }
+}
@@ -0,0 +1,129 @@
+package it.carpanese.rpc.server;
+
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Concurrency cap of a single method
+ *
+ * Permits are taken with a CAS on the in-flight counter. Calls beyond
+ * {@code maxConcurrency} wait in a queue of at most {@code maxQueue} entries and are handed a
+ * permit when a running call releases one; calls beyond that are rejected at once. A waiter
+ * that is cancelled frees its queue slot right away. Without a limit the bulkhead only counts
+ * in-flight calls.
+ */
+final class Bulkhead {
+
+    private static final CompletableFuture<Void> ACQUIRED = CompletableFuture.completedFuture(null);
+
+    private final int maxConcurrency;
+    private final int maxQueue;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final LongAdder rejected = new LongAdder();
+    private final Queue<CompletableFuture<Void>> waiters = new ConcurrentLinkedQueue<>();
+
+    /**
+     * @param maxConcurrency Calls running at the same time, 0 for no limit
+     * @param maxQueue Calls waiting for a permit, beyond which calls are rejected
+     */
+    Bulkhead(int maxConcurrency, int maxQueue) {
+        this.maxConcurrency = Math.max(0, maxConcurrency);
+        this.maxQueue = Math.max(0, maxQueue);
+    }
+
+    /**
+     * Take a permit
+     *
+     * @return Completed future if a permit was taken, pending future completing when one is
+     *         handed over (cancel it to give up waiting), or null if the call is rejected
+     */
+    CompletableFuture<Void> acquire() {
+        if (tryAcquire()) {
+            return ACQUIRED;
+        }
+
+        int current;
+        do {
+            current = queued.get();
+            if (current >= maxQueue) {
+                rejected.increment();
+                return null;
+            }
+        } while (!queued.compareAndSet(current, current + 1));
+
+        CompletableFuture<Void> waiter = new CompletableFuture<>();
+        waiter.whenComplete((ignored, error) -> {
+            // A waiter that gave up leaves the queue at once; one handed over was polled already
+            if (waiter.isCancelled() && waiters.remove(waiter)) {
+                queued.decrementAndGet();
+            }
+        });
+        waiters.add(waiter);
+        // A permit may have been released before the waiter was visible
+        handOver();
+        return waiter;
+    }
+
+    /**
+     * Return a permit, passing it to the next waiter if there is one
+     */
+    void release() {
+        inFlight.decrementAndGet();
+        handOver();
+    }
+
+    int getInFlight() {
+        return inFlight.get();
+    }
+
+    int getQueued() {
+        return queued.get();
+    }
+
+    long getRejected() {
+        return rejected.sum();
+    }
+
+    int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    int getMaxQueue() {
+        return maxQueue;
+    }
+
+    private boolean tryAcquire() {
+        if (maxConcurrency == 0) {
+            inFlight.incrementAndGet();
+            return true;
+        }
+        int current;
+        do {
+            current = inFlight.get();
+            if (current >= maxConcurrency) {
+                return false;
+            }
+        } while (!inFlight.compareAndSet(current, current + 1));
+        return true;
+    }
+
+    private void handOver() {
+        while (!waiters.isEmpty() && tryAcquire()) {
+            CompletableFuture<Void> waiter = waiters.poll();
+            if (waiter == null) {
+                // Another thread served it, give the permit back and look again
+                inFlight.decrementAndGet();
+                continue;
+            }
+            queued.decrementAndGet();
+            if (!waiter.complete(null)) {
+                // The waiter gave up (cancelled), the permit goes to the next one
+                inFlight.decrementAndGet();
+            }
+        }
+    }
+}
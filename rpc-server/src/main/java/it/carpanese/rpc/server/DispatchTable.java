@@ -0,0 +1,84 @@
+package it.carpanese.rpc.server;
+
+import it.carpanese.rpc.server.middleware.MiddlewareManager;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Method name to pipeline lookup used to dispatch calls
+ *
+ * The live table is updated in place as methods are registered and removed. A frozen table is
+ * an immutable snapshot of the registry with linked pipelines; the endpoint publishes it with a
+ * single volatile write, so each call sees either the previous table or the new one.
+ */
+final class DispatchTable {
+
+    private final Map<String, MethodPipeline> pipelines;
+    private final MethodPipeline notFound;
+    private final boolean frozen;
+
+    private DispatchTable(Map<String, MethodPipeline> pipelines, MethodPipeline notFound, boolean frozen) {
+        this.pipelines = pipelines;
+        this.notFound = notFound;
+        this.frozen = frozen;
+    }
+
+    /**
+     * Create an empty live table
+     *
+     * @param middleware Middleware manager, or null if middleware is disabled
+     */
+    static DispatchTable live(MiddlewareManager middleware) {
+        return new DispatchTable(new ConcurrentHashMap<>(), MethodPipeline.live(null, middleware), false);
+    }
+
+    /**
+     * Link the given methods and the current middleware into a frozen table
+     *
+     * @param middleware Middleware manager, or null if middleware is disabled
+     */
+    static DispatchTable freeze(Collection<MethodConfig> methods, MiddlewareManager middleware) {
+        MiddlewareManager snapshot = middleware != null ? middleware.snapshot() : null;
+
+        Map<String, MethodPipeline> pipelines = new HashMap<>();
+        for (MethodConfig config : methods) {
+            pipelines.put(config.getName(), MethodPipeline.linked(config, snapshot));
+        }
+        return new DispatchTable(Map.copyOf(pipelines), MethodPipeline.linked(null, snapshot), true);
+    }
+
+    /**
+     * Get the pipeline of a method
+     *
+     * @return Pipeline, whose config is null if the method does not exist
+     */
+    MethodPipeline get(String method) {
+        MethodPipeline pipeline = pipelines.get(method);
+        return pipeline != null ? pipeline : notFound;
+    }
+
+    /**
+     * Add a method to a live table
+     */
+    void put(MethodConfig config, MiddlewareManager middleware) {
+        pipelines.put(config.getName(), MethodPipeline.live(config, middleware));
+    }
+
+    /**
+     * Remove a method from a live table
+     */
+    void remove(String method) {
+        pipelines.remove(method);
+    }
+
+    boolean isFrozen() {
+        return frozen;
+    }
+
+    int size() {
+        return pipelines.size();
+    }
+}
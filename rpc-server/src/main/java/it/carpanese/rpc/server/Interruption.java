@@ -0,0 +1,55 @@
+package it.carpanese.rpc.server;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Timer task interrupting the thread running a blocking handler
+ *
+ * The timer and the thread race on a CAS: either the thread disarms the task first and no
+ * interrupt is ever sent, or the timer claims it and the thread waits, parked, until the
+ * interrupt has landed so it can clear it before running anything else.
+ */
+final class Interruption implements Runnable {
+
+    private static final int ARMED = 0;
+    private static final int DISARMED = 1;
+    private static final int INTERRUPTING = 2;
+    private static final int DELIVERED = 3;
+
+    private final Thread thread;
+    private final AtomicInteger state = new AtomicInteger(ARMED);
+
+    Interruption(Thread thread) {
+        this.thread = thread;
+    }
+
+    @Override
+    public void run() {
+        if (state.compareAndSet(ARMED, INTERRUPTING)) {
+            thread.interrupt();
+            state.set(DELIVERED);
+            // The handler may have consumed the interrupt, so wake a waiting disarm explicitly
+            LockSupport.unpark(thread);
+        }
+    }
+
+    /**
+     * Stop the interruption from the interrupted thread
+     *
+     * If the timer got there first, waits for its interrupt and clears the interrupt status
+     * so it does not leak into whatever this thread runs next.
+     *
+     * @return true if the thread was not and will not be interrupted
+     */
+    boolean disarm() {
+        if (state.compareAndSet(ARMED, DISARMED)) {
+            return true;
+        }
+        while (state.get() != DELIVERED) {
+            LockSupport.park(this);
+        }
+        Thread.interrupted();
+        return false;
+    }
+}
@@ -1,6 +1,15 @@
 package it.carpanese.rpc.server;
 
 import com.google.gson.JsonElement;
+import it.carpanese.rpc.core.AdaptiveCapacity;
+import it.carpanese.rpc.server.metrics.MethodMetrics;
+import it.carpanese.rpc.server.schema.JsonSchema;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
 
 /**
  * Configuration for an RPC method with metadata support
@@ -8,9 +17,24 @@ import com.google.gson.JsonElement;
 public class MethodConfig {
     private String name;
     private RpcMethodHandler handler;
+    private AsyncRpcMethodHandler asyncHandler;
     private JsonElement schema;
     private boolean exposeSchema;
     private String description;
+    private Set<String> tags = Set.of();
+    private Duration timeout;
+    private int maxConcurrency;
+    private int maxQueue;
+    private Bulkhead bulkhead;
+    private Duration cacheTtl;
+    private int cacheMaxEntries;
+    private Duration staleWhileRevalidate;
+    private ResultCache cache;
+    private boolean coalesce;
+    private SingleFlight singleFlight;
+    private JsonSchema validator;
+    private MethodMetrics metrics;
+    private AdaptiveCapacity.Estimate responseSize;
 
     public MethodConfig() {
     }
@@ -41,10 +65,28 @@ public class MethodConfig {
         return this;
     }
 
+    /**
+     * Get the asynchronous handler, null for methods registered with a blocking one
+     *
+     * For asynchronous methods {@link #getHandler()} returns an adapter that waits for the result.
+     */
+    public AsyncRpcMethodHandler getAsyncHandler() {
+        return asyncHandler;
+    }
+
+    public MethodConfig setAsyncHandler(AsyncRpcMethodHandler asyncHandler) {
+        this.asyncHandler = asyncHandler;
+        return this;
+    }
+
     public JsonElement getSchema() {
         return schema;
     }
 
+    /**
+     * JSON Schema of the params, checked before the handler runs when
+     * {@link RpcOptions#isEnableValidation()} is set. Read when the method is registered.
+     */
     public MethodConfig setSchema(JsonElement schema) {
         this.schema = schema;
         return this;
@@ -68,6 +110,162 @@ public class MethodConfig {
         return this;
     }
 
+    public Duration getTimeout() {
+        return timeout;
+    }
+
+    /**
+     * Set the deadline for the handler, overriding {@link RpcOptions#getTimeoutSeconds()}
+     *
+     * @param timeout Deadline, {@link Duration#ZERO} for none, null for the endpoint default
+     */
+    public MethodConfig setTimeout(Duration timeout) {
+        this.timeout = timeout;
+        return this;
+    }
+
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    /**
+     * Limit the calls of this method running at the same time, read when the method is registered
+     *
+     * @param maxConcurrency Limit, 0 (the default) for none
+     */
+    public MethodConfig setMaxConcurrency(int maxConcurrency) {
+        this.maxConcurrency = maxConcurrency;
+        return this;
+    }
+
+    public int getMaxQueue() {
+        return maxQueue;
+    }
+
+    /**
+     * Set how many calls may wait for a slot when {@link #getMaxConcurrency()} is reached
+     *
+     * Further calls fail at once with {@link it.carpanese.rpc.core.RpcError#overloaded()}.
+     * Waiting calls give up at the method deadline. Defaults to 0, rejecting right away.
+     */
+    public MethodConfig setMaxQueue(int maxQueue) {
+        this.maxQueue = maxQueue;
+        return this;
+    }
+
+    public Duration getCacheTtl() {
+        return cacheTtl;
+    }
+
+    public int getCacheMaxEntries() {
+        return cacheMaxEntries;
+    }
+
+    /**
+     * Cache results of this method, which must be a pure function of its params
+     *
+     * Results are cached serialized, keyed by the params with object members sorted, so hits
+     * skip the handler and the serialization of the result. Errors are not cached. Read when
+     * the method is registered.
+     *
+     * @param ttl Time a result stays fresh, null to disable caching
+     * @param maxEntries Distinct params kept at most
+     */
+    public MethodConfig setCache(Duration ttl, int maxEntries) {
+        this.cacheTtl = ttl;
+        this.cacheMaxEntries = maxEntries;
+        return this;
+    }
+
+    public Duration getStaleWhileRevalidate() {
+        return staleWhileRevalidate;
+    }
+
+    /**
+     * Keep serving a cached result for this long after its TTL while a single call refreshes it
+     */
+    public MethodConfig setStaleWhileRevalidate(Duration staleWhileRevalidate) {
+        this.staleWhileRevalidate = staleWhileRevalidate;
+        return this;
+    }
+
+    public Set<String> getTags() {
+        return tags;
+    }
+
+    /**
+     * Tag this method, e.g. for middleware selected with
+     * {@link it.carpanese.rpc.server.middleware.MethodSelector#tagged(String...)}
+     */
+    public MethodConfig setTags(String... tags) {
+        this.tags = Collections.unmodifiableSet(new LinkedHashSet<>(Arrays.asList(tags)));
+        return this;
+    }
+
+    public boolean isCoalesce() {
+        return coalesce;
+    }
+
+    /**
+     * Let identical calls (same params, members in any order) share the one already running
+     *
+     * While the first call runs, later ones wait for it and are answered with its result or
+     * error under their own id. The method must be a pure function of its params. Read when
+     * the method is registered.
+     */
+    public MethodConfig setCoalesce(boolean coalesce) {
+        this.coalesce = coalesce;
+        return this;
+    }
+
+    ResultCache getResultCache() {
+        return cache;
+    }
+
+    void setResultCache(ResultCache cache) {
+        this.cache = cache;
+    }
+
+    SingleFlight getSingleFlight() {
+        return singleFlight;
+    }
+
+    void setSingleFlight(SingleFlight singleFlight) {
+        this.singleFlight = singleFlight;
+    }
+
+    JsonSchema getValidator() {
+        return validator;
+    }
+
+    void setValidator(JsonSchema validator) {
+        this.validator = validator;
+    }
+
+    MethodMetrics getMetrics() {
+        return metrics;
+    }
+
+    void setMetrics(MethodMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    AdaptiveCapacity.Estimate getResponseSize() {
+        return responseSize;
+    }
+
+    void setResponseSize(AdaptiveCapacity.Estimate responseSize) {
+        this.responseSize = responseSize;
+    }
+
+    Bulkhead getBulkhead() {
+        return bulkhead;
+    }
+
+    void setBulkhead(Bulkhead bulkhead) {
+        this.bulkhead = bulkhead;
+    }
+
     // Fluent builder methods
 
     public MethodConfig withSchema(JsonElement schema) {
@@ -84,4 +282,37 @@ public class MethodConfig {
         this.description = description;
         return this;
     }
+
+    public MethodConfig withTimeout(Duration timeout) {
+        this.timeout = timeout;
+        return this;
+    }
+
+    public MethodConfig withMaxConcurrency(int maxConcurrency) {
+        this.maxConcurrency = maxConcurrency;
+        return this;
+    }
+
+    public MethodConfig withMaxQueue(int maxQueue) {
+        this.maxQueue = maxQueue;
+        return this;
+    }
+
+    public MethodConfig withCache(Duration ttl, int maxEntries) {
+        return setCache(ttl, maxEntries);
+    }
+
+    public MethodConfig withStaleWhileRevalidate(Duration staleWhileRevalidate) {
+        this.staleWhileRevalidate = staleWhileRevalidate;
+        return this;
+    }
+
+    public MethodConfig withCoalesce(boolean coalesce) {
+        this.coalesce = coalesce;
+        return this;
+    }
+
+    public MethodConfig withTags(String... tags) {
+        return setTags(tags);
+    }
 }
@@ -0,0 +1,230 @@
+package it.carpanese.rpc.server;
+
+import it.carpanese.rpc.core.RpcRequest;
+import it.carpanese.rpc.server.middleware.IRpcMiddleware;
+import it.carpanese.rpc.server.middleware.MiddlewareManager;
+import it.carpanese.rpc.server.middleware.RpcInterceptor;
+
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Call path of one method: its configuration and the middleware wrapped around it
+ *
+ * The middleware selecting the method is resolved into arrays when the pipeline is linked, so
+ * a method no middleware selects runs none. Linked pipelines of a frozen dispatch table never
+ * change; live pipelines, used until the endpoint is frozen, resolve again when middleware is
+ * added to the {@link MiddlewareManager}.
+ */
+final class MethodPipeline {
+
+    private static final IRpcMiddleware[] NONE = new IRpcMiddleware[0];
+    private static final RpcInterceptor[] NO_INTERCEPTORS = new RpcInterceptor[0];
+    private static final String BEFORE = "before";
+    private static final String AFTER = "after";
+    private static final Chain EMPTY = new Chain(0, NONE, NONE, NO_INTERCEPTORS);
+
+    private final MethodConfig config;
+    private final MiddlewareManager middleware;
+    private final boolean live;
+    private volatile Chain chain;
+
+    private MethodPipeline(MethodConfig config, MiddlewareManager middleware, boolean live) {
+        this.config = config;
+        this.middleware = middleware;
+        this.live = live && middleware != null;
+        this.chain = config != null && middleware != null ? resolve(config, middleware) : EMPTY;
+    }
+
+    /**
+     * Pipeline following the middleware manager as middleware is added
+     *
+     * @param config Method, or null for the path of calls to unknown methods
+     * @param middleware Middleware manager, or null if middleware is disabled
+     */
+    static MethodPipeline live(MethodConfig config, MiddlewareManager middleware) {
+        return new MethodPipeline(config, middleware, true);
+    }
+
+    /**
+     * Pipeline with the middleware chain fixed
+     *
+     * @param config Method, or null for the path of calls to unknown methods
+     * @param middleware Snapshot of the middleware manager, or null if middleware is disabled
+     */
+    static MethodPipeline linked(MethodConfig config, MiddlewareManager middleware) {
+        return new MethodPipeline(config, middleware, false);
+    }
+
+    /**
+     * Method called by this pipeline, null if the method does not exist
+     */
+    MethodConfig getConfig() {
+        return config;
+    }
+
+    /**
+     * Interceptors wrapped around the method, outermost first; empty for most methods
+     */
+    RpcInterceptor[] interceptors() {
+        return chain().interceptors;
+    }
+
+    /**
+     * Run the before middleware
+     */
+    void before(RpcRequest request, Object context) throws Exception {
+        if (config == null) {
+            // Unknown methods are selected by the requested name alone
+            if (middleware != null) {
+                RpcMiddlewareEvent event = new RpcMiddlewareEvent();
+                event.begin();
+                try {
+                    middleware.executeBefore(request, context);
+                } catch (Exception e) {
+                    if (event.shouldCommit()) {
+                        commit(event, request, BEFORE, -1, e);
+                    }
+                    throw e;
+                }
+                if (event.shouldCommit()) {
+                    commit(event, request, BEFORE, -1, null);
+                }
+            }
+            return;
+        }
+        IRpcMiddleware[] before = chain().before;
+        if (before.length == 0) {
+            return;
+        }
+        RpcMiddlewareEvent event = new RpcMiddlewareEvent();
+        event.begin();
+        try {
+            for (IRpcMiddleware m : before) {
+                m.beforeAsync(request, context);
+            }
+        } catch (Exception e) {
+            if (event.shouldCommit()) {
+                commit(event, request, BEFORE, before.length, e);
+            }
+            throw e;
+        }
+        if (event.shouldCommit()) {
+            commit(event, request, BEFORE, before.length, null);
+        }
+    }
+
+    /**
+     * Run the after middleware
+     */
+    void after(RpcRequest request, Object result, Object context) throws Exception {
+        IRpcMiddleware[] after = chain().after;
+        if (after.length == 0) {
+            return;
+        }
+        RpcMiddlewareEvent event = new RpcMiddlewareEvent();
+        event.begin();
+        try {
+            for (IRpcMiddleware m : after) {
+                m.afterAsync(request, result, context);
+            }
+        } catch (Exception e) {
+            if (event.shouldCommit()) {
+                commit(event, request, AFTER, after.length, e);
+            }
+            throw e;
+        }
+        if (event.shouldCommit()) {
+            commit(event, request, AFTER, after.length, null);
+        }
+    }
+
+    /**
+     * Run the before middleware without blocking on asynchronous middleware
+     *
+     * @return Stage completing when all have run, already complete if none was asynchronous
+     */
+    CompletableFuture<Void> beforeAsync(RpcRequest request, Object context) {
+        if (config == null) {
+            if (middleware == null) {
+                return MiddlewareManager.chainBefore(NONE, request, context);
+            }
+            RpcMiddlewareEvent event = new RpcMiddlewareEvent();
+            event.begin();
+            return committed(event, middleware.executeBeforeAsync(request, context).toCompletableFuture(),
+                request, BEFORE, -1);
+        }
+        IRpcMiddleware[] before = chain().before;
+        if (before.length == 0) {
+            return MiddlewareManager.chainBefore(NONE, request, context);
+        }
+        RpcMiddlewareEvent event = new RpcMiddlewareEvent();
+        event.begin();
+        return committed(event, MiddlewareManager.chainBefore(before, request, context), request, BEFORE, before.length);
+    }
+
+    /**
+     * Run the after middleware without blocking on asynchronous middleware
+     *
+     * @return Stage completing when all have run, already complete if none was asynchronous
+     */
+    CompletableFuture<Void> afterAsync(RpcRequest request, Object result, Object context) {
+        IRpcMiddleware[] after = chain().after;
+        if (after.length == 0) {
+            return MiddlewareManager.chainAfter(NONE, request, result, context);
+        }
+        RpcMiddlewareEvent event = new RpcMiddlewareEvent();
+        event.begin();
+        return committed(event, MiddlewareManager.chainAfter(after, request, result, context),
+            request, AFTER, after.length);
+    }
+
+    /**
+     * Commit a middleware event when the stage it times completes
+     */
+    private static CompletableFuture<Void> committed(RpcMiddlewareEvent event, CompletableFuture<Void> stage,
+                                                     RpcRequest request, String phase, int middleware) {
+        if (event.isEnabled()) {
+            stage.whenComplete((ignored, error) -> {
+                if (event.shouldCommit()) {
+                    commit(event, request, phase, middleware, error);
+                }
+            });
+        }
+        return stage;
+    }
+
+    private static void commit(RpcMiddlewareEvent event, RpcRequest request, String phase, int middleware,
+                               Throwable error) {
+        event.method = request.getMethod();
+        event.id = RpcEvents.id(request);
+        event.phase = phase;
+        event.middleware = middleware;
+        event.outcome = RpcEvents.outcome(error);
+        event.errorCode = RpcEvents.errorCode(error);
+        event.commit();
+    }
+
+    private Chain chain() {
+        Chain current = chain;
+        if (live && current.version != middleware.getVersion()) {
+            current = resolve(config, middleware);
+            chain = current;
+        }
+        return current;
+    }
+
+    private static Chain resolve(MethodConfig config, MiddlewareManager middleware) {
+        // Read the version first: middleware added meanwhile is picked up on the next call
+        long version = middleware.getVersion();
+        Set<String> tags = config.getTags();
+        return new Chain(version,
+            middleware.getBeforeMiddleware(config.getName(), tags).toArray(NONE),
+            middleware.getAfterMiddleware(config.getName(), tags).toArray(NONE),
+            middleware.getInterceptors(config.getName(), tags).toArray(NO_INTERCEPTORS));
+    }
+
+    private record Chain(long version, IRpcMiddleware[] before, IRpcMiddleware[] after,
+                         RpcInterceptor[] interceptors) {
+    }
+}
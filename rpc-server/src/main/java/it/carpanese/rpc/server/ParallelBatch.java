@@ -0,0 +1,123 @@
+package it.carpanese.rpc.server;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Function;
+
+/**
+ * Runs the items of a batch concurrently, keeping results in request order
+ *
+ * At most {@code parallelism} workers are started per batch; each claims the next unprocessed
+ * index until none is left, so the cap holds without a semaphore. Results land in the slot of
+ * their item. When the deadline passes, workers stop claiming items, items still running are
+ * interrupted through the timer wheel and the slots still empty are reported as unfinished.
+ */
+final class ParallelBatch {
+
+    private static final class VirtualThreads {
+        static final ExecutorService EXECUTOR = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("rpc-batch-", 0).factory());
+    }
+
+    private final Executor executor;
+    private final int parallelism;
+    private final long timeoutNanos;
+    private final TimerWheel timers;
+
+    /**
+     * @param executor Executor for the workers, or null for a virtual thread per worker
+     * @param parallelism Maximum items of one batch running at the same time
+     * @param timeoutNanos Deadline for the whole batch, 0 for none
+     * @param timers Wheel interrupting the items still running at the deadline
+     */
+    ParallelBatch(Executor executor, int parallelism, long timeoutNanos, TimerWheel timers) {
+        this.executor = executor != null ? executor : VirtualThreads.EXECUTOR;
+        this.parallelism = Math.max(1, parallelism);
+        this.timeoutNanos = timeoutNanos;
+        this.timers = timers;
+    }
+
+    /**
+     * Process the items
+     *
+     * @return One result per item, in order; null where the item did not finish in time
+     */
+    <T, R> AtomicReferenceArray<R> run(List<T> items, Function<T, R> handler) {
+        int size = items.size();
+        AtomicReferenceArray<R> results = new AtomicReferenceArray<>(size);
+        AtomicInteger next = new AtomicInteger();
+        int workers = Math.min(parallelism, size);
+        CountDownLatch done = new CountDownLatch(workers);
+        long deadline = timeoutNanos > 0 ? System.nanoTime() + timeoutNanos : 0;
+
+        Runnable worker = () -> {
+            try {
+                int index;
+                while ((index = next.getAndIncrement()) < size) {
+                    if (deadline == 0) {
+                        results.set(index, handler.apply(items.get(index)));
+                        continue;
+                    }
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        break;
+                    }
+                    results.set(index, applyBefore(handler, items.get(index), remaining));
+                }
+            } finally {
+                done.countDown();
+            }
+        };
+
+        for (int i = 0; i < workers; i++) {
+            try {
+                executor.execute(worker);
+            } catch (RejectedExecutionException e) {
+                // Saturated executor: the caller does the work itself, which the worker
+                // skips once the deadline has passed and interrupts at the deadline
+                worker.run();
+            }
+        }
+
+        try {
+            if (deadline == 0) {
+                done.await();
+            } else if (!done.await(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+                // Stop the workers from claiming further items
+                next.set(size);
+            }
+        } catch (InterruptedException e) {
+            next.set(size);
+            Thread.currentThread().interrupt();
+        }
+        return results;
+    }
+
+    /**
+     * Process an item, interrupting its thread if it is still running when the time is up
+     *
+     * @return Result of the item, or null if it was interrupted
+     */
+    private <T, R> R applyBefore(Function<T, R> handler, T item, long remainingNanos) {
+        Interruption interruption = new Interruption(Thread.currentThread());
+        TimerWheel.Timeout timeout = timers.schedule(interruption, remainingNanos);
+        R result;
+        boolean inTime;
+        try {
+            result = handler.apply(item);
+        } finally {
+            inTime = interruption.disarm();
+            if (inTime) {
+                timeout.cancel();
+            }
+        }
+        return inTime ? result : null;
+    }
+}
@@ -0,0 +1,158 @@
+package it.carpanese.rpc.server;
+
+import com.google.gson.Gson;
+import it.carpanese.rpc.core.RpcError;
+import it.carpanese.rpc.core.RpcResponse;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Standard error responses serialized once per endpoint
+ *
+ * Each shared {@link RpcError} instance is kept as the JSON text of its response up to the
+ * ID, so answering a flood of bad requests only appends the ID instead of running the
+ * serializer. Method not found errors made by {@link #methodNotFound(String)} keep the text up
+ * to the method name, which is escaped and appended with the ID. Responses with non-integral
+ * IDs are left to the serializer.
+ */
+final class PreEncodedErrors {
+
+    private static final String ID_SUFFIX = "\"id\":null}";
+    private static final String MESSAGE_SUFFIX = "\"},";
+
+    private final Gson gson;
+    private final Map<RpcError, String> heads = new IdentityHashMap<>();
+    private final Map<RpcError, byte[]> headBytes = new IdentityHashMap<>();
+    private final String methodNotFoundHead;
+    private final byte[] methodNotFoundHeadBytes;
+    private final byte[] methodNotFoundTailBytes;
+
+    PreEncodedErrors(Gson gson) {
+        this.gson = gson;
+        for (RpcError error : new RpcError[] {
+            RpcError.parseError(), RpcError.invalidRequest(), RpcError.timeout(), RpcError.overloaded()
+        }) {
+            String json = gson.toJson(new RpcResponse(error, null));
+            if (!json.endsWith(ID_SUFFIX)) {
+                throw new IllegalStateException("Unexpected response layout: " + json);
+            }
+            String head = json.substring(0, json.length() - ID_SUFFIX.length()) + "\"id\":";
+            heads.put(error, head);
+            headBytes.put(error, head.getBytes(StandardCharsets.UTF_8));
+        }
+
+        String json = gson.toJson(new RpcResponse(methodNotFound(""), null));
+        if (!json.endsWith(MESSAGE_SUFFIX + ID_SUFFIX)) {
+            throw new IllegalStateException("Unexpected response layout: " + json);
+        }
+        methodNotFoundHead = json.substring(0, json.length() - MESSAGE_SUFFIX.length() - ID_SUFFIX.length());
+        methodNotFoundHeadBytes = methodNotFoundHead.getBytes(StandardCharsets.UTF_8);
+        methodNotFoundTailBytes = (MESSAGE_SUFFIX + "\"id\":").getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Create the error for a method that is not registered, answered from the cached text
+     */
+    static RpcError methodNotFound(String method) {
+        return method != null ? new MethodNotFound(method) : RpcError.methodNotFound(null);
+    }
+
+    /**
+     * Get the cached text of a response
+     *
+     * @return JSON text, or null if the response is not a cached error
+     */
+    String encode(RpcResponse response) {
+        if (!response.isError()) {
+            return null;
+        }
+        String id = idLiteral(response.getId());
+        if (id == null) {
+            return null;
+        }
+        if (response.getError() instanceof MethodNotFound error) {
+            return methodNotFoundHead + escape(error.method) + MESSAGE_SUFFIX + "\"id\":" + id + '}';
+        }
+        String head = heads.get(response.getError());
+        return head != null ? head + id + '}' : null;
+    }
+
+    /**
+     * Write the cached UTF-8 bytes of a response
+     *
+     * @return false if the response is not a cached error and nothing was written
+     */
+    boolean writeTo(RpcResponse response, OutputStream out) throws IOException {
+        if (!response.isError()) {
+            return false;
+        }
+        String id = idLiteral(response.getId());
+        if (id == null) {
+            return false;
+        }
+        if (response.getError() instanceof MethodNotFound error) {
+            out.write(methodNotFoundHeadBytes);
+            out.write(escape(error.method).getBytes(StandardCharsets.UTF_8));
+            out.write(methodNotFoundTailBytes);
+        } else {
+            byte[] head = headBytes.get(response.getError());
+            if (head == null) {
+                return false;
+            }
+            out.write(head);
+        }
+        out.write(id.getBytes(StandardCharsets.US_ASCII));
+        out.write('}');
+        return true;
+    }
+
+    /**
+     * Escape a string as the serializer would inside a JSON string literal, without the quotes
+     */
+    private String escape(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x20 || c == '"' || c == '\\' || c == '<' || c == '>' || c == '&' || c == '='
+                    || c == '\'' || c == '\u2028' || c == '\u2029') {
+                // Rare: let Gson apply its own escaping rules
+                StringWriter buffer = new StringWriter();
+                try {
+                    gson.newJsonWriter(buffer).value(value).flush();
+                } catch (IOException e) {
+                    // The buffer is in memory and never fails
+                    throw new UncheckedIOException(e);
+                }
+                return buffer.getBuffer().substring(1, buffer.getBuffer().length() - 1);
+            }
+        }
+        return value;
+    }
+
+    private static String idLiteral(Object id) {
+        if (id == null) {
+            return "null";
+        }
+        if (id instanceof Long || id instanceof Integer) {
+            return id.toString();
+        }
+        return null;
+    }
+
+    /**
+     * Method not found error that keeps the name for the cached encoding
+     */
+    private static final class MethodNotFound extends RpcError {
+        private final String method;
+
+        MethodNotFound(String method) {
+            super(METHOD_NOT_FOUND, "Method not found: " + method);
+            this.method = method;
+        }
+    }
+}
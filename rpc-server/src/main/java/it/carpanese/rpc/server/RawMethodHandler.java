@@ -0,0 +1,38 @@
+package it.carpanese.rpc.server;
+
+import com.google.gson.JsonElement;
+import it.carpanese.rpc.core.RawJson;
+import it.carpanese.rpc.core.RpcRequest;
+
+/**
+ * Handler whose results the endpoint keeps encoded, see {@link RpcMethodHandler#ofRaw}
+ */
+final class RawMethodHandler implements RpcMethodHandler {
+
+    private final RawHandler handler;
+
+    RawMethodHandler(RawHandler handler) {
+        this.handler = handler;
+    }
+
+    @Override
+    public JsonElement handle(JsonElement params, Object context) throws Exception {
+        throw new UnsupportedOperationException("Raw handlers are called with the whole request");
+    }
+
+    /**
+     * Call the handler and parse its result, for callers that need a tree
+     */
+    @Override
+    public JsonElement handleRequest(RpcRequest request, Object context) throws Exception {
+        RawJson result = handler.handle(request, context);
+        return result != null ? result.parse() : null;
+    }
+
+    /**
+     * Call the handler, keeping its result encoded
+     */
+    RawJson handleRaw(RpcRequest request, Object context) throws Exception {
+        return handler.handle(request, context);
+    }
+}
@@ -0,0 +1,305 @@
+package it.carpanese.rpc.server;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+import it.carpanese.rpc.core.RawJson;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Cache of serialized results for a method, see {@link MethodConfig#withCache}
+ *
+ * Lookups go to a concurrent map without locking. Eviction follows W-TinyLFU: new entries
+ * enter a small LRU window, and an entry leaving the window only displaces the least recently
+ * used entry of the main region if a frequency sketch says it is requested more often. One-off
+ * params therefore cannot flush the entries that are actually reused. Recency updates on hits
+ * are skipped while another thread holds the lock, so hits never wait.
+ *
+ * Entries past their TTL but within the stale window are still served, while a single
+ * refresh runs on a virtual thread.
+ */
+final class ResultCache {
+
+    private final long ttlNanos;
+    private final long staleNanos;
+    private final int windowMax;
+    private final int mainMax;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final LinkedHashMap<String, Entry> window = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<String, Entry> main = new LinkedHashMap<>(16, 0.75f, true);
+    private final FrequencySketch sketch;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder staleHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * @param ttlNanos Time an entry is fresh
+     * @param staleNanos Time after that it is served while being refreshed
+     * @param maxEntries Entries kept at most
+     */
+    ResultCache(long ttlNanos, long staleNanos, int maxEntries) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("Cache size must be positive");
+        }
+        this.ttlNanos = ttlNanos;
+        this.staleNanos = Math.max(0, staleNanos);
+        this.windowMax = Math.max(1, maxEntries / 100);
+        this.mainMax = maxEntries - windowMax;
+        this.sketch = new FrequencySketch(maxEntries);
+    }
+
+    /**
+     * Build the cache key of a call: the params with object members in sorted order
+     */
+    static String key(JsonElement params) {
+        StringBuilder key = new StringBuilder();
+        appendCanonical(params, key);
+        return key.toString();
+    }
+
+    private static void appendCanonical(JsonElement value, StringBuilder out) {
+        if (value == null || value.isJsonNull()) {
+            out.append("null");
+        } else if (value instanceof JsonObject object) {
+            List<String> names = new ArrayList<>(object.keySet());
+            names.sort(null);
+            out.append('{');
+            for (int i = 0; i < names.size(); i++) {
+                if (i > 0) {
+                    out.append(',');
+                }
+                out.append(new JsonPrimitive(names.get(i))).append(':');
+                appendCanonical(object.get(names.get(i)), out);
+            }
+            out.append('}');
+        } else if (value instanceof JsonArray array) {
+            out.append('[');
+            for (int i = 0; i < array.size(); i++) {
+                if (i > 0) {
+                    out.append(',');
+                }
+                appendCanonical(array.get(i), out);
+            }
+            out.append(']');
+        } else {
+            out.append(value);
+        }
+    }
+
+    /**
+     * Look up a result
+     *
+     * @param key Key from {@link #key(JsonElement)}
+     * @param loader Computes a fresh result for a stale entry, null if that failed
+     * @return Cached result, or null on a miss
+     */
+    RawJson get(String key, Supplier<RawJson> loader) {
+        sketch.increment(key.hashCode());
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+
+        long age = System.nanoTime() - entry.expiresAt;
+        if (age < 0) {
+            hits.increment();
+            touch(entry);
+            return entry.value;
+        }
+        if (age < staleNanos) {
+            staleHits.increment();
+            touch(entry);
+            if (entry.refreshing.compareAndSet(false, true)) {
+                Thread.startVirtualThread(() -> refresh(entry, loader));
+            }
+            return entry.value;
+        }
+
+        misses.increment();
+        remove(entry);
+        return null;
+    }
+
+    /**
+     * Store a result
+     */
+    void put(String key, RawJson value) {
+        Entry entry = new Entry(key, value, System.nanoTime() + ttlNanos);
+        lock.lock();
+        try {
+            Entry previous = entries.put(key, entry);
+            if (previous != null && main.containsKey(key)) {
+                main.put(key, entry);
+                return;
+            }
+            window.put(key, entry);
+            if (previous == null && window.size() > windowMax) {
+                evictFromWindow();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    long getHits() {
+        return hits.sum();
+    }
+
+    long getStaleHits() {
+        return staleHits.sum();
+    }
+
+    long getMisses() {
+        return misses.sum();
+    }
+
+    long getEvictions() {
+        return evictions.sum();
+    }
+
+    private void refresh(Entry entry, Supplier<RawJson> loader) {
+        RawJson value = null;
+        try {
+            value = loader.get();
+        } finally {
+            if (value != null) {
+                put(entry.key, value);
+            } else {
+                // Keep serving the stale value, the next hit tries again
+                entry.refreshing.set(false);
+            }
+        }
+    }
+
+    private void evictFromWindow() {
+        Iterator<Entry> windowOrder = window.values().iterator();
+        Entry candidate = windowOrder.next();
+        windowOrder.remove();
+
+        if (main.size() < mainMax) {
+            main.put(candidate.key, candidate);
+            return;
+        }
+
+        Entry victim = null;
+        Iterator<Entry> mainOrder = main.values().iterator();
+        if (mainOrder.hasNext()) {
+            victim = mainOrder.next();
+        }
+        if (victim != null && sketch.frequency(candidate.key.hashCode()) > sketch.frequency(victim.key.hashCode())) {
+            mainOrder.remove();
+            entries.remove(victim.key, victim);
+            main.put(candidate.key, candidate);
+        } else {
+            entries.remove(candidate.key, candidate);
+        }
+        evictions.increment();
+    }
+
+    private void touch(Entry entry) {
+        if (lock.tryLock()) {
+            try {
+                // Access-ordered maps move the entry to the most recent end on get
+                if (window.get(entry.key) == null) {
+                    main.get(entry.key);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private void remove(Entry entry) {
+        lock.lock();
+        try {
+            if (entries.remove(entry.key, entry)) {
+                window.remove(entry.key, entry);
+                main.remove(entry.key, entry);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static final class Entry {
+        final String key;
+        final RawJson value;
+        final long expiresAt;
+        final AtomicBoolean refreshing = new AtomicBoolean();
+
+        Entry(String key, RawJson value, long expiresAt) {
+            this.key = key;
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    /**
+     * Count-min sketch of 4-bit saturating counters, halved periodically so it follows recent use
+     *
+     * Increments are racy; a lost one only makes an estimate slightly low.
+     */
+    static final class FrequencySketch {
+        private static final int[] SEEDS = {0x97cb3127, 0xb6b6ab91, 0x5b26ba9d, 0xc3a5c85c};
+
+        private final byte[] table;
+        private final int mask;
+        private final int sampleSize;
+        private final AtomicInteger additions = new AtomicInteger();
+
+        FrequencySketch(int maxEntries) {
+            int size = Integer.highestOneBit(Math.max(64, Math.min(maxEntries, 1 << 24) * 4) * 2 - 1);
+            this.table = new byte[size];
+            this.mask = size - 1;
+            this.sampleSize = 10 * Math.max(16, maxEntries);
+        }
+
+        void increment(int hash) {
+            for (int seed : SEEDS) {
+                int index = index(hash, seed);
+                if (table[index] < 15) {
+                    table[index]++;
+                }
+            }
+            if (additions.incrementAndGet() == sampleSize) {
+                for (int i = 0; i < table.length; i++) {
+                    table[i] >>= 1;
+                }
+                additions.set(0);
+            }
+        }
+
+        int frequency(int hash) {
+            int frequency = 15;
+            for (int seed : SEEDS) {
+                frequency = Math.min(frequency, table[index(hash, seed)]);
+            }
+            return frequency;
+        }
+
+        private int index(int hash, int seed) {
+            int h = (hash ^ seed) * 0x9e3779b9;
+            return (h ^ (h >>> 16)) & mask;
+        }
+    }
+}
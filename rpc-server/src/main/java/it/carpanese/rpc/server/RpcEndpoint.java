@@ -1,12 +1,40 @@
 package it.carpanese.rpc.server;
 
 import it.carpanese.rpc.core.*;
+import it.carpanese.rpc.server.limit.ConcurrencyLimiter;
 import it.carpanese.rpc.server.logging.RpcLogger;
+import it.carpanese.rpc.server.metrics.LatencyHistogram;
+import it.carpanese.rpc.server.metrics.MethodMetrics;
+import it.carpanese.rpc.server.metrics.MetricsSink;
+import it.carpanese.rpc.server.metrics.PrometheusWriter;
+import it.carpanese.rpc.server.metrics.RpcMetrics;
 import it.carpanese.rpc.server.middleware.MiddlewareManager;
+import it.carpanese.rpc.server.middleware.RpcCall;
+import it.carpanese.rpc.server.middleware.RpcInterceptor;
+import it.carpanese.rpc.server.schema.JsonSchema;
+import it.carpanese.rpc.server.schema.SchemaViolationException;
 import com.google.gson.*;
-
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
  * JSON-RPC 2.0 Server Endpoint
@@ -15,15 +43,34 @@ import java.util.concurrent.ConcurrentHashMap;
  * Thread-safe for concurrent requests.
  */
 public class RpcEndpoint {
+
+    /**
+     * Tag of the introspection methods, to select or exclude them in middleware
+     */
+    public static final String INTROSPECTION_TAG = "introspection";
+
+    private static final RpcException TIMEOUT_EXCEPTION = RpcException.stackless(RpcError.timeout());
+    private static final RpcException OVERLOADED_EXCEPTION = RpcException.stackless(RpcError.overloaded());
     private final Map<String, MethodConfig> methods = new ConcurrentHashMap<>();
     private final RpcOptions options;
     private final RpcLogger logger;
     private final MiddlewareManager middleware;
     private final Object context;
     private final Gson gson;
-    private final RpcSerializer serializer;
+    private final RpcEnvelopeParser parser;
+    private final Gson binaryGson;
+    private final RpcEnvelopeParser binaryParser;
+    private final PreEncodedErrors preEncodedErrors;
+    private final EncoderBufferPool bufferPool;
+    private final AdaptiveCapacity responseSizes = new AdaptiveCapacity();
+    private final ParallelBatch parallelBatch;
+    private final TimerWheel timers = TimerWheel.shared();
+    private final ConcurrencyLimiter limiter;
+    private final RpcMetrics metrics;
+    private final long defaultTimeoutNanos;
     private final String introspectionPrefix;
-    private boolean isInternalRegistration = false;
+    private final DispatchTable liveTable;
+    private volatile DispatchTable table;
 
     /**
      * Create a new RPC endpoint with default options
@@ -66,10 +113,31 @@ public class RpcEndpoint {
         } else {
             this.middleware = null;
         }
+        this.liveTable = DispatchTable.live(this.middleware);
+        this.table = this.liveTable;
 
         // Initialize serializers
-        this.gson = new GsonBuilder().create();
-        this.serializer = new RpcSerializer(this.options.isSafeEnabled());
+        this.gson = new GsonBuilder()
+            .registerTypeAdapterFactory(new RpcTypeAdapterFactory(this.options.isSafeEnabled()))
+            .create();
+        this.parser = new RpcEnvelopeParser(this.options.isSafeEnabled());
+        this.preEncodedErrors = new PreEncodedErrors(this.gson);
+        this.bufferPool = this.options.getEncoderBufferPool();
+        this.limiter = this.options.getConcurrencyLimit() != null
+            ? new ConcurrencyLimiter(this.options.getConcurrencyLimit())
+            : null;
+        this.metrics = this.options.isEnableMetrics() ? new RpcMetrics(this.options.getMetricsSink()) : null;
+        this.defaultTimeoutNanos = TimeUnit.SECONDS.toNanos(Math.max(0, this.options.getTimeoutSeconds()));
+        this.parallelBatch = this.options.isParallelBatch()
+            ? new ParallelBatch(this.options.getBatchExecutor(), this.options.getBatchParallelism(),
+                TimeUnit.MILLISECONDS.toNanos(this.options.getBatchTimeoutMillis()), timers)
+            : null;
+
+        // Binary codecs carry types natively, Safe Mode markers only apply to JSON text
+        this.binaryGson = new GsonBuilder()
+            .registerTypeAdapterFactory(new RpcTypeAdapterFactory(false))
+            .create();
+        this.binaryParser = new RpcEnvelopeParser(false);
 
         // Register introspection methods if enabled
         if (this.options.isEnableIntrospection()) {
@@ -97,26 +165,75 @@ public class RpcEndpoint {
      * @return this for method chaining
      */
     public RpcEndpoint addMethod(String name, RpcMethodHandler handler, MethodConfig config) {
+        MethodConfig methodConfig = config != null ? config : new MethodConfig();
+        methodConfig.setHandler(handler);
+        methodConfig.setAsyncHandler(null);
+        return register(name, methodConfig, false);
+    }
+
+    /**
+     * Register an RPC method completing asynchronously
+     *
+     * Such methods do not hold a thread while waiting when called through
+     * {@link #handleRequestAsync(String)}; {@link #handleRequest(String)} waits for them.
+     *
+     * @param name Method name
+     * @param handler Method handler returning a stage
+     * @return this for method chaining
+     */
+    public RpcEndpoint addAsyncMethod(String name, AsyncRpcMethodHandler handler) {
+        return addAsyncMethod(name, handler, null);
+    }
+
+    /**
+     * Register an RPC method completing asynchronously, with configuration
+     *
+     * @param name Method name
+     * @param handler Method handler returning a stage
+     * @param config Method configuration (schema, exposeSchema, description)
+     * @return this for method chaining
+     */
+    public RpcEndpoint addAsyncMethod(String name, AsyncRpcMethodHandler handler, MethodConfig config) {
+        MethodConfig methodConfig = config != null ? config : new MethodConfig();
+        methodConfig.setHandler(blocking(handler));
+        methodConfig.setAsyncHandler(handler);
+        return register(name, methodConfig, false);
+    }
+
+    private RpcEndpoint register(String name, MethodConfig methodConfig, boolean internal) {
         if (name == null || name.trim().isEmpty()) {
             throw new IllegalArgumentException("Method name cannot be empty");
         }
 
         // Prevent users from registering introspection methods
-        if (name.startsWith(introspectionPrefix + ".") && !isInternalRegistration) {
+        if (name.startsWith(introspectionPrefix + ".") && !internal) {
             throw new IllegalArgumentException(
                 "Method names starting with '" + introspectionPrefix + ".' are reserved for RPC introspection"
             );
         }
 
-        if (methods.containsKey(name)) {
+        methodConfig.setName(name);
+        methodConfig.setBulkhead(new Bulkhead(methodConfig.getMaxConcurrency(), methodConfig.getMaxQueue()));
+        Duration cacheTtl = methodConfig.getCacheTtl();
+        Duration stale = methodConfig.getStaleWhileRevalidate();
+        methodConfig.setResultCache(cacheTtl != null && methodConfig.getCacheMaxEntries() > 0
+            ? new ResultCache(cacheTtl.toNanos(), stale != null ? stale.toNanos() : 0, methodConfig.getCacheMaxEntries())
+            : null);
+        methodConfig.setSingleFlight(methodConfig.isCoalesce() ? new SingleFlight() : null);
+        methodConfig.setResponseSize(responseSizes.newEstimate());
+        // A malformed schema fails here rather than on the first call
+        methodConfig.setValidator(options.isEnableValidation() && methodConfig.getSchema() != null
+            ? JsonSchema.compile(methodConfig.getSchema())
+            : null);
+
+        if (methods.putIfAbsent(name, methodConfig) != null) {
             throw new IllegalArgumentException("Method '" + name + "' is already registered");
         }
-
-        MethodConfig methodConfig = config != null ? config : new MethodConfig();
-        methodConfig.setName(name);
-        methodConfig.setHandler(handler);
-
-        methods.put(name, methodConfig);
+        liveTable.put(methodConfig, middleware);
+        // Introspection calls are left out, like from capabilities
+        if (metrics != null && !internal) {
+            methodConfig.setMetrics(metrics.register(name));
+        }
 
         if (logger != null) {
             logger.debug("Method registered: " + name);
@@ -133,6 +250,10 @@ public class RpcEndpoint {
      */
     public RpcEndpoint removeMethod(String name) {
         methods.remove(name);
+        liveTable.remove(name);
+        if (metrics != null) {
+            metrics.unregister(name);
+        }
 
         if (logger != null) {
             logger.debug("Method removed: " + name);
@@ -160,6 +281,34 @@ public class RpcEndpoint {
         return methods.get(name);
     }
 
+    /**
+     * Link the registered methods and the current middleware into an immutable dispatch table
+     *
+     * Calls are dispatched through the table from then on: each method gets a pipeline with its
+     * middleware chain linked in, so no per-call registry lookups or middleware list iteration
+     * remain. Methods registered or removed, and middleware added, afterwards take effect at
+     * the next call to this method, which swaps the whole table atomically; calls in progress
+     * complete on the table they started with.
+     *
+     * @return this for method chaining
+     */
+    public synchronized RpcEndpoint freeze() {
+        table = DispatchTable.freeze(methods.values(), middleware);
+
+        if (logger != null) {
+            logger.debug("Dispatch table frozen with " + table.size() + " methods");
+        }
+
+        return this;
+    }
+
+    /**
+     * Check if calls are dispatched through a table made by {@link #freeze()}
+     */
+    public boolean isFrozen() {
+        return table.isFrozen();
+    }
+
     /**
      * Get middleware manager
      *
@@ -178,6 +327,51 @@ public class RpcEndpoint {
         return logger;
     }
 
+    /**
+     * Get the measurements of this endpoint
+     *
+     * @return Metrics or null if disabled
+     */
+    public RpcMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Pick the format of a metrics scrape
+     *
+     * @param accept Accept header of the scrape, may be null
+     * @return OpenMetrics if the scraper accepts it, the Prometheus text format otherwise
+     */
+    public String getMetricsContentType(String accept) {
+        return PrometheusWriter.acceptsOpenMetrics(accept)
+            ? PrometheusWriter.OPENMETRICS_CONTENT_TYPE : PrometheusWriter.TEXT_CONTENT_TYPE;
+    }
+
+    /**
+     * Write the metrics for a Prometheus scrape, e.g. from a {@code GET /metrics} route
+     *
+     * Besides the {@code rpc_server_*} families of {@link PrometheusWriter#writeMetrics(RpcMetrics)},
+     * writes {@code rpc_server_concurrency_limit} and {@code rpc_server_concurrency_in_flight}
+     * when a concurrency limit is set. Introspection methods are not included.
+     *
+     * @param out Response body (flushed, not closed)
+     * @param contentType Format, from {@link #getMetricsContentType(String)}
+     * @throws IllegalStateException If metrics are disabled
+     */
+    public void writeMetrics(OutputStream out, String contentType) throws IOException {
+        if (metrics == null) {
+            throw new IllegalStateException("Metrics are disabled");
+        }
+        PrometheusWriter writer = new PrometheusWriter(out, PrometheusWriter.acceptsOpenMetrics(contentType));
+        writer.writeMetrics(metrics);
+        if (limiter != null) {
+            writer.writeGauge("rpc_server_concurrency_limit", "Calls the endpoint admits at the same time", limiter.getLimit());
+            writer.writeGauge("rpc_server_concurrency_in_flight", "Calls admitted by the concurrency limit and running",
+                limiter.getInFlight());
+        }
+        writer.finish();
+    }
+
     /**
      * Handle a JSON-RPC request
      *
@@ -185,166 +379,1189 @@ public class RpcEndpoint {
      * @return JSON-RPC response as string
      */
     public String handleRequest(String jsonRequest) {
+        Reply reply;
+        try {
+            reply = dispatch(parse(jsonRequest));
+        } catch (JsonSyntaxException e) {
+            reply = parseError(e);
+        } catch (Exception e) {
+            reply = unexpectedError(e);
+        }
+
+        if (reply.responses().isEmpty()) {
+            return "";
+        }
+        return serializeOrError(reply);
+    }
+
+    /**
+     * Handle a JSON-RPC request without blocking on asynchronous handlers
+     *
+     * Parsing, synchronous middleware and blocking handlers run on the calling thread; work after
+     * an {@link it.carpanese.rpc.server.middleware.AsyncRpcMiddleware} or asynchronous handler
+     * continues on the thread completing it, up to serializing the response.
+     *
+     * @param jsonRequest JSON-RPC request as string
+     * @return JSON-RPC response as string, empty for notifications
+     */
+    public CompletableFuture<String> handleRequestAsync(String jsonRequest) {
+        CompletableFuture<Reply> reply;
+        try {
+            reply = dispatchAsync(parse(jsonRequest));
+        } catch (JsonSyntaxException e) {
+            reply = CompletableFuture.completedFuture(parseError(e));
+        } catch (Exception e) {
+            reply = CompletableFuture.completedFuture(unexpectedError(e));
+        }
+
+        return reply.thenApply(r -> r.responses().isEmpty() ? "" : serializeOrError(r));
+    }
+
+    /**
+     * Handle an encoded request, streaming the response in the same encoding
+     *
+     * @param in Request body (not closed)
+     * @param out Response body (flushed, not closed)
+     * @param codec Wire encoding of both bodies, see {@link #getCodec(String)}
+     * @return true if a response was written, false for notifications
+     */
+    public boolean handleRequest(InputStream in, OutputStream out, RpcCodec codec) throws IOException {
+        boolean binary = codec.isBinary();
+        Gson writerGson = binary ? binaryGson : gson;
+
+        Reply reply;
+        try {
+            reply = dispatch(parse(in, codec));
+        } catch (JsonSyntaxException e) {
+            reply = parseError(e);
+        } catch (Exception e) {
+            reply = unexpectedError(e);
+        }
+
+        if (reply.responses().isEmpty()) {
+            return false;
+        }
+
+        RpcSerializeEvent event = new RpcSerializeEvent();
+        // Count the bytes only for the metrics or a recording that wants them
+        RpcEvents.CountingOutputStream counted = metrics != null || event.isEnabled()
+            ? new RpcEvents.CountingOutputStream(out) : null;
+        event.begin();
+        long start = System.nanoTime();
+        try {
+            writeReply(reply, counted != null ? counted : out, codec, writerGson);
+        } finally {
+            recordSerialize(start, counted != null ? counted.getCount() : -1);
+            if (event.shouldCommit()) {
+                commitSerialize(event, reply, counted != null ? counted.getCount() : -1);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Stream the responses of a reply in the encoding of a codec
+     */
+    private void writeReply(Reply reply, OutputStream out, RpcCodec codec, Gson writerGson) throws IOException {
+        boolean binary = codec.isBinary();
+        if (!binary && !reply.batch() && preEncodedErrors.writeTo(reply.responses().get(0), out)) {
+            out.flush();
+            return;
+        }
+
+        JsonWriter writer = codec.newWriter(out);
         try {
-            // Detect batch vs single request
-            JsonElement element = JsonParser.parseString(jsonRequest);
-
-            if (element.isJsonArray()) {
-                if (!options.isEnableBatch()) {
-                    RpcResponse error = createErrorResponse(null,
-                        new RpcException(RpcError.INVALID_REQUEST, "Batch requests are not enabled"));
-                    return serializeResponse(error);
+            if (reply.batch()) {
+                writer.beginArray();
+                for (RpcResponse response : reply.responses()) {
+                    String cached = binary ? null : preEncodedErrors.encode(response);
+                    if (cached != null) {
+                        writer.jsonValue(cached);
+                    } else {
+                        writerGson.toJson(response, RpcResponse.class, writer);
+                    }
                 }
+                writer.endArray();
+            } else {
+                writerGson.toJson(reply.responses().get(0), RpcResponse.class, writer);
+            }
+        } catch (JsonIOException e) {
+            if (e.getCause() instanceof IOException io) {
+                throw io;
+            }
+            throw e;
+        }
+        writer.flush();
+    }
+
+    /**
+     * Handle an encoded request body
+     *
+     * @param body Request body
+     * @param contentType Content-Type header of the request, selects the codec
+     * @return Response body in the same encoding, empty for notifications
+     */
+    public byte[] handleRequest(byte[] body, String contentType) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(256);
+        try {
+            handleRequest(new ByteArrayInputStream(body), out, getCodec(contentType));
+        } catch (IOException e) {
+            // In-memory streams do not fail
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Pick the codec for a Content-Type or Accept header
+     *
+     * @param contentType Header value, may be null
+     * @return Matching codec from {@link RpcOptions#getCodecs()}, JSON if none matches
+     */
+    public RpcCodec getCodec(String contentType) {
+        RpcCodec codec = RpcCodec.negotiate(contentType, options.getCodecs());
+        return codec != null ? codec : JsonRpcCodec.INSTANCE;
+    }
+
+    /**
+     * Parse a payload, timing it for the metrics and {@link RpcParseEvent}
+     */
+    private RpcEnvelope parse(String json) throws JsonSyntaxException {
+        RpcParseEvent event = new RpcParseEvent();
+        event.begin();
+        long start = System.nanoTime();
+        RpcEnvelope envelope = null;
+        try {
+            envelope = parser.parse(json);
+            recordParse(start, envelope, metrics != null ? RpcEvents.utf8Length(json) : -1);
+            return envelope;
+        } finally {
+            if (event.shouldCommit()) {
+                commitParse(event, envelope, RpcEvents.utf8Length(json));
+            }
+        }
+    }
 
-                JsonArray requests = element.getAsJsonArray();
+    private RpcEnvelope parse(InputStream in, RpcCodec codec) throws JsonSyntaxException {
+        RpcParseEvent event = new RpcParseEvent();
+        RpcEvents.CountingInputStream counted = metrics != null || event.isEnabled()
+            ? new RpcEvents.CountingInputStream(in) : null;
+        event.begin();
+        long start = System.nanoTime();
+        RpcEnvelope envelope = null;
+        try {
+            envelope = (codec.isBinary() ? binaryParser : parser).parse(codec.newReader(counted != null ? counted : in));
+            recordParse(start, envelope, counted != null ? counted.getCount() : -1);
+            return envelope;
+        } finally {
+            if (event.shouldCommit()) {
+                commitParse(event, envelope, counted != null ? counted.getCount() : -1);
+            }
+        }
+    }
 
-                if (requests.size() == 0) {
-                    RpcResponse error = createErrorResponse(null,
-                        new RpcException(RpcError.INVALID_REQUEST, "Invalid batch request"));
-                    return serializeResponse(error);
+    private static void commitParse(RpcParseEvent event, RpcEnvelope envelope, long payloadSize) {
+        event.payloadSize = payloadSize;
+        if (envelope == null) {
+            event.outcome = RpcEvents.PARSE_ERROR;
+        } else {
+            event.requests = envelope.size();
+            event.outcome = RpcEvents.SUCCESS;
+            if (!envelope.isBatch()) {
+                RpcEnvelope.Entry entry = envelope.getEntries().get(0);
+                if (entry.isValid()) {
+                    event.method = entry.getRequest().getMethod();
+                    event.id = RpcEvents.id(entry.getRequest());
+                } else {
+                    event.id = entry.getId() != null ? entry.getId().toString() : null;
+                    event.outcome = RpcEvents.ERROR;
                 }
+            }
+        }
+        event.commit();
+    }
 
-                if (options.getMaxBatchSize() > 0 && requests.size() > options.getMaxBatchSize()) {
-                    RpcResponse error = createErrorResponse(null,
-                        new RpcException(RpcError.INVALID_REQUEST,
-                            "Batch size exceeds maximum of " + options.getMaxBatchSize()));
-                    return serializeResponse(error);
+    /**
+     * Run a parsed envelope, collecting the responses to send back
+     */
+    private Reply dispatch(RpcEnvelope envelope) {
+        try {
+            if (envelope.isBatch()) {
+                Reply rejected = checkBatch(envelope);
+                if (rejected != null) {
+                    return rejected;
                 }
 
-                return handleBatchRequest(requests);
+                List<String> methods = new ArrayList<>(envelope.size());
+                return new Reply(true, handleBatchRequest(envelope.getEntries(), methods), methods);
             } else {
-                RpcRequest request = parseRequest(element);
+                RpcEnvelope.Entry entry = envelope.getEntries().get(0);
+                if (!entry.isValid()) {
+                    return Reply.single(new RpcResponse(entry.getError(), entry.getId()));
+                }
+
+                RpcRequest request = entry.getRequest();
                 RpcResponse response = handleSingleRequest(request);
 
                 // Notifications return no response
                 if (request.getId() == null) {
-                    return "";
+                    return Reply.NONE;
                 }
 
-                return serializeResponse(response);
-            }
-        } catch (JsonSyntaxException e) {
-            if (logger != null) {
-                logger.error("Parse error", null, e);
+                return Reply.single(response, request.getMethod());
             }
-            RpcResponse error = createErrorResponse(null,
-                new RpcException(RpcError.PARSE_ERROR, "Invalid JSON", e));
-            return serializeResponse(error);
         } catch (Exception e) {
-            if (logger != null) {
-                logger.error("Unexpected error", null, e);
+            return unexpectedError(e);
+        }
+    }
+
+    /**
+     * Run a parsed envelope, completing when every handler it called has
+     */
+    private CompletableFuture<Reply> dispatchAsync(RpcEnvelope envelope) {
+        try {
+            if (envelope.isBatch()) {
+                Reply rejected = checkBatch(envelope);
+                if (rejected != null) {
+                    return CompletableFuture.completedFuture(rejected);
+                }
+                return handleBatchRequestAsync(envelope.getEntries());
+            }
+
+            RpcEnvelope.Entry entry = envelope.getEntries().get(0);
+            if (!entry.isValid()) {
+                return CompletableFuture.completedFuture(Reply.single(new RpcResponse(entry.getError(), entry.getId())));
             }
-            RpcResponse error = createErrorResponse(null,
-                new RpcException(RpcError.INTERNAL_ERROR, "Internal error", e));
-            return serializeResponse(error);
+
+            RpcRequest request = entry.getRequest();
+            return handleSingleRequestAsync(request).thenApply(response ->
+                request.getId() == null ? Reply.NONE : Reply.single(response, request.getMethod()));
+        } catch (Exception e) {
+            return CompletableFuture.completedFuture(unexpectedError(e));
+        }
+    }
+
+    /**
+     * Check a batch against the options
+     *
+     * @return Error reply, or null if the batch can be run
+     */
+    private Reply checkBatch(RpcEnvelope envelope) {
+        if (!options.isEnableBatch()) {
+            return Reply.single(createErrorResponse(null,
+                new RpcException(RpcError.INVALID_REQUEST, "Batch requests are not enabled")));
+        }
+
+        if (envelope.size() == 0) {
+            return Reply.single(createErrorResponse(null,
+                new RpcException(RpcError.INVALID_REQUEST, "Invalid batch request")));
+        }
+
+        if (options.getMaxBatchSize() > 0 && envelope.size() > options.getMaxBatchSize()) {
+            return Reply.single(createErrorResponse(null,
+                new RpcException(RpcError.INVALID_REQUEST,
+                    "Batch size exceeds maximum of " + options.getMaxBatchSize())));
+        }
+        return null;
+    }
+
+    private Reply parseError(JsonSyntaxException e) {
+        if (logger != null) {
+            logger.error("Parse error", null, e);
+        }
+        return Reply.single(new RpcResponse(RpcError.parseError(), null));
+    }
+
+    /**
+     * Answer a payload that failed other than by being malformed JSON, e.g. an envelope the
+     * parser could not make sense of or a reply that could not be serialized
+     */
+    private Reply unexpectedError(Exception e) {
+        if (logger != null) {
+            logger.error("Unexpected error", null, e);
         }
+        return Reply.single(createErrorResponse(null,
+            new RpcException(RpcError.INTERNAL_ERROR, "Internal error", e)));
     }
 
     /**
      * Handle a single RPC request
      */
     private RpcResponse handleSingleRequest(RpcRequest request) {
+        long start = System.nanoTime();
+        MethodMetrics methodMetrics = startCall(request);
+        RpcResponse response;
+        // Introspection stays available under overload, it is how overload is observed
+        if (limiter == null || isIntrospection(request)) {
+            response = process(request);
+        } else if (!limiter.tryAcquire()) {
+            response = shed(request);
+        } else {
+            response = process(request);
+            limiter.release(start, isTimeout(response));
+        }
+        recordCall(methodMetrics, response, start);
+        return response;
+    }
+
+    private RpcResponse process(RpcRequest request) {
         try {
-            // Validate request
-            validateRequest(request);
+            MethodPipeline pipeline = prepare(request);
+            MethodConfig methodConfig = pipeline.getConfig();
+            if (methodConfig == null) {
+                return new RpcResponse(PreEncodedErrors.methodNotFound(request.getMethod()), request.getId());
+            }
+            validateParams(methodConfig, request);
 
-            // Execute middleware before
-            if (middleware != null) {
-                middleware.executeBefore(request, context);
+            // Execute method
+            RpcInterceptor[] interceptors = pipeline.interceptors();
+            RpcHandlerEvent event = new RpcHandlerEvent();
+            event.begin();
+            Object result;
+            try {
+                result = interceptors.length == 0
+                    ? run(methodConfig, request)
+                    : await(new Call(methodConfig, request, interceptors, false).proceed());
+            } catch (Exception e) {
+                if (event.shouldCommit()) {
+                    commitHandler(event, request, e);
+                }
+                throw e;
+            }
+            if (event.shouldCommit()) {
+                commitHandler(event, request, null);
             }
 
-            // Find method
-            MethodConfig methodConfig = methods.get(request.getMethod());
-            if (methodConfig == null) {
-                throw new RpcException(RpcError.METHOD_NOT_FOUND,
-                    "Method not found: " + request.getMethod());
+            return complete(pipeline, request, result);
+        } catch (Exception e) {
+            return errorResponse(request, e);
+        }
+    }
+
+    /**
+     * Check the params of a call against the schema of its method
+     *
+     * Params still in their received form are checked as they are read, so invalid ones are
+     * rejected without being decoded.
+     *
+     * @throws RpcException {@link RpcError#INVALID_PARAMS} naming the offending value
+     */
+    private static void validateParams(MethodConfig methodConfig, RpcRequest request) throws RpcException {
+        JsonSchema validator = methodConfig.getValidator();
+        if (validator == null) {
+            return;
+        }
+        RawJson raw = request.getRawParams();
+        try {
+            if (raw == null) {
+                validator.validateOmitted();
+            } else {
+                JsonReader in = new JsonReader(new StringReader(raw.getJson()));
+                in.setLenient(true);
+                validator.validate(in, raw.isSafeEncoded());
             }
+        } catch (SchemaViolationException e) {
+            JsonObject data = new JsonObject();
+            data.addProperty("path", e.getPath());
+            data.addProperty("keyword", e.getKeyword());
+            throw RpcException.stackless(new RpcError(RpcError.INVALID_PARAMS, "Invalid params: " + e.getMessage(), data));
+        } catch (IOException e) {
+            throw RpcException.stackless(RpcError.invalidParams());
+        }
+    }
 
-            // Execute method
-            JsonElement result = methodConfig.getHandler().handle(request.getParams(), context);
+    private static void commitHandler(RpcHandlerEvent event, RpcRequest request, Throwable error) {
+        RawJson params = request.getRawParams();
+        event.method = request.getMethod();
+        event.id = RpcEvents.id(request);
+        event.paramsSize = params != null ? params.getJson().length() : 0;
+        event.outcome = RpcEvents.outcome(error);
+        event.errorCode = RpcEvents.errorCode(error);
+        event.commit();
+    }
 
-            // Execute middleware after
-            if (middleware != null) {
-                middleware.executeAfter(request, result, context);
+    /**
+     * Get the result of a method from its cache, the identical call in flight or its handler
+     *
+     * @return Result as a JsonElement or, once encoded, as RawJson
+     */
+    private Object run(MethodConfig methodConfig, RpcRequest request) throws Exception {
+        ResultCache cache = methodConfig.getResultCache();
+        String cacheKey = cache != null ? ResultCache.key(request.getParams()) : null;
+        if (cacheKey != null) {
+            RawJson cached = cache.get(cacheKey, () -> reload(methodConfig, request));
+            if (cached != null) {
+                return cached;
             }
+        }
 
-            if (logger != null) {
-                logger.debug("Method executed successfully: " + request.getMethod());
+        SingleFlight flights = methodConfig.getSingleFlight();
+        return flights == null
+            ? execute(methodConfig, request, cacheKey)
+            : flights.call(flightKey(request, cacheKey), () -> execute(methodConfig, request, cacheKey));
+    }
+
+    private static JsonElement await(CompletionStage<JsonElement> stage) throws Exception {
+        try {
+            return stage.toCompletableFuture().get();
+        } catch (ExecutionException e) {
+            Throwable cause = unwrap(e);
+            if (cause instanceof Exception exception) {
+                throw exception;
+            }
+            if (cause instanceof Error error) {
+                throw error;
             }
+            throw e;
+        }
+    }
+
+    /**
+     * Call a blocking handler within the method's bulkhead, caching the result
+     */
+    private Object execute(MethodConfig methodConfig, RpcRequest request, String cacheKey) throws Exception {
+        Bulkhead bulkhead = methodConfig.getBulkhead();
+        awaitPermit(bulkhead, methodConfig, request);
+        Object result;
+        try {
+            result = invoke(methodConfig, request);
+        } finally {
+            bulkhead.release();
+        }
+        return store(methodConfig, cacheKey, result);
+    }
+
+    /**
+     * Key under which identical calls are coalesced, reusing the cache key when there is one
+     */
+    private static String flightKey(RpcRequest request, String cacheKey) {
+        return cacheKey != null ? cacheKey : ResultCache.key(request.getParams());
+    }
+
+    /**
+     * Handle a single RPC request, waiting for asynchronous handlers without blocking
+     */
+    private CompletableFuture<RpcResponse> handleSingleRequestAsync(RpcRequest request) {
+        long start = System.nanoTime();
+        MethodMetrics methodMetrics = startCall(request);
+        if (limiter == null || isIntrospection(request)) {
+            CompletableFuture<RpcResponse> response = processAsync(request);
+            return methodMetrics == null ? response
+                : response.whenComplete((value, error) -> recordCall(methodMetrics, value, start));
+        }
+        if (!limiter.tryAcquire()) {
+            RpcResponse response = shed(request);
+            recordCall(methodMetrics, response, start);
+            return CompletableFuture.completedFuture(response);
+        }
+        return processAsync(request).whenComplete((response, error) -> {
+            limiter.release(start, response == null || isTimeout(response));
+            recordCall(methodMetrics, response, start);
+        });
+    }
+
+    /**
+     * Count a call of a registered method as in flight
+     *
+     * @return Metrics to pass to {@link #recordCall}, null if the method is not measured
+     */
+    private MethodMetrics startCall(RpcRequest request) {
+        if (metrics == null) {
+            return null;
+        }
+        MethodConfig methodConfig = table.get(request.getMethod()).getConfig();
+        MethodMetrics methodMetrics = methodConfig != null ? methodConfig.getMetrics() : null;
+        if (methodMetrics != null) {
+            metrics.startCall(methodMetrics);
+        }
+        return methodMetrics;
+    }
+
+    /**
+     * Count a completed call
+     *
+     * @param methodMetrics What {@link #startCall} returned
+     * @param startNanos {@link System#nanoTime()} before the call was admitted
+     */
+    private void recordCall(MethodMetrics methodMetrics, RpcResponse response, long startNanos) {
+        if (methodMetrics == null) {
+            return;
+        }
+        metrics.endCall(methodMetrics);
+        if (response == null) {
+            return;
+        }
+        MetricsSink.Outcome outcome = !response.isError() ? MetricsSink.Outcome.SUCCESS
+            : response.getError() == RpcError.overloaded() ? MetricsSink.Outcome.REJECTED
+            : MetricsSink.Outcome.ERROR;
+        metrics.recordCall(methodMetrics, outcome, System.nanoTime() - startNanos);
+    }
+
+    /**
+     * @param size Size of the payload, -1 if it was not counted
+     */
+    private void recordParse(long startNanos, RpcEnvelope envelope, long size) {
+        if (metrics != null) {
+            metrics.recordParse(System.nanoTime() - startNanos);
+            metrics.recordRequest(envelope.size(), size);
+        }
+    }
+
+    private void recordSerialize(long startNanos, long size) {
+        if (metrics != null) {
+            metrics.recordSerialize(System.nanoTime() - startNanos);
+            metrics.recordResponse(size);
+        }
+    }
+
+    /**
+     * Answer a call the limiter did not admit, before anything else is done with it
+     */
+    private RpcResponse shed(RpcRequest request) {
+        if (logger != null) {
+            logger.debug("Request shed by concurrency limit: " + request.getMethod());
+        }
+        return new RpcResponse(RpcError.overloaded(), request.getId());
+    }
+
+    private boolean isIntrospection(RpcRequest request) {
+        String method = request.getMethod();
+        return method.length() > introspectionPrefix.length()
+            && method.charAt(introspectionPrefix.length()) == '.'
+            && method.startsWith(introspectionPrefix);
+    }
+
+    private static boolean isTimeout(RpcResponse response) {
+        return response.isError() && response.getError() == RpcError.timeout();
+    }
+
+    private CompletableFuture<RpcResponse> processAsync(RpcRequest request) {
+        MethodPipeline pipeline;
+        CompletableFuture<Void> before;
+        try {
+            validateRequest(request);
+            pipeline = table.get(request.getMethod());
+            before = pipeline.beforeAsync(request, context);
+        } catch (Exception e) {
+            return CompletableFuture.completedFuture(errorResponse(request, e));
+        }
 
-            // Create response
-            return new RpcResponse(result, request.getId());
+        if (before.isDone() && !before.isCompletedExceptionally()) {
+            return proceedAsync(pipeline, request);
+        }
+        return before.handle((ignored, error) -> error).thenCompose(error -> error != null
+            ? CompletableFuture.completedFuture(errorResponse(request, unwrap(error)))
+            : proceedAsync(pipeline, request));
+    }
 
+    /**
+     * Call a method whose before middleware has run, then run its after middleware
+     */
+    private CompletableFuture<RpcResponse> proceedAsync(MethodPipeline pipeline, RpcRequest request) {
+        MethodConfig methodConfig = pipeline.getConfig();
+        if (methodConfig == null) {
+            logMethodNotFound(request);
+            return CompletableFuture.completedFuture(
+                new RpcResponse(PreEncodedErrors.methodNotFound(request.getMethod()), request.getId()));
+        }
+        try {
+            validateParams(methodConfig, request);
         } catch (RpcException e) {
-            if (logger != null) {
-                logger.warn("RPC error: " + e.getMessage());
+            return CompletableFuture.completedFuture(errorResponse(request, e));
+        }
+
+        RpcInterceptor[] interceptors = pipeline.interceptors();
+        RpcHandlerEvent event = new RpcHandlerEvent();
+        event.begin();
+        CompletableFuture<?> result = interceptors.length == 0
+            ? runAsync(methodConfig, request)
+            : new Call(methodConfig, request, interceptors, true).proceed().toCompletableFuture();
+        if (event.isEnabled()) {
+            result.whenComplete((value, error) -> {
+                if (event.shouldCommit()) {
+                    commitHandler(event, request, error != null ? unwrap(error) : null);
+                }
+            });
+        }
+
+        return result.handle((value, error) -> {
+            if (error != null) {
+                return CompletableFuture.completedFuture(errorResponse(request, unwrap(error)));
             }
-            return new RpcResponse(e.getError(), request.getId());
+            CompletableFuture<Void> after = pipeline.afterAsync(request, value, context);
+            if (after.isDone() && !after.isCompletedExceptionally()) {
+                return CompletableFuture.completedFuture(respond(request, value));
+            }
+            return after.handle((ignored, afterError) -> afterError != null
+                ? errorResponse(request, unwrap(afterError))
+                : respond(request, value));
+        }).thenCompose(response -> response);
+    }
+
+    /**
+     * Get the result of a method from its cache, the identical call in flight or its handler,
+     * without blocking on asynchronous handlers
+     */
+    private CompletableFuture<Object> runAsync(MethodConfig methodConfig, RpcRequest request) {
+        String cacheKey;
+        String flightKey;
+        try {
+            ResultCache cache = methodConfig.getResultCache();
+            cacheKey = cache != null ? ResultCache.key(request.getParams()) : null;
+            if (cacheKey != null) {
+                RawJson cached = cache.get(cacheKey, () -> reload(methodConfig, request));
+                if (cached != null) {
+                    return CompletableFuture.completedFuture(cached);
+                }
+            }
+            flightKey = methodConfig.getSingleFlight() != null ? flightKey(request, cacheKey) : null;
+        } catch (Exception e) {
+            return CompletableFuture.failedFuture(e);
+        }
+
+        return flightKey == null
+            ? executeAsync(methodConfig, request, cacheKey)
+            : methodConfig.getSingleFlight().callAsync(flightKey, () -> executeAsync(methodConfig, request, cacheKey));
+    }
+
+    /**
+     * Call going through the interceptors of a method, running the method at the end of the chain
+     */
+    private final class Call extends RpcCall {
+        private final MethodConfig methodConfig;
+        private final boolean async;
+
+        Call(MethodConfig methodConfig, RpcRequest request, RpcInterceptor[] interceptors, boolean async) {
+            super(request, RpcEndpoint.this.context, methodConfig.getTags(), interceptors);
+            this.methodConfig = methodConfig;
+            this.async = async;
+        }
+
+        @Override
+        protected CompletionStage<JsonElement> invoke() throws Exception {
+            return async
+                ? runAsync(methodConfig, getRequest()).thenApply(RpcEndpoint::tree)
+                : CompletableFuture.completedFuture(tree(run(methodConfig, getRequest())));
+        }
+    }
+
+    /**
+     * Call a handler within the method's bulkhead, caching the result
+     *
+     * @return Result, failing with the error of the call
+     */
+    private CompletableFuture<Object> executeAsync(MethodConfig methodConfig, RpcRequest request,
+                                                   String cacheKey) {
+        CompletableFuture<Void> permit = methodConfig.getBulkhead().acquire();
+        if (permit == null) {
+            return CompletableFuture.failedFuture(rejected(request));
+        }
+        if (permit.isDone()) {
+            return callAsync(methodConfig, request, cacheKey);
+        }
+
+        // Queued: the call starts on the thread releasing the permit, unless the deadline passes first
+        long timeoutNanos = timeoutNanos(methodConfig);
+        TimerWheel.Timeout timeout = timeoutNanos <= 0 ? null
+            : timers.schedule(() -> Thread.startVirtualThread(() -> permit.cancel(false)), timeoutNanos);
+        return permit.handle((ignored, error) -> error == null).thenCompose(acquired -> {
+            if (!acquired) {
+                logTimeout(request);
+                return CompletableFuture.failedFuture(TIMEOUT_EXCEPTION);
+            }
+            if (timeout != null) {
+                timeout.cancel();
+            }
+            return callAsync(methodConfig, request, cacheKey);
+        });
+    }
+
+    /**
+     * Call the handler of a method holding a permit of its bulkhead, releasing it when done
+     */
+    private CompletableFuture<Object> callAsync(MethodConfig methodConfig, RpcRequest request, String cacheKey) {
+        Bulkhead bulkhead = methodConfig.getBulkhead();
+        CompletionStage<JsonElement> stage;
+        try {
+            AsyncRpcMethodHandler asyncHandler = methodConfig.getAsyncHandler();
+            if (asyncHandler == null) {
+                Object result;
+                try {
+                    result = invoke(methodConfig, request);
+                } finally {
+                    bulkhead.release();
+                }
+                return CompletableFuture.completedFuture(store(methodConfig, cacheKey, result));
+            }
+            try {
+                stage = asyncHandler.handleRequestAsync(request, context);
+            } catch (Exception e) {
+                bulkhead.release();
+                throw e;
+            }
+            if (stage == null) {
+                bulkhead.release();
+                throw new IllegalStateException("Handler of '" + request.getMethod() + "' returned no stage");
+            }
+        } catch (Exception e) {
+            return CompletableFuture.failedFuture(e);
+        }
+
+        long timeoutNanos = timeoutNanos(methodConfig);
+        CompletableFuture<JsonElement> future = stage.toCompletableFuture();
+        // Cancel off the timer thread: dependents, up to serialization, run on the cancelling thread
+        TimerWheel.Timeout timeout = future.isDone() || timeoutNanos <= 0 ? null
+            : timers.schedule(() -> Thread.startVirtualThread(() -> future.cancel(true)), timeoutNanos);
+
+        return future.handle((result, error) -> {
+            bulkhead.release();
+            if (timeout != null && !timeout.cancel()) {
+                logTimeout(request);
+                throw new CompletionException(TIMEOUT_EXCEPTION);
+            }
+            if (error != null) {
+                throw new CompletionException(unwrap(error));
+            }
+            try {
+                return store(methodConfig, cacheKey, result);
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        });
+    }
+
+    /**
+     * Cache a result if the method has a cache, returning it in the serialized form that was stored
+     */
+    private Object store(MethodConfig methodConfig, String cacheKey, Object result) throws IOException {
+        if (cacheKey == null) {
+            return result;
+        }
+        RawJson encoded = encodeResult(result);
+        methodConfig.getResultCache().put(cacheKey, encoded);
+        return encoded;
+    }
+
+    /**
+     * Recompute a stale cached result in the background
+     *
+     * @return The result, or null if it could not be computed (the stale value is kept)
+     */
+    private RawJson reload(MethodConfig methodConfig, RpcRequest request) {
+        Bulkhead bulkhead = methodConfig.getBulkhead();
+        CompletableFuture<Void> permit = bulkhead.acquire();
+        if (permit == null || !permit.isDone() && permit.cancel(false)) {
+            // Refreshes do not queue behind live calls
+            return null;
+        }
+        try {
+            return encodeResult(invoke(methodConfig, request));
         } catch (Exception e) {
             if (logger != null) {
-                logger.error("Internal error processing request", null, e);
+                logger.warn("Cache refresh failed: " + request.getMethod());
             }
+            return null;
+        } finally {
+            bulkhead.release();
+        }
+    }
 
-            String message = options.isSanitizeErrors() ? "Internal error" : e.getMessage();
-            RpcError error = new RpcError(RpcError.INTERNAL_ERROR, message);
-            return new RpcResponse(error, request.getId());
+    private RawJson encodeResult(Object result) throws IOException {
+        if (result instanceof RawJson raw) {
+            return raw;
         }
+        JsonElement value = result != null ? (JsonElement) result : JsonNull.INSTANCE;
+        StringWriter out = new StringWriter();
+        JsonWriter writer = new JsonWriter(out);
+        writer.setSerializeNulls(true);
+        if (options.isSafeEnabled()) {
+            SafeModeCodec.write(value, writer);
+            return RawJson.ofSafe(out.toString());
+        }
+        gson.getAdapter(JsonElement.class).write(writer, value);
+        return RawJson.of(out.toString());
     }
 
     /**
-     * Handle batch request
+     * Take a permit of the method's bulkhead, waiting in its queue up to the method deadline
      */
-    private String handleBatchRequest(JsonArray requests) {
-        JsonArray responses = new JsonArray();
+    private void awaitPermit(Bulkhead bulkhead, MethodConfig methodConfig, RpcRequest request) throws Exception {
+        CompletableFuture<Void> permit = bulkhead.acquire();
+        if (permit == null) {
+            throw rejected(request);
+        }
+        if (permit.isDone()) {
+            return;
+        }
+
+        long timeoutNanos = timeoutNanos(methodConfig);
+        try {
+            if (timeoutNanos > 0) {
+                permit.get(timeoutNanos, TimeUnit.NANOSECONDS);
+            } else {
+                permit.get();
+            }
+        } catch (TimeoutException e) {
+            if (permit.cancel(false)) {
+                logTimeout(request);
+                throw TIMEOUT_EXCEPTION;
+            }
+            // Handed over just now, the permit is ours
+        } catch (InterruptedException e) {
+            if (!permit.cancel(false)) {
+                bulkhead.release();
+            }
+            Thread.currentThread().interrupt();
+            throw e;
+        }
+    }
 
+    private RpcException rejected(RpcRequest request) {
         if (logger != null) {
-            logger.info("Processing batch request with " + requests.size() + " items");
+            logger.warn("RPC error: Method overloaded: " + request.getMethod());
         }
+        return OVERLOADED_EXCEPTION;
+    }
 
-        for (JsonElement element : requests) {
-            try {
-                RpcRequest request = parseRequest(element);
-                RpcResponse response = handleSingleRequest(request);
+    /**
+     * Call a blocking handler, interrupting it if it runs past the method deadline
+     */
+    private Object invoke(MethodConfig methodConfig, RpcRequest request) throws Exception {
+        long timeoutNanos = timeoutNanos(methodConfig);
+        if (timeoutNanos <= 0) {
+            return handle(methodConfig.getHandler(), request);
+        }
+
+        Interruption interruption = new Interruption(Thread.currentThread());
+        TimerWheel.Timeout timeout = timers.schedule(interruption, timeoutNanos);
+        Object result = null;
+        Exception failure = null;
+        try {
+            result = handle(methodConfig.getHandler(), request);
+        } catch (Exception e) {
+            failure = e;
+        }
+        if (!interruption.disarm()) {
+            logTimeout(request);
+            throw TIMEOUT_EXCEPTION;
+        }
+        timeout.cancel();
+        if (failure != null) {
+            throw failure;
+        }
+        return result;
+    }
+
+    /**
+     * Call a blocking handler, keeping the results of raw handlers encoded
+     */
+    private Object handle(RpcMethodHandler handler, RpcRequest request) throws Exception {
+        return handler instanceof RawMethodHandler raw
+            ? raw.handleRaw(request, context)
+            : handler.handleRequest(request, context);
+    }
+
+    /**
+     * Result as a tree, parsing a pre-encoded one, for the interceptors
+     */
+    private static JsonElement tree(Object result) {
+        return result instanceof RawJson raw ? raw.parse() : (JsonElement) result;
+    }
+
+    private long timeoutNanos(MethodConfig methodConfig) {
+        Duration timeout = methodConfig.getTimeout();
+        return timeout != null ? timeout.toNanos() : defaultTimeoutNanos;
+    }
 
-                // Don't include notification responses
-                if (request.getId() != null) {
-                    responses.add(responseToJsonTree(response));
+    private void logTimeout(RpcRequest request) {
+        if (logger != null) {
+            logger.warn("RPC error: Method timed out: " + request.getMethod());
+        }
+    }
+
+    /**
+     * Validate the request, find its pipeline and run the before middleware
+     *
+     * @return Pipeline of the method, whose config is null if the method does not exist
+     */
+    private MethodPipeline prepare(RpcRequest request) throws Exception {
+        // Validate request
+        validateRequest(request);
+
+        // Find method
+        MethodPipeline pipeline = table.get(request.getMethod());
+
+        // Execute middleware before
+        pipeline.before(request, context);
+
+        if (pipeline.getConfig() == null) {
+            logMethodNotFound(request);
+        }
+        return pipeline;
+    }
+
+    private void logMethodNotFound(RpcRequest request) {
+        if (logger != null) {
+            // Answered without an exception to build
+            logger.warn("RPC error: Method not found: " + request.getMethod());
+        }
+    }
+
+    /**
+     * Run the after middleware and build the response
+     */
+    private RpcResponse complete(MethodPipeline pipeline, RpcRequest request, Object result) throws Exception {
+        // Execute middleware after
+        pipeline.after(request, result, context);
+
+        return respond(request, result);
+    }
+
+    private RpcResponse respond(RpcRequest request, Object result) {
+        if (logger != null) {
+            logger.debug("Method executed successfully: " + request.getMethod());
+        }
+
+        // Create response
+        return result instanceof RawJson raw
+            ? new RpcResponse(raw, request.getId())
+            : new RpcResponse((JsonElement) result, request.getId());
+    }
+
+    private RpcResponse errorResponse(RpcRequest request, Throwable error) {
+        if (error instanceof RpcException e) {
+            if (logger != null) {
+                logger.warn("RPC error: " + e.getMessage());
+            }
+            return new RpcResponse(e.getError(), request.getId());
+        }
+
+        if (logger != null) {
+            logger.error("Internal error processing request", null, error);
+        }
+
+        String message = options.isSanitizeErrors() ? "Internal error" : error.getMessage();
+        RpcError rpcError = new RpcError(RpcError.INTERNAL_ERROR, message);
+        return new RpcResponse(rpcError, request.getId());
+    }
+
+    private static Throwable unwrap(Throwable error) {
+        while ((error instanceof CompletionException || error instanceof ExecutionException)
+                && error.getCause() != null) {
+            error = error.getCause();
+        }
+        return error;
+    }
+
+    /**
+     * Adapter letting the blocking entry points call an asynchronous handler
+     */
+    private static RpcMethodHandler blocking(AsyncRpcMethodHandler handler) {
+        return RpcMethodHandler.ofRequest((request, context) -> {
+            CompletionStage<JsonElement> stage = handler.handleRequestAsync(request, context);
+            if (stage == null) {
+                throw new IllegalStateException("Handler of '" + request.getMethod() + "' returned no stage");
+            }
+            CompletableFuture<JsonElement> future = stage.toCompletableFuture();
+            try {
+                return future.get();
+            } catch (InterruptedException e) {
+                // Interrupted at the deadline: let the handler know its result is not wanted
+                future.cancel(true);
+                Thread.currentThread().interrupt();
+                throw e;
+            } catch (ExecutionException e) {
+                Throwable cause = unwrap(e);
+                if (cause instanceof Exception exception) {
+                    throw exception;
                 }
-            } catch (Exception e) {
-                if (logger != null) {
-                    logger.error("Error in batch request", null, e);
+                throw e;
+            }
+        });
+    }
+
+    /**
+     * Handle batch request
+     */
+    private List<RpcResponse> handleBatchRequest(List<RpcEnvelope.Entry> entries, List<String> methods) {
+        List<RpcResponse> responses = new ArrayList<>(entries.size());
+
+        if (logger != null) {
+            logger.info("Processing batch request with " + entries.size() + " items");
+        }
+
+        if (parallelBatch != null && entries.size() > 1) {
+            AtomicReferenceArray<RpcResponse> results = parallelBatch.run(entries, this::handleBatchEntry);
+            for (int i = 0; i < entries.size(); i++) {
+                RpcEnvelope.Entry entry = entries.get(i);
+                RpcResponse response = results.get(i);
+                if (response == null) {
+                    if (logger != null) {
+                        logger.warn("Batch deadline exceeded before item " + i + " completed");
+                    }
+                    response = new RpcResponse(RpcError.timeout(), entry.getId());
                 }
-                RpcResponse error = createErrorResponse(null,
-                    new RpcException(RpcError.INVALID_REQUEST, "Invalid request in batch"));
-                responses.add(responseToJsonTree(error));
+                addBatchResponse(entry, response, responses, methods);
             }
+            return responses;
         }
 
-        if (responses.size() == 0) {
-            return "";
+        for (RpcEnvelope.Entry entry : entries) {
+            addBatchResponse(entry, handleBatchEntry(entry), responses, methods);
         }
 
-        return gson.toJson(responses);
+        return responses;
     }
 
-    private RpcRequest parseRequest(JsonElement element) {
-        if (options.isSafeEnabled()) {
-            return serializer.fromJson(element.toString(), RpcRequest.class);
+    /**
+     * Start every item of a batch, completing when all of them have
+     */
+    private CompletableFuture<Reply> handleBatchRequestAsync(List<RpcEnvelope.Entry> entries) {
+        if (logger != null) {
+            logger.info("Processing batch request with " + entries.size() + " items");
+        }
+
+        @SuppressWarnings("unchecked")
+        CompletableFuture<RpcResponse>[] futures = new CompletableFuture[entries.size()];
+        for (int i = 0; i < futures.length; i++) {
+            RpcEnvelope.Entry entry = entries.get(i);
+            futures[i] = entry.isValid()
+                ? handleSingleRequestAsync(entry.getRequest())
+                : CompletableFuture.completedFuture(new RpcResponse(entry.getError(), entry.getId()));
+        }
+
+        return CompletableFuture.allOf(futures).thenApply(ignored -> {
+            List<RpcResponse> responses = new ArrayList<>(futures.length);
+            List<String> methods = new ArrayList<>(futures.length);
+            for (int i = 0; i < futures.length; i++) {
+                addBatchResponse(entries.get(i), futures[i].join(), responses, methods);
+            }
+            return new Reply(true, responses, methods);
+        });
+    }
+
+    private RpcResponse handleBatchEntry(RpcEnvelope.Entry entry) {
+        try {
+            if (!entry.isValid()) {
+                return new RpcResponse(entry.getError(), entry.getId());
+            }
+            return handleSingleRequest(entry.getRequest());
+        } catch (Exception e) {
+            if (logger != null) {
+                logger.error("Error in batch request", null, e);
+            }
+            return createErrorResponse(null,
+                new RpcException(RpcError.INVALID_REQUEST, "Invalid request in batch"));
         }
+    }
 
-        return gson.fromJson(element, RpcRequest.class);
+    private static void addBatchResponse(RpcEnvelope.Entry entry, RpcResponse response,
+                                         List<RpcResponse> responses, List<String> methods) {
+        if (!entry.isValid()) {
+            responses.add(response);
+            methods.add(null);
+        } else if (entry.getRequest().getId() != null) {
+            // Don't include notification responses
+            responses.add(response);
+            methods.add(entry.getRequest().getMethod());
+        }
     }
 
-    private String serializeResponse(RpcResponse response) {
-        if (options.isSafeEnabled()) {
-            return serializer.toJson(response);
+    /**
+     * Serialize a reply, answering with an internal error if it cannot be serialized
+     */
+    private String serializeOrError(Reply reply) {
+        try {
+            return serializeReply(reply);
+        } catch (RuntimeException e) {
+            return serializeReply(unexpectedError(e));
+        }
+    }
+
+    private String serializeReply(Reply reply) {
+        RpcSerializeEvent event = new RpcSerializeEvent();
+        event.begin();
+        long start = System.nanoTime();
+        String body = encodeReply(reply);
+        recordSerialize(start, metrics != null ? RpcEvents.utf8Length(body) : -1);
+        if (event.shouldCommit()) {
+            commitSerialize(event, reply, RpcEvents.utf8Length(body));
+        }
+        return body;
+    }
+
+    private static void commitSerialize(RpcSerializeEvent event, Reply reply, long payloadSize) {
+        event.responses = reply.responses().size();
+        event.payloadSize = payloadSize;
+        if (!reply.batch()) {
+            RpcResponse response = reply.responses().get(0);
+            event.method = reply.methods().get(0);
+            event.id = response.getId() != null ? response.getId().toString() : null;
+            event.outcome = RpcEvents.outcome(response);
+        }
+        event.commit();
+    }
+
+    /**
+     * Serialize the responses into a pooled buffer sized from what the methods produced recently
+     */
+    private String encodeReply(Reply reply) {
+        List<RpcResponse> responses = reply.responses();
+        if (!reply.batch()) {
+            String cached = preEncodedErrors.encode(responses.get(0));
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        // A batch asks for no more than a single response may, since its items can be far
+        // smaller than their methods usually produce (e.g. errors); the buffer grows if needed
+        long expectedSize = 2;
+        for (String method : reply.methods()) {
+            AdaptiveCapacity.Estimate estimate = responseSize(method);
+            expectedSize += estimate != null ? estimate.capacity() : responseSizes.estimate(null);
         }
 
-        return gson.toJson(response);
+        EncoderBufferPool.PooledChars buffer = bufferPool.acquireChars(
+            (int) Math.min(expectedSize, responseSizes.getMaxCapacity()));
+        try {
+            JsonWriter writer = new JsonWriter(buffer);
+            if (reply.batch()) {
+                writer.beginArray();
+            }
+            for (int i = 0; i < responses.size(); i++) {
+                int start = buffer.size();
+                String cached = preEncodedErrors.encode(responses.get(i));
+                if (cached != null) {
+                    writer.jsonValue(cached);
+                } else {
+                    gson.toJson(responses.get(i), RpcResponse.class, writer);
+                }
+                AdaptiveCapacity.Estimate estimate = responseSize(reply.methods().get(i));
+                if (estimate != null) {
+                    estimate.record(buffer.size() - start);
+                }
+            }
+            if (reply.batch()) {
+                writer.endArray();
+            }
+            writer.flush();
+            return buffer.toString();
+        } catch (IOException e) {
+            // The buffer is in memory and never fails
+            throw new UncheckedIOException(e);
+        } finally {
+            bufferPool.release(buffer);
+        }
     }
 
-    private JsonElement responseToJsonTree(RpcResponse response) {
-        return JsonParser.parseString(serializeResponse(response));
+    /**
+     * Response size estimate of a registered method, null for names that resolve to no method
+     * so that requests cannot grow the estimates
+     */
+    private AdaptiveCapacity.Estimate responseSize(String method) {
+        MethodConfig methodConfig = method != null ? methods.get(method) : null;
+        return methodConfig != null ? methodConfig.getResponseSize() : null;
     }
 
     /**
@@ -372,10 +1589,8 @@ public class RpcEndpoint {
      * Register introspection methods (__rpc.*)
      */
     private void registerIntrospectionMethods() {
-        isInternalRegistration = true;
-
         // __rpc.listMethods - List all user methods
-        addMethod(introspectionPrefix + ".listMethods", (params, ctx) -> {
+        addIntrospectionMethod("listMethods", (params, ctx) -> {
             JsonArray methods = new JsonArray();
             for (String name : this.methods.keySet()) {
                 if (!name.startsWith(introspectionPrefix + ".")) {
@@ -388,7 +1603,7 @@ public class RpcEndpoint {
             .withExposeSchema(true));
 
         // __rpc.describe - Get schema and description of specific method
-        addMethod(introspectionPrefix + ".describe", (params, ctx) -> {
+        addIntrospectionMethod("describe", (params, ctx) -> {
             if (params == null || !params.isJsonObject()) {
                 throw new RpcException(RpcError.INVALID_PARAMS, "Method name required");
             }
@@ -415,7 +1630,7 @@ public class RpcEndpoint {
             .withExposeSchema(true));
 
         // __rpc.describeAll - Get all methods with public schemas
-        addMethod(introspectionPrefix + ".describeAll", (params, ctx) -> {
+        addIntrospectionMethod("describeAll", (params, ctx) -> {
             JsonArray result = new JsonArray();
 
             for (MethodConfig config : methods.values()) {
@@ -435,7 +1650,7 @@ public class RpcEndpoint {
             .withExposeSchema(true));
 
         // __rpc.version - Get toolkit version
-        addMethod(introspectionPrefix + ".version", (params, ctx) -> {
+        addIntrospectionMethod("version", (params, ctx) -> {
             JsonObject result = new JsonObject();
             result.addProperty("toolkit", "rpc-java-toolkit");
             result.addProperty("version", "1.0.0");
@@ -446,7 +1661,7 @@ public class RpcEndpoint {
             .withExposeSchema(true));
 
         // __rpc.capabilities - Get server capabilities
-        addMethod(introspectionPrefix + ".capabilities", (params, ctx) -> {
+        addIntrospectionMethod("capabilities", (params, ctx) -> {
             long methodCount = methods.keySet().stream()
                 .filter(name -> !name.startsWith(introspectionPrefix + "."))
                 .count();
@@ -457,12 +1672,117 @@ public class RpcEndpoint {
             result.addProperty("validation", options.isEnableValidation());
             result.addProperty("middleware", options.isEnableMiddleware());
             result.addProperty("safeMode", options.isSafeEnabled());
+            result.addProperty("metrics", metrics != null);
             result.addProperty("methodCount", methodCount);
+
+            // Live load per method, from the bulkheads
+            JsonObject load = new JsonObject();
+            for (MethodConfig config : methods.values()) {
+                if (config.getName().startsWith(introspectionPrefix + ".")) {
+                    continue;
+                }
+                Bulkhead bulkhead = config.getBulkhead();
+                JsonObject stats = new JsonObject();
+                stats.addProperty("inFlight", bulkhead.getInFlight());
+                stats.addProperty("queued", bulkhead.getQueued());
+                stats.addProperty("rejected", bulkhead.getRejected());
+                stats.addProperty("maxConcurrency", bulkhead.getMaxConcurrency());
+                stats.addProperty("maxQueue", bulkhead.getMaxQueue());
+                ResultCache cache = config.getResultCache();
+                if (cache != null) {
+                    JsonObject cacheStats = new JsonObject();
+                    cacheStats.addProperty("size", cache.size());
+                    cacheStats.addProperty("hits", cache.getHits());
+                    cacheStats.addProperty("staleHits", cache.getStaleHits());
+                    cacheStats.addProperty("misses", cache.getMisses());
+                    cacheStats.addProperty("evictions", cache.getEvictions());
+                    stats.add("cache", cacheStats);
+                }
+                SingleFlight flights = config.getSingleFlight();
+                if (flights != null) {
+                    stats.addProperty("coalesced", flights.getCoalesced());
+                }
+                load.add(config.getName(), stats);
+            }
+            result.add("methods", load);
+
+            if (limiter != null) {
+                JsonObject limit = new JsonObject();
+                limit.addProperty("algorithm", limiter.getAlgorithm());
+                limit.addProperty("limit", limiter.getLimit());
+                limit.addProperty("inFlight", limiter.getInFlight());
+                limit.addProperty("rejected", limiter.getRejected());
+                result.add("concurrencyLimit", limit);
+            }
             return result;
         }, new MethodConfig()
             .withDescription("Get server capabilities and configuration")
             .withExposeSchema(true));
 
-        isInternalRegistration = false;
+        // __rpc.stats - Get call counters and latency per method
+        if (metrics != null) {
+            addIntrospectionMethod("stats", (params, ctx) -> {
+                JsonObject result = new JsonObject();
+                result.add("parse", latencyStats(metrics.getParse()));
+                result.add("serialize", latencyStats(metrics.getSerialize()));
+
+                JsonObject stats = new JsonObject();
+                for (MethodMetrics method : metrics.getMethods()) {
+                    JsonObject methodStats = new JsonObject();
+                    methodStats.addProperty("calls", method.getCalls());
+                    methodStats.addProperty("errors", method.getErrors());
+                    methodStats.addProperty("rejected", method.getRejected());
+                    methodStats.addProperty("inFlight", method.getInFlight());
+                    methodStats.add("latency", latencyStats(method.getLatency()));
+                    stats.add(method.getMethod(), methodStats);
+                }
+                result.add("methods", stats);
+                return result;
+            }, new MethodConfig()
+                .withDescription("Get call counters and latency percentiles (microseconds) per method")
+                .withExposeSchema(true));
+        }
+    }
+
+    /**
+     * Summarize a histogram in microseconds
+     */
+    private static JsonObject latencyStats(LatencyHistogram histogram) {
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        JsonObject stats = new JsonObject();
+        stats.addProperty("count", snapshot.getCount());
+        stats.addProperty("mean", micros(snapshot.getMean()));
+        stats.addProperty("p50", micros(snapshot.getValueAtPercentile(50)));
+        stats.addProperty("p90", micros(snapshot.getValueAtPercentile(90)));
+        stats.addProperty("p99", micros(snapshot.getValueAtPercentile(99)));
+        stats.addProperty("p999", micros(snapshot.getValueAtPercentile(99.9)));
+        stats.addProperty("max", micros(snapshot.getMax()));
+        return stats;
+    }
+
+    private static double micros(double nanos) {
+        return Math.round(nanos / 100) / 10.0;
+    }
+
+    private void addIntrospectionMethod(String name, RpcMethodHandler handler, MethodConfig config) {
+        config.setTags(INTROSPECTION_TAG);
+        config.setHandler(handler);
+        config.setAsyncHandler(null);
+        register(introspectionPrefix + "." + name, config, true);
+    }
+
+    /**
+     * Responses to send for one payload: a single object, an array, or nothing
+     */
+    private record Reply(boolean batch, List<RpcResponse> responses, List<String> methods) {
+        static final Reply NONE = new Reply(false, Collections.emptyList(), Collections.emptyList());
+
+        static Reply single(RpcResponse response) {
+            return single(response, null);
+        }
+
+        static Reply single(RpcResponse response, String method) {
+            return new Reply(false, Collections.singletonList(response), Collections.singletonList(method));
+        }
     }
 }
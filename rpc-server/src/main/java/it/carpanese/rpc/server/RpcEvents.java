@@ -0,0 +1,165 @@
+package it.carpanese.rpc.server;
+
+import it.carpanese.rpc.core.RpcError;
+import it.carpanese.rpc.core.RpcException;
+import it.carpanese.rpc.core.RpcRequest;
+import it.carpanese.rpc.core.RpcResponse;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Helpers shared by the JFR events of the endpoint
+ *
+ * The events ({@link RpcParseEvent}, {@link RpcMiddlewareEvent}, {@link RpcHandlerEvent},
+ * {@link RpcSerializeEvent}) are disabled by default. Each is created on the stack of the phase
+ * it times and only filled in behind {@code shouldCommit()}: while no recording enables them
+ * that check is constant false once compiled, and the event is never allocated.
+ */
+final class RpcEvents {
+
+    static final String SUCCESS = "success";
+    static final String ERROR = "error";
+    static final String TIMEOUT = "timeout";
+    static final String REJECTED = "rejected";
+    static final String PARSE_ERROR = "parse error";
+
+    private RpcEvents() {
+    }
+
+    static String id(RpcRequest request) {
+        Object id = request.getId();
+        return id != null ? id.toString() : null;
+    }
+
+    /**
+     * Outcome of a phase ending with an error, possibly wrapped by a stage, or with none
+     */
+    static String outcome(Throwable error) {
+        return error == null ? SUCCESS : outcome(errorCode(error));
+    }
+
+    static String outcome(RpcResponse response) {
+        return response.isError() ? outcome(response.getError().getCode()) : SUCCESS;
+    }
+
+    private static String outcome(int code) {
+        return switch (code) {
+            case RpcError.TIMEOUT -> TIMEOUT;
+            case RpcError.OVERLOADED -> REJECTED;
+            default -> ERROR;
+        };
+    }
+
+    /**
+     * JSON-RPC code an error is answered with, 0 for none
+     */
+    static int errorCode(Throwable error) {
+        while ((error instanceof CompletionException || error instanceof ExecutionException)
+                && error.getCause() != null) {
+            error = error.getCause();
+        }
+        if (error == null) {
+            return 0;
+        }
+        return error instanceof RpcException e ? e.getError().getCode() : RpcError.INTERNAL_ERROR;
+    }
+
+    /**
+     * Size of a payload handled as a string once encoded as UTF-8, without encoding it
+     *
+     * Unpaired surrogates count as the single byte they are replaced with.
+     */
+    static long utf8Length(String text) {
+        long length = text.length();
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                continue;
+            }
+            if (c < 0x800) {
+                length += 1;
+            } else if (Character.isHighSurrogate(c) && i + 1 < text.length()
+                    && Character.isLowSurrogate(text.charAt(i + 1))) {
+                // Four bytes for the two chars
+                length += 2;
+                i++;
+            } else if (!Character.isSurrogate(c)) {
+                length += 2;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Request body counting the bytes read, for the payload size of {@link RpcParseEvent}
+     */
+    static final class CountingInputStream extends FilterInputStream {
+        private long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int n = super.read(buffer, offset, length);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+
+        long getCount() {
+            return count;
+        }
+    }
+
+    /**
+     * Response body counting the bytes written, for the payload size of {@link RpcSerializeEvent}
+     */
+    static final class CountingOutputStream extends FilterOutputStream {
+        private long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] buffer, int offset, int length) throws IOException {
+            out.write(buffer, offset, length);
+            count += length;
+        }
+
+        long getCount() {
+            return count;
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package it.carpanese.rpc.server;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR event timing the execution of a method: its interceptors, cache, bulkhead and handler
+ *
+ * For asynchronous handlers it lasts until the handler's stage completes.
+ */
+@Name("it.carpanese.rpc.Handler")
+@Label("RPC Handler")
+@Category({"RPC", "Server"})
+@Description("Execution of an RPC method, from its interceptors to the handler result")
+@Enabled(false)
+@StackTrace(false)
+final class RpcHandlerEvent extends Event {
+
+    @Label("Method")
+    String method;
+
+    @Label("Request ID")
+    String id;
+
+    @Label("Params Size")
+    @Description("Characters of the params as received, 0 if there are none")
+    long paramsSize;
+
+    @Label("Outcome")
+    String outcome;
+
+    @Label("Error Code")
+    int errorCode;
+}
@@ -1,7 +1,9 @@
 package it.carpanese.rpc.server;
 
 import com.google.gson.JsonElement;
+import it.carpanese.rpc.core.RawJson;
 import it.carpanese.rpc.core.RpcException;
+import it.carpanese.rpc.core.RpcRequest;
 
 /**
  * Functional interface for RPC method handlers on server side
@@ -19,4 +21,69 @@ public interface RpcMethodHandler {
      * @throws Exception For other errors (will be converted to internal error)
      */
     JsonElement handle(JsonElement params, Object context) throws Exception;
+
+    /**
+     * Handle an RPC method call with access to the whole request
+     *
+     * Called by the endpoint; the default decodes the params and delegates to
+     * {@link #handle(JsonElement, Object)}.
+     */
+    default JsonElement handleRequest(RpcRequest request, Object context) throws Exception {
+        return handle(request.getParams(), context);
+    }
+
+    /**
+     * Create a handler that receives the request instead of decoded params
+     *
+     * Params are only decoded if the handler calls {@link RpcRequest#getParams()}, so
+     * forwarding handlers can pass {@link RpcRequest#getRawParams()} on without building a tree:
+     * <pre>
+     * endpoint.addMethod("proxy", RpcMethodHandler.ofRequest((request, ctx) -&gt;
+     *     upstream.call(request.getMethod(), request.getRawParams())));
+     * </pre>
+     */
+    static RpcMethodHandler ofRequest(RequestHandler handler) {
+        return new RpcMethodHandler() {
+            @Override
+            public JsonElement handle(JsonElement params, Object context) throws Exception {
+                throw new UnsupportedOperationException("Request handlers are called with the whole request");
+            }
+
+            @Override
+            public JsonElement handleRequest(RpcRequest request, Object context) throws Exception {
+                return handler.handle(request, context);
+            }
+        };
+    }
+
+    /**
+     * Create a handler returning JSON that is already encoded
+     *
+     * The endpoint splices the text into the response instead of parsing and re-serializing it:
+     * <pre>
+     * endpoint.addMethod("getReport", RpcMethodHandler.ofRaw((request, ctx) -&gt;
+     *     RawJson.of(reports.get(request.getParams().getAsString()))));
+     * </pre>
+     *
+     * Interceptors see the result parsed into a tree.
+     */
+    static RpcMethodHandler ofRaw(RawHandler handler) {
+        return new RawMethodHandler(handler);
+    }
+
+    /**
+     * Handler receiving the whole request, see {@link #ofRequest(RequestHandler)}
+     */
+    @FunctionalInterface
+    interface RequestHandler {
+        JsonElement handle(RpcRequest request, Object context) throws Exception;
+    }
+
+    /**
+     * Handler returning pre-encoded JSON, see {@link #ofRaw(RawHandler)}
+     */
+    @FunctionalInterface
+    interface RawHandler {
+        RawJson handle(RpcRequest request, Object context) throws Exception;
+    }
 }
@@ -0,0 +1,42 @@
+package it.carpanese.rpc.server;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR event timing the before or after middleware of a call
+ *
+ * For asynchronous middleware it lasts until the last stage completes.
+ */
+@Name("it.carpanese.rpc.Middleware")
+@Label("RPC Middleware")
+@Category({"RPC", "Server"})
+@Description("Before or after middleware run around an RPC method")
+@Enabled(false)
+@StackTrace(false)
+final class RpcMiddlewareEvent extends Event {
+
+    @Label("Method")
+    String method;
+
+    @Label("Request ID")
+    String id;
+
+    @Label("Phase")
+    String phase;
+
+    @Label("Middleware")
+    @Description("Middleware in the chain, -1 for calls to unknown methods")
+    int middleware;
+
+    @Label("Outcome")
+    String outcome;
+
+    @Label("Error Code")
+    int errorCode;
+}
@@ -1,6 +1,16 @@
 package it.carpanese.rpc.server;
 
+import it.carpanese.rpc.core.CborRpcCodec;
+import it.carpanese.rpc.core.EncoderBufferPool;
+import it.carpanese.rpc.core.JsonRpcCodec;
+import it.carpanese.rpc.core.RpcCodec;
+import it.carpanese.rpc.server.limit.ConcurrencyLimit;
 import it.carpanese.rpc.server.logging.RpcLoggerOptions;
+import it.carpanese.rpc.server.metrics.MetricsSink;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
 
 /**
  * Configuration options for RPC Endpoint
@@ -10,14 +20,23 @@ public class RpcOptions {
     private boolean warnOnUnsafe = true;
     private boolean enableBatch = true;
     private int maxBatchSize = 100;
+    private boolean parallelBatch = false;
+    private Executor batchExecutor = null;
+    private int batchParallelism = 16;
+    private long batchTimeoutMillis = 0;
     private boolean enableLogging = true;
     private RpcLoggerOptions loggerOptions = new RpcLoggerOptions();
     private boolean enableMiddleware = true;
     private boolean enableValidation = true;
     private boolean sanitizeErrors = true;
+    private boolean enableMetrics = true;
+    private MetricsSink metricsSink = null;
     private int timeoutSeconds = 30;
     private boolean enableIntrospection = false;
     private String introspectionPrefix = "__rpc";
+    private ConcurrencyLimit concurrencyLimit = null;
+    private EncoderBufferPool encoderBufferPool = EncoderBufferPool.shared();
+    private List<RpcCodec> codecs = new ArrayList<>(List.of(JsonRpcCodec.INSTANCE, CborRpcCodec.INSTANCE));
 
     public RpcOptions() {
     }
@@ -60,6 +79,62 @@ public class RpcOptions {
         return this;
     }
 
+    public boolean isParallelBatch() {
+        return parallelBatch;
+    }
+
+    /**
+     * Run the items of a batch concurrently; responses keep the request order
+     *
+     * Handlers and middleware must be thread-safe when this is on.
+     */
+    public RpcOptions setParallelBatch(boolean parallelBatch) {
+        this.parallelBatch = parallelBatch;
+        return this;
+    }
+
+    public Executor getBatchExecutor() {
+        return batchExecutor;
+    }
+
+    /**
+     * Executor running parallel batch items; null (the default) starts a virtual thread per worker
+     */
+    public RpcOptions setBatchExecutor(Executor batchExecutor) {
+        this.batchExecutor = batchExecutor;
+        return this;
+    }
+
+    public int getBatchParallelism() {
+        return batchParallelism;
+    }
+
+    /**
+     * Maximum number of items of a single batch running at the same time
+     */
+    public RpcOptions setBatchParallelism(int batchParallelism) {
+        this.batchParallelism = batchParallelism;
+        return this;
+    }
+
+    /**
+     * Deadline for a parallel batch, defaulting to {@link #getTimeoutSeconds()}
+     *
+     * @return Milliseconds, 0 for no deadline
+     */
+    public long getBatchTimeoutMillis() {
+        return batchTimeoutMillis > 0 ? batchTimeoutMillis : Math.max(0, timeoutSeconds) * 1000L;
+    }
+
+    /**
+     * Set the deadline for a parallel batch; items not done by then are interrupted and answered
+     * with a timeout error
+     */
+    public RpcOptions setBatchTimeoutMillis(long batchTimeoutMillis) {
+        this.batchTimeoutMillis = batchTimeoutMillis;
+        return this;
+    }
+
     public boolean isEnableLogging() {
         return enableLogging;
     }
@@ -105,6 +180,39 @@ public class RpcOptions {
         return this;
     }
 
+    public boolean isEnableMetrics() {
+        return enableMetrics;
+    }
+
+    /**
+     * Measure calls per method, and the time spent parsing and serializing (on by default)
+     *
+     * The measurements are read with {@code RpcEndpoint.getMetrics()} and the {@code stats}
+     * introspection method.
+     */
+    public RpcOptions setEnableMetrics(boolean enableMetrics) {
+        this.enableMetrics = enableMetrics;
+        return this;
+    }
+
+    public MetricsSink getMetricsSink() {
+        return metricsSink;
+    }
+
+    /**
+     * Also hand every measurement to a sink, e.g. to forward it to a metrics library
+     */
+    public RpcOptions setMetricsSink(MetricsSink metricsSink) {
+        this.metricsSink = metricsSink;
+        return this;
+    }
+
+    /**
+     * Deadline for handlers of methods without their own {@link MethodConfig#getTimeout()}
+     *
+     * Blocking handlers are interrupted and asynchronous ones cancelled when it passes; the call
+     * is answered with {@link it.carpanese.rpc.core.RpcError#timeout()}. 0 disables it.
+     */
     public int getTimeoutSeconds() {
         return timeoutSeconds;
     }
@@ -114,6 +222,21 @@ public class RpcOptions {
         return this;
     }
 
+    public ConcurrencyLimit getConcurrencyLimit() {
+        return concurrencyLimit;
+    }
+
+    /**
+     * Cap the calls running at the same time with an adaptive limit, e.g. {@code new VegasLimit()}
+     *
+     * Calls over the limit are answered with {@link it.carpanese.rpc.core.RpcError#overloaded()}
+     * before their params are decoded. Null (the default) admits everything.
+     */
+    public RpcOptions setConcurrencyLimit(ConcurrencyLimit concurrencyLimit) {
+        this.concurrencyLimit = concurrencyLimit;
+        return this;
+    }
+
     public boolean isEnableIntrospection() {
         return enableIntrospection;
     }
@@ -131,4 +254,33 @@ public class RpcOptions {
         this.introspectionPrefix = introspectionPrefix;
         return this;
     }
+
+    /**
+     * Codecs accepted by the byte entry points, matched by Content-Type in order
+     */
+    public List<RpcCodec> getCodecs() {
+        return codecs;
+    }
+
+    public RpcOptions setCodecs(List<RpcCodec> codecs) {
+        this.codecs = new ArrayList<>(codecs);
+        return this;
+    }
+
+    public RpcOptions addCodec(RpcCodec codec) {
+        this.codecs.add(codec);
+        return this;
+    }
+
+    /**
+     * Pool of buffers responses are encoded into; its metrics show the allocations saved
+     */
+    public EncoderBufferPool getEncoderBufferPool() {
+        return encoderBufferPool;
+    }
+
+    public RpcOptions setEncoderBufferPool(EncoderBufferPool encoderBufferPool) {
+        this.encoderBufferPool = encoderBufferPool;
+        return this;
+    }
 }
@@ -0,0 +1,38 @@
+package it.carpanese.rpc.server;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR event timing the parse of a payload into requests
+ */
+@Name("it.carpanese.rpc.Parse")
+@Label("RPC Parse")
+@Category({"RPC", "Server"})
+@Description("Parse of a JSON-RPC payload, single request or batch")
+@Enabled(false)
+@StackTrace(false)
+final class RpcParseEvent extends Event {
+
+    @Label("Method")
+    @Description("Method of a single request, empty for batches")
+    String method;
+
+    @Label("Request ID")
+    String id;
+
+    @Label("Requests")
+    int requests;
+
+    @Label("Payload Size")
+    @Description("Bytes read, as UTF-8 for payloads handled as strings")
+    long payloadSize;
+
+    @Label("Outcome")
+    String outcome;
+}
@@ -0,0 +1,39 @@
+package it.carpanese.rpc.server;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR event timing the serialization of a reply
+ */
+@Name("it.carpanese.rpc.Serialize")
+@Label("RPC Serialize")
+@Category({"RPC", "Server"})
+@Description("Serialization of the responses to a JSON-RPC payload")
+@Enabled(false)
+@StackTrace(false)
+final class RpcSerializeEvent extends Event {
+
+    @Label("Method")
+    @Description("Method of a single response, empty for batches")
+    String method;
+
+    @Label("Request ID")
+    String id;
+
+    @Label("Responses")
+    int responses;
+
+    @Label("Payload Size")
+    @Description("Bytes written, as UTF-8 for replies returned as strings")
+    long payloadSize;
+
+    @Label("Outcome")
+    @Description("Outcome of a single response, empty for batches")
+    String outcome;
+}
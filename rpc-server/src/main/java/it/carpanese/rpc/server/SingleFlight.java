@@ -0,0 +1,106 @@
+package it.carpanese.rpc.server;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces identical in-flight calls of a single method
+ *
+ * The first call for a key becomes the leader and runs; calls for the same key arriving
+ * before it finishes wait on its outcome instead of running the handler themselves. The key
+ * is dropped before the outcome is published, so calls arriving afterwards start a new flight.
+ */
+final class SingleFlight {
+
+    private final ConcurrentHashMap<String, CompletableFuture<Object>> flights = new ConcurrentHashMap<>();
+    private final LongAdder coalesced = new LongAdder();
+
+    /**
+     * Run a blocking call, or wait for the identical one in flight
+     */
+    Object call(String key, Callable<Object> call) throws Exception {
+        CompletableFuture<Object> flight = new CompletableFuture<>();
+        CompletableFuture<Object> leader = flights.putIfAbsent(key, flight);
+        if (leader != null) {
+            coalesced.increment();
+            return await(leader);
+        }
+
+        Object result;
+        try {
+            result = call.call();
+        } catch (Throwable e) {
+            flights.remove(key, flight);
+            flight.completeExceptionally(e);
+            throw e;
+        }
+        flights.remove(key, flight);
+        flight.complete(result);
+        return result;
+    }
+
+    /**
+     * Start an asynchronous call, or join the identical one in flight
+     *
+     * @return Outcome of the call, failing with the error of the leader
+     */
+    CompletableFuture<Object> callAsync(String key, Supplier<CompletableFuture<Object>> call) {
+        CompletableFuture<Object> flight = new CompletableFuture<>();
+        CompletableFuture<Object> leader = flights.putIfAbsent(key, flight);
+        if (leader != null) {
+            coalesced.increment();
+            return leader;
+        }
+
+        CompletableFuture<Object> outcome;
+        try {
+            outcome = call.get();
+        } catch (RuntimeException e) {
+            outcome = CompletableFuture.failedFuture(e);
+        }
+        outcome.whenComplete((result, error) -> {
+            flights.remove(key, flight);
+            if (error != null) {
+                flight.completeExceptionally(error instanceof CompletionException && error.getCause() != null
+                    ? error.getCause() : error);
+            } else {
+                flight.complete(result);
+            }
+        });
+        return flight;
+    }
+
+    private static Object await(CompletableFuture<Object> leader) throws Exception {
+        try {
+            return leader.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception exception) {
+                throw exception;
+            }
+            if (cause instanceof Error error) {
+                throw error;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Calls in flight
+     */
+    int size() {
+        return flights.size();
+    }
+
+    /**
+     * Calls answered with the outcome of another one
+     */
+    long getCoalesced() {
+        return coalesced.sum();
+    }
+}
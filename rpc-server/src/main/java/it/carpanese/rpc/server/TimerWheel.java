@@ -0,0 +1,153 @@
+package it.carpanese.rpc.server;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Hashed timer wheel for call deadlines
+ *
+ * One daemon thread advances the wheel every tick and fires the timeouts of the current
+ * bucket. Scheduling only appends to a lock-free queue and cancelling is a single CAS, so
+ * the cost per call stays constant however many calls are in flight. Deadlines are rounded
+ * up to the tick; precision below that is not needed for call timeouts.
+ */
+final class TimerWheel {
+
+    private static final TimerWheel SHARED = new TimerWheel(TimeUnit.MILLISECONDS.toNanos(10), 512);
+
+    private final long tickNanos;
+    private final int mask;
+    private final Queue<Timeout>[] buckets;
+    private final Queue<Timeout> pending = new ConcurrentLinkedQueue<>();
+    private final long startNanos = System.nanoTime();
+    private final AtomicInteger started = new AtomicInteger();
+    private long tick;
+
+    /**
+     * @param tickNanos Wheel resolution
+     * @param wheelSize Number of buckets (rounded up to a power of two)
+     */
+    TimerWheel(long tickNanos, int wheelSize) {
+        int size = Integer.highestOneBit(Math.max(2, wheelSize) * 2 - 1);
+        this.tickNanos = tickNanos;
+        this.mask = size - 1;
+        @SuppressWarnings("unchecked")
+        Queue<Timeout>[] buckets = new Queue[size];
+        this.buckets = buckets;
+        for (int i = 0; i < size; i++) {
+            buckets[i] = new ArrayDeque<>();
+        }
+    }
+
+    /**
+     * Get the wheel shared by all endpoints (10 ms ticks)
+     */
+    static TimerWheel shared() {
+        return SHARED;
+    }
+
+    /**
+     * Run a task once the delay has passed, on the timer thread
+     *
+     * Tasks must be short; anything slow should be handed off to another executor.
+     */
+    Timeout schedule(Runnable task, long delayNanos) {
+        if (started.get() == 0 && started.compareAndSet(0, 1)) {
+            Thread thread = new Thread(this::run, "rpc-timer");
+            thread.setDaemon(true);
+            thread.start();
+        }
+        Timeout timeout = new Timeout(task, System.nanoTime() - startNanos + Math.max(0, delayNanos));
+        pending.add(timeout);
+        return timeout;
+    }
+
+    private void run() {
+        while (true) {
+            long next = (tick + 1) * tickNanos;
+            long sleep;
+            while ((sleep = next - (System.nanoTime() - startNanos)) > 0) {
+                LockSupport.parkNanos(this, sleep);
+            }
+            tick++;
+            transferPending();
+            expire(buckets[(int) (tick & mask)]);
+        }
+    }
+
+    private void transferPending() {
+        Timeout timeout;
+        while ((timeout = pending.poll()) != null) {
+            if (timeout.state.get() != Timeout.PENDING) {
+                continue;
+            }
+            // Round up, and never into a bucket that has already been processed
+            long deadlineTick = Math.max(tick, (timeout.deadlineNanos + tickNanos - 1) / tickNanos);
+            timeout.rounds = (deadlineTick - tick) / buckets.length;
+            buckets[(int) (deadlineTick & mask)].add(timeout);
+        }
+    }
+
+    private void expire(Queue<Timeout> bucket) {
+        Iterator<Timeout> it = bucket.iterator();
+        while (it.hasNext()) {
+            Timeout timeout = it.next();
+            if (timeout.state.get() != Timeout.PENDING) {
+                it.remove();
+            } else if (timeout.rounds > 0) {
+                timeout.rounds--;
+            } else {
+                it.remove();
+                timeout.expire();
+            }
+        }
+    }
+
+    /**
+     * Handle of a scheduled task
+     */
+    static final class Timeout {
+        static final int PENDING = 0;
+        static final int CANCELLED = 1;
+        static final int EXPIRED = 2;
+
+        private final Runnable task;
+        private final long deadlineNanos;
+        private final AtomicInteger state = new AtomicInteger(PENDING);
+        // Only accessed by the timer thread
+        private long rounds;
+
+        private Timeout(Runnable task, long deadlineNanos) {
+            this.task = task;
+            this.deadlineNanos = deadlineNanos;
+        }
+
+        /**
+         * Cancel the task
+         *
+         * @return true if it will not run, false if it has already run or started
+         */
+        boolean cancel() {
+            return state.compareAndSet(PENDING, CANCELLED);
+        }
+
+        boolean isExpired() {
+            return state.get() == EXPIRED;
+        }
+
+        private void expire() {
+            if (state.compareAndSet(PENDING, EXPIRED)) {
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    // A failing task must not stop the wheel
+                }
+            }
+        }
+    }
+}
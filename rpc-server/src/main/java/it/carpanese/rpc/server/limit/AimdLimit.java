@@ -0,0 +1,76 @@
+package it.carpanese.rpc.server.limit;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Additive increase, multiplicative decrease
+ *
+ * The limit grows by one for each call completing within the latency threshold while at
+ * least half of it is in use, and is multiplied by the backoff ratio when a call is dropped
+ * or exceeds the threshold. Simple and robust, but it only reacts once latency is already bad.
+ */
+public final class AimdLimit implements ConcurrencyLimit {
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double backoffRatio;
+    private final long latencyThresholdNanos;
+    private final AtomicInteger limit;
+
+    /**
+     * Creates a limit starting at 20, between 1 and 1000, backing off by 0.9 above 5 seconds
+     */
+    public AimdLimit() {
+        this(20, 1, 1000, 0.9, TimeUnit.SECONDS.toNanos(5));
+    }
+
+    /**
+     * Creates a limit
+     *
+     * @param initialLimit Starting limit
+     * @param minLimit Lowest limit
+     * @param maxLimit Highest limit
+     * @param backoffRatio Factor applied on overload, between 0.5 and 1
+     * @param latencyThresholdNanos Call duration considered an overload
+     */
+    public AimdLimit(int initialLimit, int minLimit, int maxLimit, double backoffRatio, long latencyThresholdNanos) {
+        if (minLimit < 1 || maxLimit < minLimit) {
+            throw new IllegalArgumentException("Limits must satisfy 1 <= minLimit <= maxLimit");
+        }
+        if (backoffRatio < 0.5 || backoffRatio >= 1) {
+            throw new IllegalArgumentException("Backoff ratio must be in [0.5, 1)");
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.backoffRatio = backoffRatio;
+        this.latencyThresholdNanos = latencyThresholdNanos;
+        this.limit = new AtomicInteger(Math.max(minLimit, Math.min(maxLimit, initialLimit)));
+    }
+
+    @Override
+    public int getLimit() {
+        return limit.get();
+    }
+
+    @Override
+    public void onSample(long rttNanos, int inFlight, boolean dropped) {
+        int current = limit.get();
+        int next;
+        if (dropped || rttNanos > latencyThresholdNanos) {
+            next = Math.max(minLimit, (int) (current * backoffRatio));
+        } else if (inFlight * 2 >= current) {
+            next = Math.min(maxLimit, current + 1);
+        } else {
+            // Mostly idle, the sample says nothing about the limit
+            return;
+        }
+        // A lost race means another sample just moved the limit, which is good enough
+        limit.compareAndSet(current, next);
+    }
+
+    @Override
+    public String getAlgorithm() {
+        return "aimd";
+    }
+}
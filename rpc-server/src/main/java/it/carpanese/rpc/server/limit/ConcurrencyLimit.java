@@ -0,0 +1,34 @@
+package it.carpanese.rpc.server.limit;
+
+/**
+ * Algorithm adjusting the number of requests an endpoint runs at the same time
+ *
+ * The limiter feeds it one sample per completed call. Implementations must be thread-safe
+ * and cheap, samples arrive on every request thread. Use one instance per endpoint.
+ *
+ * @see AimdLimit
+ * @see VegasLimit
+ */
+public interface ConcurrencyLimit {
+
+    /**
+     * Get the current limit
+     */
+    int getLimit();
+
+    /**
+     * Update the limit from a completed call
+     *
+     * @param rttNanos Time from admission to completion of the call
+     * @param inFlight Calls in flight when it completed, including itself
+     * @param dropped Whether the call timed out, a sign of overload regardless of latency
+     */
+    void onSample(long rttNanos, int inFlight, boolean dropped);
+
+    /**
+     * Name reported by introspection
+     */
+    default String getAlgorithm() {
+        return getClass().getSimpleName();
+    }
+}
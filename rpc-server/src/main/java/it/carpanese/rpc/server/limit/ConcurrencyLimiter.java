@@ -0,0 +1,66 @@
+package it.carpanese.rpc.server.limit;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Admission control for an endpoint, driven by a {@link ConcurrencyLimit}
+ *
+ * A call is admitted with a CAS on the in-flight counter while it is below the current limit;
+ * otherwise it is rejected without waiting, so an overloaded endpoint sheds load instead of
+ * queueing it.
+ */
+public final class ConcurrencyLimiter {
+
+    private final ConcurrencyLimit limit;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final LongAdder rejected = new LongAdder();
+
+    public ConcurrencyLimiter(ConcurrencyLimit limit) {
+        this.limit = limit;
+    }
+
+    /**
+     * Admit a call
+     *
+     * @return false if the endpoint is at its limit and the call must be rejected
+     */
+    public boolean tryAcquire() {
+        int current;
+        do {
+            current = inFlight.get();
+            if (current >= limit.getLimit()) {
+                rejected.increment();
+                return false;
+            }
+        } while (!inFlight.compareAndSet(current, current + 1));
+        return true;
+    }
+
+    /**
+     * Complete an admitted call, feeding its latency to the limit
+     *
+     * @param startNanos {@link System#nanoTime()} at admission
+     * @param dropped Whether the call timed out
+     */
+    public void release(long startNanos, boolean dropped) {
+        int current = inFlight.getAndDecrement();
+        limit.onSample(System.nanoTime() - startNanos, current, dropped);
+    }
+
+    public int getLimit() {
+        return limit.getLimit();
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    public String getAlgorithm() {
+        return limit.getAlgorithm();
+    }
+}
@@ -0,0 +1,86 @@
+package it.carpanese.rpc.server.limit;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Delay-based limit after TCP Vegas
+ *
+ * Tracks the lowest latency seen (the no-load latency) and estimates the calls queued behind
+ * the limit as {@code limit * (1 - noLoad / rtt)}. Below alpha the limit grows, above beta it
+ * shrinks, so it backs off as soon as latency starts rising rather than once it is bad.
+ * Both thresholds scale with log10 of the limit. The no-load latency is re-measured
+ * periodically so it follows lasting changes.
+ */
+public final class VegasLimit implements ConcurrencyLimit {
+
+    private static final int PROBE_INTERVAL = 1000;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final AtomicInteger limit;
+    private final AtomicLong rttNoLoad = new AtomicLong(Long.MAX_VALUE);
+    private final AtomicLong samples = new AtomicLong();
+
+    /**
+     * Creates a limit starting at 20, between 1 and 1000
+     */
+    public VegasLimit() {
+        this(20, 1, 1000);
+    }
+
+    /**
+     * Creates a limit
+     *
+     * @param initialLimit Starting limit
+     * @param minLimit Lowest limit
+     * @param maxLimit Highest limit
+     */
+    public VegasLimit(int initialLimit, int minLimit, int maxLimit) {
+        if (minLimit < 1 || maxLimit < minLimit) {
+            throw new IllegalArgumentException("Limits must satisfy 1 <= minLimit <= maxLimit");
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.limit = new AtomicInteger(Math.max(minLimit, Math.min(maxLimit, initialLimit)));
+    }
+
+    @Override
+    public int getLimit() {
+        return limit.get();
+    }
+
+    @Override
+    public void onSample(long rttNanos, int inFlight, boolean dropped) {
+        long rtt = Math.max(1, rttNanos);
+        if (samples.incrementAndGet() % PROBE_INTERVAL == 0) {
+            rttNoLoad.set(rtt);
+        }
+        long noLoad = rttNoLoad.accumulateAndGet(rtt, Math::min);
+
+        int current = limit.get();
+        int next;
+        if (dropped) {
+            next = (int) (current * 0.9);
+        } else if (inFlight * 2 < current) {
+            // Mostly idle, the sample says nothing about the limit
+            return;
+        } else {
+            double queue = current * (1 - (double) noLoad / rtt);
+            double scale = Math.max(1, Math.log10(current));
+            if (queue < 3 * scale) {
+                next = current + (int) scale;
+            } else if (queue > 6 * scale) {
+                next = current - (int) scale;
+            } else {
+                return;
+            }
+        }
+        limit.compareAndSet(current, Math.max(minLimit, Math.min(maxLimit, next)));
+    }
+
+    @Override
+    public String getAlgorithm() {
+        return "vegas";
+    }
+}
@@ -0,0 +1,76 @@
+package it.carpanese.rpc.server.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters, calls in flight and latency of one method
+ */
+public final class MethodMetrics {
+
+    private final String method;
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder inFlight = new LongAdder();
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    MethodMetrics(String method) {
+        this.method = method;
+    }
+
+    void enter() {
+        inFlight.increment();
+    }
+
+    void exit() {
+        inFlight.decrement();
+    }
+
+    void record(MetricsSink.Outcome outcome, long nanos) {
+        calls.increment();
+        switch (outcome) {
+            case ERROR -> errors.increment();
+            case REJECTED -> {
+                // Did not run: left out of the latency, which it would only drag down
+                rejected.increment();
+                return;
+            }
+            default -> {
+            }
+        }
+        latency.record(nanos);
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    /**
+     * Calls completed, whatever their outcome
+     */
+    public long getCalls() {
+        return calls.sum();
+    }
+
+    public long getErrors() {
+        return errors.sum();
+    }
+
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    /**
+     * Calls started and not yet completed, rejected ones included until they are answered
+     */
+    public long getInFlight() {
+        return inFlight.sum();
+    }
+
+    /**
+     * Latency of the calls that ran, from admission to the response
+     */
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+}
@@ -0,0 +1,50 @@
+package it.carpanese.rpc.server.metrics;
+
+/**
+ * Receiver of the measurements taken by an endpoint, e.g. to forward them to a metrics library
+ *
+ * Called on the request path, after the endpoint has updated its own counters: implementations
+ * must be thread-safe and fast, and should not block. Exceptions they throw are counted and
+ * dropped (see {@link RpcMetrics#getSinkFailures()}).
+ */
+public interface MetricsSink {
+
+    /**
+     * How a call ended
+     */
+    enum Outcome {
+        /**
+         * Answered with a result
+         */
+        SUCCESS,
+        /**
+         * Answered with an error, including timeouts and invalid params
+         */
+        ERROR,
+        /**
+         * Refused by a bulkhead or the concurrency limit without running
+         */
+        REJECTED
+    }
+
+    /**
+     * A call of a registered method completed
+     *
+     * @param method Method name
+     * @param outcome How it ended
+     * @param nanos Time from admission to the response, middleware included
+     */
+    void onCall(String method, Outcome outcome, long nanos);
+
+    /**
+     * A payload (single request or batch) was parsed
+     */
+    default void onParse(long nanos) {
+    }
+
+    /**
+     * A reply (single response or batch) was serialized
+     */
+    default void onSerialize(long nanos) {
+    }
+}
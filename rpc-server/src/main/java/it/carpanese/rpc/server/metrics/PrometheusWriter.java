@@ -0,0 +1,289 @@
+package it.carpanese.rpc.server.metrics;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+
+/**
+ * Writes endpoint metrics in the Prometheus text exposition format (0.0.4) or in OpenMetrics
+ *
+ * Samples are encoded as UTF-8 straight into a small buffer that is flushed to the stream when
+ * full, without collecting them first. Histograms are exposed with fixed buckets placed on
+ * {@link LatencyHistogram} bucket bounds, so their counts are exact: every fourth power of two
+ * for durations (about 1 µs to 17 s) and sizes (64 B to 16 MB), every power of two for batch
+ * sizes. Label values are escaped; metric names and help texts must be valid as they are.
+ *
+ * Not thread-safe: use one writer per scrape.
+ */
+public final class PrometheusWriter {
+
+    public static final String TEXT_CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+    public static final String OPENMETRICS_CONTENT_TYPE = "application/openmetrics-text; version=1.0.0; charset=utf-8";
+
+    private static final Buckets SECONDS = Buckets.powersOfTwo(10, 34, 2, 9);
+    private static final Buckets BYTES = Buckets.powersOfTwo(6, 24, 2, 0);
+    private static final Buckets COUNTS = Buckets.powersOfTwo(1, 10, 1, 0);
+
+    private final OutputStream out;
+    private final boolean openMetrics;
+    private final byte[] buffer = new byte[4096];
+    private int position;
+
+    /**
+     * @param out Destination, flushed by {@link #finish()} but not closed
+     * @param openMetrics Whether to write OpenMetrics rather than the Prometheus text format
+     */
+    public PrometheusWriter(OutputStream out, boolean openMetrics) {
+        this.out = out;
+        this.openMetrics = openMetrics;
+    }
+
+    /**
+     * Whether a scrape's Accept header asks for OpenMetrics
+     *
+     * @param accept Header value, may be null
+     */
+    public static boolean acceptsOpenMetrics(String accept) {
+        return accept != null && accept.contains("application/openmetrics-text");
+    }
+
+    public String getContentType() {
+        return openMetrics ? OPENMETRICS_CONTENT_TYPE : TEXT_CONTENT_TYPE;
+    }
+
+    /**
+     * Write the families of an endpoint's metrics, all named {@code rpc_server_*}
+     */
+    public void writeMetrics(RpcMetrics metrics) throws IOException {
+        counter("rpc_server_calls", "Calls completed, whatever their outcome");
+        for (MethodMetrics method : metrics.getMethods()) {
+            sample("rpc_server_calls", "_total", method.getMethod(), null, method.getCalls());
+        }
+        counter("rpc_server_errors", "Calls answered with an error, including timeouts and invalid params");
+        for (MethodMetrics method : metrics.getMethods()) {
+            sample("rpc_server_errors", "_total", method.getMethod(), null, method.getErrors());
+        }
+        counter("rpc_server_rejected", "Calls refused by a bulkhead or the concurrency limit without running");
+        for (MethodMetrics method : metrics.getMethods()) {
+            sample("rpc_server_rejected", "_total", method.getMethod(), null, method.getRejected());
+        }
+        family("rpc_server_in_flight", "gauge", null, "Calls started and not yet completed");
+        for (MethodMetrics method : metrics.getMethods()) {
+            sample("rpc_server_in_flight", "", method.getMethod(), null, method.getInFlight());
+        }
+
+        family("rpc_server_call_duration_seconds", "histogram", "seconds",
+            "Time from admission to the response of the calls that ran");
+        for (MethodMetrics method : metrics.getMethods()) {
+            histogram("rpc_server_call_duration_seconds", method.getMethod(), method.getLatency(), SECONDS);
+        }
+        family("rpc_server_parse_duration_seconds", "histogram", "seconds", "Time spent parsing a payload");
+        histogram("rpc_server_parse_duration_seconds", null, metrics.getParse(), SECONDS);
+        family("rpc_server_serialize_duration_seconds", "histogram", "seconds", "Time spent serializing a reply");
+        histogram("rpc_server_serialize_duration_seconds", null, metrics.getSerialize(), SECONDS);
+
+        family("rpc_server_batch_size", "histogram", null, "Requests carried by a payload");
+        histogram("rpc_server_batch_size", null, metrics.getBatchSize(), COUNTS);
+        family("rpc_server_request_size_bytes", "histogram", "bytes",
+            "Size of a request payload, as UTF-8 for payloads handled as strings");
+        histogram("rpc_server_request_size_bytes", null, metrics.getRequestSize(), BYTES);
+        family("rpc_server_response_size_bytes", "histogram", "bytes",
+            "Size of a reply, as UTF-8 for replies produced as strings");
+        histogram("rpc_server_response_size_bytes", null, metrics.getResponseSize(), BYTES);
+    }
+
+    /**
+     * Write a gauge without labels
+     *
+     * @param name Metric name, e.g. {@code rpc_server_concurrency_limit}
+     */
+    public void writeGauge(String name, String help, long value) throws IOException {
+        family(name, "gauge", null, help);
+        sample(name, "", null, null, value);
+    }
+
+    /**
+     * End the exposition and flush it to the stream
+     */
+    public void finish() throws IOException {
+        if (openMetrics) {
+            ascii("# EOF\n");
+        }
+        flushBuffer();
+        out.flush();
+    }
+
+    private void counter(String name, String help) throws IOException {
+        // The text format names counter families after their samples, OpenMetrics without the suffix
+        family(openMetrics ? name : name + "_total", "counter", null, help);
+    }
+
+    private void family(String name, String type, String unit, String help) throws IOException {
+        ascii("# HELP ");
+        ascii(name);
+        put(' ');
+        ascii(help);
+        ascii("\n# TYPE ");
+        ascii(name);
+        put(' ');
+        ascii(type);
+        put('\n');
+        if (openMetrics && unit != null) {
+            ascii("# UNIT ");
+            ascii(name);
+            put(' ');
+            ascii(unit);
+            put('\n');
+        }
+    }
+
+    private void histogram(String name, String method, LatencyHistogram histogram, Buckets buckets) throws IOException {
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        long cumulative = 0;
+        int bucket = 0;
+        for (int i = 0; i < buckets.indexes.length; i++) {
+            for (; bucket <= buckets.indexes[i]; bucket++) {
+                cumulative += snapshot.getBucketCount(bucket);
+            }
+            sample(name, "_bucket", method, buckets.labels[i], cumulative);
+        }
+        sample(name, "_bucket", method, "+Inf", snapshot.getCount());
+
+        labels(name, "_sum", method, null);
+        if (buckets.scale == 0) {
+            number(snapshot.getSum());
+        } else {
+            ascii(BigDecimal.valueOf(snapshot.getSum(), buckets.scale).stripTrailingZeros().toPlainString());
+        }
+        put('\n');
+        sample(name, "_count", method, null, snapshot.getCount());
+    }
+
+    private void sample(String name, String suffix, String method, String le, long value) throws IOException {
+        labels(name, suffix, method, le);
+        number(value);
+        put('\n');
+    }
+
+    /**
+     * Write a sample name and its labels, up to the space before the value
+     */
+    private void labels(String name, String suffix, String method, String le) throws IOException {
+        ascii(name);
+        ascii(suffix);
+        if (method != null || le != null) {
+            put('{');
+            if (method != null) {
+                ascii("method=\"");
+                escaped(method);
+                put('"');
+            }
+            if (le != null) {
+                if (method != null) {
+                    put(',');
+                }
+                ascii("le=\"");
+                ascii(le);
+                put('"');
+            }
+            put('}');
+        }
+        put(' ');
+    }
+
+    private void number(long value) throws IOException {
+        if (value < 0) {
+            put('-');
+            value = -value;
+        }
+        if (position + 20 > buffer.length) {
+            flushBuffer();
+        }
+        int start = position;
+        do {
+            buffer[position++] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value != 0);
+        for (int i = start, j = position - 1; i < j; i++, j--) {
+            byte digit = buffer[i];
+            buffer[i] = buffer[j];
+            buffer[j] = digit;
+        }
+    }
+
+    private void ascii(String text) throws IOException {
+        for (int i = 0; i < text.length(); i++) {
+            put(text.charAt(i));
+        }
+    }
+
+    /**
+     * Write a label value as UTF-8, escaping backslashes, quotes and line feeds
+     */
+    private void escaped(String value) throws IOException {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' || c == '"') {
+                put('\\');
+                put(c);
+            } else if (c == '\n') {
+                put('\\');
+                put('n');
+            } else if (c < 0x80) {
+                put(c);
+            } else if (c < 0x800) {
+                put((char) (0xC0 | c >> 6));
+                put((char) (0x80 | c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+                    && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                put((char) (0xF0 | codePoint >> 18));
+                put((char) (0x80 | codePoint >> 12 & 0x3F));
+                put((char) (0x80 | codePoint >> 6 & 0x3F));
+                put((char) (0x80 | codePoint & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                put('?');
+            } else {
+                put((char) (0xE0 | c >> 12));
+                put((char) (0x80 | c >> 6 & 0x3F));
+                put((char) (0x80 | c & 0x3F));
+            }
+        }
+    }
+
+    private void put(char c) throws IOException {
+        if (position == buffer.length) {
+            flushBuffer();
+        }
+        buffer[position++] = (byte) c;
+    }
+
+    private void flushBuffer() throws IOException {
+        out.write(buffer, 0, position);
+        position = 0;
+    }
+
+    /**
+     * Histogram buckets exposed, as indexes of {@link LatencyHistogram} buckets and their
+     * {@code le} labels
+     */
+    private record Buckets(int[] indexes, String[] labels, int scale) {
+
+        /**
+         * Buckets ending below powers of two, which are {@link LatencyHistogram} bucket bounds
+         *
+         * @param scale Decimal digits the values are shifted by in the labels, 9 for nanoseconds in seconds
+         */
+        static Buckets powersOfTwo(int firstPower, int lastPower, int step, int scale) {
+            int count = (lastPower - firstPower) / step + 1;
+            int[] indexes = new int[count];
+            String[] labels = new String[count];
+            for (int i = 0; i < count; i++) {
+                long bound = (1L << (firstPower + i * step)) - 1;
+                indexes[i] = LatencyHistogram.bucket(bound);
+                labels[i] = BigDecimal.valueOf(bound, scale).toPlainString();
+            }
+            return new Buckets(indexes, labels, scale);
+        }
+    }
+}
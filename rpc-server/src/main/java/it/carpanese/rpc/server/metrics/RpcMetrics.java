@@ -0,0 +1,153 @@
+package it.carpanese.rpc.server.metrics;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Measurements of an endpoint: per-method counters, calls in flight and latency, and the time
+ * spent parsing payloads and serializing replies with their sizes
+ *
+ * Parse and serialize times are per payload, so a batch counts once whatever its size; the
+ * batch size distribution tells how many requests a payload carried. Payload sizes are in
+ * bytes, counting bodies handled as strings as their UTF-8 encoding. All updates are
+ * lock-free; reads may see a call counted but not yet its latency.
+ */
+public final class RpcMetrics {
+
+    private final ConcurrentHashMap<String, MethodMetrics> methods = new ConcurrentHashMap<>();
+    private final LatencyHistogram parse = new LatencyHistogram();
+    private final LatencyHistogram serialize = new LatencyHistogram();
+    private final LatencyHistogram batchSize = new LatencyHistogram();
+    private final LatencyHistogram requestSize = new LatencyHistogram();
+    private final LatencyHistogram responseSize = new LatencyHistogram();
+    private final MetricsSink sink;
+    private final LongAdder sinkFailures = new LongAdder();
+
+    /**
+     * @param sink Receiver of every measurement, null for none
+     */
+    public RpcMetrics(MetricsSink sink) {
+        this.sink = sink;
+    }
+
+    /**
+     * Start measuring a method, replacing what was measured under the same name
+     */
+    public MethodMetrics register(String method) {
+        MethodMetrics metrics = new MethodMetrics(method);
+        methods.put(method, metrics);
+        return metrics;
+    }
+
+    public void unregister(String method) {
+        methods.remove(method);
+    }
+
+    /**
+     * Count a call as in flight until {@link #endCall(MethodMetrics)}
+     */
+    public void startCall(MethodMetrics method) {
+        method.enter();
+    }
+
+    public void endCall(MethodMetrics method) {
+        method.exit();
+    }
+
+    public void recordCall(MethodMetrics method, MetricsSink.Outcome outcome, long nanos) {
+        method.record(outcome, nanos);
+        if (sink != null) {
+            try {
+                sink.onCall(method.getMethod(), outcome, nanos);
+            } catch (RuntimeException e) {
+                sinkFailures.increment();
+            }
+        }
+    }
+
+    public void recordParse(long nanos) {
+        parse.record(nanos);
+        if (sink != null) {
+            try {
+                sink.onParse(nanos);
+            } catch (RuntimeException e) {
+                sinkFailures.increment();
+            }
+        }
+    }
+
+    public void recordSerialize(long nanos) {
+        serialize.record(nanos);
+        if (sink != null) {
+            try {
+                sink.onSerialize(nanos);
+            } catch (RuntimeException e) {
+                sinkFailures.increment();
+            }
+        }
+    }
+
+    /**
+     * Record a parsed payload
+     *
+     * @param requests Requests it carried, 1 unless it is a batch
+     * @param size Size of the payload
+     */
+    public void recordRequest(int requests, long size) {
+        batchSize.record(requests);
+        requestSize.record(size);
+    }
+
+    /**
+     * Record the size of a serialized reply
+     */
+    public void recordResponse(long size) {
+        responseSize.record(size);
+    }
+
+    /**
+     * @return Metrics of a method, null if it is not measured
+     */
+    public MethodMetrics getMethod(String method) {
+        return methods.get(method);
+    }
+
+    /**
+     * Live view of the measured methods
+     */
+    public Collection<MethodMetrics> getMethods() {
+        return Collections.unmodifiableCollection(methods.values());
+    }
+
+    public LatencyHistogram getParse() {
+        return parse;
+    }
+
+    public LatencyHistogram getSerialize() {
+        return serialize;
+    }
+
+    /**
+     * Requests per parsed payload
+     */
+    public LatencyHistogram getBatchSize() {
+        return batchSize;
+    }
+
+    public LatencyHistogram getRequestSize() {
+        return requestSize;
+    }
+
+    public LatencyHistogram getResponseSize() {
+        return responseSize;
+    }
+
+    /**
+     * Exceptions thrown by the sink
+     */
+    public long getSinkFailures() {
+        return sinkFailures.sum();
+    }
+}
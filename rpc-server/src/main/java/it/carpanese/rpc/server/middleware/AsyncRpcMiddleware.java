@@ -0,0 +1,61 @@
+package it.carpanese.rpc.server.middleware;
+
+import it.carpanese.rpc.core.RpcRequest;
+
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Middleware completing asynchronously, e.g. after a session lookup or a quota check
+ *
+ * Registered like any {@link IRpcMiddleware}. On {@code RpcEndpoint.handleRequestAsync} the
+ * stages are chained with the synchronous middleware without blocking; on the blocking
+ * {@code handleRequest} the request thread waits for them.
+ */
+public interface AsyncRpcMiddleware extends IRpcMiddleware {
+
+    /**
+     * Run before the RPC method is called
+     *
+     * @return Stage completing when done, failed to reject the call
+     */
+    CompletionStage<Void> before(RpcRequest request, Object context);
+
+    /**
+     * Run after the RPC method is called
+     *
+     * @return Stage completing when done, failed to replace the result with an error
+     */
+    CompletionStage<Void> after(RpcRequest request, Object result, Object context);
+
+    /**
+     * Run {@link #before} and wait for it
+     */
+    @Override
+    default void beforeAsync(RpcRequest request, Object context) throws Exception {
+        await(before(request, context));
+    }
+
+    /**
+     * Run {@link #after} and wait for it
+     */
+    @Override
+    default void afterAsync(RpcRequest request, Object result, Object context) throws Exception {
+        await(after(request, result, context));
+    }
+
+    private static void await(CompletionStage<Void> stage) throws Exception {
+        try {
+            stage.toCompletableFuture().get();
+        } catch (ExecutionException e) {
+            Throwable cause = MiddlewareManager.unwrap(e);
+            if (cause instanceof Exception exception) {
+                throw exception;
+            }
+            if (cause instanceof Error error) {
+                throw error;
+            }
+            throw e;
+        }
+    }
+}
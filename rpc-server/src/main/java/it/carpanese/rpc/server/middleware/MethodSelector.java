@@ -0,0 +1,97 @@
+package it.carpanese.rpc.server.middleware;
+
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Selects the methods a middleware applies to
+ *
+ * Selectors are evaluated when a method's pipeline is linked, not on every call, so they
+ * may be arbitrarily costly; they must give the same answer for the same arguments.
+ */
+@FunctionalInterface
+public interface MethodSelector {
+
+    /**
+     * Check if a method is selected
+     *
+     * @param method Method name
+     * @param tags Tags of the method, see {@code MethodConfig.withTags}; empty for unknown methods
+     */
+    boolean matches(String method, Set<String> tags);
+
+    /**
+     * Select every method
+     */
+    static MethodSelector all() {
+        return (method, tags) -> true;
+    }
+
+    /**
+     * Select methods by exact name
+     */
+    static MethodSelector names(String... names) {
+        Set<String> selected = Set.of(names);
+        return (method, tags) -> selected.contains(method);
+    }
+
+    /**
+     * Select methods whose name matches a glob, where {@code *} matches any run of characters
+     * (dots included) and {@code ?} a single one, e.g. {@code "__rpc.*"} or {@code "user.get*"}
+     */
+    static MethodSelector glob(String pattern) {
+        StringBuilder regex = new StringBuilder();
+        int literal = 0;
+        for (int i = 0; i < pattern.length(); i++) {
+            char c = pattern.charAt(i);
+            if (c == '*' || c == '?') {
+                if (i > literal) {
+                    regex.append(Pattern.quote(pattern.substring(literal, i)));
+                }
+                regex.append(c == '*' ? ".*" : ".");
+                literal = i + 1;
+            }
+        }
+        if (literal < pattern.length()) {
+            regex.append(Pattern.quote(pattern.substring(literal)));
+        }
+        Pattern compiled = Pattern.compile(regex.toString(), Pattern.DOTALL);
+        return (method, tags) -> compiled.matcher(method).matches();
+    }
+
+    /**
+     * Select methods carrying any of the given tags
+     */
+    static MethodSelector tagged(String... tags) {
+        Set<String> selected = Set.of(tags);
+        return (method, methodTags) -> {
+            for (String tag : methodTags) {
+                if (selected.contains(tag)) {
+                    return true;
+                }
+            }
+            return false;
+        };
+    }
+
+    /**
+     * Select the methods this selector does not
+     */
+    default MethodSelector negate() {
+        return (method, tags) -> !matches(method, tags);
+    }
+
+    /**
+     * Select the methods selected by this selector or the other one
+     */
+    default MethodSelector or(MethodSelector other) {
+        return (method, tags) -> matches(method, tags) || other.matches(method, tags);
+    }
+
+    /**
+     * Select the methods selected by both this selector and the other one
+     */
+    default MethodSelector and(MethodSelector other) {
+        return (method, tags) -> matches(method, tags) && other.matches(method, tags);
+    }
+}
@@ -4,45 +4,319 @@ import it.carpanese.rpc.core.RpcRequest;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
 
 /**
  * Manager for middleware execution pipeline
+ *
+ * Before and after middleware, and {@link RpcInterceptor}s wrapped around the method, are
+ * each registered with a {@link MethodSelector}. The endpoint resolves the middleware of each
+ * method once, when the method is linked, and again only after middleware is added, so methods
+ * no middleware selects pay nothing per call. {@link AsyncRpcMiddleware} is chained with the
+ * synchronous middleware without blocking by the {@code Async} variants. Registration
+ * publishes new immutable lists, so it is safe while requests are being served.
  */
 public class MiddlewareManager {
-    private final List<IRpcMiddleware> beforeMiddleware = new ArrayList<>();
-    private final List<IRpcMiddleware> afterMiddleware = new ArrayList<>();
+    private static final CompletableFuture<Void> DONE = CompletableFuture.completedFuture(null);
+
+    private volatile List<Entry<IRpcMiddleware>> beforeMiddleware = List.of();
+    private volatile List<Entry<IRpcMiddleware>> afterMiddleware = List.of();
+    private volatile List<Entry<RpcInterceptor>> interceptors = List.of();
+    private volatile long version;
 
     /**
-     * Add middleware to the pipeline
+     * Add middleware applying to every method
      *
      * @param middleware The middleware to add
      * @param phase "before" or "after"
      */
     public void add(IRpcMiddleware middleware, String phase) {
+        add(middleware, phase, MethodSelector.all());
+    }
+
+    /**
+     * Add middleware applying to the selected methods
+     *
+     * @param middleware The middleware to add
+     * @param phase "before" or "after"
+     * @param selector Methods the middleware applies to
+     */
+    public synchronized void add(IRpcMiddleware middleware, String phase, MethodSelector selector) {
+        if (selector == null) {
+            throw new IllegalArgumentException("Selector cannot be null");
+        }
         if ("before".equalsIgnoreCase(phase)) {
-            beforeMiddleware.add(middleware);
+            beforeMiddleware = append(beforeMiddleware, new Entry<>(middleware, selector));
         } else if ("after".equalsIgnoreCase(phase)) {
-            afterMiddleware.add(middleware);
+            afterMiddleware = append(afterMiddleware, new Entry<>(middleware, selector));
         } else {
             throw new IllegalArgumentException("Phase must be 'before' or 'after'");
         }
+        version++;
+    }
+
+    /**
+     * Add an interceptor applying to every method
+     */
+    public void addInterceptor(RpcInterceptor interceptor) {
+        addInterceptor(interceptor, MethodSelector.all());
+    }
+
+    /**
+     * Add an interceptor applying to the selected methods; interceptors added first run outermost
+     */
+    public synchronized void addInterceptor(RpcInterceptor interceptor, MethodSelector selector) {
+        if (selector == null) {
+            throw new IllegalArgumentException("Selector cannot be null");
+        }
+        interceptors = append(interceptors, new Entry<>(interceptor, selector));
+        version++;
     }
 
     /**
-     * Execute before middleware
+     * Execute the before middleware selecting the request's method by name alone
+     *
+     * Selectors on tags never match, as for a method that is not registered; use
+     * {@link #executeBefore(RpcRequest, Set, Object)} for a method with tags.
      */
     public void executeBefore(RpcRequest request, Object context) throws Exception {
-        for (IRpcMiddleware middleware : beforeMiddleware) {
-            middleware.beforeAsync(request, context);
+        executeBefore(request, Set.of(), context);
+    }
+
+    /**
+     * Execute the before middleware selecting the request's method
+     *
+     * @param tags Tags of the method, see {@link MethodSelector#tagged(String...)}
+     */
+    public void executeBefore(RpcRequest request, Set<String> tags, Object context) throws Exception {
+        for (Entry<IRpcMiddleware> entry : beforeMiddleware) {
+            if (entry.selector.matches(request.getMethod(), tags)) {
+                entry.middleware.beforeAsync(request, context);
+            }
         }
     }
 
     /**
-     * Execute after middleware
+     * Execute the after middleware selecting the request's method by name alone
+     *
+     * @see #executeBefore(RpcRequest, Object)
      */
     public void executeAfter(RpcRequest request, Object result, Object context) throws Exception {
-        for (IRpcMiddleware middleware : afterMiddleware) {
-            middleware.afterAsync(request, result, context);
+        executeAfter(request, Set.of(), result, context);
+    }
+
+    /**
+     * Execute the after middleware selecting the request's method
+     *
+     * @param tags Tags of the method, see {@link MethodSelector#tagged(String...)}
+     */
+    public void executeAfter(RpcRequest request, Set<String> tags, Object result, Object context) throws Exception {
+        for (Entry<IRpcMiddleware> entry : afterMiddleware) {
+            if (entry.selector.matches(request.getMethod(), tags)) {
+                entry.middleware.afterAsync(request, result, context);
+            }
+        }
+    }
+
+    /**
+     * Execute the before middleware selecting the request's method by name alone, without
+     * blocking on asynchronous middleware
+     *
+     * @see #executeBefore(RpcRequest, Object)
+     */
+    public CompletionStage<Void> executeBeforeAsync(RpcRequest request, Object context) {
+        return executeBeforeAsync(request, Set.of(), context);
+    }
+
+    /**
+     * Execute the before middleware selecting the request's method, without blocking on
+     * asynchronous middleware
+     *
+     * @param tags Tags of the method, see {@link MethodSelector#tagged(String...)}
+     */
+    public CompletionStage<Void> executeBeforeAsync(RpcRequest request, Set<String> tags, Object context) {
+        return chainBefore(getBeforeMiddleware(request.getMethod(), tags).toArray(new IRpcMiddleware[0]),
+            request, context);
+    }
+
+    /**
+     * Execute the after middleware selecting the request's method by name alone, without
+     * blocking on asynchronous middleware
+     *
+     * @see #executeBefore(RpcRequest, Object)
+     */
+    public CompletionStage<Void> executeAfterAsync(RpcRequest request, Object result, Object context) {
+        return executeAfterAsync(request, Set.of(), result, context);
+    }
+
+    /**
+     * Execute the after middleware selecting the request's method, without blocking on
+     * asynchronous middleware
+     *
+     * @param tags Tags of the method, see {@link MethodSelector#tagged(String...)}
+     */
+    public CompletionStage<Void> executeAfterAsync(RpcRequest request, Set<String> tags, Object result,
+                                                   Object context) {
+        return chainAfter(getAfterMiddleware(request.getMethod(), tags).toArray(new IRpcMiddleware[0]),
+            request, result, context);
+    }
+
+    /**
+     * Run before middleware in order, continuing after each asynchronous one completes
+     *
+     * Synchronous middleware runs on the calling thread, or on the thread completing the
+     * asynchronous middleware before it. The stage returned when everything completed at once
+     * is shared and must not be completed by callers.
+     *
+     * @return Stage completing when all have run, failed with the first error
+     */
+    public static CompletableFuture<Void> chainBefore(IRpcMiddleware[] middleware, RpcRequest request,
+                                                      Object context) {
+        return chainBefore(middleware, 0, request, context);
+    }
+
+    /**
+     * Run after middleware in order, continuing after each asynchronous one completes
+     *
+     * @see #chainBefore(IRpcMiddleware[], RpcRequest, Object)
+     */
+    public static CompletableFuture<Void> chainAfter(IRpcMiddleware[] middleware, RpcRequest request,
+                                                     Object result, Object context) {
+        return chainAfter(middleware, 0, request, result, context);
+    }
+
+    private static CompletableFuture<Void> chainBefore(IRpcMiddleware[] middleware, int from,
+                                                       RpcRequest request, Object context) {
+        for (int i = from; i < middleware.length; i++) {
+            try {
+                if (middleware[i] instanceof AsyncRpcMiddleware async) {
+                    CompletableFuture<Void> stage = started(async.before(request, context));
+                    if (!stage.isDone() || stage.isCompletedExceptionally()) {
+                        int next = i + 1;
+                        return stage.thenCompose(ignored -> chainBefore(middleware, next, request, context));
+                    }
+                } else {
+                    middleware[i].beforeAsync(request, context);
+                }
+            } catch (Exception e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        }
+        return DONE;
+    }
+
+    private static CompletableFuture<Void> chainAfter(IRpcMiddleware[] middleware, int from,
+                                                      RpcRequest request, Object result, Object context) {
+        for (int i = from; i < middleware.length; i++) {
+            try {
+                if (middleware[i] instanceof AsyncRpcMiddleware async) {
+                    CompletableFuture<Void> stage = started(async.after(request, result, context));
+                    if (!stage.isDone() || stage.isCompletedExceptionally()) {
+                        int next = i + 1;
+                        return stage.thenCompose(ignored -> chainAfter(middleware, next, request, result, context));
+                    }
+                } else {
+                    middleware[i].afterAsync(request, result, context);
+                }
+            } catch (Exception e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        }
+        return DONE;
+    }
+
+    private static CompletableFuture<Void> started(CompletionStage<Void> stage) {
+        if (stage == null) {
+            throw new IllegalStateException("Asynchronous middleware returned no stage");
+        }
+        return stage.toCompletableFuture();
+    }
+
+    static Throwable unwrap(Throwable error) {
+        while ((error instanceof CompletionException || error instanceof ExecutionException)
+                && error.getCause() != null) {
+            error = error.getCause();
         }
+        return error;
+    }
+
+    /**
+     * Get a snapshot of the before middleware, in execution order
+     */
+    public List<IRpcMiddleware> getBeforeMiddleware() {
+        return select(beforeMiddleware, null, null);
+    }
+
+    /**
+     * Get a snapshot of the after middleware, in execution order
+     */
+    public List<IRpcMiddleware> getAfterMiddleware() {
+        return select(afterMiddleware, null, null);
+    }
+
+    /**
+     * Get the before middleware applying to a method, in execution order
+     */
+    public List<IRpcMiddleware> getBeforeMiddleware(String method, Set<String> tags) {
+        return select(beforeMiddleware, method, tags);
+    }
+
+    /**
+     * Get the after middleware applying to a method, in execution order
+     */
+    public List<IRpcMiddleware> getAfterMiddleware(String method, Set<String> tags) {
+        return select(afterMiddleware, method, tags);
+    }
+
+    /**
+     * Get the interceptors applying to a method, outermost first
+     */
+    public List<RpcInterceptor> getInterceptors(String method, Set<String> tags) {
+        return select(interceptors, method, tags);
+    }
+
+    /**
+     * Get a counter changed every time middleware is added
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Copy this manager as it is now
+     */
+    public synchronized MiddlewareManager snapshot() {
+        MiddlewareManager copy = new MiddlewareManager();
+        copy.beforeMiddleware = beforeMiddleware;
+        copy.afterMiddleware = afterMiddleware;
+        copy.interceptors = interceptors;
+        copy.version = version;
+        return copy;
+    }
+
+    private static <T> List<Entry<T>> append(List<Entry<T>> entries, Entry<T> entry) {
+        List<Entry<T>> copy = new ArrayList<>(entries);
+        copy.add(entry);
+        return List.copyOf(copy);
+    }
+
+    private static <T> List<T> select(List<Entry<T>> entries, String method, Set<String> tags) {
+        List<T> selected = new ArrayList<>(entries.size());
+        for (Entry<T> entry : entries) {
+            if (method == null || entry.selector.matches(method, tags)) {
+                selected.add(entry.middleware);
+            }
+        }
+        return List.copyOf(selected);
+    }
+
+    /**
+     * Registered middleware with the methods it applies to
+     */
+    private record Entry<T>(T middleware, MethodSelector selector) {
     }
 }
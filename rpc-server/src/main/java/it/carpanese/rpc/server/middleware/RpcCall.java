@@ -0,0 +1,81 @@
+package it.carpanese.rpc.server.middleware;
+
+import com.google.gson.JsonElement;
+import it.carpanese.rpc.core.RpcRequest;
+
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * A method call going through an {@link RpcInterceptor} chain
+ *
+ * The call tracks its position in the chain itself, so running the chain allocates nothing
+ * beyond the call object: every interceptor is handed the same stateless {@link RpcInterceptor.Next}.
+ */
+public abstract class RpcCall {
+
+    private static final RpcInterceptor.Next NEXT = RpcCall::proceed;
+
+    private final RpcRequest request;
+    private final Object context;
+    private final Set<String> tags;
+    private final RpcInterceptor[] interceptors;
+    private int index;
+
+    /**
+     * @param request The request being served
+     * @param context Server context object
+     * @param tags Tags of the method
+     * @param interceptors Interceptors applying to the method, outermost first
+     */
+    protected RpcCall(RpcRequest request, Object context, Set<String> tags, RpcInterceptor[] interceptors) {
+        this.request = request;
+        this.context = context;
+        this.tags = tags;
+        this.interceptors = interceptors;
+    }
+
+    public RpcRequest getRequest() {
+        return request;
+    }
+
+    public String getMethod() {
+        return request.getMethod();
+    }
+
+    public Object getContext() {
+        return context;
+    }
+
+    public Set<String> getTags() {
+        return tags;
+    }
+
+    /**
+     * Run the next interceptor, or the method once all have run
+     *
+     * @return Result of the rest of the chain, failed if any part of it threw
+     */
+    public final CompletionStage<JsonElement> proceed() {
+        int i = index;
+        try {
+            if (i >= interceptors.length) {
+                return invoke();
+            }
+            index = i + 1;
+            CompletionStage<JsonElement> stage = interceptors[i].intercept(this, NEXT);
+            if (stage == null) {
+                throw new IllegalStateException("Interceptor of '" + getMethod() + "' returned no stage");
+            }
+            return stage;
+        } catch (Exception e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Run the method itself, at the end of the chain
+     */
+    protected abstract CompletionStage<JsonElement> invoke() throws Exception;
+}
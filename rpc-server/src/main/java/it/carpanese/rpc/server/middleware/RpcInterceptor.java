@@ -0,0 +1,48 @@
+package it.carpanese.rpc.server.middleware;
+
+import com.google.gson.JsonElement;
+
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Middleware wrapped around the execution of a method
+ *
+ * An interceptor sees the call before the method runs and its outcome, result or error, after.
+ * It may return a result without calling {@code next} (e.g. from a cache), map errors by
+ * handling the stage returned by {@code next}, or time the call by observing its completion.
+ * Interceptors run after the before middleware and before the after middleware, the first one
+ * added outermost.
+ *
+ * <pre>
+ * (call, next) -&gt; {
+ *     long start = System.nanoTime();
+ *     return next.proceed(call).whenComplete((result, error) -&gt;
+ *         metrics.record(call.getMethod(), System.nanoTime() - start));
+ * }
+ * </pre>
+ */
+@FunctionalInterface
+public interface RpcInterceptor {
+
+    /**
+     * Intercept a call
+     *
+     * @param call The call, shared by the whole chain
+     * @param next Rest of the chain; call it at most once, from any thread
+     * @return Result of the call; exceptions thrown are treated as a failed stage
+     * @throws Exception To fail the call
+     */
+    CompletionStage<JsonElement> intercept(RpcCall call, Next next) throws Exception;
+
+    /**
+     * Rest of an interceptor chain, ending with the method itself
+     */
+    @FunctionalInterface
+    interface Next {
+
+        /**
+         * Run the rest of the chain
+         */
+        CompletionStage<JsonElement> proceed(RpcCall call);
+    }
+}
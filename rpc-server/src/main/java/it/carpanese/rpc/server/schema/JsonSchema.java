@@ -0,0 +1,327 @@
+package it.carpanese.rpc.server.schema;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * JSON Schema compiled into a validator
+ *
+ * Supports the validation keywords of drafts 4 to 2020-12 that apply to JSON-RPC params:
+ * {@code type}, {@code enum}, {@code const}, numeric bounds and {@code multipleOf},
+ * {@code minLength}, {@code maxLength}, {@code pattern}, {@code items} and {@code prefixItems}
+ * (or array-form {@code items} with {@code additionalItems}), {@code minItems},
+ * {@code maxItems}, {@code uniqueItems}, {@code properties}, {@code required},
+ * {@code additionalProperties}, {@code minProperties}, {@code maxProperties}, {@code allOf},
+ * {@code anyOf}, {@code oneOf}, {@code not} and local {@code $ref}s (which, as in draft 7,
+ * replace their sibling keywords). Annotations and {@code format} are ignored.
+ *
+ * Validation streams over the value and stops at the first violation, so invalid payloads
+ * are rejected without being decoded. A compiled schema is immutable and thread-safe.
+ */
+public final class JsonSchema {
+
+    private final SchemaNode root;
+
+    private JsonSchema(SchemaNode root) {
+        this.root = root;
+    }
+
+    /**
+     * Compile a schema
+     *
+     * @param schema Schema document, an object or a boolean
+     * @throws IllegalArgumentException If the schema is malformed or uses a remote {@code $ref}
+     */
+    public static JsonSchema compile(JsonElement schema) {
+        if (schema == null) {
+            throw new IllegalArgumentException("Schema cannot be null");
+        }
+        return new JsonSchema(new Compiler(schema).resolve("#"));
+    }
+
+    /**
+     * Validate the next value of a reader, consuming it
+     *
+     * @param safeEncoded Whether strings carry Safe Mode markers, which are stripped before checks
+     * @throws SchemaViolationException On the first violation found
+     * @throws IOException If the value is not well-formed JSON
+     */
+    public void validate(JsonReader in, boolean safeEncoded) throws IOException, SchemaViolationException {
+        root.check(in, safeEncoded, new Path());
+    }
+
+    /**
+     * Validate a JSON text
+     *
+     * @param safeEncoded Whether strings carry Safe Mode markers, which are stripped before checks
+     * @throws SchemaViolationException On the first violation found
+     * @throws JsonSyntaxException If the text is not well-formed JSON
+     */
+    public void validate(String json, boolean safeEncoded) throws SchemaViolationException {
+        try {
+            JsonReader in = new JsonReader(new StringReader(json));
+            validate(in, safeEncoded);
+            if (in.peek() != JsonToken.END_DOCUMENT) {
+                throw new JsonSyntaxException("Trailing data after the value");
+            }
+        } catch (IOException e) {
+            throw new JsonSyntaxException(e);
+        }
+    }
+
+    /**
+     * Validate a decoded value
+     *
+     * @throws SchemaViolationException On the first violation found
+     */
+    public void validate(JsonElement value) throws SchemaViolationException {
+        root.check(value != null ? value : JsonNull.INSTANCE, new Path());
+    }
+
+    /**
+     * Validate the params of a call that has none
+     *
+     * JSON-RPC lets callers omit params; they are checked as an empty object, or an empty array
+     * if the schema only accepts arrays, so that required members are still reported.
+     *
+     * @throws SchemaViolationException If the schema requires params
+     */
+    public void validateOmitted() throws SchemaViolationException {
+        int types = root.acceptedTypes();
+        boolean arrayOnly = types != 0 && (types & SchemaNode.OBJECT) == 0 && (types & SchemaNode.ARRAY) != 0;
+        validate(arrayOnly ? new JsonArray() : new JsonObject());
+    }
+
+    /**
+     * Builds the nodes of a schema document, sharing one node per {@code $ref} target
+     */
+    private static final class Compiler {
+
+        private final JsonElement document;
+        private final Map<String, SchemaNode> targets = new HashMap<>();
+
+        Compiler(JsonElement document) {
+            this.document = document;
+        }
+
+        /**
+         * Get the node of a local reference, compiling it on first use
+         */
+        SchemaNode resolve(String pointer) {
+            SchemaNode node = targets.get(pointer);
+            if (node == null) {
+                // Registered before it is filled, so recursive references find it
+                node = new SchemaNode();
+                targets.put(pointer, node);
+                fill(node, locate(pointer));
+            }
+            return node;
+        }
+
+        private JsonElement locate(String pointer) {
+            if (!pointer.startsWith("#")) {
+                throw new IllegalArgumentException("Only local $ref is supported: " + pointer);
+            }
+            JsonElement target = document;
+            for (String token : pointer.substring(1).split("/")) {
+                if (token.isEmpty()) {
+                    continue;
+                }
+                String name = token.replace("~1", "/").replace("~0", "~");
+                if (target.isJsonObject() && target.getAsJsonObject().has(name)) {
+                    target = target.getAsJsonObject().get(name);
+                } else if (target.isJsonArray() && name.matches("\\d+")
+                        && Integer.parseInt(name) < target.getAsJsonArray().size()) {
+                    target = target.getAsJsonArray().get(Integer.parseInt(name));
+                } else {
+                    throw new IllegalArgumentException("Unresolvable $ref: " + pointer);
+                }
+            }
+            return target;
+        }
+
+        private SchemaNode compile(JsonElement schema) {
+            SchemaNode node = new SchemaNode();
+            fill(node, schema);
+            return node;
+        }
+
+        private void fill(SchemaNode node, JsonElement schema) {
+            if (schema.isJsonPrimitive() && schema.getAsJsonPrimitive().isBoolean()) {
+                node.reject = !schema.getAsBoolean();
+                return;
+            }
+            if (!schema.isJsonObject()) {
+                throw new IllegalArgumentException("Schema must be an object or a boolean: " + schema);
+            }
+            JsonObject object = schema.getAsJsonObject();
+
+            if (object.has("$ref")) {
+                node.ref = resolve(object.get("$ref").getAsString());
+                return;
+            }
+
+            JsonElement type = object.get("type");
+            if (type != null) {
+                if (type.isJsonArray()) {
+                    for (JsonElement name : type.getAsJsonArray()) {
+                        node.types |= type(name.getAsString());
+                    }
+                } else {
+                    node.types = type(type.getAsString());
+                }
+            }
+            if (object.has("enum")) {
+                node.enumValues = new ArrayList<>(object.getAsJsonArray("enum").asList());
+            }
+            if (object.has("const")) {
+                node.enumValues = List.of(object.get("const"));
+            }
+
+            node.minimum = decimal(object, "minimum");
+            node.maximum = decimal(object, "maximum");
+            // Draft 4 spells exclusive bounds as booleans next to minimum and maximum
+            JsonElement exclusiveMinimum = object.get("exclusiveMinimum");
+            if (exclusiveMinimum != null && isBoolean(exclusiveMinimum)) {
+                if (exclusiveMinimum.getAsBoolean()) {
+                    node.exclusiveMinimum = node.minimum;
+                    node.minimum = null;
+                }
+            } else {
+                node.exclusiveMinimum = decimal(object, "exclusiveMinimum");
+            }
+            JsonElement exclusiveMaximum = object.get("exclusiveMaximum");
+            if (exclusiveMaximum != null && isBoolean(exclusiveMaximum)) {
+                if (exclusiveMaximum.getAsBoolean()) {
+                    node.exclusiveMaximum = node.maximum;
+                    node.maximum = null;
+                }
+            } else {
+                node.exclusiveMaximum = decimal(object, "exclusiveMaximum");
+            }
+            node.multipleOf = decimal(object, "multipleOf");
+            if (node.multipleOf != null && node.multipleOf.signum() <= 0) {
+                throw new IllegalArgumentException("multipleOf must be greater than 0");
+            }
+
+            node.minLength = count(object, "minLength");
+            node.maxLength = count(object, "maxLength");
+            if (object.has("pattern")) {
+                try {
+                    node.pattern = Pattern.compile(object.get("pattern").getAsString());
+                } catch (PatternSyntaxException e) {
+                    throw new IllegalArgumentException("Invalid pattern: " + e.getMessage(), e);
+                }
+            }
+
+            JsonElement items = object.get("items");
+            if (object.has("prefixItems")) {
+                node.prefixItems = compileAll(object.get("prefixItems"));
+                node.items = items != null ? compile(items) : null;
+            } else if (items != null && items.isJsonArray()) {
+                node.prefixItems = compileAll(items);
+                node.items = object.has("additionalItems") ? compile(object.get("additionalItems")) : null;
+            } else if (items != null) {
+                node.items = compile(items);
+            }
+            node.minItems = count(object, "minItems");
+            node.maxItems = count(object, "maxItems");
+            node.uniqueItems = object.has("uniqueItems") && object.get("uniqueItems").getAsBoolean();
+
+            String[] required = new String[0];
+            if (object.has("required") && object.get("required").isJsonArray()) {
+                JsonArray names = object.getAsJsonArray("required");
+                required = new String[names.size()];
+                for (int i = 0; i < required.length; i++) {
+                    required[i] = names.get(i).getAsString();
+                }
+            }
+            Map<String, SchemaNode.Property> properties = new HashMap<>();
+            if (object.has("properties")) {
+                for (Map.Entry<String, JsonElement> property : object.getAsJsonObject("properties").entrySet()) {
+                    properties.put(property.getKey(), new SchemaNode.Property(compile(property.getValue()), -1));
+                }
+            }
+            for (int i = 0; i < required.length; i++) {
+                SchemaNode.Property declared = properties.get(required[i]);
+                properties.put(required[i], new SchemaNode.Property(declared != null ? declared.schema() : null, i));
+            }
+            node.required = required;
+            node.properties = Map.copyOf(properties);
+            if (object.has("additionalProperties")) {
+                node.additionalProperties = compile(object.get("additionalProperties"));
+            }
+            node.minProperties = count(object, "minProperties");
+            node.maxProperties = count(object, "maxProperties");
+
+            node.allOf = object.has("allOf") ? compileAll(object.get("allOf")) : null;
+            node.anyOf = object.has("anyOf") ? compileAll(object.get("anyOf")) : null;
+            node.oneOf = object.has("oneOf") ? compileAll(object.get("oneOf")) : null;
+            node.not = object.has("not") ? compile(object.get("not")) : null;
+
+            node.buffered = node.enumValues != null || node.uniqueItems || node.allOf != null
+                || node.anyOf != null || node.oneOf != null || node.not != null;
+        }
+
+        private SchemaNode[] compileAll(JsonElement schemas) {
+            if (!schemas.isJsonArray()) {
+                throw new IllegalArgumentException("Expected an array of schemas: " + schemas);
+            }
+            JsonArray array = schemas.getAsJsonArray();
+            SchemaNode[] nodes = new SchemaNode[array.size()];
+            for (int i = 0; i < nodes.length; i++) {
+                nodes[i] = compile(array.get(i));
+            }
+            return nodes;
+        }
+
+        private static int type(String name) {
+            return switch (name) {
+                case "null" -> SchemaNode.NULL;
+                case "boolean" -> SchemaNode.BOOLEAN;
+                case "integer" -> SchemaNode.INTEGER;
+                case "number" -> SchemaNode.NUMBER | SchemaNode.INTEGER;
+                case "string" -> SchemaNode.STRING;
+                case "array" -> SchemaNode.ARRAY;
+                case "object" -> SchemaNode.OBJECT;
+                default -> throw new IllegalArgumentException("Unknown type: " + name);
+            };
+        }
+
+        private static boolean isBoolean(JsonElement value) {
+            return value.isJsonPrimitive() && value.getAsJsonPrimitive().isBoolean();
+        }
+
+        private static BigDecimal decimal(JsonObject object, String keyword) {
+            JsonElement value = object.get(keyword);
+            return value != null ? value.getAsBigDecimal() : null;
+        }
+
+        private static int count(JsonObject object, String keyword) {
+            JsonElement value = object.get(keyword);
+            if (value == null) {
+                return -1;
+            }
+            int count = value.getAsInt();
+            if (count < 0) {
+                throw new IllegalArgumentException(keyword + " cannot be negative");
+            }
+            return count;
+        }
+    }
+}
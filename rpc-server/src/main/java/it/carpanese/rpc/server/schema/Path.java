@@ -0,0 +1,48 @@
+package it.carpanese.rpc.server.schema;
+
+import java.util.Arrays;
+
+/**
+ * Location in the value being validated, kept as a stack and formatted only on failure
+ */
+final class Path {
+
+    private String[] names = new String[8];
+    private int[] indices = new int[8];
+    private int depth;
+
+    void push(String name) {
+        grow();
+        names[depth++] = name;
+    }
+
+    void push(int index) {
+        grow();
+        names[depth] = null;
+        indices[depth++] = index;
+    }
+
+    void pop() {
+        depth--;
+    }
+
+    private void grow() {
+        if (depth == names.length) {
+            names = Arrays.copyOf(names, depth * 2);
+            indices = Arrays.copyOf(indices, depth * 2);
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder path = new StringBuilder("$");
+        for (int i = 0; i < depth; i++) {
+            if (names[i] != null) {
+                path.append('.').append(names[i]);
+            } else {
+                path.append('[').append(indices[i]).append(']');
+            }
+        }
+        return path.toString();
+    }
+}
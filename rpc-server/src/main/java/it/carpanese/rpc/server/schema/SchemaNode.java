@@ -0,0 +1,441 @@
+package it.carpanese.rpc.server.schema;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
+import com.google.gson.stream.JsonReader;
+import it.carpanese.rpc.core.SafeModeCodec;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * One compiled (sub)schema
+ *
+ * Keywords are resolved into fields when the schema is compiled, so checking a value is a
+ * walk over the value with no lookups in the schema document. Values are checked as they are
+ * read; only subschemas whose keywords need the whole value at once (enum, const,
+ * uniqueItems, allOf, anyOf, oneOf, not) read it into a tree, and only that value.
+ */
+final class SchemaNode {
+
+    static final int NULL = 1;
+    static final int BOOLEAN = 1 << 1;
+    static final int INTEGER = 1 << 2;
+    static final int NUMBER = 1 << 3;
+    static final int STRING = 1 << 4;
+    static final int ARRAY = 1 << 5;
+    static final int OBJECT = 1 << 6;
+
+    private static final String[] TYPE_NAMES = {"null", "boolean", "integer", "number", "string", "array", "object"};
+
+    /**
+     * Schema the node defers to entirely ({@code $ref}), null if none
+     */
+    SchemaNode ref;
+    /**
+     * The {@code false} schema
+     */
+    boolean reject;
+    /**
+     * Accepted types, 0 for any; {@code number} includes {@code integer}
+     */
+    int types;
+    List<JsonElement> enumValues;
+
+    BigDecimal minimum;
+    BigDecimal maximum;
+    BigDecimal exclusiveMinimum;
+    BigDecimal exclusiveMaximum;
+    BigDecimal multipleOf;
+
+    int minLength = -1;
+    int maxLength = -1;
+    Pattern pattern;
+
+    SchemaNode[] prefixItems;
+    SchemaNode items;
+    int minItems = -1;
+    int maxItems = -1;
+    boolean uniqueItems;
+
+    Map<String, Property> properties = Map.of();
+    String[] required = new String[0];
+    SchemaNode additionalProperties;
+    int minProperties = -1;
+    int maxProperties = -1;
+
+    SchemaNode[] allOf;
+    SchemaNode[] anyOf;
+    SchemaNode[] oneOf;
+    SchemaNode not;
+
+    /**
+     * Whether the value must be read into a tree before it is checked
+     */
+    boolean buffered;
+
+    /**
+     * Declared property, or a required one without schema
+     *
+     * @param schema Schema of the value, null to allow any
+     * @param required Index in {@link #required}, -1 if optional
+     */
+    record Property(SchemaNode schema, int required) {
+    }
+
+    /**
+     * Check the next value of a reader, consuming it
+     *
+     * @param safe Whether strings carry Safe Mode markers to strip first
+     */
+    void check(JsonReader in, boolean safe, Path path) throws IOException, SchemaViolationException {
+        if (ref != null) {
+            ref.check(in, safe, path);
+            return;
+        }
+        if (reject) {
+            throw violation(path, "false", "no value is allowed");
+        }
+        if (buffered) {
+            check(safe ? SafeModeCodec.read(in) : JsonParser.parseReader(in), path);
+            return;
+        }
+
+        switch (in.peek()) {
+            case BEGIN_OBJECT -> {
+                checkType(OBJECT, "object", path);
+                checkObject(in, safe, path);
+            }
+            case BEGIN_ARRAY -> {
+                checkType(ARRAY, "array", path);
+                checkArray(in, safe, path);
+            }
+            case STRING -> {
+                String value = in.nextString();
+                checkType(STRING, "string", path);
+                checkString(safe ? SafeModeCodec.decodeString(value) : value, path);
+            }
+            case NUMBER -> checkNumber(in.nextString(), path);
+            case BOOLEAN -> {
+                in.nextBoolean();
+                checkType(BOOLEAN, "boolean", path);
+            }
+            case NULL -> {
+                in.nextNull();
+                checkType(NULL, "null", path);
+            }
+            default -> throw new IOException("Unexpected token " + in.peek() + " at " + path);
+        }
+    }
+
+    /**
+     * Check a value already decoded into a tree
+     */
+    void check(JsonElement value, Path path) throws SchemaViolationException {
+        if (ref != null) {
+            ref.check(value, path);
+            return;
+        }
+        if (reject) {
+            throw violation(path, "false", "no value is allowed");
+        }
+
+        if (value.isJsonObject()) {
+            checkType(OBJECT, "object", path);
+            checkObject(value.getAsJsonObject(), path);
+        } else if (value.isJsonArray()) {
+            checkType(ARRAY, "array", path);
+            checkArray(value.getAsJsonArray(), path);
+        } else if (value.isJsonNull()) {
+            checkType(NULL, "null", path);
+        } else {
+            JsonPrimitive primitive = value.getAsJsonPrimitive();
+            if (primitive.isBoolean()) {
+                checkType(BOOLEAN, "boolean", path);
+            } else if (primitive.isNumber()) {
+                checkNumber(primitive.getAsString(), path);
+            } else {
+                checkType(STRING, "string", path);
+                checkString(primitive.getAsString(), path);
+            }
+        }
+
+        if (enumValues != null && !enumValues.contains(value)) {
+            throw violation(path, "enum", "must be one of " + enumValues);
+        }
+        checkCombinators(value, path);
+    }
+
+    private void checkCombinators(JsonElement value, Path path) throws SchemaViolationException {
+        if (allOf != null) {
+            for (SchemaNode schema : allOf) {
+                schema.check(value, path);
+            }
+        }
+        if (anyOf != null && count(anyOf, value, 1) == 0) {
+            throw violation(path, "anyOf", "must match at least one of the allowed schemas");
+        }
+        if (oneOf != null && count(oneOf, value, 2) != 1) {
+            throw violation(path, "oneOf", "must match exactly one of the allowed schemas");
+        }
+        if (not != null && count(new SchemaNode[] {not}, value, 1) == 1) {
+            throw violation(path, "not", "must not match the excluded schema");
+        }
+    }
+
+    /**
+     * Count the schemas a value matches, stopping at {@code limit}
+     */
+    private static int count(SchemaNode[] schemas, JsonElement value, int limit) {
+        int matched = 0;
+        for (SchemaNode schema : schemas) {
+            try {
+                schema.check(value, new Path());
+                if (++matched == limit) {
+                    break;
+                }
+            } catch (SchemaViolationException e) {
+                // Not this one
+            }
+        }
+        return matched;
+    }
+
+    private void checkType(int type, String name, Path path) throws SchemaViolationException {
+        if (types != 0 && (types & type) == 0) {
+            throw violation(path, "type", "expected " + typeNames() + " but got " + name);
+        }
+    }
+
+    private void checkString(String value, Path path) throws SchemaViolationException {
+        if (minLength >= 0 || maxLength >= 0) {
+            int length = value.codePointCount(0, value.length());
+            if (minLength >= 0 && length < minLength) {
+                throw violation(path, "minLength", "must be at least " + minLength + " characters long");
+            }
+            if (maxLength >= 0 && length > maxLength) {
+                throw violation(path, "maxLength", "must be at most " + maxLength + " characters long");
+            }
+        }
+        if (pattern != null && !pattern.matcher(value).find()) {
+            throw violation(path, "pattern", "must match " + pattern.pattern());
+        }
+    }
+
+    private void checkNumber(String text, Path path) throws SchemaViolationException {
+        BigDecimal value = null;
+        boolean integer = text.indexOf('.') < 0 && text.indexOf('e') < 0 && text.indexOf('E') < 0;
+        if (!integer) {
+            // 1.0 and 1e2 are integers too
+            value = new BigDecimal(text);
+            integer = value.signum() == 0 || value.stripTrailingZeros().scale() <= 0;
+        }
+        checkType(integer ? INTEGER | NUMBER : NUMBER, integer ? "integer" : "number", path);
+
+        if (minimum == null && maximum == null && exclusiveMinimum == null && exclusiveMaximum == null
+                && multipleOf == null) {
+            return;
+        }
+        if (value == null) {
+            value = new BigDecimal(text);
+        }
+        if (minimum != null && value.compareTo(minimum) < 0) {
+            throw violation(path, "minimum", "must be >= " + minimum.toPlainString());
+        }
+        if (maximum != null && value.compareTo(maximum) > 0) {
+            throw violation(path, "maximum", "must be <= " + maximum.toPlainString());
+        }
+        if (exclusiveMinimum != null && value.compareTo(exclusiveMinimum) <= 0) {
+            throw violation(path, "exclusiveMinimum", "must be > " + exclusiveMinimum.toPlainString());
+        }
+        if (exclusiveMaximum != null && value.compareTo(exclusiveMaximum) >= 0) {
+            throw violation(path, "exclusiveMaximum", "must be < " + exclusiveMaximum.toPlainString());
+        }
+        if (multipleOf != null && value.remainder(multipleOf).signum() != 0) {
+            throw violation(path, "multipleOf", "must be a multiple of " + multipleOf.toPlainString());
+        }
+    }
+
+    private void checkObject(JsonReader in, boolean safe, Path path) throws IOException, SchemaViolationException {
+        boolean[] seen = required.length > 0 ? new boolean[required.length] : null;
+        int count = 0;
+        in.beginObject();
+        while (in.hasNext()) {
+            String name = in.nextName();
+            if (maxProperties >= 0 && ++count > maxProperties) {
+                throw violation(path, "maxProperties", "must have at most " + maxProperties + " properties");
+            }
+            SchemaNode schema = property(name, seen, path);
+            if (schema == null) {
+                in.skipValue();
+                continue;
+            }
+            path.push(name);
+            schema.check(in, safe, path);
+            path.pop();
+        }
+        in.endObject();
+        checkRequired(seen, path);
+        checkMinProperties(count, path);
+    }
+
+    private void checkObject(JsonObject object, Path path) throws SchemaViolationException {
+        boolean[] seen = required.length > 0 ? new boolean[required.length] : null;
+        if (maxProperties >= 0 && object.size() > maxProperties) {
+            throw violation(path, "maxProperties", "must have at most " + maxProperties + " properties");
+        }
+        for (Map.Entry<String, JsonElement> member : object.entrySet()) {
+            SchemaNode schema = property(member.getKey(), seen, path);
+            if (schema != null) {
+                path.push(member.getKey());
+                schema.check(member.getValue(), path);
+                path.pop();
+            }
+        }
+        checkRequired(seen, path);
+        checkMinProperties(object.size(), path);
+    }
+
+    /**
+     * Find the schema of a member, marking it as seen if it is required
+     *
+     * @return Schema, or null if the value may be anything
+     */
+    private SchemaNode property(String name, boolean[] seen, Path path) throws SchemaViolationException {
+        Property property = properties.get(name);
+        if (property != null) {
+            if (property.required >= 0) {
+                seen[property.required] = true;
+            }
+            if (property.schema != null) {
+                return property.schema;
+            }
+        }
+        // Members without a schema of their own, required or not, are additional properties
+        if (additionalProperties != null && additionalProperties.reject) {
+            path.push(name);
+            SchemaViolationException violation = violation(path, "additionalProperties", "is not allowed");
+            path.pop();
+            throw violation;
+        }
+        return additionalProperties;
+    }
+
+    private void checkRequired(boolean[] seen, Path path) throws SchemaViolationException {
+        if (seen == null) {
+            return;
+        }
+        for (int i = 0; i < seen.length; i++) {
+            if (!seen[i]) {
+                throw violation(path, "required", "missing required property '" + required[i] + "'");
+            }
+        }
+    }
+
+    private void checkMinProperties(int count, Path path) throws SchemaViolationException {
+        if (minProperties >= 0 && count < minProperties) {
+            throw violation(path, "minProperties", "must have at least " + minProperties + " properties");
+        }
+    }
+
+    private void checkArray(JsonReader in, boolean safe, Path path) throws IOException, SchemaViolationException {
+        int index = 0;
+        in.beginArray();
+        while (in.hasNext()) {
+            if (maxItems >= 0 && index >= maxItems) {
+                throw violation(path, "maxItems", "must have at most " + maxItems + " items");
+            }
+            SchemaNode schema = item(index, path);
+            if (schema == null) {
+                in.skipValue();
+            } else {
+                path.push(index);
+                schema.check(in, safe, path);
+                path.pop();
+            }
+            index++;
+        }
+        in.endArray();
+        checkMinItems(index, path);
+    }
+
+    private void checkArray(JsonArray array, Path path) throws SchemaViolationException {
+        if (maxItems >= 0 && array.size() > maxItems) {
+            throw violation(path, "maxItems", "must have at most " + maxItems + " items");
+        }
+        for (int index = 0; index < array.size(); index++) {
+            SchemaNode schema = item(index, path);
+            if (schema != null) {
+                path.push(index);
+                schema.check(array.get(index), path);
+                path.pop();
+            }
+        }
+        checkMinItems(array.size(), path);
+        if (uniqueItems) {
+            Set<JsonElement> distinct = new HashSet<>();
+            for (JsonElement item : array) {
+                if (!distinct.add(item)) {
+                    throw violation(path, "uniqueItems", "must not contain duplicate items");
+                }
+            }
+        }
+    }
+
+    /**
+     * Find the schema of an array item
+     *
+     * @return Schema, or null if the item may be anything
+     */
+    private SchemaNode item(int index, Path path) throws SchemaViolationException {
+        if (prefixItems != null && index < prefixItems.length) {
+            return prefixItems[index];
+        }
+        if (items != null && items.reject) {
+            path.push(index);
+            SchemaViolationException violation = violation(path, "items", "is not allowed");
+            path.pop();
+            throw violation;
+        }
+        return items;
+    }
+
+    private void checkMinItems(int count, Path path) throws SchemaViolationException {
+        if (minItems >= 0 && count < minItems) {
+            throw violation(path, "minItems", "must have at least " + minItems + " items");
+        }
+    }
+
+    private String typeNames() {
+        StringBuilder names = new StringBuilder();
+        for (int i = 0; i < TYPE_NAMES.length; i++) {
+            // integer is implied by number
+            if ((types & (1 << i)) != 0 && !(i == 2 && (types & NUMBER) != 0)) {
+                if (names.length() > 0) {
+                    names.append(" or ");
+                }
+                names.append(TYPE_NAMES[i]);
+            }
+        }
+        return names.toString();
+    }
+
+    /**
+     * Types the node accepts, for the compiler: 0 for any
+     */
+    int acceptedTypes() {
+        return ref != null ? ref.acceptedTypes() : types;
+    }
+
+    private static SchemaViolationException violation(Path path, String keyword, String message) {
+        return new SchemaViolationException(path.toString(), keyword, message);
+    }
+}
@@ -0,0 +1,33 @@
+package it.carpanese.rpc.server.schema;
+
+/**
+ * Value not matching a {@link JsonSchema}
+ *
+ * Thrown on the first violation found, without a stack trace: violations are expected input
+ * errors, not bugs.
+ */
+public class SchemaViolationException extends Exception {
+
+    private final String path;
+    private final String keyword;
+
+    public SchemaViolationException(String path, String keyword, String message) {
+        super(path + ": " + message, null, false, false);
+        this.path = path;
+        this.keyword = keyword;
+    }
+
+    /**
+     * Location of the offending value, e.g. {@code $.items[2].price}
+     */
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * Schema keyword that failed, e.g. {@code minimum}
+     */
+    public String getKeyword() {
+        return keyword;
+    }
+}
@@ -0,0 +1,74 @@
+package it.carpanese.rpc.server;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BulkheadTest {
+
+    @Test
+    void testRejectsBeyondConcurrencyAndQueue() {
+        Bulkhead bulkhead = new Bulkhead(2, 1);
+
+        assertTrue(bulkhead.acquire().isDone());
+        assertTrue(bulkhead.acquire().isDone());
+        CompletableFuture<Void> waiting = bulkhead.acquire();
+        assertFalse(waiting.isDone());
+        assertNull(bulkhead.acquire());
+
+        assertEquals(2, bulkhead.getInFlight());
+        assertEquals(1, bulkhead.getQueued());
+        assertEquals(1, bulkhead.getRejected());
+    }
+
+    @Test
+    void testReleaseHandsPermitToWaiter() {
+        Bulkhead bulkhead = new Bulkhead(1, 2);
+        bulkhead.acquire();
+        CompletableFuture<Void> gaveUp = bulkhead.acquire();
+        CompletableFuture<Void> waiting = bulkhead.acquire();
+
+        assertTrue(gaveUp.cancel(false));
+        bulkhead.release();
+
+        // The cancelled waiter is skipped
+        assertTrue(waiting.isDone());
+        assertFalse(waiting.isCancelled());
+        assertEquals(1, bulkhead.getInFlight());
+        assertEquals(0, bulkhead.getQueued());
+
+        bulkhead.release();
+        assertEquals(0, bulkhead.getInFlight());
+    }
+
+    @Test
+    void testCancelledWaiterFreesItsQueueSlot() {
+        Bulkhead bulkhead = new Bulkhead(1, 1);
+        bulkhead.acquire();
+        CompletableFuture<Void> gaveUp = bulkhead.acquire();
+        assertNull(bulkhead.acquire());
+
+        assertTrue(gaveUp.cancel(false));
+        assertEquals(0, bulkhead.getQueued());
+
+        CompletableFuture<Void> waiting = bulkhead.acquire();
+        assertNotNull(waiting);
+        assertFalse(waiting.isDone());
+        bulkhead.release();
+        assertTrue(waiting.isDone());
+        assertEquals(0, bulkhead.getQueued());
+        assertEquals(1, bulkhead.getInFlight());
+    }
+
+    @Test
+    void testUnlimitedOnlyCounts() {
+        Bulkhead bulkhead = new Bulkhead(0, 0);
+        for (int i = 0; i < 100; i++) {
+            assertTrue(bulkhead.acquire().isDone());
+        }
+        assertEquals(100, bulkhead.getInFlight());
+        assertEquals(0, bulkhead.getRejected());
+    }
+}
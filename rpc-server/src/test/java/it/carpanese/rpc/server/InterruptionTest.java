@@ -0,0 +1,39 @@
+package it.carpanese.rpc.server;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InterruptionTest {
+
+    @Test
+    void testDisarmedInterruptionNeverInterrupts() {
+        Interruption interruption = new Interruption(Thread.currentThread());
+
+        assertTrue(interruption.disarm());
+        interruption.run();
+
+        assertFalse(Thread.interrupted());
+    }
+
+    @Test
+    void testDisarmAfterDeliveryClearsTheInterrupt() {
+        Interruption interruption = new Interruption(Thread.currentThread());
+
+        interruption.run();
+
+        assertFalse(interruption.disarm());
+        assertFalse(Thread.currentThread().isInterrupted());
+    }
+
+    @Test
+    void testDisarmReturnsWhenTheHandlerConsumedTheInterrupt() {
+        Interruption interruption = new Interruption(Thread.currentThread());
+
+        interruption.run();
+        assertTrue(Thread.interrupted());
+
+        assertFalse(interruption.disarm());
+        assertFalse(Thread.currentThread().isInterrupted());
+    }
+}
@@ -0,0 +1,81 @@
+package it.carpanese.rpc.server;
+
+import com.google.gson.JsonParser;
+import it.carpanese.rpc.core.RawJson;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ResultCacheTest {
+
+    private static final long MINUTE = TimeUnit.MINUTES.toNanos(1);
+
+    @Test
+    void testKeyIgnoresMemberOrder() {
+        assertEquals(ResultCache.key(JsonParser.parseString("{\"b\":[1,{\"y\":2,\"x\":1}],\"a\":\"s\"}")),
+            ResultCache.key(JsonParser.parseString("{\"a\":\"s\",\"b\":[1,{\"x\":1,\"y\":2}]}")));
+        assertNotEquals(ResultCache.key(JsonParser.parseString("[1,2]")),
+            ResultCache.key(JsonParser.parseString("[2,1]")));
+        assertEquals("null", ResultCache.key(null));
+    }
+
+    @Test
+    void testFrequentEntriesSurviveScans() {
+        ResultCache cache = new ResultCache(MINUTE, 0, 10);
+        cache.put("hot", RawJson.of("1"));
+        for (int i = 0; i < 20; i++) {
+            assertNotNull(cache.get("hot", () -> null));
+        }
+
+        // A scan of one-off keys cannot displace the hot entry
+        for (int i = 0; i < 100; i++) {
+            cache.get("cold" + i, () -> null);
+            cache.put("cold" + i, RawJson.of("0"));
+        }
+
+        assertEquals(RawJson.of("1"), cache.get("hot", () -> null));
+        assertTrue(cache.size() <= 10);
+        assertTrue(cache.getEvictions() >= 90);
+    }
+
+    @Test
+    void testExpiredEntriesMiss() throws InterruptedException {
+        ResultCache cache = new ResultCache(TimeUnit.MILLISECONDS.toNanos(1), 0, 10);
+        cache.put("k", RawJson.of("1"));
+        Thread.sleep(5);
+
+        assertNull(cache.get("k", () -> null));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void testStaleEntryIsServedWhileOneRefreshRuns() throws InterruptedException {
+        ResultCache cache = new ResultCache(TimeUnit.MILLISECONDS.toNanos(1), MINUTE, 10);
+        cache.put("k", RawJson.of("1"));
+        Thread.sleep(5);
+
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch refreshed = new CountDownLatch(2);
+        for (int i = 0; i < 2; i++) {
+            assertEquals(RawJson.of("1"), cache.get("k", () -> {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    return null;
+                }
+                refreshed.countDown();
+                return RawJson.of("2");
+            }));
+        }
+        release.countDown();
+
+        // Only one of the two loaders ran
+        assertFalse(refreshed.await(200, TimeUnit.MILLISECONDS));
+        assertEquals(1, refreshed.getCount());
+        assertEquals(RawJson.of("2"), cache.get("k", () -> null));
+        assertTrue(cache.getStaleHits() >= 2);
+    }
+}
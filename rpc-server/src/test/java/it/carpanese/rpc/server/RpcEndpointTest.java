@@ -1,11 +1,51 @@
 package it.carpanese.rpc.server;
 
+import it.carpanese.rpc.core.CborRpcCodec;
+import it.carpanese.rpc.core.EncoderBufferPool;
+import it.carpanese.rpc.core.JsonRpcCodec;
+import it.carpanese.rpc.core.RawJson;
+import it.carpanese.rpc.core.RpcCodec;
 import it.carpanese.rpc.core.RpcError;
 import it.carpanese.rpc.core.RpcException;
+import it.carpanese.rpc.core.RpcRequest;
+import it.carpanese.rpc.core.RpcResponse;
+import it.carpanese.rpc.core.RpcSerializer;
+import it.carpanese.rpc.server.limit.AimdLimit;
+import it.carpanese.rpc.server.metrics.MethodMetrics;
+import it.carpanese.rpc.server.metrics.PrometheusWriter;
+import it.carpanese.rpc.server.metrics.RpcMetrics;
+import it.carpanese.rpc.server.middleware.AsyncRpcMiddleware;
+import it.carpanese.rpc.server.middleware.IRpcMiddleware;
+import it.carpanese.rpc.server.middleware.MethodSelector;
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonIOException;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
 import com.google.gson.JsonPrimitive;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 /**
@@ -13,6 +53,9 @@ import static org.junit.jupiter.api.Assertions.*;
  */
 class RpcEndpointTest {
 
+    private static final String PARSE_ERROR =
+        "{\"jsonrpc\":\"2.0\",\"error\":{\"code\":-32700,\"message\":\"Parse error\"},\"id\":null}";
+
     private RpcEndpoint endpoint;
 
     @BeforeEach
@@ -117,6 +160,28 @@ class RpcEndpointTest {
         assertTrue(response.contains("\"result\":7"));
     }
 
+    @Test
+    void testHandleBatchWithInvalidEntries() {
+        String request = "[" +
+            "{\"jsonrpc\":\"2.0\",\"method\":\"add\",\"params\":{\"a\":1,\"b\":2},\"id\":1}," +
+            "\"not a request\"," +
+            "{\"jsonrpc\":\"2.0\",\"method\":\"\",\"id\":3}" +
+            "]";
+        String response = endpoint.handleRequest(request);
+
+        assertTrue(response.contains("\"result\":3"));
+        assertTrue(response.contains("\"id\":3"));
+        assertEquals(2, response.split("" + RpcError.INVALID_REQUEST, -1).length - 1);
+    }
+
+    @Test
+    void testIntegerIdIsEchoedExactly() {
+        String request = "{\"jsonrpc\":\"2.0\",\"method\":\"add\",\"params\":{\"a\":1,\"b\":1},\"id\":42}";
+        String response = endpoint.handleRequest(request);
+
+        assertTrue(response.contains("\"id\":42}"));
+    }
+
     @Test
     void testHandleMethodNotFound() {
         String request = "{\"jsonrpc\":\"2.0\",\"method\":\"unknown\",\"params\":{},\"id\":1}";
@@ -189,4 +254,1029 @@ class RpcEndpointTest {
         assertTrue(response.contains("\"toolkit\":\"rpc-java-toolkit\""));
         assertTrue(response.contains("\"javaVersion\""));
     }
+
+    @Test
+    void testHandleCborRequest() {
+        RpcSerializer cbor = new RpcSerializer(false, CborRpcCodec.INSTANCE);
+        ByteBuffer body = cbor.toByteBuffer(new RpcRequest("add",
+            JsonParser.parseString("{\"a\":5,\"b\":3}"), 1L));
+        byte[] bytes = Arrays.copyOfRange(body.array(), body.position(), body.limit());
+
+        byte[] reply = endpoint.handleRequest(bytes, "application/cbor");
+        RpcResponse response = cbor.readFrom(ByteBuffer.wrap(reply), RpcResponse.class);
+
+        assertEquals(8, response.getResult().getAsInt());
+        assertEquals(1L, response.getId());
+    }
+
+    @Test
+    void testHandleCborBatchRequest() {
+        RpcSerializer cbor = new RpcSerializer(false, CborRpcCodec.INSTANCE);
+        ByteBuffer body = cbor.toByteBuffer(Arrays.asList(
+            new RpcRequest("echo", new JsonPrimitive("hi"), 1L),
+            RpcRequest.notification("echo", null),
+            new RpcRequest("missing", null, 2L)));
+        byte[] bytes = Arrays.copyOfRange(body.array(), body.position(), body.limit());
+
+        byte[] reply = endpoint.handleRequest(bytes, "application/cbor");
+        List<RpcResponse> responses = cbor.readBatchFrom(new ByteArrayInputStream(reply));
+
+        assertEquals(2, responses.size());
+        assertEquals("hi", responses.get(0).getResult().getAsString());
+        assertEquals(RpcError.METHOD_NOT_FOUND, responses.get(1).getError().getCode());
+    }
+
+    @Test
+    void testHandleBytesFallsBackToJson() {
+        byte[] request = "{\"jsonrpc\":\"2.0\",\"method\":\"echo\",\"params\":\"x\",\"id\":1}"
+            .getBytes(StandardCharsets.UTF_8);
+
+        byte[] reply = endpoint.handleRequest(request, null);
+
+        assertSame(JsonRpcCodec.INSTANCE, endpoint.getCodec("text/plain"));
+        assertTrue(new String(reply, StandardCharsets.UTF_8).contains("\"result\":\"x\""));
+        assertEquals(0, endpoint.handleRequest(
+            "{\"jsonrpc\":\"2.0\",\"method\":\"echo\"}".getBytes(StandardCharsets.UTF_8),
+            "application/json").length);
+    }
+
+    @Test
+    void testRawJsonResult() {
+        endpoint.addMethod("cached", RpcMethodHandler.ofRaw((request, ctx) -> RawJson.of("{\"items\":[1,2,3]}")));
+
+        String single = endpoint.handleRequest("{\"jsonrpc\":\"2.0\",\"method\":\"cached\",\"id\":1}");
+        String batch = endpoint.handleRequest("[{\"jsonrpc\":\"2.0\",\"method\":\"cached\",\"id\":1},"
+            + "{\"jsonrpc\":\"2.0\",\"method\":\"cached\",\"id\":2}]");
+
+        assertEquals("{\"jsonrpc\":\"2.0\",\"result\":{\"items\":[1,2,3]},\"id\":1}", single);
+        assertEquals("[{\"jsonrpc\":\"2.0\",\"result\":{\"items\":[1,2,3]},\"id\":1},"
+            + "{\"jsonrpc\":\"2.0\",\"result\":{\"items\":[1,2,3]},\"id\":2}]", batch);
+    }
+
+    @Test
+    void testInterceptorsSeeRawJsonResultAsTree() {
+        endpoint.addMethod("cached", RpcMethodHandler.ofRaw((request, ctx) -> RawJson.of("{\"items\":[1,2,3]}")));
+        endpoint.getMiddleware().addInterceptor((call, next) -> next.proceed(call).thenApply(result -> {
+            result.getAsJsonObject().addProperty("seen", true);
+            return result;
+        }));
+
+        assertEquals("{\"jsonrpc\":\"2.0\",\"result\":{\"items\":[1,2,3],\"seen\":true},\"id\":1}",
+            endpoint.handleRequest("{\"jsonrpc\":\"2.0\",\"method\":\"cached\",\"id\":1}"));
+    }
+
+    @Test
+    void testRequestHandlerForwardsRawParams() {
+        endpoint.addMethod("forward", RpcMethodHandler.ofRaw((request, ctx) -> request.getRawParams()));
+
+        String response = endpoint.handleRequest(
+            "{\"jsonrpc\":\"2.0\",\"method\":\"forward\",\"params\":{\"n\":1.50},\"id\":1}");
+
+        assertEquals("{\"jsonrpc\":\"2.0\",\"result\":{\"n\":1.50},\"id\":1}", response);
+    }
+
+    @Test
+    void testDeeplyNestedParamsAreAnswered() {
+        endpoint.addMethod("depth", (params, ctx) -> {
+            int depth = 0;
+            for (JsonElement value = params; value.isJsonArray() && value.getAsJsonArray().size() > 0;
+                    value = value.getAsJsonArray().get(0)) {
+                depth++;
+            }
+            return new JsonPrimitive(depth);
+        });
+        int levels = 20_000;
+        String params = "[".repeat(levels) + "]".repeat(levels);
+
+        String response = endpoint.handleRequest(
+            "{\"jsonrpc\":\"2.0\",\"method\":\"depth\",\"params\":" + params + ",\"id\":1}");
+
+        // Gson 2.11+ readers cap the nesting themselves, which is answered as a parse error
+        assertTrue(response.equals("{\"jsonrpc\":\"2.0\",\"result\":" + (levels - 1) + ",\"id\":1}")
+            || response.equals(PARSE_ERROR), response);
+    }
+
+    @Test
+    void testEnvelopeFailingOtherThanBySyntaxIsAnsweredWithInternalError() throws Exception {
+        // A reader failing with a non-syntax exception, as a broken codec or input stream would
+        RpcCodec broken = new RpcCodec() {
+            @Override
+            public String getMediaType() {
+                return JsonRpcCodec.MEDIA_TYPE;
+            }
+
+            @Override
+            public boolean isBinary() {
+                return false;
+            }
+
+            @Override
+            public JsonReader newReader(InputStream in) {
+                return new JsonReader(new InputStreamReader(in, StandardCharsets.UTF_8)) {
+                    @Override
+                    public JsonToken peek() {
+                        throw new JsonIOException("Stream closed");
+                    }
+                };
+            }
+
+            @Override
+            public JsonWriter newWriter(OutputStream out) {
+                return JsonRpcCodec.INSTANCE.newWriter(out);
+            }
+        };
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        assertTrue(endpoint.handleRequest(new ByteArrayInputStream(
+            "{\"jsonrpc\":\"2.0\",\"method\":\"echo\",\"id\":1}".getBytes(StandardCharsets.UTF_8)), out, broken));
+        assertEquals("{\"jsonrpc\":\"2.0\",\"error\":{\"code\":-32603,\"message\":\"Internal error\"},\"id\":null}",
+            out.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void testReplyThatCannotBeSerializedIsAnsweredWithInternalError() throws Exception {
+        // Gson refuses to write a number whose text is not valid JSON
+        Number invalid = new Number() {
+            @Override
+            public int intValue() {
+                return 0;
+            }
+
+            @Override
+            public long longValue() {
+                return 0;
+            }
+
+            @Override
+            public float floatValue() {
+                return 0;
+            }
+
+            @Override
+            public double doubleValue() {
+                return 0;
+            }
+
+            @Override
+            public String toString() {
+                return "zero";
+            }
+        };
+        endpoint.addMethod("invalid", (params, ctx) -> new JsonPrimitive(invalid));
+        String request = "{\"jsonrpc\":\"2.0\",\"method\":\"invalid\",\"id\":1}";
+        String expected = "{\"jsonrpc\":\"2.0\",\"error\":{\"code\":-32603,\"message\":\"Internal error\"},\"id\":null}";
+
+        assertEquals(expected, endpoint.handleRequest(request));
+        assertEquals(expected, endpoint.handleRequestAsync(request).get());
+    }
+
+    @Test
+    void testPreEncodedErrorsMatchTheSerializer() {
+        assertEquals("{\"jsonrpc\":\"2.0\",\"error\":{\"code\":-32601,\"message\":\"Method not found: nope\"},\"id\":7}",
+            endpoint.handleRequest("{\"jsonrpc\":\"2.0\",\"method\":\"nope\",\"id\":7}"));
+        assertEquals("{\"jsonrpc\":\"2.0\",\"error\":{\"code\":-32601,\"message\":\"Method not found: nope\"},\"id\":\"s\"}",
+            endpoint.handleRequest("{\"jsonrpc\":\"2.0\",\"method\":\"nope\",\"id\":\"s\"}"));
+        assertEquals("{\"jsonrpc\":\"2.0\",\"error\":{\"code\":-32700,\"message\":\"Parse error\"},\"id\":null}",
+            new String(endpoint.handleRequest("{oops".getBytes(StandardCharsets.UTF_8), "application/json"),
+                StandardCharsets.UTF_8));
+        assertEquals("[{\"jsonrpc\":\"2.0\",\"error\":{\"code\":-32600,\"message\":\"Invalid Request\"},\"id\":null},"
+            + "{\"jsonrpc\":\"2.0\",\"error\":{\"code\":-32601,\"message\":\"Method not found: nope\"},\"id\":2}]",
+            new String(endpoint.handleRequest("[1,{\"jsonrpc\":\"2.0\",\"method\":\"nope\",\"id\":2}]"
+                .getBytes(StandardCharsets.UTF_8), "application/json"), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void testPreEncodedMethodNotFoundEscapesTheName() {
+        String request = "{\"jsonrpc\":\"2.0\",\"method\":\"a\\\"b<\\u00e9\",\"id\":3}";
+        String expected = "{\"jsonrpc\":\"2.0\",\"error\":{\"code\":-32601,"
+            + "\"message\":\"Method not found: a\\\"b\\u003c\u00e9\"},\"id\":3}";
+
+        assertEquals(expected, endpoint.handleRequest(request));
+        assertEquals(expected, new String(endpoint.handleRequest(request.getBytes(StandardCharsets.UTF_8),
+            "application/json"), StandardCharsets.UTF_8));
+        Gson gson = new RpcSerializer(false).getGson();
+        assertEquals(expected, gson.toJson(new RpcResponse(RpcError.methodNotFound("a\"b<\u00e9"), 3L)));
+        assertEquals(expected, new PreEncodedErrors(gson).encode(
+            new RpcResponse(PreEncodedErrors.methodNotFound("a\"b<\u00e9"), 3L)));
+    }
+
+    @Test
+    void testResponsesAreEncodedIntoPooledBuffers() {
+        EncoderBufferPool pool = new EncoderBufferPool(4, 1 << 20);
+        RpcEndpoint pooled = new RpcEndpoint(null, new RpcOptions().setEnableLogging(false).setEncoderBufferPool(pool));
+        String large = "x".repeat(10000);
+        pooled.addMethod("large", (params, ctx) -> new JsonPrimitive(large));
+
+        long allocated = 0;
+        for (int i = 1; i <= 4; i++) {
+            String response = pooled.handleRequest("{\"jsonrpc\":\"2.0\",\"method\":\"large\",\"id\":" + i + "}");
+            assertEquals("{\"jsonrpc\":\"2.0\",\"result\":\"" + large + "\",\"id\":" + i + "}", response);
+            if (i == 3) {
+                allocated = pool.getMetrics().getAllocatedBytes();
+            }
+        }
+
+        EncoderBufferPool.Metrics metrics = pool.getMetrics();
+        assertEquals(4, metrics.getAcquired());
+        assertEquals(3, metrics.getReused());
+        // Once the method's size is learned the buffer is reused as is
+        assertEquals(allocated, metrics.getAllocatedBytes());
+    }
+
+    @Test
+    void testResponseSizesAreOnlyLearnedForRegisteredMethods() {
+        endpoint.addMethod("large", (params, ctx) -> new JsonPrimitive("x".repeat(10000)));
+        endpoint.handleRequest("{\"jsonrpc\":\"2.0\",\"method\":\"large\",\"id\":1}");
+        for (int i = 0; i < 2000; i++) {
+            endpoint.handleRequest("{\"jsonrpc\":\"2.0\",\"method\":\"junk" + i + "\",\"id\":1}");
+        }
+
+        assertTrue(endpoint.getMethod("large").getResponseSize().capacity() > 10000);
+        assertEquals(256, endpoint.getMethod("add").getResponseSize().capacity());
+    }
+
+    @Test
+    void testBatchBufferIsCappedAtASingleResponse() {
+        EncoderBufferPool pool = new EncoderBufferPool();
+        RpcEndpoint pooled = new RpcEndpoint(null, new RpcOptions()
+            .setEnableLogging(false)
+            .setEncoderBufferPool(pool));
+        pooled.addMethod("large", (params, ctx) -> {
+            if (!params.isJsonNull()) {
+                throw new RpcException(RpcError.INVALID_PARAMS, "Unexpected params");
+            }
+            return new JsonPrimitive("x".repeat(900_000));
+        });
+        pooled.handleRequest("{\"jsonrpc\":\"2.0\",\"method\":\"large\",\"id\":1}");
+        StringBuilder batch = new StringBuilder("[");
+        for (int i = 0; i < 100; i++) {
+            batch.append(i > 0 ? "," : "").append("{\"jsonrpc\":\"2.0\",\"method\":\"large\",\"params\":[1],\"id\":")
+                .append(i).append('}');
+        }
+        long allocated = pool.getMetrics().getAllocatedBytes();
+
+        String response = pooled.handleRequest(batch.append(']').toString());
+
+        assertTrue(response.contains("\"id\":99"));
+        assertTrue(pool.getMetrics().getAllocatedBytes() - allocated <= 4L << 20);
+    }
+
+    @Test
+    void testParallelBatchKeepsOrder() {
+        RpcEndpoint parallel = new RpcEndpoint(null, new RpcOptions().setEnableLogging(false).setParallelBatch(true));
+        // Every item waits for all the others, so this only completes if they run concurrently
+        CountDownLatch started = new CountDownLatch(3);
+        parallel.addMethod("wait", (params, ctx) -> {
+            started.countDown();
+            try {
+                assertTrue(started.await(5, TimeUnit.SECONDS));
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+            return params;
+        });
+
+        String response = parallel.handleRequest("["
+            + "{\"jsonrpc\":\"2.0\",\"method\":\"wait\",\"params\":[1],\"id\":1},"
+            + "{\"jsonrpc\":\"2.0\",\"method\":\"wait\",\"params\":[2]},"
+            + "{\"jsonrpc\":\"2.0\",\"method\":\"wait\",\"params\":[3],\"id\":3},"
+            + "{\"jsonrpc\":\"2.0\",\"method\":\"nope\",\"id\":4}]");
+
+        assertEquals("[{\"jsonrpc\":\"2.0\",\"result\":[1],\"id\":1},"
+            + "{\"jsonrpc\":\"2.0\",\"result\":[3],\"id\":3},"
+            + "{\"jsonrpc\":\"2.0\",\"error\":{\"code\":-32601,\"message\":\"Method not found: nope\"},\"id\":4}]",
+            response);
+    }
+
+    @Test
+    void testParallelBatchHonoursParallelismAndDeadline() {
+        RpcEndpoint parallel = new RpcEndpoint(null, new RpcOptions()
+            .setEnableLogging(false)
+            .setParallelBatch(true)
+            .setBatchParallelism(2)
+            .setBatchTimeoutMillis(200));
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        parallel.addMethod("sleep", (params, ctx) -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(params.getAsJsonArray().get(0).getAsLong());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                running.decrementAndGet();
+            }
+            return params;
+        });
+
+        StringBuilder batch = new StringBuilder("[");
+        for (int i = 1; i <= 6; i++) {
+            long millis = i == 1 ? 2000 : 10;
+            batch.append(i > 1 ? "," : "").append("{\"jsonrpc\":\"2.0\",\"method\":\"sleep\",\"params\":[")
+                .append(millis).append("],\"id\":").append(i).append('}');
+        }
+        List<RpcResponse> responses = new RpcSerializer(false).fromJsonBatch(parallel.handleRequest(batch.append(']').toString()));
+
+        assertEquals(6, responses.size());
+        assertEquals(RpcError.TIMEOUT, responses.get(0).getError().getCode());
+        assertEquals(1L, responses.get(0).getId());
+        for (int i = 1; i < 6; i++) {
+            assertEquals((long) i + 1, responses.get(i).getId());
+            assertFalse(responses.get(i).isError());
+        }
+        assertEquals(2, maxRunning.get());
+    }
+
+    @Test
+    void testParallelBatchInterruptsItemsRunningAtTheDeadline() throws InterruptedException {
+        assertBlockedItemIsInterrupted(null);
+    }
+
+    @Test
+    void testParallelBatchInterruptsItemsTheCallerRunsAtTheDeadline() throws InterruptedException {
+        assertBlockedItemIsInterrupted(task -> {
+            throw new RejectedExecutionException();
+        });
+    }
+
+    private void assertBlockedItemIsInterrupted(Executor executor) throws InterruptedException {
+        RpcEndpoint parallel = new RpcEndpoint(null, new RpcOptions()
+            .setEnableLogging(false)
+            .setParallelBatch(true)
+            .setBatchExecutor(executor)
+            .setBatchTimeoutMillis(100));
+        CountDownLatch interrupted = new CountDownLatch(1);
+        parallel.addMethod("block", (params, ctx) -> {
+            try {
+                new CountDownLatch(1).await(30, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+            }
+            return params;
+        });
+        parallel.addMethod("fast", (params, ctx) -> params);
+
+        long start = System.nanoTime();
+        List<RpcResponse> responses = new RpcSerializer(false).fromJsonBatch(parallel.handleRequest("["
+            + "{\"jsonrpc\":\"2.0\",\"method\":\"block\",\"params\":[1],\"id\":1},"
+            + "{\"jsonrpc\":\"2.0\",\"method\":\"fast\",\"params\":[2],\"id\":2}]"));
+
+        assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+        assertEquals(RpcError.TIMEOUT, responses.get(0).getError().getCode());
+        assertEquals(1L, responses.get(0).getId());
+    }
+
+    @Test
+    void testAsyncHandlerCompletesLater() {
+        CompletableFuture<JsonElement> upstream = new CompletableFuture<>();
+        endpoint.addAsyncMethod("later", (params, ctx) -> upstream);
+
+        CompletableFuture<String> response = endpoint.handleRequestAsync(
+            "{\"jsonrpc\":\"2.0\",\"method\":\"later\",\"id\":1}");
+        assertFalse(response.isDone());
+
+        upstream.complete(new JsonPrimitive("done"));
+        assertEquals("{\"jsonrpc\":\"2.0\",\"result\":\"done\",\"id\":1}", response.join());
+    }
+
+    @Test
+    void testAsyncBatchCompletesWhenAllItemsDo() {
+        CompletableFuture<JsonElement> first = new CompletableFuture<>();
+        CompletableFuture<JsonElement> second = new CompletableFuture<>();
+        endpoint.addAsyncMethod("first", (params, ctx) -> first);
+        endpoint.addAsyncMethod("second", (params, ctx) -> second);
+
+        CompletableFuture<String> response = endpoint.handleRequestAsync("["
+            + "{\"jsonrpc\":\"2.0\",\"method\":\"first\",\"id\":1},"
+            + "{\"jsonrpc\":\"2.0\",\"method\":\"add\",\"params\":{\"a\":1,\"b\":2},\"id\":2},"
+            + "{\"jsonrpc\":\"2.0\",\"method\":\"second\",\"id\":3}]");
+
+        second.complete(new JsonPrimitive(3));
+        assertFalse(response.isDone());
+        first.completeExceptionally(new RpcException(RpcError.INVALID_PARAMS, "Bad input"));
+
+        assertEquals("[{\"jsonrpc\":\"2.0\",\"error\":{\"code\":-32602,\"message\":\"Bad input\"},\"id\":1},"
+            + "{\"jsonrpc\":\"2.0\",\"result\":3,\"id\":2},"
+            + "{\"jsonrpc\":\"2.0\",\"result\":3,\"id\":3}]", response.join());
+    }
+
+    @Test
+    void testAsyncHandlerFromBlockingEntryPoint() {
+        endpoint.addAsyncMethod("echoAsync", (params, ctx) -> CompletableFuture.supplyAsync(() -> params));
+        endpoint.addAsyncMethod("failAsync", (params, ctx) ->
+            CompletableFuture.failedFuture(new IllegalStateException("boom")));
+
+        assertEquals("{\"jsonrpc\":\"2.0\",\"result\":[1],\"id\":1}",
+            endpoint.handleRequest("{\"jsonrpc\":\"2.0\",\"method\":\"echoAsync\",\"params\":[1],\"id\":1}"));
+        assertEquals("{\"jsonrpc\":\"2.0\",\"error\":{\"code\":-32603,\"message\":\"Internal error\"},\"id\":2}",
+            endpoint.handleRequest("{\"jsonrpc\":\"2.0\",\"method\":\"failAsync\",\"id\":2}"));
+        assertEquals("", endpoint.handleRequestAsync("{\"jsonrpc\":\"2.0\",\"method\":\"echoAsync\"}").join());
+    }
+
+    @Test
+    void testBlockingHandlerIsInterruptedAtDeadline() {
+        AtomicInteger interrupted = new AtomicInteger();
+        endpoint.addMethod("stuck", (params, ctx) -> {
+            try {
+                Thread.sleep(10_000);
+            } catch (InterruptedException e) {
+                interrupted.incrementAndGet();
+                throw e;
+            }
+            return params;
+        }, new MethodConfig().withTimeout(Duration.ofMillis(50)));
+
+        long start = System.nanoTime();
+        String response = endpoint.handleRequest("{\"jsonrpc\":\"2.0\",\"method\":\"stuck\",\"id\":1}");
+
+        assertEquals("{\"jsonrpc\":\"2.0\",\"error\":{\"code\":-32001,\"message\":\"Request timed out\"},\"id\":1}",
+            response);
+        assertEquals(1, interrupted.get());
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+        // The interrupt is not left behind on the calling thread
+        assertFalse(Thread.currentThread().isInterrupted());
+    }
+
+    @Test
+    void testAsyncHandlerIsCancelledAndBatchItemsExpireIndividually() {
+        CompletableFuture<JsonElement> never = new CompletableFuture<>();
+        endpoint.addAsyncMethod("never", (params, ctx) -> never, new MethodConfig().withTimeout(Duration.ofMillis(50)));
+
+        String response = endpoint.handleRequestAsync("["
+            + "{\"jsonrpc\":\"2.0\",\"method\":\"never\",\"id\":1},"
+            + "{\"jsonrpc\":\"2.0\",\"method\":\"add\",\"params\":{\"a\":1,\"b\":2},\"id\":2}]").join();
+
+        assertEquals("[{\"jsonrpc\":\"2.0\",\"error\":{\"code\":-32001,\"message\":\"Request timed out\"},\"id\":1},"
+            + "{\"jsonrpc\":\"2.0\",\"result\":3,\"id\":2}]", response);
+        assertTrue(never.isCancelled());
+    }
+
+    @Test
+    void testZeroTimeoutDisablesDeadline() {
+        RpcEndpoint unlimited = new RpcEndpoint(null, new RpcOptions().setEnableLogging(false).setTimeoutSeconds(1));
+        unlimited.addMethod("slow", (params, ctx) -> {
+            Thread.sleep(1200);
+            return params;
+        }, new MethodConfig().withTimeout(Duration.ZERO));
+
+        assertEquals("{\"jsonrpc\":\"2.0\",\"result\":[1],\"id\":1}",
+            unlimited.handleRequest("{\"jsonrpc\":\"2.0\",\"method\":\"slow\",\"params\":[1],\"id\":1}"));
+    }
+
+    @Test
+    void testBulkheadRejectsCallsOverLimit() throws InterruptedException {
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        endpoint.addMethod("export", (params, ctx) -> {
+            running.countDown();
+            assertTrue(release.await(5, TimeUnit.SECONDS));
+            return new JsonPrimitive("ok");
+        }, new MethodConfig().withMaxConcurrency(1));
+
+        CompletableFuture<String> first = CompletableFuture.supplyAsync(() ->
+            endpoint.handleRequest("{\"jsonrpc\":\"2.0\",\"method\":\"export\",\"id\":1}"));
+        assertTrue(running.await(5, TimeUnit.SECONDS));
+
+        assertEquals("{\"jsonrpc\":\"2.0\",\"error\":{\"code\":-32002,\"message\":\"Server overloaded\"},\"id\":2}",
+            endpoint.handleRequest("{\"jsonrpc\":\"2.0\",\"method\":\"export\",\"id\":2}"));
+        // Other methods are not affected
+        assertTrue(endpoint.handleRequest(
+            "{\"jsonrpc\":\"2.0\",\"method\":\"add\",\"params\":{\"a\":1,\"b\":2},\"id\":3}").contains("\"result\":3"));
+
+        var stats = JsonParser.parseString(endpoint.handleRequest(
+                "{\"jsonrpc\":\"2.0\",\"method\":\"__rpc.capabilities\",\"id\":4}"))
+            .getAsJsonObject().getAsJsonObject("result").getAsJsonObject("methods").getAsJsonObject("export");
+        assertEquals(1, stats.get("inFlight").getAsInt());
+        assertEquals(1, stats.get("rejected").getAsLong());
+        assertEquals(1, stats.get("maxConcurrency").getAsInt());
+
+        release.countDown();
+        assertTrue(first.join().contains("\"result\":\"ok\""));
+    }
+
+    @Test
+    void testBulkheadQueuesUpToMaxQueue() {
+        CompletableFuture<JsonElement> upstream = new CompletableFuture<>();
+        endpoint.addAsyncMethod("slow", (params, ctx) -> upstream, new MethodConfig().withMaxConcurrency(1).withMaxQueue(1));
+        String request = "{\"jsonrpc\":\"2.0\",\"method\":\"slow\",\"id\":1}";
+
+        CompletableFuture<String> running = endpoint.handleRequestAsync(request);
+        CompletableFuture<String> queued = endpoint.handleRequestAsync(request);
+        CompletableFuture<String> rejected = endpoint.handleRequestAsync(request);
+
+        assertTrue(rejected.join().contains("-32002"));
+        assertFalse(queued.isDone());
+
+        upstream.complete(new JsonPrimitive(1));
+        assertEquals("{\"jsonrpc\":\"2.0\",\"result\":1,\"id\":1}", running.join());
+        assertEquals("{\"jsonrpc\":\"2.0\",\"result\":1,\"id\":1}", queued.join());
+    }
+
+    @Test
+    void testTimedOutWaiterFreesItsQueueSlot() throws InterruptedException {
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        endpoint.addMethod("stuck", (params, ctx) -> {
+            running.countDown();
+            // Ignores the deadline interrupt, holding its permit until released
+            while (true) {
+                try {
+                    assertTrue(release.await(5, TimeUnit.SECONDS));
+                    return new JsonPrimitive("ok");
+                } catch (InterruptedException e) {
+                    // Keep waiting
+                }
+            }
+        }, new MethodConfig().withMaxConcurrency(1).withMaxQueue(1).withTimeout(Duration.ofMillis(50)));
+
+        CompletableFuture<String> first = CompletableFuture.supplyAsync(() ->
+            endpoint.handleRequest("{\"jsonrpc\":\"2.0\",\"method\":\"stuck\",\"id\":1}"));
+        assertTrue(running.await(5, TimeUnit.SECONDS));
+        assertTrue(endpoint.handleRequest("{\"jsonrpc\":\"2.0\",\"method\":\"stuck\",\"id\":2}").contains("-32001"));
+
+        // The queue slot of the call that timed out is free again
+        CompletableFuture<String> third = CompletableFuture.supplyAsync(() ->
+            endpoint.handleRequest("{\"jsonrpc\":\"2.0\",\"method\":\"stuck\",\"id\":3}"));
+        release.countDown();
+        first.join();
+        assertFalse(third.join().contains("-32002"));
+    }
+
+    @Test
+    void testConcurrencyLimitShedsRequests() {
+        RpcEndpoint limited = new RpcEndpoint(null, new RpcOptions()
+            .setEnableLogging(false)
+            .setEnableIntrospection(true)
+            .setConcurrencyLimit(new AimdLimit(1, 1, 1, 0.9, TimeUnit.SECONDS.toNanos(1))));
+        CompletableFuture<JsonElement> upstream = new CompletableFuture<>();
+        AtomicInteger decoded = new AtomicInteger();
+        limited.addAsyncMethod("slow", (params, ctx) -> upstream);
+        limited.addMethod("count", (params, ctx) -> {
+            decoded.incrementAndGet();
+            return params;
+        });
+
+        CompletableFuture<String> running = limited.handleRequestAsync("{\"jsonrpc\":\"2.0\",\"method\":\"slow\",\"id\":1}");
+
+        assertEquals("{\"jsonrpc\":\"2.0\",\"error\":{\"code\":-32002,\"message\":\"Server overloaded\"},\"id\":2}",
+            limited.handleRequest("{\"jsonrpc\":\"2.0\",\"method\":\"count\",\"params\":[1],\"id\":2}"));
+        assertEquals(0, decoded.get());
+
+        var limit = JsonParser.parseString(limited.handleRequest(
+                "{\"jsonrpc\":\"2.0\",\"method\":\"__rpc.capabilities\",\"id\":3}"))
+            .getAsJsonObject().getAsJsonObject("result").getAsJsonObject("concurrencyLimit");
+        assertEquals("aimd", limit.get("algorithm").getAsString());
+        assertEquals(1, limit.get("inFlight").getAsInt());
+        assertEquals(1, limit.get("rejected").getAsLong());
+
+        upstream.complete(new JsonPrimitive(1));
+        running.join();
+        assertTrue(limited.handleRequest("{\"jsonrpc\":\"2.0\",\"method\":\"count\",\"params\":[1],\"id\":4}")
+            .contains("\"result\":[1]"));
+    }
+
+    @Test
+    void testCachedResultsSkipHandler() {
+        AtomicInteger calls = new AtomicInteger();
+        endpoint.addMethod("config", (params, ctx) -> {
+            calls.incrementAndGet();
+            if (params.getAsJsonObject().has("fail")) {
+                throw new RpcException(RpcError.INVALID_PARAMS, "Bad key");
+            }
+            var result = new com.google.gson.JsonObject();
+            result.add("echo", params);
+            return result;
+        }, new MethodConfig().withCache(Duration.ofMinutes(1), 100));
+
+        String first = endpoint.handleRequest(
+            "{\"jsonrpc\":\"2.0\",\"method\":\"config\",\"params\":{\"a\":1,\"b\":2},\"id\":1}");
+        String second = endpoint.handleRequest(
+            "{\"jsonrpc\":\"2.0\",\"method\":\"config\",\"params\":{\"b\":2,\"a\":1},\"id\":2}");
+
+        assertEquals("{\"jsonrpc\":\"2.0\",\"result\":{\"echo\":{\"a\":1,\"b\":2}},\"id\":1}", first);
+        assertEquals("{\"jsonrpc\":\"2.0\",\"result\":{\"echo\":{\"a\":1,\"b\":2}},\"id\":2}", second);
+        assertEquals(1, calls.get());
+
+        // Errors are not cached
+        String failing = "{\"jsonrpc\":\"2.0\",\"method\":\"config\",\"params\":{\"fail\":true},\"id\":3}";
+        assertTrue(endpoint.handleRequest(failing).contains("-32602"));
+        assertTrue(endpoint.handleRequest(failing).contains("-32602"));
+        assertEquals(3, calls.get());
+
+        var cache = JsonParser.parseString(endpoint.handleRequest(
+                "{\"jsonrpc\":\"2.0\",\"method\":\"__rpc.capabilities\",\"id\":4}"))
+            .getAsJsonObject().getAsJsonObject("result").getAsJsonObject("methods")
+            .getAsJsonObject("config").getAsJsonObject("cache");
+        assertEquals(1, cache.get("hits").getAsLong());
+        assertEquals(1, cache.get("size").getAsInt());
+    }
+
+    @Test
+    void testSafeEndpointCachesEncodedResults() {
+        RpcEndpoint safe = new RpcEndpoint(null, new RpcOptions().setEnableLogging(false).setSafeEnabled(true));
+        safe.addMethod("name", (params, ctx) -> new JsonPrimitive("value"),
+            new MethodConfig().withCache(Duration.ofMinutes(1), 10));
+        String request = "{\"jsonrpc\":\"2.0\",\"method\":\"name\",\"id\":1}";
+
+        assertEquals("{\"jsonrpc\":\"2.0\",\"result\":\"S:value\",\"id\":1}", safe.handleRequest(request));
+        assertEquals("{\"jsonrpc\":\"2.0\",\"result\":\"S:value\",\"id\":1}", safe.handleRequest(request));
+        assertEquals("{\"jsonrpc\":\"2.0\",\"result\":\"S:value\",\"id\":1}",
+            safe.handleRequestAsync(request).join());
+    }
+
+    @Test
+    void testIdenticalCallsAreCoalesced() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        CompletableFuture<JsonElement> catalog = new CompletableFuture<>();
+        endpoint.addAsyncMethod("getCatalog", (params, ctx) -> {
+            calls.incrementAndGet();
+            return catalog;
+        }, new MethodConfig().withCoalesce(true));
+
+        CompletableFuture<String> first = endpoint.handleRequestAsync(
+            "{\"jsonrpc\":\"2.0\",\"method\":\"getCatalog\",\"params\":{\"page\":1,\"size\":10},\"id\":1}");
+        CompletableFuture<String> second = endpoint.handleRequestAsync(
+            "{\"jsonrpc\":\"2.0\",\"method\":\"getCatalog\",\"params\":{\"size\":10,\"page\":1},\"id\":\"b\"}");
+        CompletableFuture<String> blocking = CompletableFuture.supplyAsync(() -> endpoint.handleRequest(
+            "{\"jsonrpc\":\"2.0\",\"method\":\"getCatalog\",\"params\":{\"page\":1,\"size\":10},\"id\":3}"));
+        CompletableFuture<String> otherPage = endpoint.handleRequestAsync(
+            "{\"jsonrpc\":\"2.0\",\"method\":\"getCatalog\",\"params\":{\"page\":2,\"size\":10},\"id\":4}");
+        while (endpoint.getMethod("getCatalog").getSingleFlight().getCoalesced() < 2) {
+            Thread.onSpinWait();
+        }
+
+        catalog.complete(new JsonPrimitive("items"));
+
+        assertEquals("{\"jsonrpc\":\"2.0\",\"result\":\"items\",\"id\":1}", first.get());
+        assertEquals("{\"jsonrpc\":\"2.0\",\"result\":\"items\",\"id\":\"b\"}", second.get());
+        assertEquals("{\"jsonrpc\":\"2.0\",\"result\":\"items\",\"id\":3}", blocking.get());
+        assertEquals("{\"jsonrpc\":\"2.0\",\"result\":\"items\",\"id\":4}", otherPage.get());
+        // Different params ran on their own
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    void testCoalescedCallsShareErrors() throws Exception {
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        endpoint.addMethod("load", (params, ctx) -> {
+            running.countDown();
+            release.await();
+            throw new RpcException(RpcError.INVALID_PARAMS, "Unknown key");
+        }, new MethodConfig().withCoalesce(true));
+
+        CompletableFuture<String> first = CompletableFuture.supplyAsync(() -> endpoint.handleRequest(
+            "{\"jsonrpc\":\"2.0\",\"method\":\"load\",\"params\":[\"x\"],\"id\":1}"));
+        running.await();
+        CompletableFuture<String> second = endpoint.handleRequestAsync(
+            "{\"jsonrpc\":\"2.0\",\"method\":\"load\",\"params\":[\"x\"],\"id\":2}");
+        release.countDown();
+
+        assertEquals("{\"jsonrpc\":\"2.0\",\"error\":{\"code\":-32602,\"message\":\"Unknown key\"},\"id\":1}",
+            first.get());
+        assertEquals("{\"jsonrpc\":\"2.0\",\"error\":{\"code\":-32602,\"message\":\"Unknown key\"},\"id\":2}",
+            second.get());
+    }
+
+    @Test
+    void testFrozenTableIsSwappedAtomically() {
+        endpoint.addMethod("first", (params, ctx) -> new JsonPrimitive(1));
+        List<String> seen = new java.util.concurrent.CopyOnWriteArrayList<>();
+        endpoint.getMiddleware().add(new IRpcMiddleware() {
+            @Override
+            public void beforeAsync(RpcRequest request, Object context) {
+                seen.add(request.getMethod());
+            }
+
+            @Override
+            public void afterAsync(RpcRequest request, Object result, Object context) {
+            }
+        }, "before");
+
+        assertFalse(endpoint.isFrozen());
+        assertSame(endpoint, endpoint.freeze());
+        assertTrue(endpoint.isFrozen());
+
+        // Changes to the registry wait for the next freeze
+        endpoint.addMethod("second", (params, ctx) -> new JsonPrimitive(2));
+        endpoint.removeMethod("first");
+        String first = "{\"jsonrpc\":\"2.0\",\"method\":\"first\",\"id\":1}";
+        String second = "{\"jsonrpc\":\"2.0\",\"method\":\"second\",\"id\":2}";
+        assertEquals("{\"jsonrpc\":\"2.0\",\"result\":1,\"id\":1}", endpoint.handleRequest(first));
+        assertTrue(endpoint.handleRequest(second).contains("-32601"));
+        assertEquals(List.of("first", "second"), seen);
+
+        endpoint.freeze();
+        assertTrue(endpoint.handleRequest(first).contains("-32601"));
+        assertEquals("{\"jsonrpc\":\"2.0\",\"result\":2,\"id\":2}", endpoint.handleRequest(second));
+        assertTrue(endpoint.handleRequest(
+            "{\"jsonrpc\":\"2.0\",\"method\":\"__rpc.version\",\"id\":3}").contains("\"result\""));
+    }
+
+    @Test
+    void testIntrospectionNamesStayReserved() {
+        assertThrows(IllegalArgumentException.class,
+            () -> endpoint.addMethod("__rpc.custom", (params, ctx) -> new JsonPrimitive(1)));
+        assertThrows(IllegalArgumentException.class,
+            () -> endpoint.addMethod("__rpc.version", (params, ctx) -> new JsonPrimitive(1)));
+    }
+
+    @Test
+    void testMiddlewareScopedBySelector() {
+        List<String> checked = new java.util.concurrent.CopyOnWriteArrayList<>();
+        IRpcMiddleware auth = new IRpcMiddleware() {
+            @Override
+            public void beforeAsync(RpcRequest request, Object context) {
+                checked.add(request.getMethod());
+            }
+
+            @Override
+            public void afterAsync(RpcRequest request, Object result, Object context) {
+            }
+        };
+        endpoint.addMethod("health", (params, ctx) -> new JsonPrimitive("ok"),
+            new MethodConfig().withTags("public"));
+        endpoint.addMethod("transfer", (params, ctx) -> new JsonPrimitive("done"));
+        endpoint.getMiddleware().add(auth, "before",
+            MethodSelector.tagged("public", RpcEndpoint.INTROSPECTION_TAG).negate());
+
+        for (String method : List.of("health", "transfer", "__rpc.version", "missing")) {
+            endpoint.handleRequest("{\"jsonrpc\":\"2.0\",\"method\":\"" + method + "\",\"id\":1}");
+        }
+        endpoint.freeze();
+        endpoint.handleRequest("{\"jsonrpc\":\"2.0\",\"method\":\"health\",\"id\":2}");
+        endpoint.handleRequest("{\"jsonrpc\":\"2.0\",\"method\":\"transfer\",\"id\":3}");
+
+        // Unknown methods have no tags, so tag-excluding middleware still runs for them
+        assertEquals(List.of("transfer", "missing", "transfer"), checked);
+    }
+
+    @Test
+    void testInterceptorsWrapMethods() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        endpoint.addMethod("lookup", (params, ctx) -> {
+            calls.incrementAndGet();
+            if (params.getAsJsonArray().get(0).getAsString().equals("missing")) {
+                throw new IllegalStateException("No such key");
+            }
+            return new JsonPrimitive("found");
+        });
+        endpoint.addAsyncMethod("lookupAsync", (params, ctx) -> {
+            calls.incrementAndGet();
+            return CompletableFuture.completedFuture(new JsonPrimitive("found"));
+        });
+        List<String> timed = new java.util.concurrent.CopyOnWriteArrayList<>();
+
+        // Timing, error mapping and a short-circuit for one key
+        endpoint.getMiddleware().addInterceptor((call, next) ->
+            next.proceed(call).whenComplete((result, error) -> timed.add(call.getMethod())));
+        endpoint.getMiddleware().addInterceptor((call, next) -> next.proceed(call).exceptionally(error -> {
+            throw new java.util.concurrent.CompletionException(
+                new RpcException(RpcError.INVALID_PARAMS, "Unknown key"));
+        }), MethodSelector.names("lookup"));
+        endpoint.getMiddleware().addInterceptor((call, next) ->
+            call.getRequest().getParams().getAsJsonArray().get(0).getAsString().equals("hot")
+                ? CompletableFuture.completedFuture(new JsonPrimitive("hot"))
+                : next.proceed(call));
+
+        assertEquals("{\"jsonrpc\":\"2.0\",\"result\":\"found\",\"id\":1}", endpoint.handleRequest(
+            "{\"jsonrpc\":\"2.0\",\"method\":\"lookup\",\"params\":[\"a\"],\"id\":1}"));
+        assertEquals("{\"jsonrpc\":\"2.0\",\"error\":{\"code\":-32602,\"message\":\"Unknown key\"},\"id\":2}",
+            endpoint.handleRequest(
+                "{\"jsonrpc\":\"2.0\",\"method\":\"lookup\",\"params\":[\"missing\"],\"id\":2}"));
+        assertEquals("{\"jsonrpc\":\"2.0\",\"result\":\"hot\",\"id\":3}", endpoint.handleRequest(
+            "{\"jsonrpc\":\"2.0\",\"method\":\"lookup\",\"params\":[\"hot\"],\"id\":3}"));
+        endpoint.freeze();
+        assertEquals("{\"jsonrpc\":\"2.0\",\"result\":\"found\",\"id\":4}", endpoint.handleRequestAsync(
+            "{\"jsonrpc\":\"2.0\",\"method\":\"lookupAsync\",\"params\":[\"a\"],\"id\":4}").get());
+
+        assertEquals(3, calls.get());
+        assertEquals(List.of("lookup", "lookup", "lookup", "lookupAsync"), timed);
+    }
+
+    @Test
+    void testAsyncMiddlewareDoesNotBlockRequests() throws Exception {
+        CompletableFuture<Void> session = new CompletableFuture<>();
+        endpoint.addMethod("whoami", (params, ctx) -> new JsonPrimitive("user"));
+        endpoint.getMiddleware().add(new AsyncRpcMiddleware() {
+            @Override
+            public java.util.concurrent.CompletionStage<Void> before(RpcRequest request, Object context) {
+                return "2".equals(String.valueOf(request.getId())) ? CompletableFuture.failedFuture(
+                    new RpcException(RpcError.INVALID_REQUEST, "No session")) : session;
+            }
+
+            @Override
+            public java.util.concurrent.CompletionStage<Void> after(RpcRequest request, Object result,
+                                                                    Object context) {
+                return CompletableFuture.completedFuture(null);
+            }
+        }, "before");
+
+        CompletableFuture<String> pending = endpoint.handleRequestAsync(
+            "{\"jsonrpc\":\"2.0\",\"method\":\"whoami\",\"id\":1}");
+        assertFalse(pending.isDone());
+        session.complete(null);
+        assertEquals("{\"jsonrpc\":\"2.0\",\"result\":\"user\",\"id\":1}", pending.get());
+
+        assertEquals("{\"jsonrpc\":\"2.0\",\"error\":{\"code\":-32600,\"message\":\"No session\"},\"id\":2}",
+            endpoint.handleRequestAsync("{\"jsonrpc\":\"2.0\",\"method\":\"whoami\",\"id\":2}").get());
+        assertEquals("{\"jsonrpc\":\"2.0\",\"error\":{\"code\":-32600,\"message\":\"No session\"},\"id\":2}",
+            endpoint.handleRequest("{\"jsonrpc\":\"2.0\",\"method\":\"whoami\",\"id\":2}"));
+        assertEquals("{\"jsonrpc\":\"2.0\",\"result\":\"user\",\"id\":3}",
+            endpoint.handleRequest("{\"jsonrpc\":\"2.0\",\"method\":\"whoami\",\"id\":3}"));
+    }
+
+    @Test
+    void testParamsValidatedAgainstSchema() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        endpoint.addMethod("transfer", (params, ctx) -> {
+            calls.incrementAndGet();
+            return new JsonPrimitive(true);
+        }, new MethodConfig().withSchema(JsonParser.parseString("{\"type\":\"object\","
+            + "\"properties\":{\"amount\":{\"type\":\"number\",\"exclusiveMinimum\":0},"
+            + "\"to\":{\"type\":\"string\"}},\"required\":[\"amount\",\"to\"]}")));
+
+        String invalid = "{\"jsonrpc\":\"2.0\",\"method\":\"transfer\",\"params\":{\"amount\":\"5\",\"to\":\"bob\"},\"id\":1}";
+        String expected = "{\"jsonrpc\":\"2.0\",\"error\":{\"code\":-32602,"
+            + "\"message\":\"Invalid params: $.amount: expected number but got string\","
+            + "\"data\":{\"path\":\"$.amount\",\"keyword\":\"type\"}},\"id\":1}";
+        assertEquals(expected, endpoint.handleRequest(invalid));
+        assertEquals(expected, endpoint.handleRequestAsync(invalid).get());
+        assertTrue(endpoint.handleRequest("{\"jsonrpc\":\"2.0\",\"method\":\"transfer\",\"id\":2}")
+            .contains("\"path\":\"$\",\"keyword\":\"required\""));
+        assertTrue(endpoint.handleRequest("{\"jsonrpc\":\"2.0\",\"method\":\"transfer\","
+            + "\"params\":{\"amount\":0,\"to\":\"bob\"},\"id\":3}").contains("\"keyword\":\"exclusiveMinimum\""));
+        assertEquals(0, calls.get());
+
+        assertEquals("{\"jsonrpc\":\"2.0\",\"result\":true,\"id\":3}", endpoint.handleRequest(
+            "{\"jsonrpc\":\"2.0\",\"method\":\"transfer\",\"params\":{\"amount\":5,\"to\":\"bob\"},\"id\":3}"));
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    void testValidationCanBeDisabled() {
+        RpcEndpoint unchecked = new RpcEndpoint(null, new RpcOptions()
+            .setEnableLogging(false)
+            .setEnableValidation(false));
+        unchecked.addMethod("echo", (params, ctx) -> params,
+            new MethodConfig().withSchema(JsonParser.parseString("{\"type\":\"string\"}")));
+
+        assertEquals("{\"jsonrpc\":\"2.0\",\"result\":[1],\"id\":1}",
+            unchecked.handleRequest("{\"jsonrpc\":\"2.0\",\"method\":\"echo\",\"params\":[1],\"id\":1}"));
+    }
+
+    @Test
+    void testInvalidSchemaRejectedAtRegistration() {
+        assertThrows(IllegalArgumentException.class, () -> endpoint.addMethod("bad", (params, ctx) -> params,
+            new MethodConfig().withSchema(JsonParser.parseString("{\"type\":\"text\"}"))));
+        assertNull(endpoint.getMethod("bad"));
+    }
+
+    @Test
+    void testStatsCountCallsPerMethod() throws Exception {
+        List<String> sunk = new java.util.concurrent.CopyOnWriteArrayList<>();
+        RpcEndpoint measured = new RpcEndpoint(null, new RpcOptions()
+            .setEnableLogging(false)
+            .setEnableIntrospection(true)
+            .setMetricsSink((method, outcome, nanos) -> sunk.add(method + ":" + outcome)));
+        measured.addMethod("ok", (params, ctx) -> new JsonPrimitive(1));
+        measured.addMethod("fail", (params, ctx) -> {
+            throw new RpcException(RpcError.INVALID_PARAMS, "nope");
+        });
+        measured.addAsyncMethod("later", (params, ctx) -> CompletableFuture.completedFuture(new JsonPrimitive(2)));
+
+        measured.handleRequest("{\"jsonrpc\":\"2.0\",\"method\":\"ok\",\"id\":1}");
+        measured.handleRequest("[{\"jsonrpc\":\"2.0\",\"method\":\"ok\",\"id\":2},"
+            + "{\"jsonrpc\":\"2.0\",\"method\":\"fail\",\"id\":3},"
+            + "{\"jsonrpc\":\"2.0\",\"method\":\"missing\",\"id\":4}]");
+        measured.handleRequestAsync("{\"jsonrpc\":\"2.0\",\"method\":\"later\",\"id\":5}").get();
+
+        MethodMetrics ok = measured.getMetrics().getMethod("ok");
+        assertEquals(2, ok.getCalls());
+        assertEquals(0, ok.getErrors());
+        assertEquals(2, ok.getLatency().snapshot().getCount());
+        assertEquals(1, measured.getMetrics().getMethod("fail").getErrors());
+        assertEquals(1, measured.getMetrics().getMethod("later").getCalls());
+        assertNull(measured.getMetrics().getMethod("missing"));
+        assertEquals(List.of("ok:SUCCESS", "ok:SUCCESS", "fail:ERROR", "later:SUCCESS"), sunk);
+
+        JsonObject stats = JsonParser.parseString(measured.handleRequest(
+            "{\"jsonrpc\":\"2.0\",\"method\":\"__rpc.stats\",\"id\":6}")).getAsJsonObject()
+            .getAsJsonObject("result");
+        // The stats call itself has been parsed but not yet serialized
+        assertEquals(4, stats.getAsJsonObject("parse").get("count").getAsInt());
+        assertEquals(3, stats.getAsJsonObject("serialize").get("count").getAsInt());
+        JsonObject fail = stats.getAsJsonObject("methods").getAsJsonObject("fail");
+        assertEquals(1, fail.get("calls").getAsInt());
+        assertEquals(1, fail.get("errors").getAsInt());
+        assertTrue(fail.getAsJsonObject("latency").has("p99"));
+        // Introspection calls are not measured
+        assertFalse(stats.getAsJsonObject("methods").has("__rpc.stats"));
+    }
+
+    @Test
+    void testRejectedCallsCountedSeparately() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+        endpoint.addMethod("slow", (params, ctx) -> {
+            started.countDown();
+            release.await();
+            return new JsonPrimitive(true);
+        }, new MethodConfig().withMaxConcurrency(1).withMaxQueue(0));
+
+        Thread running = Thread.startVirtualThread(() ->
+            endpoint.handleRequest("{\"jsonrpc\":\"2.0\",\"method\":\"slow\",\"id\":1}"));
+        started.await();
+        assertTrue(endpoint.handleRequest("{\"jsonrpc\":\"2.0\",\"method\":\"slow\",\"id\":2}").contains("-32002"));
+        release.countDown();
+        running.join();
+
+        MethodMetrics slow = endpoint.getMetrics().getMethod("slow");
+        assertEquals(2, slow.getCalls());
+        assertEquals(1, slow.getRejected());
+        assertEquals(0, slow.getErrors());
+        assertEquals(1, slow.getLatency().snapshot().getCount());
+    }
+
+    @Test
+    void testMetricsCanBeDisabled() {
+        RpcEndpoint unmeasured = new RpcEndpoint(null, new RpcOptions()
+            .setEnableLogging(false)
+            .setEnableIntrospection(true)
+            .setEnableMetrics(false));
+        unmeasured.addMethod("ok", (params, ctx) -> new JsonPrimitive(1));
+
+        assertNull(unmeasured.getMetrics());
+        assertTrue(unmeasured.handleRequest("{\"jsonrpc\":\"2.0\",\"method\":\"ok\",\"id\":1}").contains("\"result\":1"));
+        assertTrue(unmeasured.handleRequest("{\"jsonrpc\":\"2.0\",\"method\":\"__rpc.stats\",\"id\":2}").contains("-32601"));
+    }
+
+    @Test
+    void testStringPayloadsAreMeasuredInUtf8Bytes() {
+        String request = "{\"jsonrpc\":\"2.0\",\"method\":\"echo\",\"params\":[\"caff\u00e8 \ud83d\ude00\"],\"id\":1}";
+
+        String response = endpoint.handleRequest(request);
+
+        RpcMetrics metrics = endpoint.getMetrics();
+        assertEquals(request.getBytes(StandardCharsets.UTF_8).length, metrics.getRequestSize().snapshot().getSum());
+        assertEquals(response.getBytes(StandardCharsets.UTF_8).length, metrics.getResponseSize().snapshot().getSum());
+        assertTrue(request.getBytes(StandardCharsets.UTF_8).length > request.length());
+    }
+
+    @Test
+    void testPrometheusExposition() throws Exception {
+        RpcEndpoint measured = new RpcEndpoint(null, new RpcOptions()
+            .setEnableLogging(false)
+            .setConcurrencyLimit(new AimdLimit(10, 1, 100, 0.9, TimeUnit.SECONDS.toNanos(1))));
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+        measured.addMethod("ok", (params, ctx) -> new JsonPrimitive(1));
+        measured.addMethod("wait", (params, ctx) -> {
+            started.countDown();
+            release.await();
+            return new JsonPrimitive(true);
+        });
+
+        byte[] single = "{\"jsonrpc\":\"2.0\",\"method\":\"ok\",\"id\":1}".getBytes(StandardCharsets.UTF_8);
+        byte[] reply = measured.handleRequest(single, "application/json");
+        measured.handleRequest("[{\"jsonrpc\":\"2.0\",\"method\":\"ok\",\"id\":2},"
+            + "{\"jsonrpc\":\"2.0\",\"method\":\"ok\",\"id\":3}]");
+        Thread running = Thread.startVirtualThread(() ->
+            measured.handleRequest("{\"jsonrpc\":\"2.0\",\"method\":\"wait\",\"id\":4}"));
+        started.await();
+
+        String contentType = measured.getMetricsContentType("text/plain;version=0.0.4");
+        assertEquals("text/plain; version=0.0.4; charset=utf-8", contentType);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        measured.writeMetrics(out, contentType);
+        release.countDown();
+        running.join();
+
+        String text = out.toString(StandardCharsets.UTF_8);
+        assertTrue(text.contains("rpc_server_calls_total{method=\"ok\"} 3\n"));
+        assertTrue(text.contains("rpc_server_in_flight{method=\"wait\"} 1\n"));
+        assertTrue(text.contains("rpc_server_in_flight{method=\"ok\"} 0\n"));
+        assertTrue(text.contains("rpc_server_call_duration_seconds_count{method=\"ok\"} 3\n"));
+        assertTrue(text.contains("rpc_server_batch_size_sum 4\n"));
+        assertTrue(text.contains("rpc_server_batch_size_count 3\n"));
+        // ASCII requests, as long in bytes as in characters
+        long requestSize = single.length + 79L + 40;
+        assertTrue(text.contains("rpc_server_request_size_bytes_sum " + requestSize + "\n"));
+        assertTrue(text.contains("rpc_server_response_size_bytes_count 2\n"));
+        assertTrue(text.contains("rpc_server_concurrency_in_flight 1\n"));
+        assertTrue(text.contains("# TYPE rpc_server_concurrency_limit gauge\nrpc_server_concurrency_limit "));
+        assertFalse(text.contains("__rpc"));
+        assertTrue(reply.length > 0);
+
+        assertEquals(PrometheusWriter.OPENMETRICS_CONTENT_TYPE,
+            measured.getMetricsContentType("application/openmetrics-text; version=1.0.0"));
+        ByteArrayOutputStream openMetrics = new ByteArrayOutputStream();
+        measured.writeMetrics(openMetrics, PrometheusWriter.OPENMETRICS_CONTENT_TYPE);
+        assertTrue(openMetrics.toString(StandardCharsets.UTF_8).endsWith("# EOF\n"));
+
+        RpcEndpoint unmeasured = new RpcEndpoint(null, new RpcOptions().setEnableMetrics(false));
+        assertThrows(IllegalStateException.class,
+            () -> unmeasured.writeMetrics(new ByteArrayOutputStream(), contentType));
+    }
 }
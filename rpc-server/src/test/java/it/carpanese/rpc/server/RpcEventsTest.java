@@ -0,0 +1,141 @@
+package it.carpanese.rpc.server;
+
+import it.carpanese.rpc.core.RpcError;
+import it.carpanese.rpc.core.RpcException;
+import it.carpanese.rpc.core.RpcRequest;
+import it.carpanese.rpc.server.middleware.IRpcMiddleware;
+import com.google.gson.JsonPrimitive;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the JFR events of RpcEndpoint
+ */
+class RpcEventsTest {
+
+    private static final String[] EVENTS = {
+        "it.carpanese.rpc.Parse", "it.carpanese.rpc.Middleware", "it.carpanese.rpc.Handler", "it.carpanese.rpc.Serialize"
+    };
+
+    private static RpcEndpoint endpoint() {
+        RpcEndpoint endpoint = new RpcEndpoint(null, new RpcOptions().setEnableLogging(false));
+        endpoint.addMethod("add", (params, ctx) -> {
+            var p = params.getAsJsonObject();
+            return new JsonPrimitive(p.get("a").getAsInt() + p.get("b").getAsInt());
+        });
+        endpoint.addAsyncMethod("fail", (params, ctx) ->
+            CompletableFuture.failedFuture(new RpcException(RpcError.INVALID_PARAMS, "nope")));
+        endpoint.getMiddleware().add(new IRpcMiddleware() {
+            @Override
+            public void beforeAsync(RpcRequest request, Object context) {
+            }
+
+            @Override
+            public void afterAsync(RpcRequest request, Object result, Object context) {
+            }
+        }, "before");
+        return endpoint;
+    }
+
+    private static List<RecordedEvent> record(Runnable calls) throws Exception {
+        Path file = Files.createTempFile("rpc-events", ".jfr");
+        try (Recording recording = new Recording()) {
+            for (String event : EVENTS) {
+                recording.enable(event);
+            }
+            recording.start();
+            calls.run();
+            recording.stop();
+            recording.dump(file);
+            return RecordingFile.readAllEvents(file);
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private static RecordedEvent find(List<RecordedEvent> events, String type, String id) {
+        return events.stream()
+            .filter(e -> e.getEventType().getName().equals(type) && id.equals(e.getString("id")))
+            .findFirst()
+            .orElseThrow(() -> new AssertionError("No " + type + " for id " + id));
+    }
+
+    @Test
+    void testPhasesOfACallAreRecorded() throws Exception {
+        RpcEndpoint endpoint = endpoint();
+        String request = "{\"jsonrpc\":\"2.0\",\"method\":\"add\",\"params\":{\"a\":1,\"b\":2},\"id\":7}";
+
+        List<RecordedEvent> events = record(() -> endpoint.handleRequest(request));
+
+        RecordedEvent parse = find(events, "it.carpanese.rpc.Parse", "7");
+        assertEquals("add", parse.getString("method"));
+        assertEquals(request.length(), parse.getLong("payloadSize"));
+        assertEquals("success", parse.getString("outcome"));
+
+        RecordedEvent middleware = find(events, "it.carpanese.rpc.Middleware", "7");
+        assertEquals("before", middleware.getString("phase"));
+        assertEquals(1, middleware.getInt("middleware"));
+
+        RecordedEvent handler = find(events, "it.carpanese.rpc.Handler", "7");
+        assertEquals("add", handler.getString("method"));
+        assertEquals("{\"a\":1,\"b\":2}".length(), handler.getLong("paramsSize"));
+        assertEquals("success", handler.getString("outcome"));
+
+        RecordedEvent serialize = find(events, "it.carpanese.rpc.Serialize", "7");
+        assertEquals(1, serialize.getInt("responses"));
+        assertEquals(endpoint.handleRequest(request).length(), serialize.getLong("payloadSize"));
+    }
+
+    @Test
+    void testFailuresAndStreamsAreRecorded() throws Exception {
+        RpcEndpoint endpoint = endpoint();
+        byte[] body = "{\"jsonrpc\":\"2.0\",\"method\":\"add\",\"params\":{\"a\":1,\"b\":2},\"id\":\"s\"}"
+            .getBytes(StandardCharsets.UTF_8);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        List<RecordedEvent> events = record(() -> {
+            try {
+                endpoint.handleRequestAsync("{\"jsonrpc\":\"2.0\",\"method\":\"fail\",\"id\":8}").get();
+                endpoint.handleRequest(new ByteArrayInputStream(body), out, endpoint.getCodec("application/json"));
+            } catch (Exception e) {
+                throw new AssertionError(e);
+            }
+        });
+
+        RecordedEvent handler = find(events, "it.carpanese.rpc.Handler", "8");
+        assertEquals("error", handler.getString("outcome"));
+        assertEquals(RpcError.INVALID_PARAMS, handler.getInt("errorCode"));
+        assertEquals("error", find(events, "it.carpanese.rpc.Serialize", "8").getString("outcome"));
+
+        assertEquals(body.length, find(events, "it.carpanese.rpc.Parse", "s").getLong("payloadSize"));
+        assertEquals(out.size(), find(events, "it.carpanese.rpc.Serialize", "s").getLong("payloadSize"));
+    }
+
+    @Test
+    void testEventsAreDisabledByDefault() throws Exception {
+        RpcEndpoint endpoint = endpoint();
+        Path file = Files.createTempFile("rpc-events", ".jfr");
+        try (Recording recording = new Recording()) {
+            recording.start();
+            endpoint.handleRequest("{\"jsonrpc\":\"2.0\",\"method\":\"add\",\"params\":{\"a\":1,\"b\":2},\"id\":1}");
+            recording.stop();
+            recording.dump(file);
+            assertTrue(RecordingFile.readAllEvents(file).stream()
+                .noneMatch(e -> e.getEventType().getName().startsWith("it.carpanese.rpc.")));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package it.carpanese.rpc.server;
 
+import it.carpanese.rpc.core.RawJson;
 import it.carpanese.rpc.core.RpcError;
 import it.carpanese.rpc.core.RpcException;
 import com.google.gson.JsonObject;
@@ -60,6 +61,21 @@ class RpcSafeEndpointTest {
         assertTrue(response.contains("\"id\":1"));
     }
 
+    @Test
+    void testSafeEndpointAnswersDeeplyNestedParams() {
+        RpcSafeEndpoint endpoint = new RpcSafeEndpoint(null, new RpcOptions().setEnableLogging(false));
+        endpoint.addMethod("echo", (params, ctx) -> params);
+        int levels = 20_000;
+        String params = "[".repeat(levels) + "\"S:x\"" + "]".repeat(levels);
+
+        String response = endpoint.handleRequest(
+            "{\"jsonrpc\":\"2.0\",\"method\":\"echo\",\"params\":" + params + ",\"id\":1}");
+
+        // Gson 2.11+ readers cap the nesting themselves, which is answered as a parse error
+        assertTrue(response.equals("{\"jsonrpc\":\"2.0\",\"result\":" + params + ",\"id\":1}")
+            || response.equals("{\"jsonrpc\":\"2.0\",\"error\":{\"code\":-32700,\"message\":\"S:Parse error\"},\"id\":null}"));
+    }
+
     @Test
     void testSafeEndpointEncodesAndDecodesJsonElementValues() {
         RpcOptions options = new RpcOptions()
@@ -131,4 +147,27 @@ class RpcSafeEndpointTest {
 
         assertNotNull(endpoint.getMethod("test"));
     }
+
+    @Test
+    void testSafeEndpointSplicesPreEncodedRawJson() {
+        RpcSafeEndpoint endpoint = new RpcSafeEndpoint(null, new RpcOptions().setEnableLogging(false));
+        endpoint.addMethod("cached", RpcMethodHandler.ofRaw((request, ctx) -> RawJson.ofSafe("{\"name\":\"S:a\"}")));
+        endpoint.addMethod("plain", RpcMethodHandler.ofRaw((request, ctx) -> RawJson.of("{\"name\":\"a\"}")));
+
+        String cached = endpoint.handleRequest("{\"jsonrpc\":\"2.0\",\"method\":\"cached\",\"id\":1}");
+        String plain = endpoint.handleRequest("{\"jsonrpc\":\"2.0\",\"method\":\"plain\",\"id\":1}");
+
+        assertTrue(cached.contains("\"result\":{\"name\":\"S:a\"}"));
+        assertTrue(plain.contains("\"result\":{\"name\":\"S:a\"}"));
+    }
+
+    @Test
+    void testSafeEndpointPreEncodedErrorsCarryMarkers() {
+        RpcSafeEndpoint endpoint = new RpcSafeEndpoint(null, new RpcOptions().setEnableLogging(false));
+
+        assertEquals("[{\"jsonrpc\":\"2.0\",\"error\":{\"code\":-32600,\"message\":\"S:Invalid Request\"},\"id\":null}]",
+            endpoint.handleRequest("[1]"));
+        assertEquals("{\"jsonrpc\":\"2.0\",\"error\":{\"code\":-32601,\"message\":\"S:Method not found: nope\"},\"id\":1}",
+            endpoint.handleRequest("{\"jsonrpc\":\"2.0\",\"method\":\"nope\",\"id\":1}"));
+    }
 }
@@ -0,0 +1,74 @@
+package it.carpanese.rpc.server;
+
+import com.google.gson.JsonPrimitive;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SingleFlightTest {
+
+    @Test
+    void testIdenticalCallsShareTheLeader() throws Exception {
+        SingleFlight flights = new SingleFlight();
+        CompletableFuture<Object> leader = new CompletableFuture<>();
+        AtomicInteger calls = new AtomicInteger();
+
+        CompletableFuture<Object> first = flights.callAsync("k", () -> {
+            calls.incrementAndGet();
+            return leader;
+        });
+        CompletableFuture<Object> second = flights.callAsync("k", () -> {
+            calls.incrementAndGet();
+            return CompletableFuture.completedFuture(new JsonPrimitive("other"));
+        });
+        CompletableFuture<Object> blocking = CompletableFuture.supplyAsync(() -> {
+            try {
+                return flights.call("k", () -> new JsonPrimitive("other"));
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        while (flights.getCoalesced() < 2) {
+            Thread.onSpinWait();
+        }
+
+        leader.complete(new JsonPrimitive("shared"));
+
+        assertEquals(new JsonPrimitive("shared"), first.get());
+        assertEquals(new JsonPrimitive("shared"), second.get());
+        assertEquals(new JsonPrimitive("shared"), blocking.get());
+        assertEquals(1, calls.get());
+        assertEquals(0, flights.size());
+    }
+
+    @Test
+    void testErrorsAreSharedAndNextCallRunsAgain() throws Exception {
+        SingleFlight flights = new SingleFlight();
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch fail = new CountDownLatch(1);
+
+        Thread leader = Thread.startVirtualThread(() -> {
+            assertThrows(IllegalArgumentException.class, () -> flights.call("k", () -> {
+                running.countDown();
+                fail.await();
+                throw new IllegalArgumentException("boom");
+            }));
+        });
+        running.await();
+        CompletableFuture<Object> waiter = flights.callAsync("k",
+            () -> CompletableFuture.completedFuture(new JsonPrimitive("unused")));
+        fail.countDown();
+        leader.join();
+
+        Exception error = assertThrows(Exception.class, waiter::get);
+        assertTrue(error.getCause() instanceof IllegalArgumentException);
+
+        // The failed flight is gone, a new call runs
+        assertEquals(new JsonPrimitive(1), flights.call("k", () -> new JsonPrimitive(1)));
+        assertEquals(1, flights.getCoalesced());
+    }
+}
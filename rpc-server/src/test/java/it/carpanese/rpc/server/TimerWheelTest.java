@@ -0,0 +1,44 @@
+package it.carpanese.rpc.server;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TimerWheelTest {
+
+    private final TimerWheel wheel = new TimerWheel(TimeUnit.MILLISECONDS.toNanos(1), 8);
+
+    @Test
+    void testExpiresAfterDelayAcrossRounds() throws InterruptedException {
+        CountDownLatch fired = new CountDownLatch(2);
+        long start = System.nanoTime();
+
+        TimerWheel.Timeout shortTimeout = wheel.schedule(fired::countDown, TimeUnit.MILLISECONDS.toNanos(3));
+        // Several times around the 8-bucket wheel
+        TimerWheel.Timeout longTimeout = wheel.schedule(fired::countDown, TimeUnit.MILLISECONDS.toNanos(50));
+
+        assertTrue(fired.await(5, TimeUnit.SECONDS));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+        assertTrue(shortTimeout.isExpired());
+        assertTrue(longTimeout.isExpired());
+        assertFalse(longTimeout.cancel());
+    }
+
+    @Test
+    void testCancelledTimeoutsDoNotRun() throws InterruptedException {
+        AtomicInteger runs = new AtomicInteger();
+        CountDownLatch later = new CountDownLatch(1);
+
+        TimerWheel.Timeout timeout = wheel.schedule(runs::incrementAndGet, TimeUnit.MILLISECONDS.toNanos(5));
+        assertTrue(timeout.cancel());
+        wheel.schedule(later::countDown, TimeUnit.MILLISECONDS.toNanos(20));
+
+        assertTrue(later.await(5, TimeUnit.SECONDS));
+        assertEquals(0, runs.get());
+        assertFalse(timeout.isExpired());
+    }
+}
@@ -0,0 +1,66 @@
+package it.carpanese.rpc.server.limit;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConcurrencyLimitTest {
+
+    private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @Test
+    void testAimdGrowsWhenBusyAndBacksOff() {
+        AimdLimit limit = new AimdLimit(10, 2, 12, 0.5, 100 * MS);
+
+        // Idle samples do not move it
+        limit.onSample(MS, 1, false);
+        assertEquals(10, limit.getLimit());
+
+        for (int i = 0; i < 5; i++) {
+            limit.onSample(MS, 8, false);
+        }
+        assertEquals(12, limit.getLimit());
+
+        limit.onSample(200 * MS, 8, false);
+        assertEquals(6, limit.getLimit());
+        limit.onSample(MS, 6, true);
+        limit.onSample(MS, 6, true);
+        assertEquals(2, limit.getLimit());
+    }
+
+    @Test
+    void testVegasBacksOffWhenLatencyRises() {
+        VegasLimit limit = new VegasLimit(20, 1, 100);
+
+        for (int i = 0; i < 10; i++) {
+            limit.onSample(10 * MS, 20, false);
+        }
+        int grown = limit.getLimit();
+        assertTrue(grown > 20);
+
+        // Latency doubles: half the limit is estimated to be queueing
+        for (int i = 0; i < 10; i++) {
+            limit.onSample(20 * MS, grown, false);
+        }
+        assertTrue(limit.getLimit() < grown);
+    }
+
+    @Test
+    void testLimiterShedsOverLimit() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(new AimdLimit(2, 1, 10, 0.9, 100 * MS));
+
+        assertTrue(limiter.tryAcquire());
+        assertTrue(limiter.tryAcquire());
+        assertFalse(limiter.tryAcquire());
+        assertEquals(2, limiter.getInFlight());
+        assertEquals(1, limiter.getRejected());
+
+        limiter.release(System.nanoTime(), false);
+        assertEquals(1, limiter.getInFlight());
+        // Released with both slots in use, so the limit grew
+        assertEquals(3, limiter.getLimit());
+        assertEquals("aimd", limiter.getAlgorithm());
+    }
+}
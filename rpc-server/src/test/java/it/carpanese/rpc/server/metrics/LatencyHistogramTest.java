@@ -0,0 +1,106 @@
+package it.carpanese.rpc.server.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for LatencyHistogram and RpcMetrics
+ */
+class LatencyHistogramTest {
+
+    @Test
+    void testBucketsCoverEveryValue() {
+        long previous = -1;
+        for (int bucket = 0; bucket < LatencyHistogram.BUCKETS; bucket++) {
+            long upper = LatencyHistogram.upperBound(bucket);
+            assertTrue(upper > previous);
+            assertEquals(bucket, LatencyHistogram.bucket(previous + 1));
+            assertEquals(bucket, LatencyHistogram.bucket(upper));
+            previous = upper;
+        }
+        assertEquals(LatencyHistogram.BUCKETS - 1, LatencyHistogram.bucket(Long.MAX_VALUE));
+    }
+
+    @Test
+    void testBucketsAreWithinOneEighth() {
+        for (long value = 1; value < 1L << 40; value = value * 3 / 2 + 1) {
+            long upper = LatencyHistogram.upperBound(LatencyHistogram.bucket(value));
+            assertTrue(upper >= value);
+            assertTrue(upper - value <= value / 8, "value " + value);
+        }
+    }
+
+    @Test
+    void testPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i * 1_000L);
+        }
+        histogram.record(-5);
+
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(1001, snapshot.getCount());
+        assertEquals(1_000_000, snapshot.getMax());
+        assertEquals(0, snapshot.getValueAtPercentile(0));
+        assertEquals(1_000_000, snapshot.getValueAtPercentile(100));
+
+        long p50 = snapshot.getValueAtPercentile(50);
+        assertTrue(p50 >= 500_000 && p50 <= 500_000 * 9 / 8, "p50 " + p50);
+        long p99 = snapshot.getValueAtPercentile(99);
+        assertTrue(p99 >= 990_000 && p99 <= 1_000_000, "p99 " + p99);
+        assertEquals(500_500_000.0 / 1001, snapshot.getMean(), 0.001);
+
+        assertEquals(0, new LatencyHistogram().snapshot().getValueAtPercentile(99));
+    }
+
+    @Test
+    void testConcurrentRecording() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            threads.add(Thread.startVirtualThread(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    histogram.record(i);
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(80_000, histogram.snapshot().getCount());
+    }
+
+    @Test
+    void testMetricsCountOutcomesAndIsolateTheSink() {
+        List<String> seen = new ArrayList<>();
+        RpcMetrics metrics = new RpcMetrics((method, outcome, nanos) -> {
+            seen.add(method + ":" + outcome);
+            if (outcome == MetricsSink.Outcome.ERROR) {
+                throw new IllegalStateException("sink down");
+            }
+        });
+        MethodMetrics add = metrics.register("add");
+
+        metrics.recordCall(add, MetricsSink.Outcome.SUCCESS, 1_000);
+        metrics.recordCall(add, MetricsSink.Outcome.ERROR, 2_000);
+        metrics.recordCall(add, MetricsSink.Outcome.REJECTED, 10);
+        metrics.recordParse(500);
+
+        assertEquals(3, add.getCalls());
+        assertEquals(1, add.getErrors());
+        assertEquals(1, add.getRejected());
+        // Rejected calls did not run and are not part of the latency
+        assertEquals(2, add.getLatency().snapshot().getCount());
+        assertEquals(1, metrics.getParse().snapshot().getCount());
+        assertEquals(List.of("add:SUCCESS", "add:ERROR", "add:REJECTED"), seen);
+        assertEquals(1, metrics.getSinkFailures());
+
+        metrics.unregister("add");
+        assertNull(metrics.getMethod("add"));
+        assertTrue(metrics.getMethods().isEmpty());
+    }
+}
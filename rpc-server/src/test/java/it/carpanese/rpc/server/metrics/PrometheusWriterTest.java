@@ -0,0 +1,121 @@
+package it.carpanese.rpc.server.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for PrometheusWriter
+ */
+class PrometheusWriterTest {
+
+    private static String write(RpcMetrics metrics, boolean openMetrics) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        PrometheusWriter writer = new PrometheusWriter(out, openMetrics);
+        writer.writeMetrics(metrics);
+        writer.finish();
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void testCountersAndGaugesPerMethod() throws IOException {
+        RpcMetrics metrics = new RpcMetrics(null);
+        MethodMetrics add = metrics.register("add");
+        metrics.recordCall(add, MetricsSink.Outcome.SUCCESS, 1_000);
+        metrics.recordCall(add, MetricsSink.Outcome.ERROR, 2_000);
+        metrics.recordCall(add, MetricsSink.Outcome.REJECTED, 10);
+        metrics.startCall(add);
+
+        String text = write(metrics, false);
+        assertTrue(text.contains("# TYPE rpc_server_calls_total counter\n"));
+        assertTrue(text.contains("rpc_server_calls_total{method=\"add\"} 3\n"));
+        assertTrue(text.contains("rpc_server_errors_total{method=\"add\"} 1\n"));
+        assertTrue(text.contains("rpc_server_rejected_total{method=\"add\"} 1\n"));
+        assertTrue(text.contains("# TYPE rpc_server_in_flight gauge\nrpc_server_in_flight{method=\"add\"} 1\n"));
+        assertFalse(text.contains("# EOF"));
+        assertFalse(text.contains("# UNIT"));
+    }
+
+    @Test
+    void testHistogramBucketsAreCumulative() throws IOException {
+        RpcMetrics metrics = new RpcMetrics(null);
+        MethodMetrics add = metrics.register("add");
+        metrics.recordCall(add, MetricsSink.Outcome.SUCCESS, 1_000);
+        metrics.recordCall(add, MetricsSink.Outcome.SUCCESS, 1_023);
+        metrics.recordCall(add, MetricsSink.Outcome.SUCCESS, 1_024);
+        metrics.recordCall(add, MetricsSink.Outcome.SUCCESS, 1_500_000_000);
+
+        String text = write(metrics, false);
+        assertTrue(text.contains("rpc_server_call_duration_seconds_bucket{method=\"add\",le=\"0.000001023\"} 2\n"));
+        assertTrue(text.contains("rpc_server_call_duration_seconds_bucket{method=\"add\",le=\"0.000004095\"} 3\n"));
+        assertTrue(text.contains("rpc_server_call_duration_seconds_bucket{method=\"add\",le=\"1.073741823\"} 3\n"));
+        assertTrue(text.contains("rpc_server_call_duration_seconds_bucket{method=\"add\",le=\"4.294967295\"} 4\n"));
+        assertTrue(text.contains("rpc_server_call_duration_seconds_bucket{method=\"add\",le=\"+Inf\"} 4\n"));
+        assertTrue(text.contains("rpc_server_call_duration_seconds_sum{method=\"add\"} 1.500003047\n"));
+        assertTrue(text.contains("rpc_server_call_duration_seconds_count{method=\"add\"} 4\n"));
+    }
+
+    @Test
+    void testPayloadDistributions() throws IOException {
+        RpcMetrics metrics = new RpcMetrics(null);
+        metrics.recordRequest(1, 60);
+        metrics.recordRequest(3, 200);
+        metrics.recordResponse(100);
+
+        String text = write(metrics, false);
+        assertTrue(text.contains("rpc_server_batch_size_bucket{le=\"1\"} 1\n"));
+        assertTrue(text.contains("rpc_server_batch_size_bucket{le=\"3\"} 2\n"));
+        assertTrue(text.contains("rpc_server_batch_size_sum 4\n"));
+        assertTrue(text.contains("rpc_server_request_size_bytes_bucket{le=\"63\"} 1\n"));
+        assertTrue(text.contains("rpc_server_request_size_bytes_bucket{le=\"255\"} 2\n"));
+        assertTrue(text.contains("rpc_server_request_size_bytes_sum 260\n"));
+        assertTrue(text.contains("rpc_server_response_size_bytes_count 1\n"));
+        assertTrue(text.contains("rpc_server_parse_duration_seconds_count 0\n"));
+    }
+
+    @Test
+    void testOpenMetricsFormat() throws IOException {
+        RpcMetrics metrics = new RpcMetrics(null);
+        metrics.recordCall(metrics.register("add"), MetricsSink.Outcome.SUCCESS, 1_000);
+
+        String text = write(metrics, true);
+        assertTrue(text.contains("# TYPE rpc_server_calls counter\nrpc_server_calls_total{method=\"add\"} 1\n"));
+        assertTrue(text.contains("# UNIT rpc_server_call_duration_seconds seconds\n"));
+        assertTrue(text.endsWith("# EOF\n"));
+        assertTrue(PrometheusWriter.acceptsOpenMetrics("application/openmetrics-text;version=1.0.0,text/plain;q=0.5"));
+        assertFalse(PrometheusWriter.acceptsOpenMetrics("text/plain"));
+        assertFalse(PrometheusWriter.acceptsOpenMetrics(null));
+    }
+
+    @Test
+    void testLabelValuesAreEscaped() throws IOException {
+        RpcMetrics metrics = new RpcMetrics(null);
+        metrics.register("a\"b\\c\nd");
+        metrics.register("caffè");
+
+        String text = write(metrics, false);
+        assertTrue(text.contains("rpc_server_calls_total{method=\"a\\\"b\\\\c\\nd\"} 0\n"));
+        assertTrue(text.contains("rpc_server_calls_total{method=\"caffè\"} 0\n"));
+    }
+
+    @Test
+    void testFamiliesAreNotSplitAndLinesAreWellFormed() throws IOException {
+        RpcMetrics metrics = new RpcMetrics(null);
+        for (int i = 0; i < 200; i++) {
+            metrics.register("method" + i);
+        }
+
+        String text = write(metrics, false);
+        List<String> families = text.lines().filter(line -> line.startsWith("# TYPE ")).toList();
+        assertEquals(families.stream().distinct().count(), families.size());
+        assertEquals(10, families.size());
+        for (String line : text.lines().toList()) {
+            assertTrue(line.startsWith("# ") || line.matches("[a-z_]+(\\{.*\\})? -?[0-9.]+"), line);
+        }
+    }
+}
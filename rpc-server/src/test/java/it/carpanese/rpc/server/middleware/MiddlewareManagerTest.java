@@ -0,0 +1,169 @@
+package it.carpanese.rpc.server.middleware;
+
+import it.carpanese.rpc.core.RpcRequest;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MiddlewareManagerTest {
+
+    private static final IRpcMiddleware NOOP = new IRpcMiddleware() {
+        @Override
+        public void beforeAsync(RpcRequest request, Object context) {
+        }
+
+        @Override
+        public void afterAsync(RpcRequest request, Object result, Object context) {
+        }
+    };
+
+    @Test
+    void testGlobSelector() {
+        MethodSelector selector = MethodSelector.glob("__rpc.*");
+        assertTrue(selector.matches("__rpc.version", Set.of()));
+        assertFalse(selector.matches("user.__rpc.x", Set.of()));
+        assertFalse(selector.matches("__rpcXversion", Set.of()));
+
+        MethodSelector single = MethodSelector.glob("user.get?");
+        assertTrue(single.matches("user.getA", Set.of()));
+        assertFalse(single.matches("user.get", Set.of()));
+        assertTrue(MethodSelector.glob("a(b)*").matches("a(b)c", Set.of()));
+    }
+
+    @Test
+    void testNameAndTagSelectors() {
+        assertTrue(MethodSelector.names("health", "ping").matches("ping", Set.of()));
+        assertFalse(MethodSelector.names("health").matches("ping", Set.of()));
+
+        MethodSelector secured = MethodSelector.tagged("public").negate();
+        assertFalse(secured.matches("health", Set.of("public")));
+        assertTrue(secured.matches("transfer", Set.of("payments")));
+        assertTrue(MethodSelector.names("a").or(MethodSelector.tagged("t")).matches("b", Set.of("t")));
+        assertFalse(MethodSelector.all().and(MethodSelector.names("a")).matches("b", Set.of()));
+    }
+
+    @Test
+    void testSelectionAndVersion() {
+        MiddlewareManager manager = new MiddlewareManager();
+        long version = manager.getVersion();
+        manager.add(NOOP, "before", MethodSelector.glob("__rpc.*").negate());
+        manager.add(NOOP, "after");
+
+        assertNotEquals(version, manager.getVersion());
+        assertEquals(List.of(), manager.getBeforeMiddleware("__rpc.version", Set.of()));
+        assertEquals(List.of(NOOP), manager.getBeforeMiddleware("transfer", Set.of()));
+        assertEquals(List.of(NOOP), manager.getAfterMiddleware("__rpc.version", Set.of()));
+        assertEquals(1, manager.getBeforeMiddleware().size());
+        assertThrows(IllegalArgumentException.class, () -> manager.add(NOOP, "around"));
+    }
+
+    @Test
+    void testSnapshotIsIndependent() {
+        MiddlewareManager manager = new MiddlewareManager();
+        manager.add(NOOP, "before");
+        MiddlewareManager snapshot = manager.snapshot();
+        manager.add(NOOP, "before");
+
+        assertEquals(1, snapshot.getBeforeMiddleware().size());
+        assertEquals(2, manager.getBeforeMiddleware().size());
+    }
+
+    private static IRpcMiddleware sync(List<String> trace, String name) {
+        return new IRpcMiddleware() {
+            @Override
+            public void beforeAsync(RpcRequest request, Object context) {
+                trace.add(name);
+            }
+
+            @Override
+            public void afterAsync(RpcRequest request, Object result, Object context) {
+                trace.add(name);
+            }
+        };
+    }
+
+    private static AsyncRpcMiddleware async(List<String> trace, String name, CompletableFuture<Void> stage) {
+        return new AsyncRpcMiddleware() {
+            @Override
+            public CompletionStage<Void> before(RpcRequest request, Object context) {
+                trace.add(name);
+                return stage;
+            }
+
+            @Override
+            public CompletionStage<Void> after(RpcRequest request, Object result, Object context) {
+                trace.add(name);
+                return stage;
+            }
+        };
+    }
+
+    @Test
+    void testExecuteSelectsByTagsWhenGiven() throws Exception {
+        List<String> trace = new ArrayList<>();
+        MiddlewareManager manager = new MiddlewareManager();
+        manager.add(sync(trace, "audit"), "before", MethodSelector.tagged("payments"));
+        manager.add(sync(trace, "all"), "after");
+        manager.add(sync(trace, "audit"), "after", MethodSelector.tagged("payments"));
+        RpcRequest request = new RpcRequest("transfer", null, 1);
+
+        manager.executeBefore(request, null);
+        manager.executeAfter(request, null, null);
+        assertEquals(List.of("all"), trace);
+
+        trace.clear();
+        manager.executeBefore(request, Set.of("payments"), null);
+        manager.executeAfter(request, Set.of("payments"), null, null);
+        assertEquals(List.of("audit", "all", "audit"), trace);
+
+        trace.clear();
+        manager.executeBeforeAsync(request, Set.of("payments"), null).toCompletableFuture().join();
+        manager.executeAfterAsync(request, Set.of("payments"), null, null).toCompletableFuture().join();
+        assertEquals(List.of("audit", "all", "audit"), trace);
+    }
+
+    @Test
+    void testAsyncMiddlewareIsChainedWithoutBlocking() {
+        List<String> trace = new ArrayList<>();
+        CompletableFuture<Void> lookup = new CompletableFuture<>();
+        MiddlewareManager manager = new MiddlewareManager();
+        manager.add(sync(trace, "a"), "before");
+        manager.add(async(trace, "session", lookup), "before");
+        manager.add(async(trace, "quota", CompletableFuture.completedFuture(null)), "before");
+        manager.add(sync(trace, "b"), "before");
+
+        CompletableFuture<Void> done = manager.executeBeforeAsync(new RpcRequest("m", null, 1), null)
+            .toCompletableFuture();
+
+        assertFalse(done.isDone());
+        assertEquals(List.of("a", "session"), trace);
+        lookup.complete(null);
+        assertTrue(done.isDone());
+        assertEquals(List.of("a", "session", "quota", "b"), trace);
+    }
+
+    @Test
+    void testFailedAsyncMiddlewareStopsTheChain() throws Exception {
+        List<String> trace = new ArrayList<>();
+        MiddlewareManager manager = new MiddlewareManager();
+        manager.add(async(trace, "quota", CompletableFuture.failedFuture(new IllegalStateException("Over quota"))),
+            "after");
+        manager.add(sync(trace, "b"), "after");
+
+        CompletableFuture<Void> done = manager.executeAfterAsync(new RpcRequest("m", null, 1), null, null)
+            .toCompletableFuture();
+
+        assertTrue(done.isCompletedExceptionally());
+        assertEquals(List.of("quota"), trace);
+
+        // Blocking callers wait for the stage and get its error
+        IRpcMiddleware blocking = manager.getAfterMiddleware().get(0);
+        assertThrows(IllegalStateException.class, () -> blocking.afterAsync(new RpcRequest("m", null, 1), null, null));
+    }
+}
@@ -0,0 +1,68 @@
+package it.carpanese.rpc.server.middleware;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonPrimitive;
+import it.carpanese.rpc.core.RpcRequest;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RpcCallTest {
+
+    private final List<String> trace = new ArrayList<>();
+
+    private RpcCall call(RpcInterceptor... interceptors) {
+        return new RpcCall(new RpcRequest("test", null, 1), null, Set.of(), interceptors) {
+            @Override
+            protected CompletionStage<JsonElement> invoke() {
+                trace.add("method");
+                return CompletableFuture.completedFuture(new JsonPrimitive("result"));
+            }
+        };
+    }
+
+    private RpcInterceptor named(String name) {
+        return (call, next) -> {
+            trace.add(name + ">");
+            return next.proceed(call).whenComplete((result, error) -> trace.add("<" + name));
+        };
+    }
+
+    @Test
+    void testChainRunsOutermostFirst() throws Exception {
+        JsonElement result = call(named("a"), named("b")).proceed().toCompletableFuture().get();
+
+        assertEquals(new JsonPrimitive("result"), result);
+        assertEquals(List.of("a>", "b>", "method", "<b", "<a"), trace);
+    }
+
+    @Test
+    void testShortCircuitSkipsRestOfChain() throws Exception {
+        RpcInterceptor cached = (call, next) -> CompletableFuture.completedFuture(new JsonPrimitive("cached"));
+
+        JsonElement result = call(named("a"), cached, named("b")).proceed().toCompletableFuture().get();
+
+        assertEquals(new JsonPrimitive("cached"), result);
+        assertEquals(List.of("a>", "<a"), trace);
+    }
+
+    @Test
+    void testThrownExceptionsFailTheStage() {
+        RpcInterceptor failing = (call, next) -> {
+            throw new IllegalStateException("denied");
+        };
+
+        CompletableFuture<JsonElement> result = call(named("a"), failing).proceed().toCompletableFuture();
+
+        ExecutionException error = assertThrows(ExecutionException.class, result::get);
+        assertTrue(error.getCause() instanceof IllegalStateException);
+        assertEquals(List.of("a>", "<a"), trace);
+    }
+}
@@ -0,0 +1,204 @@
+package it.carpanese.rpc.server.schema;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for JsonSchema
+ */
+class JsonSchemaTest {
+
+    private static JsonSchema schema(String json) {
+        return JsonSchema.compile(JsonParser.parseString(json));
+    }
+
+    private static SchemaViolationException violation(JsonSchema schema, String json) {
+        SchemaViolationException streamed = assertThrows(SchemaViolationException.class,
+            () -> schema.validate(json, false));
+        // The tree walk must report the same violation
+        SchemaViolationException tree = assertThrows(SchemaViolationException.class,
+            () -> schema.validate(JsonParser.parseString(json)));
+        assertEquals(streamed.getMessage(), tree.getMessage());
+        return streamed;
+    }
+
+    private static void valid(JsonSchema schema, String json) throws SchemaViolationException {
+        schema.validate(json, false);
+        schema.validate(JsonParser.parseString(json));
+    }
+
+    @Test
+    void testTypes() throws Exception {
+        JsonSchema schema = schema("{\"type\":\"object\",\"properties\":{"
+            + "\"n\":{\"type\":\"integer\"},\"x\":{\"type\":\"number\"},\"s\":{\"type\":[\"string\",\"null\"]}}}");
+
+        valid(schema, "{\"n\":1,\"x\":1.5,\"s\":null}");
+        valid(schema, "{\"n\":2.0,\"x\":3,\"s\":\"a\"}");
+
+        SchemaViolationException e = violation(schema, "{\"n\":1.5}");
+        assertEquals("$.n", e.getPath());
+        assertEquals("type", e.getKeyword());
+        assertEquals("$.n: expected integer but got number", e.getMessage());
+        assertEquals("$.s: expected null or string but got boolean", violation(schema, "{\"s\":true}").getMessage());
+        assertEquals("$: expected object but got array", violation(schema, "[]").getMessage());
+    }
+
+    @Test
+    void testRequiredAndAdditionalProperties() throws Exception {
+        JsonSchema schema = schema("{\"type\":\"object\",\"properties\":{\"a\":{\"type\":\"string\"}},"
+            + "\"required\":[\"a\",\"b\"],\"additionalProperties\":false}");
+
+        assertEquals("$: missing required property 'a'", violation(schema, "{}").getMessage());
+        // b is required but has no schema of its own, so additionalProperties applies to it
+        assertEquals("additionalProperties", violation(schema, "{\"a\":\"x\",\"b\":1}").getKeyword());
+
+        SchemaViolationException e = violation(schema, "{\"a\":\"x\",\"c\":{\"deep\":[1,2,3]}}");
+        assertEquals("$.c", e.getPath());
+        assertEquals("$.c: is not allowed", e.getMessage());
+    }
+
+    @Test
+    void testNumbersAndStrings() throws Exception {
+        JsonSchema schema = schema("{\"properties\":{"
+            + "\"age\":{\"minimum\":0,\"exclusiveMaximum\":150},"
+            + "\"price\":{\"multipleOf\":0.01},"
+            + "\"code\":{\"minLength\":2,\"maxLength\":3,\"pattern\":\"^[A-Z]+$\"}}}");
+
+        valid(schema, "{\"age\":0,\"price\":9.99,\"code\":\"IT\"}");
+        assertEquals("minimum", violation(schema, "{\"age\":-1}").getKeyword());
+        assertEquals("$.age: must be < 150", violation(schema, "{\"age\":150}").getMessage());
+        assertEquals("multipleOf", violation(schema, "{\"price\":1.001}").getKeyword());
+        assertEquals("minLength", violation(schema, "{\"code\":\"I\"}").getKeyword());
+        assertEquals("maxLength", violation(schema, "{\"code\":\"ITAL\"}").getKeyword());
+        assertEquals("pattern", violation(schema, "{\"code\":\"it\"}").getKeyword());
+    }
+
+    @Test
+    void testDraft4ExclusiveBounds() throws Exception {
+        JsonSchema schema = schema("{\"minimum\":0,\"exclusiveMinimum\":true,\"maximum\":10}");
+
+        valid(schema, "10");
+        assertEquals("exclusiveMinimum", violation(schema, "0").getKeyword());
+    }
+
+    @Test
+    void testArrays() throws Exception {
+        JsonSchema schema = schema("{\"type\":\"array\",\"items\":{\"type\":\"integer\"},"
+            + "\"minItems\":1,\"maxItems\":3}");
+
+        valid(schema, "[1,2,3]");
+        assertEquals("minItems", violation(schema, "[]").getKeyword());
+
+        SchemaViolationException e = violation(schema, "[1,\"two\"]");
+        assertEquals("$[1]", e.getPath());
+    }
+
+    @Test
+    void testOversizedArrayIsRejectedBeforeItIsRead() {
+        JsonSchema schema = schema("{\"maxItems\":2}");
+
+        // The rest of the payload is not even well-formed; it must never be reached
+        SchemaViolationException e = assertThrows(SchemaViolationException.class,
+            () -> schema.validate("[1,2,3,{{{", false));
+        assertEquals("maxItems", e.getKeyword());
+    }
+
+    @Test
+    void testTuples() throws Exception {
+        JsonSchema prefix = schema("{\"prefixItems\":[{\"type\":\"string\"},{\"type\":\"integer\"}],\"items\":false}");
+        JsonSchema draft7 = schema("{\"items\":[{\"type\":\"string\"},{\"type\":\"integer\"}],\"additionalItems\":false}");
+
+        for (JsonSchema schema : new JsonSchema[] {prefix, draft7}) {
+            valid(schema, "[\"a\",1]");
+            assertEquals("$[1]", violation(schema, "[\"a\",\"b\"]").getPath());
+            assertEquals("$[2]: is not allowed", violation(schema, "[\"a\",1,true]").getMessage());
+        }
+    }
+
+    @Test
+    void testEnumConstAndUniqueItems() throws Exception {
+        JsonSchema schema = schema("{\"properties\":{"
+            + "\"color\":{\"enum\":[\"red\",\"green\",{\"rgb\":[0,0,255]}]},"
+            + "\"v\":{\"const\":2},"
+            + "\"tags\":{\"uniqueItems\":true}}}");
+
+        valid(schema, "{\"color\":{\"rgb\":[0,0,255]},\"v\":2.0,\"tags\":[1,\"1\",[1]]}");
+        assertEquals("enum", violation(schema, "{\"color\":\"blue\"}").getKeyword());
+        assertEquals("enum", violation(schema, "{\"v\":3}").getKeyword());
+        assertEquals("uniqueItems", violation(schema, "{\"tags\":[{\"a\":1},{\"a\":1}]}").getKeyword());
+    }
+
+    @Test
+    void testCombinators() throws Exception {
+        JsonSchema schema = schema("{\"properties\":{"
+            + "\"id\":{\"anyOf\":[{\"type\":\"integer\"},{\"type\":\"string\",\"minLength\":1}]},"
+            + "\"n\":{\"oneOf\":[{\"multipleOf\":2},{\"multipleOf\":3}]},"
+            + "\"m\":{\"allOf\":[{\"minimum\":1},{\"maximum\":5}]},"
+            + "\"k\":{\"not\":{\"type\":\"null\"}}}}");
+
+        valid(schema, "{\"id\":\"x\",\"n\":4,\"m\":5,\"k\":0}");
+        assertEquals("anyOf", violation(schema, "{\"id\":\"\"}").getKeyword());
+        assertEquals("oneOf", violation(schema, "{\"n\":6}").getKeyword());
+        assertEquals("oneOf", violation(schema, "{\"n\":5}").getKeyword());
+        assertEquals("maximum", violation(schema, "{\"m\":6}").getKeyword());
+        assertEquals("not", violation(schema, "{\"k\":null}").getKeyword());
+    }
+
+    @Test
+    void testRecursiveRefs() throws Exception {
+        JsonSchema schema = schema("{\"$ref\":\"#/$defs/node\",\"$defs\":{\"node\":{\"type\":\"object\","
+            + "\"properties\":{\"value\":{\"type\":\"integer\"},"
+            + "\"children\":{\"type\":\"array\",\"items\":{\"$ref\":\"#/$defs/node\"}}},"
+            + "\"required\":[\"value\"]}}}");
+
+        valid(schema, "{\"value\":1,\"children\":[{\"value\":2,\"children\":[{\"value\":3}]}]}");
+        SchemaViolationException e = violation(schema, "{\"value\":1,\"children\":[{\"value\":2,\"children\":[{}]}]}");
+        assertEquals("$.children[0].children[0]", e.getPath());
+        assertEquals("required", e.getKeyword());
+    }
+
+    @Test
+    void testBooleanSchemas() throws Exception {
+        valid(schema("true"), "{\"anything\":[1]}");
+        assertEquals("false", violation(schema("false"), "1").getKeyword());
+    }
+
+    @Test
+    void testSafeModeStringsAreCheckedWithoutTheirMarkers() throws Exception {
+        JsonSchema schema = schema("{\"properties\":{\"code\":{\"maxLength\":2,\"enum\":[\"IT\"]},"
+            + "\"name\":{\"pattern\":\"^[a-z]+$\"}}}");
+
+        schema.validate("{\"code\":\"S:IT\",\"name\":\"S:abc\"}", true);
+        assertThrows(SchemaViolationException.class, () -> schema.validate("{\"code\":\"S:IT\"}", false));
+    }
+
+    @Test
+    void testOmittedParams() throws Exception {
+        schema("{\"type\":\"object\"}").validateOmitted();
+        schema("{\"type\":\"array\"}").validateOmitted();
+        assertEquals("required", assertThrows(SchemaViolationException.class,
+            () -> schema("{\"required\":[\"a\"]}").validateOmitted()).getKeyword());
+        assertEquals("minItems", assertThrows(SchemaViolationException.class,
+            () -> schema("{\"type\":\"array\",\"minItems\":1}").validateOmitted()).getKeyword());
+    }
+
+    @Test
+    void testInvalidSchemas() {
+        String[] invalid = {
+            "1",
+            "{\"type\":\"text\"}",
+            "{\"pattern\":\"[\"}",
+            "{\"minLength\":-1}",
+            "{\"multipleOf\":0}",
+            "{\"$ref\":\"#/$defs/missing\"}",
+            "{\"$ref\":\"http://example.com/schema.json\"}"
+        };
+        for (String json : invalid) {
+            JsonElement schema = JsonParser.parseString(json);
+            assertThrows(IllegalArgumentException.class, () -> JsonSchema.compile(schema), json);
+        }
+    }
+}